@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache.testing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.CharSource;
+import com.google.common.io.Closer;
+import com.google.common.io.LineProcessor;
+import com.google.common.primitives.Longs;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.CheckReturnValue;
+
+/**
+ * An immutable, recorded sequence of cache key accesses, optionally with the time of each access,
+ * for replay by {@link CacheSimulator}. Keys are represented as {@code long} values, such as
+ * identifiers or hash codes of the real keys.
+ *
+ * <p>Traces can be read from two formats:
+ *
+ * <ul>
+ * <li>A text format, with one access per line. Each line holds a key, optionally preceded by the
+ *     time of the access in nanoseconds and whitespace. Keys which are not decimal numbers, such as
+ *     URLs, are hashed to a {@code long}. Blank lines and lines starting with {@code #} are
+ *     ignored.
+ * <li>A compact binary format, written by {@link #writeBinary}: the int {@code 0x47435452}, an int
+ *     of flags (1 if the trace is timed), and then for each access its time if the trace is timed
+ *     followed by its key, each written as a big-endian long.
+ * </ul>
+ *
+ * <p>Either all accesses of a trace are timed, or none of them are.
+ *
+ * @since 20.0
+ */
+@Beta
+@CheckReturnValue
+@GwtIncompatible
+public final class AccessTrace {
+  static final int MAGIC = 0x47435452;
+  static final int TIMED = 1;
+
+  private final long[] keys;
+  private final long[] times; // null if untimed
+
+  private AccessTrace(long[] keys, long[] times) {
+    this.keys = keys;
+    this.times = times;
+  }
+
+  /** Returns an untimed trace accessing {@code keys} in order. */
+  public static AccessTrace of(long... keys) {
+    return new AccessTrace(keys.clone(), null);
+  }
+
+  /** Returns a new builder for a trace. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Returns the number of accesses in this trace. */
+  public int size() {
+    return keys.length;
+  }
+
+  /** Returns true if each access of this trace has a time. */
+  public boolean isTimed() {
+    return times != null;
+  }
+
+  /** Returns the key of the access at {@code index}. */
+  public long key(int index) {
+    checkElementIndex(index, keys.length);
+    return keys[index];
+  }
+
+  /**
+   * Returns the time of the access at {@code index}, in nanoseconds.
+   *
+   * @throws IllegalStateException if this trace is not timed
+   */
+  public long time(int index) {
+    checkState(times != null, "trace is not timed");
+    checkElementIndex(index, keys.length);
+    return times[index];
+  }
+
+  /**
+   * Reads a trace in the text format.
+   *
+   * @throws IllegalArgumentException if a line is malformed, or only some accesses are timed
+   */
+  public static AccessTrace readText(CharSource source) throws IOException {
+    return source.readLines(new LineProcessor<AccessTrace>() {
+      final Splitter splitter = Splitter.on(CharMatcher.whitespace()).omitEmptyStrings();
+      final Builder builder = builder();
+      int lineNumber;
+
+      @Override
+      public boolean processLine(String line) {
+        lineNumber++;
+        List<String> fields = splitter.splitToList(line);
+        if (fields.isEmpty() || fields.get(0).startsWith("#")) {
+          return true;
+        }
+        checkArgument(fields.size() <= 2, "line %s has too many fields: %s", lineNumber, line);
+        try {
+          if (fields.size() == 1) {
+            builder.add(parseKey(fields.get(0)));
+          } else {
+            Long time = Longs.tryParse(fields.get(0));
+            checkArgument(time != null, "line %s has a malformed time: %s", lineNumber, line);
+            builder.add(time, parseKey(fields.get(1)));
+          }
+        } catch (IllegalStateException e) {
+          throw new IllegalArgumentException(
+              "line " + lineNumber + " is inconsistently timed: " + line, e);
+        }
+        return true;
+      }
+
+      @Override
+      public AccessTrace getResult() {
+        return builder.build();
+      }
+    });
+  }
+
+  private static long parseKey(String field) {
+    Long key = Longs.tryParse(field);
+    return (key != null)
+        ? key
+        : Hashing.murmur3_128().hashString(field, Charsets.UTF_8).asLong();
+  }
+
+  /**
+   * Reads a trace in the binary format.
+   *
+   * @throws IllegalArgumentException if the source is not a binary trace
+   */
+  public static AccessTrace readBinary(ByteSource source) throws IOException {
+    Closer closer = Closer.create();
+    try {
+      DataInputStream in = closer.register(
+          new DataInputStream(new BufferedInputStream(source.openStream())));
+      checkArgument(in.readInt() == MAGIC, "not a binary access trace");
+      boolean timed = (in.readInt() & TIMED) != 0;
+      Builder builder = builder();
+      while (true) {
+        long first;
+        try {
+          first = in.readLong();
+        } catch (EOFException endOfTrace) {
+          return builder.build();
+        }
+        if (timed) {
+          builder.add(first, in.readLong());
+        } else {
+          builder.add(first);
+        }
+      }
+    } catch (Throwable e) {
+      throw closer.rethrow(e);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /** Writes this trace in the binary format. */
+  public void writeBinary(ByteSink sink) throws IOException {
+    Closer closer = Closer.create();
+    try {
+      DataOutputStream out = closer.register(
+          new DataOutputStream(new BufferedOutputStream(sink.openStream())));
+      out.writeInt(MAGIC);
+      out.writeInt(isTimed() ? TIMED : 0);
+      for (int i = 0; i < keys.length; i++) {
+        if (times != null) {
+          out.writeLong(times[i]);
+        }
+        out.writeLong(keys[i]);
+      }
+    } catch (Throwable e) {
+      throw closer.rethrow(e);
+    } finally {
+      closer.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AccessTrace[" + keys.length + (isTimed() ? " timed" : "") + " accesses]";
+  }
+
+  /**
+   * Records accesses in order, for building an {@link AccessTrace}. Either all or none of the
+   * accesses must be timed.
+   */
+  public static final class Builder {
+    private long[] keys = new long[16];
+    private long[] times;
+    private int size;
+    private Boolean timed;
+
+    Builder() {}
+
+    /** Adds an untimed access of {@code key}. */
+    @CanIgnoreReturnValue
+    public Builder add(long key) {
+      checkState(timed == null || !timed, "cannot add an untimed access to a timed trace");
+      timed = false;
+      ensureCapacity();
+      keys[size++] = key;
+      return this;
+    }
+
+    /** Adds an access of {@code key} at {@code time}, in nanoseconds. */
+    @CanIgnoreReturnValue
+    public Builder add(long time, long key) {
+      checkState(timed == null || timed, "cannot add a timed access to an untimed trace");
+      if (timed == null) {
+        timed = true;
+        times = new long[keys.length];
+      }
+      ensureCapacity();
+      times[size] = time;
+      keys[size++] = key;
+      return this;
+    }
+
+    private void ensureCapacity() {
+      if (size == keys.length) {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        if (times != null) {
+          times = Arrays.copyOf(times, capacity);
+        }
+      }
+    }
+
+    /** Returns a trace of the accesses added so far. */
+    public AccessTrace build() {
+      return new AccessTrace(
+          Arrays.copyOf(keys, size), (times == null) ? null : Arrays.copyOf(times, size));
+    }
+  }
+}
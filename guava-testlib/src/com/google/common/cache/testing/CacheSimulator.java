@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache.testing;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.testing.FakeTicker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.CheckReturnValue;
+
+/**
+ * Replays recorded {@linkplain AccessTrace access traces} against cache configurations, to compare
+ * their hit rates, eviction counts and throughput offline.
+ *
+ * <p>Each access of a trace is replayed as a {@link LoadingCache#getUnchecked} of its key, so that
+ * each miss loads the key into the cache. When the trace is timed, the cache's ticker is advanced
+ * to the time of each access before it is replayed, so that expiration behaves as it did when the
+ * trace was recorded. Results are reported as {@link CacheStats}:
+ *
+ * <pre>   {@code
+ *
+ *   AccessTrace trace = AccessTrace.readText(Files.asCharSource(file, UTF_8));
+ *   for (String spec : specs) {
+ *     CacheStats stats = CacheSimulator.simulate(trace, spec).stats();
+ *     System.out.println(spec + ": " + stats.hitRate());
+ *   }}</pre>
+ *
+ * <p>The simulator can also be run from the command line, with a trace file followed by any number
+ * of {@linkplain CacheBuilderSpec cache specifications}. A trace in the binary format must be
+ * preceded by {@code --binary}:
+ *
+ * <pre>   {@code
+ *
+ *   java com.google.common.cache.testing.CacheSimulator trace.txt \
+ *       maximumSize=1000 maximumSize=1000,evictionPolicy=tiny_lfu}</pre>
+ *
+ * @since 20.0
+ */
+@Beta
+@CheckReturnValue
+@GwtIncompatible
+public final class CacheSimulator {
+  private CacheSimulator() {}
+
+  private static final CacheLoader<Long, Long> IDENTITY_LOADER = new CacheLoader<Long, Long>() {
+    @Override
+    public Long load(Long key) {
+      return key;
+    }
+  };
+
+  /**
+   * Replays {@code trace} against a cache configured by {@code spec}, which is parsed as a
+   * {@link CacheBuilderSpec} and used as the name of the result.
+   */
+  public static SimulationResult simulate(AccessTrace trace, String spec) {
+    return simulate(trace, spec, CacheBuilder.from(spec));
+  }
+
+  /**
+   * Replays {@code trace} against a cache built by {@code builder}. This method enables stats
+   * recording and sets the ticker of the builder, which therefore must not already have a ticker
+   * and should not be reused.
+   *
+   * @throws IllegalStateException if the builder already has a ticker
+   */
+  public static SimulationResult simulate(
+      AccessTrace trace, String name, CacheBuilder<Object, Object> builder) {
+    checkNotNull(trace);
+    checkNotNull(name);
+    FakeTicker ticker = new FakeTicker();
+    LoadingCache<Long, Long> cache = builder.recordStats().ticker(ticker).build(IDENTITY_LOADER);
+
+    boolean timed = trace.isTimed();
+    long now = (timed && trace.size() > 0) ? trace.time(0) : 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < trace.size(); i++) {
+      if (timed) {
+        // tolerate slightly out of order times, as the ticker cannot run backwards
+        long time = trace.time(i);
+        if (time > now) {
+          ticker.advance(time - now);
+          now = time;
+        }
+      }
+      cache.getUnchecked(trace.key(i));
+    }
+    long elapsedNanos = System.nanoTime() - start;
+    return new SimulationResult(name, cache.stats(), elapsedNanos);
+  }
+
+  /**
+   * Returns a table of the hit rate, eviction count and throughput of each result, with one line
+   * per result.
+   */
+  public static String report(Iterable<SimulationResult> results) {
+    int nameWidth = "configuration".length();
+    for (SimulationResult result : results) {
+      nameWidth = Math.max(nameWidth, result.name().length());
+    }
+    StringBuilder report = new StringBuilder();
+    report.append(String.format(Locale.ROOT, "%-" + nameWidth + "s %9s %12s %14s%n",
+        "configuration", "hit rate", "evictions", "accesses/sec"));
+    for (SimulationResult result : results) {
+      CacheStats stats = result.stats();
+      report.append(String.format(Locale.ROOT, "%-" + nameWidth + "s %8.2f%% %12d %14.0f%n",
+          result.name(), 100 * stats.hitRate(), stats.evictionCount(), result.throughput()));
+    }
+    return report.toString();
+  }
+
+  /**
+   * Replays a trace file against each cache specification given on the command line, printing a
+   * {@linkplain #report report} of the results.
+   */
+  public static void main(String[] args) throws IOException {
+    List<String> arguments = Lists.newArrayList(Arrays.asList(args));
+    boolean binary = !arguments.isEmpty() && arguments.get(0).equals("--binary");
+    if (binary) {
+      arguments.remove(0);
+    }
+    if (arguments.size() < 2) {
+      System.err.println(
+          "usage: CacheSimulator [--binary] <trace file> <cache spec> [<cache spec>...]");
+      return;
+    }
+
+    File file = new File(arguments.get(0));
+    AccessTrace trace = binary
+        ? AccessTrace.readBinary(Files.asByteSource(file))
+        : AccessTrace.readText(Files.asCharSource(file, Charsets.UTF_8));
+    System.out.println("Replaying " + trace.size() + " accesses from " + file);
+
+    List<SimulationResult> results = Lists.newArrayList();
+    for (String spec : arguments.subList(1, arguments.size())) {
+      results.add(simulate(trace, spec));
+    }
+    System.out.print(report(results));
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache.testing;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckReturnValue;
+
+/**
+ * The outcome of replaying an {@link AccessTrace} against one cache configuration with
+ * {@link CacheSimulator}.
+ *
+ * @since 20.0
+ */
+@Beta
+@CheckReturnValue
+@GwtIncompatible
+public final class SimulationResult {
+  private final String name;
+  private final CacheStats stats;
+  private final long elapsedNanos;
+
+  SimulationResult(String name, CacheStats stats, long elapsedNanos) {
+    this.name = checkNotNull(name);
+    this.stats = checkNotNull(stats);
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /** Returns the name of the simulated configuration. */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns the statistics of the simulated cache. Each access of the trace counts as one request,
+   * and each miss loads the key.
+   */
+  public CacheStats stats() {
+    return stats;
+  }
+
+  /** Returns the wall-clock time taken to replay the trace. */
+  public long elapsedTime(TimeUnit unit) {
+    return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /** Returns the number of accesses replayed per second of wall-clock time. */
+  public double throughput() {
+    return (elapsedNanos == 0)
+        ? Double.POSITIVE_INFINITY
+        : stats.requestCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("name", name)
+        .add("hitRate", stats.hitRate())
+        .add("evictionCount", stats.evictionCount())
+        .add("throughput", throughput())
+        .toString();
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Testing utilities for use with {@code com.google.common.cache}, such as a simulator which
+ * replays recorded access traces to compare cache configurations.
+ *
+ * <p>This package is a part of the open-source
+ * <a href="http://github.com/google/guava">Guava</a> library.
+ */
+@CheckReturnValue
+@ParametersAreNonnullByDefault
+package com.google.common.cache.testing;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.ParametersAreNonnullByDefault;
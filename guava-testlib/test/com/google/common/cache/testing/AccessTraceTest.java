@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache.testing;
+
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.CharSource;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Unit tests for {@link AccessTrace}.
+ */
+public class AccessTraceTest extends TestCase {
+
+  public void testReadText_untimed() throws IOException {
+    AccessTrace trace = AccessTrace.readText(CharSource.wrap(
+        "# a comment\n1\n\n  2  \nhttp://example.com/\n1\n"));
+    assertEquals(4, trace.size());
+    assertFalse(trace.isTimed());
+    assertEquals(1, trace.key(0));
+    assertEquals(2, trace.key(1));
+    assertEquals(1, trace.key(3));
+    assertEquals(trace.key(2),
+        AccessTrace.readText(CharSource.wrap("http://example.com/")).key(0));
+    try {
+      trace.time(0);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  public void testReadText_timed() throws IOException {
+    AccessTrace trace = AccessTrace.readText(CharSource.wrap("100 7\n250\t8\n"));
+    assertTrue(trace.isTimed());
+    assertEquals(2, trace.size());
+    assertEquals(100, trace.time(0));
+    assertEquals(7, trace.key(0));
+    assertEquals(250, trace.time(1));
+    assertEquals(8, trace.key(1));
+  }
+
+  public void testReadText_malformed() throws IOException {
+    for (String text : new String[] {"1 2 3", "x 2", "1\n100 2", "100 2\n1"}) {
+      try {
+        AccessTrace.readText(CharSource.wrap(text));
+        fail(text);
+      } catch (IllegalArgumentException expected) {}
+    }
+  }
+
+  public void testBinary_roundTrip() throws IOException {
+    AccessTrace untimed = AccessTrace.of(3, 1, 4, 1, 5);
+    assertTraceEquals(untimed, roundTrip(untimed));
+
+    AccessTrace timed =
+        AccessTrace.builder().add(10, 3).add(20, -1).add(20, Long.MAX_VALUE).build();
+    assertTraceEquals(timed, roundTrip(timed));
+  }
+
+  public void testReadBinary_notATrace() throws IOException {
+    try {
+      AccessTrace.readBinary(ByteSource.wrap(new byte[] {1, 2, 3, 4, 0, 0, 0, 0}));
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testBuilder_inconsistentlyTimed() {
+    try {
+      AccessTrace.builder().add(1).add(10, 2);
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      AccessTrace.builder().add(10, 2).add(1);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  public void testBuilder_grows() {
+    AccessTrace.Builder builder = AccessTrace.builder();
+    for (int i = 0; i < 1000; i++) {
+      builder.add(i, -i);
+    }
+    AccessTrace trace = builder.build();
+    assertEquals(1000, trace.size());
+    assertEquals(999, trace.time(999));
+    assertEquals(-999, trace.key(999));
+  }
+
+  private static AccessTrace roundTrip(AccessTrace trace) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    trace.writeBinary(new ByteSink() {
+      @Override
+      public OutputStream openStream() {
+        return bytes;
+      }
+    });
+    return AccessTrace.readBinary(ByteSource.wrap(bytes.toByteArray()));
+  }
+
+  private static void assertTraceEquals(AccessTrace expected, AccessTrace actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.isTimed(), actual.isTimed());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.key(i), actual.key(i));
+      if (expected.isTimed()) {
+        assertEquals(expected.time(i), actual.time(i));
+      }
+    }
+  }
+}
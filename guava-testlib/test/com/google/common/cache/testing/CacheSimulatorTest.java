@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache.testing;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.FakeTicker;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link CacheSimulator}.
+ */
+public class CacheSimulatorTest extends TestCase {
+
+  public void testSimulate_unbounded() {
+    AccessTrace trace = AccessTrace.of(1, 2, 1, 3, 2, 1);
+    CacheStats stats = CacheSimulator.simulate(trace, "").stats();
+    assertEquals(6, stats.requestCount());
+    assertEquals(3, stats.hitCount());
+    assertEquals(3, stats.missCount());
+    assertEquals(0, stats.evictionCount());
+  }
+
+  public void testSimulate_maximumSize() {
+    // a scan over more keys than fit in an LRU cache never hits
+    AccessTrace.Builder builder = AccessTrace.builder();
+    for (int pass = 0; pass < 3; pass++) {
+      for (int key = 0; key < 10; key++) {
+        builder.add(key);
+      }
+    }
+    SimulationResult result = CacheSimulator.simulate(
+        builder.build(), "lru", CacheBuilder.newBuilder().concurrencyLevel(1).maximumSize(5));
+    assertEquals("lru", result.name());
+    assertEquals(0, result.stats().hitCount());
+    assertEquals(30, result.stats().missCount());
+    assertEquals(25, result.stats().evictionCount());
+  }
+
+  public void testSimulate_timedTraceExpires() {
+    AccessTrace trace = AccessTrace.builder()
+        .add(0, 1)
+        .add(50, 1) // hit
+        .add(200, 1) // expired 100ns after the write
+        .add(150, 1) // out of order, replayed at 200
+        .build();
+    CacheStats stats = CacheSimulator.simulate(
+        trace, "expiring", CacheBuilder.newBuilder().expireAfterWrite(100, NANOSECONDS)).stats();
+    assertEquals(2, stats.hitCount());
+    assertEquals(2, stats.missCount());
+  }
+
+  public void testSimulate_builderWithTicker() {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().ticker(new FakeTicker());
+    try {
+      CacheSimulator.simulate(AccessTrace.of(1), "ticker", builder);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  public void testReport() {
+    SimulationResult result = CacheSimulator.simulate(
+        AccessTrace.of(1, 1, 1, 1), "maximumSize=10");
+    assertEquals(4, result.stats().requestCount());
+    assertTrue(result.elapsedTime(NANOSECONDS) >= 0);
+    assertTrue(result.throughput() > 0);
+
+    String report = CacheSimulator.report(ImmutableList.of(result));
+    String[] lines = report.split("\n");
+    assertEquals(2, lines.length);
+    assertTrue(lines[0], lines[0].startsWith("configuration"));
+    assertTrue(lines[0], lines[0].contains("hit rate"));
+    assertTrue(lines[1], lines[1].startsWith("maximumSize=10"));
+    assertTrue(lines[1], lines[1].contains("75.00%"));
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays synthetic access traces against size-bounded caches using each {@link EvictionPolicy},
+ * reporting the hit rate alongside the time per access.
+ */
+public class EvictionPolicyBenchmark {
+  @Param({"LRU", "TINY_LFU"}) EvictionPolicy policy;
+  @Param({"ZIPFIAN", "SCAN"}) Trace trace;
+  @Param("1000") int maximumSize;
+  @Param("50000") int distinctKeys;
+  @Param("1") int segments;
+
+  private static final int TRACE_LENGTH = 1 << 20;
+  private static final int TRACE_MASK = TRACE_LENGTH - 1;
+
+  enum Trace {
+    /** Keys drawn from a Zipfian distribution with exponent 0.9. */
+    ZIPFIAN {
+      @Override
+      int[] generate(int distinctKeys, Random random) {
+        double[] cumulative = zipfianCumulative(distinctKeys, 0.9);
+        int[] keys = new int[TRACE_LENGTH];
+        for (int i = 0; i < keys.length; i++) {
+          keys[i] = nextZipfian(cumulative, random);
+        }
+        return keys;
+      }
+    },
+
+    /**
+     * A Zipfian trace interrupted every 10,000 accesses by a scan of 5,000 keys that are never
+     * requested again, as a batch job would produce.
+     */
+    SCAN {
+      @Override
+      int[] generate(int distinctKeys, Random random) {
+        double[] cumulative = zipfianCumulative(distinctKeys, 0.9);
+        int[] keys = new int[TRACE_LENGTH];
+        int nextColdKey = distinctKeys;
+        for (int i = 0; i < keys.length; i++) {
+          keys[i] = (i % 15000 < 10000) ? nextZipfian(cumulative, random) : nextColdKey++;
+        }
+        return keys;
+      }
+    };
+
+    abstract int[] generate(int distinctKeys, Random random);
+  }
+
+  static double[] zipfianCumulative(int distinctKeys, double exponent) {
+    double[] cumulative = new double[distinctKeys];
+    double sum = 0;
+    for (int i = 0; i < distinctKeys; i++) {
+      sum += 1.0 / Math.pow(i + 1, exponent);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < distinctKeys; i++) {
+      cumulative[i] /= sum;
+    }
+    return cumulative;
+  }
+
+  static int nextZipfian(double[] cumulative, Random random) {
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return (index >= 0) ? index : Math.min(-index - 1, cumulative.length - 1);
+  }
+
+  int[] keys;
+  LoadingCache<Integer, Integer> cache;
+
+  static AtomicLong requests = new AtomicLong(0);
+  static AtomicLong misses = new AtomicLong(0);
+
+  @BeforeExperiment void setUp() {
+    keys = trace.generate(distinctKeys, new Random(42));
+    cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(segments)
+        .maximumSize(maximumSize)
+        .evictionPolicy(policy)
+        .build(
+            new CacheLoader<Integer, Integer>() {
+              @Override public Integer load(Integer from) {
+                misses.incrementAndGet();
+                return from;
+              }
+            });
+
+    // warm up the cache with one pass over the trace
+    for (int key : keys) {
+      cache.getUnchecked(key);
+    }
+
+    requests.set(0);
+    misses.set(0);
+  }
+
+  @Benchmark int time(int reps) {
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      dummy += cache.getUnchecked(keys[i & TRACE_MASK]);
+    }
+    requests.addAndGet(reps);
+    return dummy;
+  }
+
+  @AfterExperiment void tearDown() {
+    double req = requests.get();
+    double hit = req - misses.get();
+    System.out.println(policy + " " + trace + " hit rate: " + hit / req);
+  }
+}
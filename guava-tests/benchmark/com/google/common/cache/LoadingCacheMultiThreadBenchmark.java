@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-heavy benchmark for {@link LoadingCache} in which the measured thread competes with a
+ * number of background threads reading from the same cache. With an allocation-free, striped read
+ * path, the time per read should stay roughly flat as {@code readerThreads} grows.
+ */
+public class LoadingCacheMultiThreadBenchmark {
+  @Param({"0", "3", "15", "63"}) int readerThreads;
+  @Param("1000") int maximumSize;
+  @Param("800") int distinctKeys;
+  @Param("4") int segments;
+  @Param({"false", "true"}) boolean expireAfterAccess;
+
+  LoadingCache<Integer, Integer> cache;
+  Integer[] keys;
+
+  final List<Thread> threads = new ArrayList<Thread>();
+
+  @BeforeExperiment void setUp() {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+        .concurrencyLevel(segments)
+        .maximumSize(maximumSize);
+    if (expireAfterAccess) {
+      builder.expireAfterAccess(1, TimeUnit.HOURS);
+    }
+    cache = builder.build(
+        new CacheLoader<Integer, Integer>() {
+          @Override public Integer load(Integer from) {
+            return from;
+          }
+        });
+
+    // every key fits, so that the benchmark measures the read path rather than loading
+    keys = new Integer[distinctKeys];
+    for (int i = 0; i < distinctKeys; i++) {
+      keys[i] = i;
+      cache.getUnchecked(keys[i]);
+    }
+
+    for (int i = 0; i < readerThreads; i++) {
+      final int seed = i;
+      Thread thread = new Thread() {
+        @Override public void run() {
+          Random random = new Random(seed);
+          int mask = Integer.highestOneBit(distinctKeys) - 1;
+          int index = random.nextInt(distinctKeys);
+          while (!isInterrupted()) {
+            cache.getUnchecked(keys[index]);
+            index = (index + 1) & mask;
+          }
+        }
+      };
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  @AfterExperiment void tearDown() {
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    threads.clear();
+  }
+
+  @Benchmark int time(int reps) {
+    int dummy = 0;
+    int mask = Integer.highestOneBit(distinctKeys) - 1;
+    for (int i = 0; i < reps; i++) {
+      dummy += cache.getUnchecked(keys[i & mask]);
+    }
+    return dummy;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares reads and writes of a cache holding large values on the heap with one storing them
+ * {@linkplain CacheBuilder#offHeapValues off heap}. Besides the time per operation, each experiment
+ * reports the garbage collection time it incurred and the 99th percentile latency of a read.
+ */
+public class OffHeapCacheBenchmark {
+  @Param({"false", "true"}) boolean offHeap;
+  @Param("100000") int entries;
+  @Param("4096") int valueSize;
+  @Param("10") int writePercent;
+
+  private static final int LATENCY_SAMPLES = 100000;
+
+  enum ByteArraySerializer implements ValueSerializer<byte[]> {
+    INSTANCE;
+
+    @Override
+    public byte[] serialize(byte[] value) {
+      return value;
+    }
+
+    @Override
+    public byte[] deserialize(ByteBuffer buffer) {
+      byte[] value = new byte[buffer.remaining()];
+      buffer.get(value);
+      return value;
+    }
+  }
+
+  Cache<Integer, byte[]> cache;
+  Random random;
+  long gcMillisBefore;
+
+  @BeforeExperiment void setUp() {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(entries);
+    cache = offHeap
+        ? builder.offHeapValues(ByteArraySerializer.INSTANCE).<Integer, byte[]>build()
+        : builder.<Integer, byte[]>build();
+    random = new Random(42);
+    for (int i = 0; i < entries; i++) {
+      cache.put(i, new byte[valueSize]);
+    }
+    gcMillisBefore = gcMillis();
+  }
+
+  @Benchmark int time(int reps) {
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      int key = random.nextInt(entries);
+      if (random.nextInt(100) < writePercent) {
+        cache.put(key, new byte[valueSize]);
+      } else {
+        dummy += cache.getIfPresent(key).length;
+      }
+    }
+    return dummy;
+  }
+
+  @AfterExperiment void tearDown() {
+    long gcMillis = gcMillis() - gcMillisBefore;
+
+    long[] latencies = new long[LATENCY_SAMPLES];
+    for (int i = 0; i < latencies.length; i++) {
+      int key = random.nextInt(entries);
+      long start = System.nanoTime();
+      cache.getIfPresent(key);
+      latencies[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(latencies);
+    long p99 = latencies[(int) (latencies.length * 0.99)];
+
+    System.out.println((offHeap ? "off-heap" : "on-heap")
+        + " gc time: " + gcMillis + "ms, p99 get latency: " + p99 + "ns");
+  }
+
+  private static long gcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, bean.getCollectionTime());
+    }
+    return total;
+  }
+}
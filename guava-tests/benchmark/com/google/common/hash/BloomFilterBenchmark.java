@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+
+import java.util.Random;
+
+/**
+ * Benchmarks for {@link BloomFilter#mightContain} with the ordinary and the blocked strategies.
+ *
+ * <p>Parameters for the benchmark are:
+ * <ul>
+ * <li>expectedInsertions: The number of elements put in the filter. At the default false positive
+ *     probability of 1%, the largest filter takes about 120MB, much more than a typical L3 cache,
+ *     so that most probes of the ordinary strategy miss the caches.
+ * <li>strategy: The {@link BloomFilter.Strategy} to use.
+ * <li>presentFraction: The fraction of looked up elements that were put in the filter. Lookups of
+ *     absent elements usually stop at the first unset bit.
+ * </ul>
+ */
+public class BloomFilterBenchmark {
+  private static final int QUERY_COUNT = 1 << 16;
+
+  @Param({"1000", "1000000", "100000000"})
+  private int expectedInsertions;
+
+  @Param({"0.01"})
+  private double fpp;
+
+  @Param({"MURMUR128_MITZ_64", "MURMUR128_BLOCKED_512"})
+  private BloomFilterStrategies strategy;
+
+  @Param({"0.0", "1.0"})
+  private double presentFraction;
+
+  private BloomFilter<Long> bloomFilter;
+  private final long[] queries = new long[QUERY_COUNT];
+
+  @BeforeExperiment void setUp() {
+    bloomFilter = BloomFilter.create(Funnels.longFunnel(), expectedInsertions, fpp, strategy);
+    // put the even numbers, so that odd numbers are known to be absent
+    for (long i = 0; i < expectedInsertions; i++) {
+      bloomFilter.put(2 * i);
+    }
+    Random random = new Random(42);
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      long element = 2L * random.nextInt(expectedInsertions);
+      queries[i] = (random.nextDouble() < presentFraction) ? element : element + 1;
+    }
+  }
+
+  @Benchmark int mightContain(int reps) {
+    BloomFilter<Long> bloomFilter = this.bloomFilter;
+    long[] queries = this.queries;
+    int result = 0;
+    for (int i = 0; i < reps; i++) {
+      if (bloomFilter.mightContain(queries[i & (QUERY_COUNT - 1)])) {
+        result++;
+      }
+    }
+    return result;
+  }
+}
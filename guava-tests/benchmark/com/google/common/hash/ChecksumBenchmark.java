@@ -20,6 +20,7 @@ import com.google.caliper.BeforeExperiment;
 import com.google.caliper.Benchmark;
 import com.google.caliper.Param;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 import java.util.zip.Adler32;
 import java.util.zip.CRC32;
@@ -41,11 +42,14 @@ public class ChecksumBenchmark {
   private int size;
 
   private byte[] testBytes;
+  private ByteBuffer testDirectBuffer;
 
   @BeforeExperiment
   void setUp() {
     testBytes = new byte[size];
     new Random(RANDOM_SEED).nextBytes(testBytes);
+    testDirectBuffer = ByteBuffer.allocateDirect(size);
+    testDirectBuffer.put(testBytes).clear();
   }
 
   // CRC32
@@ -54,6 +58,10 @@ public class ChecksumBenchmark {
     return runHashFunction(reps, Hashing.crc32());
   }
 
+  @Benchmark byte crc32HashFunctionDirectBuffer(int reps) {
+    return runHashFunctionOnDirectBuffer(reps, Hashing.crc32());
+  }
+
   @Benchmark byte crc32Checksum(int reps) throws Exception {
     byte result = 0x01;
     for (int i = 0; i < reps; i++) {
@@ -70,6 +78,10 @@ public class ChecksumBenchmark {
     return runHashFunction(reps, Hashing.adler32());
   }
 
+  @Benchmark byte adler32HashFunctionDirectBuffer(int reps) {
+    return runHashFunctionOnDirectBuffer(reps, Hashing.adler32());
+  }
+
   @Benchmark byte adler32Checksum(int reps) throws Exception {
     byte result = 0x01;
     for (int i = 0; i < reps; i++) {
@@ -92,4 +104,16 @@ public class ChecksumBenchmark {
     }
     return result;
   }
+
+  private byte runHashFunctionOnDirectBuffer(int reps, HashFunction hashFunction) {
+    byte result = 0x01;
+    // Trick the JVM to prevent it from using the hash function non-polymorphically
+    result ^= Hashing.crc32().hashInt(reps).asBytes()[0];
+    result ^= Hashing.adler32().hashInt(reps).asBytes()[0];
+    for (int i = 0; i < reps; i++) {
+      testDirectBuffer.clear();
+      result ^= hashFunction.hashBytes(testDirectBuffer).asBytes()[0];
+    }
+    return result;
+  }
 }
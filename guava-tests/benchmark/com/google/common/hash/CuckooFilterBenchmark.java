@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.base.Predicate;
+
+import java.util.Random;
+
+/**
+ * Benchmarks for {@link CuckooFilter} compared to {@link BloomFilter}.
+ *
+ * <p>Parameters for the benchmark are:
+ * <ul>
+ * <li>expectedInsertions: The number of elements put in the filter.
+ * <li>fpp: The desired false positive probability.
+ * <li>impl: The filter to benchmark.
+ * <li>presentFraction: The fraction of looked up elements that were put in the filter.
+ * </ul>
+ */
+public class CuckooFilterBenchmark {
+  private static final int QUERY_COUNT = 1 << 16;
+
+  @Param({"1000", "1000000", "10000000"})
+  private int expectedInsertions;
+
+  @Param({"0.03", "0.001"})
+  private double fpp;
+
+  @Param private FilterImpl impl;
+
+  @Param({"0.0", "1.0"})
+  private double presentFraction;
+
+  private Predicate<Long> filter;
+  private final long[] queries = new long[QUERY_COUNT];
+
+  @BeforeExperiment void setUp() {
+    filter = impl.create(expectedInsertions, fpp);
+    // put the even numbers, so that odd numbers are known to be absent
+    for (long i = 0; i < expectedInsertions; i++) {
+      impl.put(filter, 2 * i);
+    }
+    Random random = new Random(42);
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      long element = 2L * random.nextInt(expectedInsertions);
+      queries[i] = (random.nextDouble() < presentFraction) ? element : element + 1;
+    }
+  }
+
+  @Benchmark int mightContain(int reps) {
+    Predicate<Long> filter = this.filter;
+    long[] queries = this.queries;
+    int result = 0;
+    for (int i = 0; i < reps; i++) {
+      if (filter.apply(queries[i & (QUERY_COUNT - 1)])) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Puts elements in a filter that is emptied after every {@code expectedInsertions} puts, so that
+   * the filter is on average half full. The cuckoo filter is emptied by removing the elements; the
+   * Bloom filter, which cannot remove elements, is replaced by a new one.
+   */
+  @Benchmark int put(int reps) {
+    Predicate<Long> filter = impl.create(expectedInsertions, fpp);
+    int result = 0;
+    for (int i = 0; i < reps; i++) {
+      long element = i % expectedInsertions;
+      if (element == 0 && i > 0) {
+        filter = impl.clear(filter, expectedInsertions, fpp);
+      }
+      if (impl.put(filter, element)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  enum FilterImpl {
+    BLOOM {
+      @Override
+      Predicate<Long> create(int expectedInsertions, double fpp) {
+        return BloomFilter.create(Funnels.longFunnel(), expectedInsertions, fpp);
+      }
+
+      @Override
+      boolean put(Predicate<Long> filter, long element) {
+        return ((BloomFilter<Long>) filter).put(element);
+      }
+
+      @Override
+      Predicate<Long> clear(Predicate<Long> filter, int expectedInsertions, double fpp) {
+        return create(expectedInsertions, fpp);
+      }
+    },
+    CUCKOO {
+      @Override
+      Predicate<Long> create(int expectedInsertions, double fpp) {
+        return CuckooFilter.create(Funnels.longFunnel(), expectedInsertions, fpp);
+      }
+
+      @Override
+      boolean put(Predicate<Long> filter, long element) {
+        return ((CuckooFilter<Long>) filter).put(element);
+      }
+
+      @Override
+      Predicate<Long> clear(Predicate<Long> filter, int expectedInsertions, double fpp) {
+        CuckooFilter<Long> cuckooFilter = (CuckooFilter<Long>) filter;
+        for (long element = 0; element < expectedInsertions; element++) {
+          cuckooFilter.remove(element);
+        }
+        return cuckooFilter;
+      }
+    };
+
+    abstract Predicate<Long> create(int expectedInsertions, double fpp);
+
+    abstract boolean put(Predicate<Long> filter, long element);
+
+    /** Returns an empty filter in place of {@code filter}, which holds 0 to expectedInsertions. */
+    abstract Predicate<Long> clear(Predicate<Long> filter, int expectedInsertions, double fpp);
+  }
+}
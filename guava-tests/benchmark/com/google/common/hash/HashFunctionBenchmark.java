@@ -20,6 +20,7 @@ import com.google.caliper.BeforeExperiment;
 import com.google.caliper.Benchmark;
 import com.google.caliper.Param;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 /**
@@ -31,6 +32,13 @@ import java.util.Random;
  * <li>hashFunctionEnum: The {@link HashFunction} to use for hashing.
  * </ul>
  *
+ * <p>The {@code hashLongs} and {@code hashKeys} benchmarks hash {@code size / 16} small keys one at
+ * a time, and their {@code bulk} counterparts hash the same keys with {@link Hashing#hashLongs}
+ * and {@link Hashing#hashBytes}. Each key is 16 bytes, or all of them if {@code size} is smaller.
+ *
+ * <p>{@code hashDirectBuffer} hashes the same bytes held in a direct buffer, and {@code
+ * hashDirectBufferCopy} copies them to the heap before hashing them.
+ *
  * @author Kurt Alfred Kluever
  */
 public class HashFunctionBenchmark {
@@ -43,11 +51,33 @@ public class HashFunctionBenchmark {
 
   @Param HashFunctionEnum hashFunctionEnum;
 
+  private static final int KEY_LENGTH = 16;
+
   private byte[] testBytes;
+  private ByteBuffer testDirectBuffer;
+  private int keyCount;
+  private long[] testLongs;
+  private int[] keyOffsets;
+  private int[] keyLengths;
+  private int[] output;
 
   @BeforeExperiment void setUp() {
     testBytes = new byte[size];
     random.nextBytes(testBytes);
+    testDirectBuffer = ByteBuffer.allocateDirect(size);
+    testDirectBuffer.put(testBytes).clear();
+
+    // the keys are consecutive ranges of KEY_LENGTH bytes, or all the bytes if there are fewer
+    keyCount = Math.max(1, size / KEY_LENGTH);
+    testLongs = new long[keyCount];
+    keyOffsets = new int[keyCount];
+    keyLengths = new int[keyCount];
+    for (int i = 0; i < keyCount; i++) {
+      testLongs[i] = random.nextLong();
+      keyOffsets[i] = i * KEY_LENGTH;
+      keyLengths[i] = Math.min(KEY_LENGTH, size);
+    }
+    output = new int[keyCount];
   }
 
   @Benchmark int hashFunction(int reps) {
@@ -67,4 +97,74 @@ public class HashFunctionBenchmark {
     }
     return result;
   }
+
+  @Benchmark int hashDirectBuffer(int reps) {
+    HashFunction hashFunction = hashFunctionEnum.getHashFunction();
+    ByteBuffer buffer = testDirectBuffer;
+    int result = 37;
+    for (int i = 0; i < reps; i++) {
+      buffer.clear();
+      result ^= hashFunction.hashBytes(buffer).asBytes()[0];
+    }
+    return result;
+  }
+
+  /** Copies the direct buffer to the heap and hashes the copy, for comparison. */
+  @Benchmark int hashDirectBufferCopy(int reps) {
+    HashFunction hashFunction = hashFunctionEnum.getHashFunction();
+    ByteBuffer buffer = testDirectBuffer;
+    int result = 37;
+    for (int i = 0; i < reps; i++) {
+      byte[] copy = new byte[buffer.capacity()];
+      buffer.clear();
+      buffer.get(copy);
+      result ^= hashFunction.hashBytes(copy).asBytes()[0];
+    }
+    return result;
+  }
+
+  @Benchmark int hashLongs(int reps) {
+    HashFunction hashFunction = hashFunctionEnum.getHashFunction();
+    long[] testLongs = this.testLongs;
+    int result = 37;
+    for (int i = 0; i < reps; i++) {
+      for (int j = 0; j < testLongs.length; j++) {
+        result ^= hashFunction.hashLong(testLongs[j]).asInt();
+      }
+    }
+    return result;
+  }
+
+  @Benchmark int bulkHashLongs(int reps) {
+    HashFunction hashFunction = hashFunctionEnum.getHashFunction();
+    int result = 37;
+    for (int i = 0; i < reps; i++) {
+      Hashing.hashLongs(hashFunction, testLongs, output);
+      result ^= output[i % keyCount];
+    }
+    return result;
+  }
+
+  @Benchmark int hashKeys(int reps) {
+    HashFunction hashFunction = hashFunctionEnum.getHashFunction();
+    int[] keyOffsets = this.keyOffsets;
+    int[] keyLengths = this.keyLengths;
+    int result = 37;
+    for (int i = 0; i < reps; i++) {
+      for (int j = 0; j < keyOffsets.length; j++) {
+        result ^= hashFunction.hashBytes(testBytes, keyOffsets[j], keyLengths[j]).asInt();
+      }
+    }
+    return result;
+  }
+
+  @Benchmark int bulkHashKeys(int reps) {
+    HashFunction hashFunction = hashFunctionEnum.getHashFunction();
+    int result = 37;
+    for (int i = 0; i < reps; i++) {
+      Hashing.hashBytes(hashFunction, testBytes, keyOffsets, keyLengths, output);
+      result ^= output[i % keyCount];
+    }
+    return result;
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contention benchmark comparing increments of a single hot key in {@link AtomicLongMap} and
+ * {@link LongAdderMap}, in which the measured thread competes with a number of background threads
+ * incrementing the same key.
+ */
+public class LongAdderMapBenchmark {
+  @Param({"0", "3", "15", "63"}) int contendingThreads;
+  @Param Impl impl;
+
+  enum Impl {
+    ATOMIC_LONG_MAP {
+      @Override Counter create() {
+        final AtomicLongMap<String> map = AtomicLongMap.create();
+        return new Counter() {
+          @Override void increment(String key) {
+            map.incrementAndGet(key);
+          }
+        };
+      }
+    },
+    LONG_ADDER_MAP {
+      @Override Counter create() {
+        final LongAdderMap<String> map = LongAdderMap.create();
+        return new Counter() {
+          @Override void increment(String key) {
+            map.increment(key);
+          }
+        };
+      }
+    };
+
+    abstract Counter create();
+  }
+
+  abstract static class Counter {
+    abstract void increment(String key);
+  }
+
+  private static final String KEY = "hot";
+
+  Counter counter;
+
+  final List<Thread> threads = new ArrayList<Thread>();
+
+  @BeforeExperiment void setUp() {
+    counter = impl.create();
+    for (int i = 0; i < contendingThreads; i++) {
+      Thread thread = new Thread() {
+        @Override public void run() {
+          while (!isInterrupted()) {
+            counter.increment(KEY);
+          }
+        }
+      };
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  @AfterExperiment void tearDown() {
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    threads.clear();
+  }
+
+  @Benchmark void increment(int reps) {
+    Counter counter = this.counter;
+    for (int i = 0; i < reps; i++) {
+      counter.increment(KEY);
+    }
+  }
+}
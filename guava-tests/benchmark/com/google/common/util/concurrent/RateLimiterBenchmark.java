@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contention benchmark for {@link RateLimiter#tryAcquire()}, in which the measured thread competes
+ * with a number of background threads taking permits from the same {@code RateLimiter}. The rate is
+ * high enough that most calls succeed, so the benchmark measures the cost of updating the shared
+ * state: the smooth rate limiter takes a lock, while the token bucket uses a compare-and-set.
+ */
+public class RateLimiterBenchmark {
+  @Param({"0", "3", "15", "47"}) int contendingThreads;
+  @Param("1.0E9") double permitsPerSecond;
+  @Param Impl impl;
+
+  enum Impl {
+    SMOOTH {
+      @Override RateLimiter create(double permitsPerSecond) {
+        return RateLimiter.create(permitsPerSecond);
+      }
+    },
+    TOKEN_BUCKET {
+      @Override RateLimiter create(double permitsPerSecond) {
+        return RateLimiter.createTokenBucket(permitsPerSecond, permitsPerSecond);
+      }
+    };
+
+    abstract RateLimiter create(double permitsPerSecond);
+  }
+
+  RateLimiter rateLimiter;
+
+  final List<Thread> threads = new ArrayList<Thread>();
+
+  @BeforeExperiment void setUp() {
+    rateLimiter = impl.create(permitsPerSecond);
+    for (int i = 0; i < contendingThreads; i++) {
+      Thread thread = new Thread() {
+        @Override public void run() {
+          while (!isInterrupted()) {
+            rateLimiter.tryAcquire();
+          }
+        }
+      };
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  @AfterExperiment void tearDown() {
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    threads.clear();
+  }
+
+  @Benchmark int tryAcquire(int reps) {
+    RateLimiter rateLimiter = this.rateLimiter;
+    int acquired = 0;
+    for (int i = 0; i < reps; i++) {
+      if (rateLimiter.tryAcquire()) {
+        acquired++;
+      }
+    }
+    return acquired;
+  }
+
+  @Benchmark long reserve(int reps) {
+    RateLimiter rateLimiter = this.rateLimiter;
+    long dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      dummy += rateLimiter.reserve(1);
+    }
+    return dummy;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+/**
+ * Benchmark for deep {@link Futures#transformAsync} chains, comparing a {@code ThreadPoolExecutor}
+ * wrapped by {@link MoreExecutors#listeningDecorator(java.util.concurrent.ExecutorService)} with
+ * {@link MoreExecutors#newWorkStealingExecutorService(int)}.
+ *
+ * <p>Each rep starts {@code chains} independent chains at once, each {@code depth} steps long,
+ * where every step submits a small task and continues when it completes. With the work-stealing
+ * executor, the steps of a chain mostly stay on the thread that ran the previous step.
+ */
+public class WorkStealingExecutorBenchmark {
+  @Param({"4"}) int threads;
+  @Param({"1", "16"}) int chains;
+  @Param({"10", "1000"}) int depth;
+  @Param Impl impl;
+
+  enum Impl {
+    THREAD_POOL {
+      @Override ListeningExecutorService create(int threads) {
+        return MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+      }
+    },
+    WORK_STEALING {
+      @Override ListeningExecutorService create(int threads) {
+        return MoreExecutors.newWorkStealingExecutorService(threads);
+      }
+    };
+
+    abstract ListeningExecutorService create(int threads);
+  }
+
+  ListeningExecutorService executor;
+  AsyncFunction<Integer, Integer> step;
+
+  @BeforeExperiment void setUp() {
+    executor = impl.create(threads);
+    step = new AsyncFunction<Integer, Integer>() {
+      @Override public ListenableFuture<Integer> apply(final Integer input) {
+        return executor.submit(new Callable<Integer>() {
+          @Override public Integer call() {
+            return input + 1;
+          }
+        });
+      }
+    };
+  }
+
+  @AfterExperiment void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark int transformAsyncChains(int reps) throws Exception {
+    int dummy = 0;
+    for (int i = 0; i < reps; i++) {
+      List<ListenableFuture<Integer>> ends = new ArrayList<ListenableFuture<Integer>>(chains);
+      for (int c = 0; c < chains; c++) {
+        ListenableFuture<Integer> future = executor.submit(Callables.returning(c));
+        for (int d = 0; d < depth; d++) {
+          future = Futures.transformAsync(future, step, executor);
+        }
+        ends.add(future);
+      }
+      for (int result : Futures.allAsList(ends).get()) {
+        dummy += result;
+      }
+    }
+    return dummy;
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.google.common.cache;
 
+import com.google.common.cache.AbstractCache.LatencyStatsCounter;
 import com.google.common.cache.AbstractCache.SimpleStatsCounter;
 import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.collect.ImmutableList;
@@ -192,4 +193,59 @@ public class AbstractCacheTest extends TestCase {
         counter1.snapshot());
   }
 
+  public void testLatencyStats() {
+    LatencyStatsCounter counter = new LatencyStatsCounter();
+    CacheStats stats = counter.snapshot();
+    assertEquals(new CacheStats(0, 0, 0, 0, 0, 0), stats);
+    assertEquals(0, stats.loadLatency().count());
+    assertEquals(0, stats.getLatency().count());
+
+    counter.recordHits(3);
+    counter.recordMisses(2);
+    counter.recordLoadSuccess(5);
+    counter.recordLoadException(7);
+    counter.recordEviction();
+    for (int i = 1; i <= 100; i++) {
+      counter.recordGet(i);
+    }
+    stats = counter.snapshot();
+    assertEquals(3, stats.hitCount());
+    assertEquals(2, stats.missCount());
+    assertEquals(1, stats.loadSuccessCount());
+    assertEquals(1, stats.loadExceptionCount());
+    assertEquals(12, stats.totalLoadTime());
+    assertEquals(1, stats.evictionCount());
+    assertEquals(2, stats.loadLatency().count());
+    assertEquals(5, stats.loadLatency().percentile(50));
+    assertEquals(7, stats.loadLatency().percentile(100));
+    assertEquals(100, stats.getLatency().count());
+    assertEquals(7, stats.getLatency().percentile(7));
+    assertEquals(51, stats.getLatency().percentile(50));
+    assertEquals(103, stats.getLatency().percentile(99));
+  }
+
+  public void testLatencyStats_concurrent() throws InterruptedException {
+    final LatencyStatsCounter counter = new LatencyStatsCounter();
+    List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; j++) {
+            counter.recordGet(j);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    LatencyDistribution latency = counter.snapshot().getLatency();
+    assertEquals(4000, latency.count());
+    assertEquals(0, latency.percentile(0));
+    assertEquals(1023, latency.percentile(100));
+  }
 }
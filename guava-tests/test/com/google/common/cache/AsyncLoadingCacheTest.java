@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link AsyncLoadingCache}.
+ */
+public class AsyncLoadingCacheTest extends TestCase {
+
+  /** A loader whose futures are completed manually by the test. */
+  static class PendingLoader extends AsyncCacheLoader<Integer, String> {
+    final Map<Integer, SettableFuture<String>> pending = Maps.newHashMap();
+    final AtomicInteger loadCount = new AtomicInteger();
+
+    @Override
+    public ListenableFuture<String> load(Integer key) {
+      loadCount.incrementAndGet();
+      SettableFuture<String> future = SettableFuture.create();
+      pending.put(key, future);
+      return future;
+    }
+  }
+
+  public void testGet_sharesInFlightLoad() throws Exception {
+    PendingLoader loader = new PendingLoader();
+    AsyncLoadingCache<Integer, String> cache =
+        CacheBuilder.newBuilder().recordStats().buildAsync(loader);
+
+    ListenableFuture<String> first = cache.get(1);
+    ListenableFuture<String> second = cache.get(1);
+    assertSame(first, second);
+    assertFalse(first.isDone());
+    assertEquals(1, loader.loadCount.get());
+    assertSame(first, cache.getIfPresent(1));
+    assertEquals(1, cache.size());
+
+    loader.pending.get(1).set("one");
+    assertEquals("one", first.get());
+    assertSame(first, cache.get(1));
+    assertEquals(1, loader.loadCount.get());
+
+    CacheStats stats = cache.stats();
+    assertEquals(3, stats.hitCount());
+    assertEquals(1, stats.missCount());
+    assertEquals(1, stats.loadSuccessCount());
+    assertEquals(0, stats.loadExceptionCount());
+  }
+
+  public void testGet_failedFutureIsRemoved() throws Exception {
+    PendingLoader loader = new PendingLoader();
+    AsyncLoadingCache<Integer, String> cache =
+        CacheBuilder.newBuilder().recordStats().buildAsync(loader);
+
+    ListenableFuture<String> failed = cache.get(1);
+    Exception cause = new Exception();
+    loader.pending.get(1).setException(cause);
+    try {
+      failed.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertSame(cause, expected.getCause());
+    }
+    assertNull(cache.getIfPresent(1));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.stats().loadExceptionCount());
+
+    ListenableFuture<String> retried = cache.get(1);
+    assertNotSame(failed, retried);
+    assertEquals(2, loader.loadCount.get());
+  }
+
+  public void testGet_loaderThrows() throws Exception {
+    final Exception cause = new Exception();
+    AsyncLoadingCache<Integer, String> cache = CacheBuilder.newBuilder().recordStats().buildAsync(
+        new AsyncCacheLoader<Integer, String>() {
+          @Override
+          public ListenableFuture<String> load(Integer key) throws Exception {
+            throw cause;
+          }
+        });
+
+    ListenableFuture<String> future = cache.get(1);
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertSame(cause, expected.getCause());
+    }
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.stats().loadExceptionCount());
+  }
+
+  public void testGet_loaderReturnsNull() throws Exception {
+    AsyncLoadingCache<Integer, String> cache = CacheBuilder.newBuilder().buildAsync(
+        new AsyncCacheLoader<Integer, String>() {
+          @Override
+          public ListenableFuture<String> load(Integer key) {
+            return null;
+          }
+        });
+
+    try {
+      cache.get(1).get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertThat(expected.getCause()).isInstanceOf(InvalidCacheLoadException.class);
+    }
+    assertEquals(0, cache.size());
+  }
+
+  public void testGet_futureCompletesWithNull() throws Exception {
+    PendingLoader loader = new PendingLoader();
+    AsyncLoadingCache<Integer, String> cache = CacheBuilder.newBuilder().buildAsync(loader);
+
+    ListenableFuture<String> future = cache.get(1);
+    loader.pending.get(1).set(null);
+    assertNull(future.get());
+    assertEquals(0, cache.size());
+  }
+
+  public void testGetAll_withoutLoadAll() throws Exception {
+    PendingLoader loader = new PendingLoader();
+    AsyncLoadingCache<Integer, String> cache = CacheBuilder.newBuilder().buildAsync(loader);
+    cache.put(1, Futures.immediateFuture("one"));
+
+    ListenableFuture<ImmutableMap<Integer, String>> result =
+        cache.getAll(ImmutableList.of(3, 1, 2, 3));
+    assertFalse(result.isDone());
+    assertEquals(2, loader.loadCount.get());
+    loader.pending.get(2).set("two");
+    loader.pending.get(3).set("three");
+    assertEquals(ImmutableMap.of(3, "three", 1, "one", 2, "two"), result.get());
+    assertThat(result.get().keySet()).containsExactly(3, 1, 2).inOrder();
+    assertEquals(3, cache.size());
+  }
+
+  public void testGetAll_withLoadAll() throws Exception {
+    final AtomicInteger loadAllCount = new AtomicInteger();
+    final SettableFuture<Map<Integer, String>> bulk = SettableFuture.create();
+    AsyncLoadingCache<Integer, String> cache = CacheBuilder.newBuilder().recordStats().buildAsync(
+        new AsyncCacheLoader<Integer, String>() {
+          @Override
+          public ListenableFuture<String> load(Integer key) {
+            throw new AssertionError();
+          }
+
+          @Override
+          public ListenableFuture<Map<Integer, String>> loadAll(Iterable<? extends Integer> keys) {
+            loadAllCount.incrementAndGet();
+            assertThat(keys).containsExactly(1, 2, 3).inOrder();
+            return bulk;
+          }
+        });
+
+    ListenableFuture<ImmutableMap<Integer, String>> result =
+        cache.getAll(ImmutableList.of(1, 2, 3));
+    // concurrent requests share the in-flight bulk load
+    ListenableFuture<String> two = cache.get(2);
+    assertFalse(two.isDone());
+
+    bulk.set(ImmutableMap.of(1, "one", 2, "two", 4, "four"));
+    assertEquals(1, loadAllCount.get());
+    assertEquals("two", two.get());
+    try {
+      result.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertThat(expected.getCause()).isInstanceOf(InvalidCacheLoadException.class);
+    }
+
+    // the key missing from the bulk result was removed, and the unrequested key was ignored
+    assertEquals(2, cache.size());
+    assertNull(cache.getIfPresent(3));
+    assertNull(cache.getIfPresent(4));
+    assertEquals(1, cache.stats().loadSuccessCount());
+  }
+
+  public void testPut_failedFutureIsRemoved() throws Exception {
+    AsyncLoadingCache<Integer, String> cache =
+        CacheBuilder.newBuilder().buildAsync(new PendingLoader());
+    SettableFuture<String> future = SettableFuture.create();
+    cache.put(1, future);
+    assertSame(future, cache.getIfPresent(1));
+
+    future.setException(new Exception());
+    assertNull(cache.getIfPresent(1));
+  }
+
+  public void testInvalidate_inFlight() throws Exception {
+    PendingLoader loader = new PendingLoader();
+    AsyncLoadingCache<Integer, String> cache = CacheBuilder.newBuilder().buildAsync(loader);
+    ListenableFuture<String> first = cache.get(1);
+    cache.invalidate(1);
+    assertEquals(0, cache.size());
+
+    ListenableFuture<String> second = cache.get(1);
+    assertNotSame(first, second);
+    loader.pending.get(1).set("one");
+    loader.pending.clear();
+    assertEquals("one", second.get());
+    assertEquals(2, loader.loadCount.get());
+
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+  }
+
+  public void testMaximumSize() throws Exception {
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(10)
+        .buildAsync(new AsyncCacheLoader<Integer, Integer>() {
+          @Override
+          public ListenableFuture<Integer> load(Integer key) {
+            return Futures.immediateFuture(key);
+          }
+        });
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Integer.valueOf(i), cache.get(i).get());
+    }
+    cache.cleanUp();
+    assertEquals(10, cache.size());
+  }
+
+  public void testBuildAsync_unsupportedOptions() {
+    List<CacheBuilder<Object, Object>> builders = ImmutableList.of(
+        CacheBuilder.newBuilder().maximumWeight(10).weigher(TestingWeighers.constantWeigher(1)),
+        CacheBuilder.newBuilder().softValues(),
+        CacheBuilder.newBuilder().weakValues(),
+        CacheBuilder.newBuilder().removalListener(TestingRemovalListeners.nullRemovalListener()),
+        CacheBuilder.newBuilder().refreshAfterWrite(1, TimeUnit.SECONDS));
+    for (CacheBuilder<Object, Object> builder : builders) {
+      try {
+        builder.buildAsync(new PendingLoader());
+        fail();
+      } catch (IllegalStateException expected) {}
+    }
+  }
+
+  public void testFrom() throws Exception {
+    AsyncLoadingCache<Integer, String> cache = CacheBuilder.newBuilder().buildAsync(
+        AsyncCacheLoader.from(new AsyncFunction<Integer, String>() {
+          @Override
+          public ListenableFuture<String> apply(Integer input) {
+            return Futures.immediateFuture(input.toString());
+          }
+        }));
+    assertEquals("7", cache.get(7).get());
+  }
+}
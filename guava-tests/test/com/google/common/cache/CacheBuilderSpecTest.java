@@ -354,6 +354,37 @@ public class CacheBuilderSpecTest extends TestCase {
     }
   }
 
+  public void testParse_evictionPolicy() {
+    CacheBuilderSpec spec = parse("maximumSize=100,evictionPolicy=tiny_lfu");
+    assertEquals(EvictionPolicy.TINY_LFU, spec.evictionPolicy);
+    assertCacheBuilderEquivalence(
+        CacheBuilder.newBuilder().maximumSize(100).evictionPolicy(EvictionPolicy.TINY_LFU),
+        CacheBuilder.from(spec));
+    assertEquals(spec, parse("maximumSize=100,evictionPolicy=TINY_LFU"));
+    assertFalse(spec.equals(parse("maximumSize=100,evictionPolicy=lru")));
+  }
+
+  public void testParse_evictionPolicyInvalid() {
+    try {
+      parse("evictionPolicy=fifo");
+      fail("Expected exception");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    try {
+      parse("evictionPolicy");
+      fail("Expected exception");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    try {
+      parse("evictionPolicy=lru,evictionPolicy=lru");
+      fail("Expected exception");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
   public void testParse_recordStats() {
     CacheBuilderSpec spec = parse("recordStats");
     assertTrue(spec.recordStats);
@@ -551,6 +582,7 @@ public class CacheBuilderSpecTest extends TestCase {
     assertEquals("initialCapacity", a.initialCapacity, b.initialCapacity);
     assertEquals("maximumSize", a.maximumSize, b.maximumSize);
     assertEquals("maximumWeight", a.maximumWeight, b.maximumWeight);
+    assertEquals("evictionPolicy", a.evictionPolicy, b.evictionPolicy);
     assertEquals("refreshNanos", a.refreshNanos, b.refreshNanos);
     assertEquals("keyEquivalence", a.keyEquivalence, b.keyEquivalence);
     assertEquals("keyStrength", a.keyStrength, b.keyStrength);
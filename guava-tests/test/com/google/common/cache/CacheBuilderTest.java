@@ -31,15 +31,20 @@ import com.google.common.annotations.GwtIncompatible;
 import com.google.common.base.Ticker;
 import com.google.common.cache.TestingRemovalListeners.CountingRemovalListener;
 import com.google.common.cache.TestingRemovalListeners.QueuingRemovalListener;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.testing.FakeTicker;
 import com.google.common.testing.NullPointerTester;
+import com.google.common.util.concurrent.Callables;
 
 import junit.framework.TestCase;
 
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -206,6 +211,17 @@ public class CacheBuilderTest extends TestCase {
     } catch (IllegalStateException expected) {}
   }
 
+  @GwtIncompatible // evictionPolicy
+  public void testEvictionPolicy_setTwice() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().evictionPolicy(EvictionPolicy.TINY_LFU);
+    try {
+      // even to the same value is not allowed
+      builder.evictionPolicy(EvictionPolicy.TINY_LFU);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
   @GwtIncompatible // weigher
   public void testWeigher_withoutMaximumWeight() {
     CacheBuilder<Object, Object> builder = new CacheBuilder<Object, Object>()
@@ -260,6 +276,50 @@ public class CacheBuilderTest extends TestCase {
     } catch (IllegalStateException expected) {}
   }
 
+  @GwtIncompatible // offHeapValues
+  public void testOffHeapValues_withValueStrength() {
+    try {
+      new CacheBuilder<Object, Object>().softValues().offHeapValues(OffHeapValueStoreTest.STRINGS);
+      fail();
+    } catch (IllegalStateException expected) {}
+    CacheBuilder<Object, String> builder =
+        new CacheBuilder<Object, Object>().offHeapValues(OffHeapValueStoreTest.STRINGS);
+    try {
+      builder.weakValues();
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      builder.offHeapValues(OffHeapValueStoreTest.STRINGS);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @GwtIncompatible // offHeapValues
+  public void testOffHeapValues_maximumWeightWithoutWeigher() {
+    CacheBuilder<Object, String> builder = new CacheBuilder<Object, Object>()
+        .maximumWeight(100)
+        .offHeapValues(OffHeapValueStoreTest.STRINGS);
+    assertTrue(builder.weighsSerializedValues());
+    assertEquals(100, builder.getMaximumWeight());
+    builder.build();
+
+    builder = new CacheBuilder<Object, Object>()
+        .maximumSize(100)
+        .offHeapValues(OffHeapValueStoreTest.STRINGS);
+    assertFalse(builder.weighsSerializedValues());
+    assertEquals(100, builder.getMaximumWeight());
+  }
+
+  @GwtIncompatible // offHeapValues
+  public void testOffHeapValues_notAsync() {
+    try {
+      CacheBuilder.newBuilder()
+          .offHeapValues(OffHeapValueStoreTest.STRINGS)
+          .buildAsync(new AsyncLoadingCacheTest.PendingLoader());
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
   public void testTimeToLive_negative() {
     CacheBuilder<Object, Object> builder = new CacheBuilder<Object, Object>();
     try {
@@ -318,6 +378,37 @@ public class CacheBuilderTest extends TestCase {
     // well, it didn't blow up.
   }
 
+  @GwtIncompatible // expireAfter
+  public void testExpireAfter_setTwice() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().expireAfter(new CacheExpirationTest.FixedExpiry(1));
+    try {
+      builder.expireAfter(new CacheExpirationTest.FixedExpiry(1));
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @GwtIncompatible // expireAfter
+  public void testExpireAfter_fixedDurations() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().expireAfter(new CacheExpirationTest.FixedExpiry(1));
+    try {
+      builder.expireAfterWrite(1, SECONDS);
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      builder.expireAfterAccess(1, SECONDS);
+      fail();
+    } catch (IllegalStateException expected) {}
+
+    try {
+      new CacheBuilder<Object, Object>()
+          .expireAfterAccess(1, SECONDS)
+          .expireAfter(new CacheExpirationTest.FixedExpiry(1));
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
   @GwtIncompatible // refreshAfterWrite
   public void testRefresh_zero() {
     CacheBuilder<Object, Object> builder = new CacheBuilder<Object, Object>();
@@ -338,6 +429,39 @@ public class CacheBuilderTest extends TestCase {
     } catch (IllegalStateException expected) {}
   }
 
+  @GwtIncompatible // refreshBatching
+  public void testRefreshBatching_invalid() {
+    CacheBuilder<Object, Object> builder = new CacheBuilder<Object, Object>();
+    try {
+      builder.refreshBatching(0, 1, SECONDS);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    try {
+      builder.refreshBatching(10, -1, SECONDS);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  @GwtIncompatible // refreshBatching
+  public void testRefreshBatching_setTwice() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().refreshBatching(10, 1, SECONDS);
+    try {
+      builder.refreshBatching(10, 1, SECONDS);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @GwtIncompatible // refreshBatching
+  public void testRefreshBatching_requiresRefresh() {
+    CacheBuilder<Object, Object> builder =
+        new CacheBuilder<Object, Object>().refreshBatching(10, 1, SECONDS);
+    try {
+      builder.build(identityLoader());
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
   public void testTicker_setTwice() {
     Ticker testTicker = Ticker.systemTicker();
     CacheBuilder<Object, Object> builder =
@@ -360,6 +484,85 @@ public class CacheBuilderTest extends TestCase {
     } catch (IllegalStateException expected) {}
   }
 
+  @GwtIncompatible // recordLatencyStats
+  public void testRecordLatencyStats() {
+    FakeTicker ticker = new FakeTicker().setAutoIncrementStep(10, NANOSECONDS);
+    LoadingCache<Object, Object> cache = CacheBuilder.newBuilder()
+        .recordLatencyStats()
+        .ticker(ticker)
+        .build(identityLoader());
+    Object key = new Object();
+    assertSame(key, cache.getUnchecked(key));
+    assertSame(key, cache.getUnchecked(key));
+    assertNull(cache.getIfPresent(new Object()));
+
+    CacheStats stats = cache.stats();
+    assertEquals(2, stats.hitCount() + stats.loadSuccessCount());
+    assertEquals(1, stats.loadLatency().count());
+    assertEquals(3, stats.getLatency().count());
+    assertTrue(stats.getLatency().percentile(0) >= 10);
+  }
+
+  @GwtIncompatible // recordLatencyStats
+  public void testRecordLatencyStats_getIfPresent() {
+    Cache<Object, Object> cache = newLatencyRecordingCache();
+    cache.put(1, 1);
+    assertEquals(1, cache.getIfPresent(1));
+    assertNull(cache.getIfPresent(2));
+    assertLookupLatencies(cache, 2);
+  }
+
+  @GwtIncompatible // recordLatencyStats
+  public void testRecordLatencyStats_getWithCallable() throws Exception {
+    Cache<Object, Object> cache = newLatencyRecordingCache();
+    Callable<Object> loader = Callables.<Object>returning(1);
+    assertEquals(1, cache.get(1, loader));
+    assertEquals(1, cache.get(1, loader));
+    assertLookupLatencies(cache, 2);
+  }
+
+  @GwtIncompatible // recordLatencyStats
+  public void testRecordLatencyStats_getAllPresent() {
+    Cache<Object, Object> cache = newLatencyRecordingCache();
+    cache.put(1, 1);
+    assertEquals(ImmutableMap.of(1, 1), cache.getAllPresent(ImmutableList.of(1, 2, 3)));
+    assertLookupLatencies(cache, 1);
+  }
+
+  @GwtIncompatible // recordLatencyStats
+  public void testRecordLatencyStats_getAll() throws Exception {
+    FakeTicker ticker = new FakeTicker().setAutoIncrementStep(10, NANOSECONDS);
+    LoadingCache<Object, Object> cache = CacheBuilder.newBuilder()
+        .recordLatencyStats()
+        .ticker(ticker)
+        .build(identityLoader());
+    cache.getUnchecked(1);
+    assertEquals(ImmutableMap.of(1, 1, 2, 2, 3, 3), cache.getAll(ImmutableList.of(1, 2, 3)));
+    assertLookupLatencies(cache, 2);
+  }
+
+  @GwtIncompatible // recordLatencyStats
+  private static Cache<Object, Object> newLatencyRecordingCache() {
+    FakeTicker ticker = new FakeTicker().setAutoIncrementStep(10, NANOSECONDS);
+    return CacheBuilder.newBuilder().recordLatencyStats().ticker(ticker).build();
+  }
+
+  @GwtIncompatible // recordLatencyStats
+  private static void assertLookupLatencies(Cache<?, ?> cache, int lookups) {
+    LatencyDistribution latency = cache.stats().getLatency();
+    assertEquals(lookups, latency.count());
+    assertTrue(latency.percentile(0) >= 10);
+  }
+
+  public void testRecordStats_noLatency() {
+    LoadingCache<Object, Object> cache =
+        CacheBuilder.newBuilder().recordStats().build(identityLoader());
+    cache.getUnchecked(1);
+    assertEquals(1, cache.stats().loadSuccessCount());
+    assertEquals(0, cache.stats().loadLatency().count());
+    assertEquals(0, cache.stats().getLatency().count());
+  }
+
   public void testValuesIsNotASet() {
     assertThat(new CacheBuilder<Object, Object>().build().asMap().values())
         .isNotInstanceOf(Set.class);
@@ -132,6 +132,73 @@ public class CacheEvictionTest extends TestCase {
     CacheTesting.checkValidState(cache);
   }
 
+  public void testEviction_tinyLfu_maxSize() {
+    CountingRemovalListener<Integer, Integer> removalListener = countingRemovalListener();
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_SIZE)
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
+        .removalListener(removalListener)
+        .build(loader);
+    for (int i = 0; i < 2 * MAX_SIZE; i++) {
+      cache.getUnchecked(i);
+      assertTrue(cache.size() <= MAX_SIZE);
+    }
+
+    assertEquals(MAX_SIZE, CacheTesting.accessQueueSize(cache));
+    assertEquals(MAX_SIZE, cache.size());
+    CacheTesting.processPendingNotifications(cache);
+    assertEquals(MAX_SIZE, removalListener.getCount());
+    CacheTesting.checkValidState(cache);
+  }
+
+  public void testEviction_tinyLfu_scanResistant() {
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(MAX_SIZE)
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
+        .build(loader);
+
+    // build up a frequently used working set
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < MAX_SIZE; i++) {
+        cache.getUnchecked(i);
+      }
+    }
+
+    // a scan over cold keys should not displace the working set
+    for (int i = MAX_SIZE; i < 10 * MAX_SIZE; i++) {
+      assertEquals(Integer.valueOf(i), cache.getUnchecked(i));
+    }
+    assertEquals(MAX_SIZE, cache.size());
+    for (int i = 0; i < MAX_SIZE; i++) {
+      assertEquals(Integer.valueOf(i), cache.getIfPresent(i));
+    }
+    CacheTesting.checkValidState(cache);
+  }
+
+  public void testEviction_tinyLfu_admitsFrequentCandidate() {
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(MAX_SIZE)
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
+        .build(loader);
+    for (int i = 0; i < MAX_SIZE; i++) {
+      cache.getUnchecked(i);
+    }
+
+    // a new key which keeps being requested is eventually admitted
+    int newcomer = MAX_SIZE;
+    for (int i = 0; i < 3 && cache.getIfPresent(newcomer) == null; i++) {
+      cache.getUnchecked(newcomer);
+    }
+    assertEquals(Integer.valueOf(newcomer), cache.getIfPresent(newcomer));
+    assertEquals(MAX_SIZE, cache.size());
+    CacheTesting.checkValidState(cache);
+  }
+
   /**
    * With an unlimited-size cache with maxWeight of 0, entries weighing 0 should still be cached.
    * Entries with positive weight should not be cached (nor dump existing cache).
@@ -299,22 +366,22 @@ public class CacheEvictionTest extends TestCase {
 
     // re-order
     getAll(cache, asList(0, 1, 2));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(3, 4, 5, 6, 7, 8, 9, 0, 1, 2);
 
     // evict 3, 4, 5
     getAll(cache, asList(10, 11, 12));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(6, 7, 8, 9, 0, 1, 2, 10, 11, 12);
 
     // re-order
     getAll(cache, asList(6, 7, 8));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(9, 0, 1, 2, 10, 11, 12, 6, 7, 8);
 
     // evict 9, 0, 1
     getAll(cache, asList(13, 14, 15));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(2, 10, 11, 12, 6, 7, 8, 13, 14, 15);
   }
 
@@ -332,32 +399,32 @@ public class CacheEvictionTest extends TestCase {
 
     // re-order
     getAll(cache, asList(0, 1, 2));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(3, 4, 5, 6, 7, 8, 9, 0, 1, 2);
 
     // evict 3, 4, 5
     getAll(cache, asList(10));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(6, 7, 8, 9, 0, 1, 2, 10);
 
     // re-order
     getAll(cache, asList(6, 7, 8));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(9, 0, 1, 2, 10, 6, 7, 8);
 
     // evict 9, 1, 2, 10
     getAll(cache, asList(15));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(0, 6, 7, 8, 15);
 
     // fill empty space
     getAll(cache, asList(9));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(0, 6, 7, 8, 15, 9);
 
     // evict 6
     getAll(cache, asList(1));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(0, 7, 8, 15, 9, 1);
   }
 
@@ -375,12 +442,12 @@ public class CacheEvictionTest extends TestCase {
 
     // add an at-the-maximum-weight entry
     getAll(cache, asList(45));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(0, 45);
 
     // add an over-the-maximum-weight entry
     getAll(cache, asList(46));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).contains(0);
   }
 
@@ -397,17 +464,17 @@ public class CacheEvictionTest extends TestCase {
 
     // add 0, 1, 2, 3, 4
     getAll(cache, asList(0, 1, 2, 3, 4));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(0, 1, 2, 3, 4);
 
     // invalidate all
     cache.invalidateAll();
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).isEmpty();
 
     // add 5, 6, 7, 8, 9, 10, 11, 12
     getAll(cache, asList(5, 6, 7, 8, 9, 10, 11, 12));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(5, 6, 7, 8, 9, 10, 11, 12);
   }
 
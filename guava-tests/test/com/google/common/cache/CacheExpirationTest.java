@@ -270,7 +270,7 @@ public class CacheExpirationTest extends TestCase {
 
     // reorder
     getAll(cache, asList(0, 1, 2));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     ticker.advance(2, MILLISECONDS);
     assertThat(keySet).containsExactly(3, 4, 5, 6, 7, 8, 9, 0, 1, 2);
 
@@ -280,7 +280,7 @@ public class CacheExpirationTest extends TestCase {
 
     // reorder
     getAll(cache, asList(5, 7, 9));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     assertThat(keySet).containsExactly(4, 6, 8, 0, 1, 2, 5, 7, 9);
 
     // 4 expires
@@ -322,13 +322,13 @@ public class CacheExpirationTest extends TestCase {
 
     // get doesn't stop 1 from expiring
     getAll(cache, asList(0, 1, 2));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     ticker.advance(1, MILLISECONDS);
     assertThat(keySet).containsExactly(2, 3, 4, 5, 6, 7, 8, 9, 0);
 
     // get(K, Callable) doesn't stop 2 from expiring
     cache.get(2, Callables.returning(-2));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     ticker.advance(1, MILLISECONDS);
     assertThat(keySet).containsExactly(3, 4, 5, 6, 7, 8, 9, 0);
 
@@ -371,27 +371,27 @@ public class CacheExpirationTest extends TestCase {
 
     // get saves 1, 3; 0, 2, 4 expire
     getAll(cache, asList(1, 3));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     ticker.advance(1, MILLISECONDS);
     assertThat(keySet).containsExactly(5, 6, 7, 8, 9, 1, 3);
 
     // get saves 6, 8; 5, 7, 9 expire
     getAll(cache, asList(6, 8));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     ticker.advance(1, MILLISECONDS);
     assertThat(keySet).containsExactly(1, 3, 6, 8);
 
     // get fails to save 1, put saves 3
     cache.asMap().put(3, -3);
     getAll(cache, asList(1));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     ticker.advance(1, MILLISECONDS);
     assertThat(keySet).containsExactly(6, 8, 3);
 
     // get(K, Callable) fails to save 8, replace saves 6
     cache.asMap().replace(6, -6);
     cache.get(8, Callables.returning(-8));
-    CacheTesting.drainRecencyQueues(cache);
+    CacheTesting.drainReadBuffers(cache);
     ticker.advance(1, MILLISECONDS);
     assertThat(keySet).containsExactly(3, 6);
   }
@@ -458,6 +458,163 @@ public class CacheExpirationTest extends TestCase {
     assertEquals(10, removalListener.getCount());
   }
 
+  public void testExpiration_expireAfter() {
+    FakeTicker ticker = new FakeTicker();
+    CountingRemovalListener<String, Integer> removalListener = countingRemovalListener();
+    WatchedCreatorLoader loader = new WatchedCreatorLoader();
+    LoadingCache<String, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfter(new FixedExpiry(MILLISECONDS.toNanos(EXPIRING_TIME)))
+        .removalListener(removalListener)
+        .ticker(ticker)
+        .build(loader);
+    checkExpiration(cache, loader, ticker, removalListener);
+  }
+
+  public void testExpireAfter_mixedDurations() {
+    FakeTicker ticker = new FakeTicker();
+    CountingRemovalListener<Integer, Long> removalListener = countingRemovalListener();
+    Cache<Integer, Long> cache = CacheBuilder.newBuilder()
+        .expireAfter(new ValueExpiry())
+        .removalListener(removalListener)
+        .ticker(ticker)
+        .build();
+    long[] durations = {
+      TimeUnit.SECONDS.toMillis(1),
+      TimeUnit.SECONDS.toMillis(30),
+      TimeUnit.MINUTES.toMillis(10),
+      TimeUnit.HOURS.toMillis(5),
+      TimeUnit.DAYS.toMillis(3),
+      TimeUnit.DAYS.toMillis(30),
+    };
+    // insert in reverse, so that expiration order differs from write order
+    for (int i = durations.length - 1; i >= 0; i--) {
+      cache.put(i, durations[i]);
+    }
+    CacheTesting.checkExpiration(cache);
+
+    long elapsed = 0;
+    for (int i = 0; i < durations.length; i++) {
+      // visible until its own duration has elapsed
+      ticker.advance(durations[i] - elapsed - 1, MILLISECONDS);
+      elapsed = durations[i] - 1;
+      cache.cleanUp();
+      assertEquals(Long.valueOf(durations[i]), cache.getIfPresent(i));
+      assertEquals(durations.length - i, cache.size());
+      assertEquals(i, removalListener.getCount());
+
+      ticker.advance(1, MILLISECONDS);
+      elapsed++;
+      assertNull(cache.getIfPresent(i));
+
+      // removed once the timer wheel passes its bucket
+      ticker.advance(2, TimeUnit.SECONDS);
+      elapsed += TimeUnit.SECONDS.toMillis(2);
+      cache.cleanUp();
+      assertEquals(durations.length - i - 1, cache.size());
+      assertEquals(i + 1, removalListener.getCount());
+      CacheTesting.checkExpiration(cache);
+    }
+  }
+
+  public void testExpireAfter_update() {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, Long> cache = CacheBuilder.newBuilder()
+        .expireAfter(new ValueExpiry())
+        .ticker(ticker)
+        .build();
+    cache.put(1, 1000L);
+    ticker.advance(500, MILLISECONDS);
+    cache.put(1, 5000L);
+    ticker.advance(1000, MILLISECONDS);
+    assertEquals(Long.valueOf(5000L), cache.getIfPresent(1));
+    ticker.advance(3999, MILLISECONDS);
+    assertEquals(Long.valueOf(5000L), cache.getIfPresent(1));
+    ticker.advance(1, MILLISECONDS);
+    assertNull(cache.getIfPresent(1));
+  }
+
+  public void testExpireAfter_read() {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, Long> cache = CacheBuilder.newBuilder()
+        .expireAfter(new FixedExpiry(MILLISECONDS.toNanos(1000)) {
+          @Override
+          public long expireAfterRead(
+              Object key, Object value, long currentTime, long currentDuration) {
+            return MILLISECONDS.toNanos(1000);
+          }
+        })
+        .ticker(ticker)
+        .build();
+    cache.put(1, 1L);
+    for (int i = 0; i < 10; i++) {
+      ticker.advance(900, MILLISECONDS);
+      assertEquals(Long.valueOf(1L), cache.getIfPresent(1));
+    }
+    cache.cleanUp();
+    assertEquals(1, cache.size());
+    CacheTesting.checkExpiration(cache);
+
+    ticker.advance(1000, MILLISECONDS);
+    assertNull(cache.getIfPresent(1));
+    ticker.advance(2, TimeUnit.SECONDS);
+    cache.cleanUp();
+    assertEquals(0, cache.size());
+  }
+
+  public void testExpireAfter_zero() {
+    FakeTicker ticker = new FakeTicker();
+    IdentityLoader<Integer> loader = identityLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfter(new FixedExpiry(0))
+        .ticker(ticker)
+        .build(loader);
+    assertEquals(Integer.valueOf(1), cache.getUnchecked(1));
+    assertNull(cache.getIfPresent(1));
+  }
+
+  /** Gives every entry the same lifetime, ignoring reads and preserving it across updates. */
+  static class FixedExpiry implements Expiry<Object, Object> {
+    final long nanos;
+
+    FixedExpiry(long nanos) {
+      this.nanos = nanos;
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+      return nanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        Object key, Object value, long currentTime, long currentDuration) {
+      return nanos;
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+
+  /** Uses each value as the lifetime of its entry, in milliseconds. */
+  static class ValueExpiry implements Expiry<Integer, Long> {
+    @Override
+    public long expireAfterCreate(Integer key, Long value, long currentTime) {
+      return MILLISECONDS.toNanos(value);
+    }
+
+    @Override
+    public long expireAfterUpdate(Integer key, Long value, long currentTime, long currentDuration) {
+      return MILLISECONDS.toNanos(value);
+    }
+
+    @Override
+    public long expireAfterRead(Integer key, Long value, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+
   private static void getAll(LoadingCache<Integer, Integer> cache, List<Integer> keys) {
     for (int i : keys) {
       cache.getUnchecked(i);
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.LocalCache.EVICTION_BATCH;
+import static com.google.common.cache.TestingCacheLoaders.identityLoader;
+import static com.google.common.cache.TestingWeighers.constantWeigher;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.cache.TestingRemovalListeners.CountingRemovalListener;
+import com.google.common.testing.FakeTicker;
+import com.google.common.testing.NullPointerTester;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link CachePolicy}.
+ */
+public class CachePolicyTest extends TestCase {
+  private static final CacheLoader<Integer, Integer> IDENTITY_LOADER = identityLoader();
+
+  public void testOf_notBuiltByCacheBuilder() {
+    Cache<Object, Object> cache = new AbstractCache<Object, Object>() {
+      @Override
+      public Object getIfPresent(Object key) {
+        return null;
+      }
+
+      @Override
+      public void put(Object key, Object value) {}
+    };
+    try {
+      CachePolicy.of(cache);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testNulls() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicStaticMethods(CachePolicy.class);
+    tester.testAllPublicInstanceMethods(CachePolicy.of(CacheBuilder.newBuilder()
+        .maximumSize(10)
+        .expireAfterAccess(1, MINUTES)
+        .expireAfterWrite(1, MINUTES)
+        .build()));
+  }
+
+  public void testUnbounded() {
+    CachePolicy policy = CachePolicy.of(CacheBuilder.newBuilder().build());
+    assertFalse(policy.isBounded());
+    assertFalse(policy.expiresAfterAccess());
+    assertFalse(policy.expiresAfterWrite());
+    try {
+      policy.getMaximum();
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      policy.setMaximum(10);
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      policy.getExpireAfterAccess(SECONDS);
+      fail();
+    } catch (IllegalStateException expected) {}
+    try {
+      policy.setExpireAfterWrite(1, SECONDS);
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  public void testMaximum() {
+    CachePolicy policy = CachePolicy.of(CacheBuilder.newBuilder().maximumSize(100).build());
+    assertTrue(policy.isBounded());
+    assertFalse(policy.isWeighted());
+    assertEquals(100, policy.getMaximum());
+    policy.setMaximum(50);
+    assertEquals(50, policy.getMaximum());
+    try {
+      policy.setMaximum(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+
+    policy = CachePolicy.of(CacheBuilder.newBuilder()
+        .maximumWeight(100).weigher(constantWeigher(5)).build());
+    assertTrue(policy.isWeighted());
+    assertEquals(100, policy.getMaximum());
+  }
+
+  public void testSetMaximum_segments() {
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(4)
+        .maximumSize(1000)
+        .build(IDENTITY_LOADER);
+    LocalCache<Integer, Integer> map = CacheTesting.toLocalCache(cache);
+    CachePolicy.of(cache).setMaximum(103);
+    long total = 0;
+    for (LocalCache.Segment<Integer, Integer> segment : map.segments) {
+      assertTrue(segment.maxSegmentWeight == 25 || segment.maxSegmentWeight == 26);
+      total += segment.maxSegmentWeight;
+    }
+    assertEquals(103, total);
+  }
+
+  public void testSetMaximum_grow() {
+    CountingRemovalListener<Integer, Integer> listener =
+        TestingRemovalListeners.countingRemovalListener();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(10)
+        .removalListener(listener)
+        .build(IDENTITY_LOADER);
+    CachePolicy.of(cache).setMaximum(20);
+    for (int i = 0; i < 20; i++) {
+      cache.getUnchecked(i);
+    }
+    assertEquals(20, cache.size());
+    assertEquals(0, listener.getCount());
+    cache.getUnchecked(20);
+    assertEquals(20, cache.size());
+    assertEquals(1, listener.getCount());
+  }
+
+  public void testSetMaximum_shrinksIncrementally() {
+    CountingRemovalListener<Integer, Integer> listener =
+        TestingRemovalListeners.countingRemovalListener();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(1000)
+        .removalListener(listener)
+        .build(IDENTITY_LOADER);
+    for (int i = 0; i < 1000; i++) {
+      cache.getUnchecked(i);
+    }
+    CachePolicy.of(cache).setMaximum(100);
+    assertEquals(1000, cache.size());
+
+    // a write evicts enough to make room for itself, plus a batch or two
+    cache.getUnchecked(1000);
+    long size = cache.size();
+    assertTrue(size <= 1000 - EVICTION_BATCH);
+    assertTrue(size >= 1000 - 3 * EVICTION_BATCH);
+
+    // a cleanup evicts a batch
+    cache.cleanUp();
+    assertEquals(size - EVICTION_BATCH, cache.size());
+
+    // the least recently used entries are evicted first
+    assertNull(cache.getIfPresent(0));
+    assertNotNull(cache.getIfPresent(999));
+
+    int key = 1001;
+    while (cache.size() > 100) {
+      size = cache.size();
+      cache.getUnchecked(key++);
+      assertTrue(cache.size() < size);
+    }
+    assertEquals(100, cache.size());
+    cache.getUnchecked(key);
+    assertEquals(100, cache.size());
+    assertEquals(key - 100 + 1, listener.getCount());
+    CacheTesting.checkValidState(cache);
+  }
+
+  public void testSetMaximum_zero() {
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .maximumSize(10)
+        .build(IDENTITY_LOADER);
+    for (int i = 0; i < 10; i++) {
+      cache.getUnchecked(i);
+    }
+    CachePolicy.of(cache).setMaximum(0);
+    cache.cleanUp();
+    assertEquals(0, cache.size());
+    cache.getUnchecked(1);
+    assertEquals(0, cache.size());
+  }
+
+  public void testSetExpireAfterWrite() {
+    FakeTicker ticker = new FakeTicker();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(10, MINUTES)
+        .ticker(ticker)
+        .build(IDENTITY_LOADER);
+    CachePolicy policy = CachePolicy.of(cache);
+    assertTrue(policy.expiresAfterWrite());
+    assertFalse(policy.expiresAfterAccess());
+    assertEquals(10, policy.getExpireAfterWrite(MINUTES));
+
+    cache.getUnchecked(1);
+    ticker.advance(6, MINUTES);
+    assertNotNull(cache.getIfPresent(1));
+
+    policy.setExpireAfterWrite(5, MINUTES);
+    assertEquals(MINUTES.toNanos(5), policy.getExpireAfterWrite(NANOSECONDS));
+    assertNull(cache.getIfPresent(1));
+
+    cache.getUnchecked(2);
+    policy.setExpireAfterWrite(20, MINUTES);
+    ticker.advance(15, MINUTES);
+    assertNotNull(cache.getIfPresent(2));
+    ticker.advance(5, MINUTES);
+    assertNull(cache.getIfPresent(2));
+
+    try {
+      policy.setExpireAfterWrite(0, MINUTES);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testSetExpireAfterAccess() {
+    FakeTicker ticker = new FakeTicker();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfterAccess(10, MINUTES)
+        .ticker(ticker)
+        .build(IDENTITY_LOADER);
+    CachePolicy policy = CachePolicy.of(cache);
+    assertTrue(policy.expiresAfterAccess());
+    assertEquals(10, policy.getExpireAfterAccess(MINUTES));
+
+    cache.getUnchecked(1);
+    ticker.advance(3, MINUTES);
+    policy.setExpireAfterAccess(2, MINUTES);
+    assertNull(cache.getIfPresent(1));
+    cache.cleanUp();
+    assertEquals(0, cache.size());
+  }
+
+  public void testOf_async() {
+    AsyncLoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .maximumSize(10)
+        .buildAsync(new AsyncCacheLoader<Integer, Integer>() {
+          @Override
+          public ListenableFuture<Integer> load(Integer key) {
+            return Futures.immediateFuture(key);
+          }
+        });
+    CachePolicy policy = CachePolicy.of(cache);
+    assertEquals(10, policy.getMaximum());
+    policy.setMaximum(1);
+    cache.get(1);
+    cache.get(2);
+    assertNull(cache.getIfPresent(1));
+  }
+}
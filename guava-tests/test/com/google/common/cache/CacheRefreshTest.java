@@ -18,10 +18,18 @@ import static com.google.common.cache.TestingCacheLoaders.incrementingLoader;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import com.google.common.cache.TestingCacheLoaders.IncrementingLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.testing.FakeTicker;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import junit.framework.TestCase;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Tests relating to automatic cache refreshing.
  *
@@ -97,4 +105,209 @@ public class CacheRefreshTest extends TestCase {
     assertEquals(expectedLoads, loader.getLoadCount());
     assertEquals(expectedReloads, loader.getReloadCount());
   }
+
+  public void testAutoRefresh_batchedBySize() {
+    FakeTicker ticker = new FakeTicker();
+    BatchingLoader loader = new BatchingLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .refreshAfterWrite(3, MILLISECONDS)
+        .refreshBatching(3, 1, TimeUnit.HOURS)
+        .ticker(ticker)
+        .build(loader);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(Integer.valueOf(i), cache.getUnchecked(i));
+    }
+    assertEquals(4, loader.loadCount);
+
+    ticker.advance(4, MILLISECONDS);
+    // stale values are returned while the batch fills
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(Integer.valueOf(1), cache.getUnchecked(1));
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertTrue(loader.batches.isEmpty());
+
+    // the third refresh fills the batch, which is loaded with a single call
+    assertEquals(Integer.valueOf(2), cache.getUnchecked(2));
+    assertEquals(1, loader.batches.size());
+    assertEquals(ImmutableList.of(0, 1, 2), loader.batches.get(0));
+    assertEquals(Integer.valueOf(100), cache.getUnchecked(0));
+    assertEquals(Integer.valueOf(101), cache.getUnchecked(1));
+    assertEquals(Integer.valueOf(102), cache.getUnchecked(2));
+    assertEquals(4, loader.loadCount);
+    assertEquals(0, loader.reloadCount);
+  }
+
+  public void testAutoRefresh_batchedByTime() {
+    FakeTicker ticker = new FakeTicker();
+    BatchingLoader loader = new BatchingLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .refreshAfterWrite(3, MILLISECONDS)
+        .refreshBatching(100, 2, MILLISECONDS)
+        .ticker(ticker)
+        .build(loader);
+    cache.getUnchecked(0);
+    cache.getUnchecked(1);
+
+    ticker.advance(4, MILLISECONDS);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    ticker.advance(1, MILLISECONDS);
+    assertEquals(Integer.valueOf(1), cache.getUnchecked(1));
+    cache.cleanUp();
+    assertTrue(loader.batches.isEmpty());
+
+    // the next operation after the window elapses loads the batch
+    ticker.advance(1, MILLISECONDS);
+    cache.cleanUp();
+    assertEquals(1, loader.batches.size());
+    assertEquals(ImmutableList.of(0, 1), loader.batches.get(0));
+    assertEquals(Integer.valueOf(100), cache.getUnchecked(0));
+    assertEquals(Integer.valueOf(101), cache.getUnchecked(1));
+  }
+
+  public void testAutoRefresh_batchedByTime_readOnly() {
+    FakeTicker ticker = new FakeTicker();
+    BatchingLoader loader = new BatchingLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .refreshAfterWrite(3, MILLISECONDS)
+        .refreshBatching(100, 2, MILLISECONDS)
+        .ticker(ticker)
+        .build(loader);
+    cache.getUnchecked(0);
+    cache.getUnchecked(1);
+
+    ticker.advance(4, MILLISECONDS);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(Integer.valueOf(1), cache.getUnchecked(1));
+    assertTrue(loader.batches.isEmpty());
+
+    // without writes or explicit cleanup, the first read after the window elapses loads the batch
+    ticker.advance(2, MILLISECONDS);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(1, loader.batches.size());
+    assertEquals(ImmutableList.of(0, 1), loader.batches.get(0));
+    assertEquals(Integer.valueOf(100), cache.getUnchecked(0));
+    assertEquals(Integer.valueOf(101), cache.getUnchecked(1));
+    assertEquals(1, loader.batches.size());
+  }
+
+  public void testAutoRefresh_batchedValueExpires() {
+    FakeTicker ticker = new FakeTicker();
+    BatchingLoader loader = new BatchingLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(2, TimeUnit.MINUTES)
+        .refreshAfterWrite(1, TimeUnit.MINUTES)
+        .refreshBatching(100, 10, TimeUnit.SECONDS)
+        .ticker(ticker)
+        .build(loader);
+    cache.getUnchecked(0);
+
+    ticker.advance(90, TimeUnit.SECONDS);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertTrue(loader.batches.isEmpty());
+
+    // the old value has expired, so the read waits for the pending batch, and must issue it
+    ticker.advance(35, TimeUnit.SECONDS);
+    assertEquals(Integer.valueOf(100), cache.getUnchecked(0));
+    assertEquals(ImmutableList.of(ImmutableList.of(0)), loader.batches);
+    assertEquals(1, loader.loadCount);
+  }
+
+  public void testAutoRefresh_batchedValueExpiresWithinWindow() {
+    FakeTicker ticker = new FakeTicker();
+    BatchingLoader loader = new BatchingLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(2, TimeUnit.MINUTES)
+        .refreshAfterWrite(1, TimeUnit.MINUTES)
+        .refreshBatching(100, 1, TimeUnit.HOURS)
+        .ticker(ticker)
+        .build(loader);
+    cache.getUnchecked(0);
+    cache.getUnchecked(1);
+
+    ticker.advance(90, TimeUnit.SECONDS);
+    assertEquals(Integer.valueOf(0), cache.getUnchecked(0));
+    assertEquals(Integer.valueOf(1), cache.getUnchecked(1));
+
+    // the batch is issued before its window elapses, as a reader waits for it
+    ticker.advance(35, TimeUnit.SECONDS);
+    assertEquals(Integer.valueOf(101), cache.getUnchecked(1));
+    assertEquals(ImmutableList.of(ImmutableList.of(0, 1)), loader.batches);
+    assertEquals(Integer.valueOf(100), cache.getUnchecked(0));
+  }
+
+  public void testAutoRefresh_batchedMissingKeyKeepsOldValue() {
+    FakeTicker ticker = new FakeTicker();
+    BatchingLoader loader = new BatchingLoader();
+    loader.omitted = 1;
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .refreshAfterWrite(3, MILLISECONDS)
+        .refreshBatching(2, 1, TimeUnit.HOURS)
+        .recordStats()
+        .ticker(ticker)
+        .build(loader);
+    cache.getUnchecked(0);
+    cache.getUnchecked(1);
+
+    ticker.advance(4, MILLISECONDS);
+    cache.getUnchecked(0);
+    cache.getUnchecked(1);
+    assertEquals(1, loader.batches.size());
+    assertEquals(Integer.valueOf(100), cache.getUnchecked(0));
+    assertEquals(Integer.valueOf(1), cache.getUnchecked(1));
+    assertEquals(1, cache.stats().loadExceptionCount());
+  }
+
+  public void testAutoRefresh_batchingFallsBackToReload() {
+    FakeTicker ticker = new FakeTicker();
+    IncrementingLoader loader = incrementingLoader();
+    LoadingCache<Integer, Integer> cache = CacheBuilder.newBuilder()
+        .refreshAfterWrite(3, MILLISECONDS)
+        .refreshBatching(2, 1, TimeUnit.HOURS)
+        .ticker(ticker)
+        .build(loader);
+    cache.getUnchecked(0);
+    cache.getUnchecked(1);
+    cache.getUnchecked(2);
+
+    ticker.advance(4, MILLISECONDS);
+    cache.getUnchecked(0);
+    cache.getUnchecked(1);
+    assertEquals(2, loader.getReloadCount());
+
+    // later refreshes are no longer batched
+    assertEquals(Integer.valueOf(3), cache.getUnchecked(2));
+    assertEquals(3, loader.getReloadCount());
+  }
+
+  /** A loader that records each call to {@code loadAll}, offsetting reloaded values by 100. */
+  static class BatchingLoader extends CacheLoader<Integer, Integer> {
+    final List<List<Integer>> batches = Lists.newArrayList();
+    int loadCount;
+    int reloadCount;
+    Integer omitted;
+
+    @Override
+    public Integer load(Integer key) {
+      loadCount++;
+      return key;
+    }
+
+    @Override
+    public ListenableFuture<Integer> reload(Integer key, Integer oldValue) throws Exception {
+      reloadCount++;
+      return super.reload(key, oldValue);
+    }
+
+    @Override
+    public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+      batches.add(ImmutableList.<Integer>copyOf(keys));
+      Map<Integer, Integer> result = Maps.newHashMap();
+      for (Integer key : keys) {
+        if (!key.equals(omitted)) {
+          result.put(key, key + 100);
+        }
+      }
+      return result;
+    }
+  }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link FrequencySketch}.
+ */
+public class FrequencySketchTest extends TestCase {
+  private static final int ITEM = 0x5bd1e995;
+
+  public void testEnsureCapacity_negative() {
+    FrequencySketch sketch = new FrequencySketch();
+    try {
+      sketch.ensureCapacity(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testEnsureCapacity_smaller() {
+    FrequencySketch sketch = makeSketch(512);
+    sketch.increment(ITEM);
+    sketch.ensureCapacity(64);
+    // shrinking is a no-op, so history is retained
+    assertEquals(1, sketch.frequency(ITEM));
+  }
+
+  public void testEnsureCapacity_larger() {
+    FrequencySketch sketch = makeSketch(64);
+    sketch.increment(ITEM);
+    sketch.ensureCapacity(512);
+    assertEquals(0, sketch.frequency(ITEM));
+    assertEquals(5120, sketch.sampleSize());
+  }
+
+  public void testIncrement_once() {
+    FrequencySketch sketch = makeSketch(512);
+    assertEquals(0, sketch.frequency(ITEM));
+    sketch.increment(ITEM);
+    assertEquals(1, sketch.frequency(ITEM));
+  }
+
+  public void testIncrement_max() {
+    FrequencySketch sketch = makeSketch(512);
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(ITEM);
+    }
+    assertEquals(15, sketch.frequency(ITEM));
+  }
+
+  public void testIncrement_distinct() {
+    FrequencySketch sketch = makeSketch(512);
+    sketch.increment(ITEM);
+    sketch.increment(ITEM + 1);
+    assertEquals(1, sketch.frequency(ITEM));
+    assertEquals(1, sketch.frequency(ITEM + 1));
+    assertEquals(0, sketch.frequency(ITEM + 2));
+  }
+
+  public void testReset() {
+    FrequencySketch sketch = makeSketch(64);
+    boolean reset = false;
+    for (int i = 1; i < 20 * sketch.sampleSize(); i++) {
+      sketch.increment(i);
+      if (sketch.size() != i) {
+        reset = true;
+        break;
+      }
+    }
+    assertTrue(reset);
+    assertTrue(sketch.size() <= sketch.sampleSize() / 2);
+  }
+
+  public void testReset_halvesFrequency() {
+    FrequencySketch sketch = makeSketch(512);
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(ITEM);
+    }
+    sketch.reset();
+    assertEquals(5, sketch.frequency(ITEM));
+  }
+
+  public void testHeavyHitters() {
+    FrequencySketch sketch = makeSketch(512);
+    for (int i = 100; i < 100000; i++) {
+      sketch.increment(Double.valueOf(i).hashCode());
+    }
+    for (int i = 0; i < 10; i += 2) {
+      for (int j = 0; j < i; j++) {
+        sketch.increment(Double.valueOf(i).hashCode());
+      }
+    }
+
+    // A perfect popularity count yields an array [0, 0, 2, 0, 4, 0, 6, 0, 8, 0]
+    int[] popularity = new int[10];
+    for (int i = 0; i < 10; i++) {
+      popularity[i] = sketch.frequency(Double.valueOf(i).hashCode());
+    }
+    for (int i = 0; i < popularity.length; i++) {
+      if ((i == 0) || (i == 1) || (i == 3) || (i == 5) || (i == 7) || (i == 9)) {
+        assertTrue(popularity[i] <= popularity[2]);
+      } else if (i == 2) {
+        assertTrue(popularity[2] <= popularity[4]);
+      } else if (i == 4) {
+        assertTrue(popularity[4] <= popularity[6]);
+      } else if (i == 6) {
+        assertTrue(popularity[6] <= popularity[8]);
+      }
+    }
+  }
+
+  private static FrequencySketch makeSketch(long maximumSize) {
+    FrequencySketch sketch = new FrequencySketch();
+    sketch.ensureCapacity(maximumSize);
+    return sketch;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.LatencyDistribution.BUCKET_COUNT;
+import static com.google.common.cache.LatencyDistribution.MAX_LATENCY;
+import static com.google.common.cache.LatencyDistribution.bucketFor;
+import static com.google.common.cache.LatencyDistribution.upperBound;
+
+import com.google.common.testing.EqualsTester;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link LatencyDistribution}.
+ */
+public class LatencyDistributionTest extends TestCase {
+
+  public void testBuckets_exactBelowSixteen() {
+    for (int latency = 0; latency < 16; latency++) {
+      assertEquals(latency, upperBound(bucketFor(latency)));
+    }
+  }
+
+  public void testBuckets_contiguous() {
+    assertEquals(0, bucketFor(Long.MIN_VALUE));
+    assertEquals(0, bucketFor(0));
+    for (int i = 1; i < BUCKET_COUNT; i++) {
+      long lowerBound = upperBound(i - 1) + 1;
+      assertEquals(i, bucketFor(lowerBound));
+      assertEquals(i, bucketFor(upperBound(i)));
+      assertTrue(upperBound(i) >= lowerBound);
+      // the relative error of reporting the upper bound is less than 1/8
+      assertTrue(upperBound(i) - lowerBound < Math.max(1, lowerBound / 8));
+    }
+    assertEquals(MAX_LATENCY, upperBound(BUCKET_COUNT - 1));
+    assertEquals(BUCKET_COUNT - 1, bucketFor(MAX_LATENCY + 1));
+    assertEquals(BUCKET_COUNT - 1, bucketFor(Long.MAX_VALUE));
+  }
+
+  public void testEmpty() {
+    LatencyDistribution empty = LatencyDistribution.of(new long[BUCKET_COUNT]);
+    assertSame(LatencyDistribution.EMPTY, empty);
+    assertEquals(0, empty.count());
+    assertEquals(0, empty.percentile(50));
+    assertEquals(0, empty.percentile(100));
+  }
+
+  public void testPercentile() {
+    long[] counts = new long[BUCKET_COUNT];
+    counts[bucketFor(10)] = 900;
+    counts[bucketFor(1000)] = 90;
+    counts[bucketFor(1000000)] = 10;
+    LatencyDistribution distribution = LatencyDistribution.of(counts);
+    assertEquals(1000, distribution.count());
+    assertEquals(10, distribution.percentile(0));
+    assertEquals(10, distribution.percentile(50));
+    assertEquals(10, distribution.percentile(90));
+    assertEquals(upperBound(bucketFor(1000)), distribution.percentile(90.1));
+    assertEquals(upperBound(bucketFor(1000)), distribution.percentile(99));
+    assertEquals(upperBound(bucketFor(1000000)), distribution.percentile(99.9));
+    assertEquals(upperBound(bucketFor(1000000)), distribution.percentile(100));
+  }
+
+  public void testPercentile_outOfRange() {
+    for (double percentile : new double[] {-1, 100.1, Double.NaN}) {
+      try {
+        LatencyDistribution.EMPTY.percentile(percentile);
+        fail();
+      } catch (IllegalArgumentException expected) {}
+    }
+  }
+
+  public void testPlusMinus() {
+    long[] oneCounts = new long[BUCKET_COUNT];
+    oneCounts[3] = 5;
+    oneCounts[40] = 2;
+    long[] twoCounts = new long[BUCKET_COUNT];
+    twoCounts[3] = 1;
+    twoCounts[50] = 4;
+    LatencyDistribution one = LatencyDistribution.of(oneCounts);
+    LatencyDistribution two = LatencyDistribution.of(twoCounts);
+
+    LatencyDistribution sum = one.plus(two);
+    assertEquals(12, sum.count());
+    assertEquals(sum, two.plus(one));
+    assertEquals(one, sum.minus(two));
+    assertSame(one, one.plus(LatencyDistribution.EMPTY));
+    assertSame(one, LatencyDistribution.EMPTY.plus(one));
+    assertSame(LatencyDistribution.EMPTY, one.minus(sum));
+
+    LatencyDistribution difference = one.minus(two);
+    assertEquals(6, difference.count());
+    assertEquals(upperBound(3), difference.percentile(50));
+  }
+
+  public void testCacheStats() {
+    long[] counts = new long[BUCKET_COUNT];
+    counts[7] = 1;
+    LatencyDistribution latency = LatencyDistribution.of(counts);
+    CacheStats stats = new CacheStats(1, 1, 1, 0, 7, 0, latency, LatencyDistribution.EMPTY);
+    assertSame(latency, stats.loadLatency());
+    assertSame(LatencyDistribution.EMPTY, stats.getLatency());
+    assertEquals(latency, stats.plus(stats).minus(stats).loadLatency());
+    CacheStats withoutLatency = new CacheStats(1, 1, 1, 0, 7, 0);
+    assertEquals(withoutLatency, stats.minus(stats).plus(withoutLatency));
+    assertTrue(stats.toString(), stats.toString().contains("loadLatency"));
+    assertFalse(stats.toString(), stats.toString().contains("getLatency"));
+  }
+
+  public void testEquals() {
+    long[] counts = new long[BUCKET_COUNT];
+    counts[7] = 1;
+    long[] otherCounts = new long[BUCKET_COUNT];
+    otherCounts[8] = 1;
+    LatencyDistribution empty = LatencyDistribution.EMPTY;
+    LatencyDistribution latency = LatencyDistribution.of(counts);
+    new EqualsTester()
+        .addEqualityGroup(empty, LatencyDistribution.of(new long[0]))
+        .addEqualityGroup(latency, LatencyDistribution.of(counts))
+        .addEqualityGroup(LatencyDistribution.of(otherCounts))
+        .addEqualityGroup(
+            new CacheStats(0, 0, 0, 0, 0, 0), new CacheStats(0, 0, 0, 0, 0, 0, empty, empty))
+        .addEqualityGroup(new CacheStats(0, 0, 0, 0, 0, 0, latency, empty))
+        .addEqualityGroup(new CacheStats(0, 0, 0, 0, 0, 0, empty, latency))
+        .testEquals();
+  }
+}
@@ -546,7 +546,7 @@ public class LocalCacheTest extends TestCase {
 
       checkEvictionQueues(map, segment, readOrder, writeOrder);
       checkExpirationTimes(map);
-      assertTrue(segment.recencyQueue.isEmpty());
+      assertTrue(segment.readBuffer.isEmpty());
 
       // access some of the elements
       Random random = new Random();
@@ -558,11 +558,11 @@ public class LocalCacheTest extends TestCase {
           map.get(entry.getKey(), loader);
           reads.add(entry);
           i.remove();
-          assertTrue(segment.recencyQueue.size() <= DRAIN_THRESHOLD);
+          assertTrue(segment.readBuffer.size() <= DRAIN_THRESHOLD);
         }
       }
-      int undrainedIndex = reads.size() - segment.recencyQueue.size();
-      checkAndDrainRecencyQueue(map, segment, reads.subList(undrainedIndex, reads.size()));
+      int undrainedIndex = reads.size() - segment.readBuffer.size();
+      checkAndDrainReadBuffer(map, segment, reads.subList(undrainedIndex, reads.size()));
       readOrder.addAll(reads);
 
       checkEvictionQueues(map, segment, readOrder, writeOrder);
@@ -1765,7 +1765,7 @@ public class LocalCacheTest extends TestCase {
     DummyEntry<Object, Object> entry = createDummyEntry(key, hash, value, null);
     segment.recordWrite(entry, 1, map.ticker.read());
     segment.table.set(0, entry);
-    segment.readCount.incrementAndGet();
+    segment.readBuffer.offer(entry);
     segment.count = 1;
     segment.totalWeight = 1;
 
@@ -1777,7 +1777,7 @@ public class LocalCacheTest extends TestCase {
     assertNull(table.get(0));
     assertTrue(segment.accessQueue.isEmpty());
     assertTrue(segment.writeQueue.isEmpty());
-    assertEquals(0, segment.readCount.get());
+    assertTrue(segment.readBuffer.isEmpty());
     assertEquals(0, segment.count);
     assertEquals(0, segment.totalWeight);
   }
@@ -1800,7 +1800,7 @@ public class LocalCacheTest extends TestCase {
     DummyEntry<Object, Object> entry = createDummyEntry(key, hash, value, null);
     segment.recordWrite(entry, 1, map.ticker.read());
     segment.table.set(0, entry);
-    segment.readCount.incrementAndGet();
+    segment.readBuffer.offer(entry);
     segment.count = 1;
     segment.totalWeight = 1;
 
@@ -1812,7 +1812,7 @@ public class LocalCacheTest extends TestCase {
     assertNull(table.get(0));
     assertTrue(segment.accessQueue.isEmpty());
     assertTrue(segment.writeQueue.isEmpty());
-    assertEquals(0, segment.readCount.get());
+    assertTrue(segment.readBuffer.isEmpty());
     assertEquals(0, segment.count);
     assertEquals(0, segment.totalWeight);
     assertNotified(listener, key, value, RemovalCause.EXPLICIT);
@@ -1957,53 +1957,53 @@ public class LocalCacheTest extends TestCase {
 
   // Segment eviction tests
 
-  public void testDrainRecencyQueueOnWrite() {
+  public void testDrainReadBufferOnWrite() {
     for (CacheBuilder<Object, Object> builder : allEvictingMakers()) {
       LocalCache<Object, Object> map = makeLocalCache(builder.concurrencyLevel(1));
       Segment<Object, Object> segment = map.segments[0];
 
-      if (segment.recencyQueue != DISCARDING_QUEUE) {
+      if (map.usesAccessQueue()) {
         Object keyOne = new Object();
         Object valueOne = new Object();
         Object keyTwo = new Object();
         Object valueTwo = new Object();
 
         map.put(keyOne, valueOne);
-        assertTrue(segment.recencyQueue.isEmpty());
+        assertTrue(segment.readBuffer.isEmpty());
 
         for (int i = 0; i < DRAIN_THRESHOLD / 2; i++) {
           map.get(keyOne);
         }
-        assertFalse(segment.recencyQueue.isEmpty());
+        assertFalse(segment.readBuffer.isEmpty());
 
         map.put(keyTwo, valueTwo);
-        assertTrue(segment.recencyQueue.isEmpty());
+        assertTrue(segment.readBuffer.isEmpty());
       }
     }
   }
 
-  public void testDrainRecencyQueueOnRead() {
+  public void testDrainReadBufferOnRead() {
     for (CacheBuilder<Object, Object> builder : allEvictingMakers()) {
       LocalCache<Object, Object> map = makeLocalCache(builder.concurrencyLevel(1));
       Segment<Object, Object> segment = map.segments[0];
 
-      if (segment.recencyQueue != DISCARDING_QUEUE) {
+      if (map.usesAccessQueue()) {
         Object keyOne = new Object();
         Object valueOne = new Object();
 
         // repeated get of the same key
 
         map.put(keyOne, valueOne);
-        assertTrue(segment.recencyQueue.isEmpty());
+        assertTrue(segment.readBuffer.isEmpty());
 
         for (int i = 0; i < DRAIN_THRESHOLD / 2; i++) {
           map.get(keyOne);
         }
-        assertFalse(segment.recencyQueue.isEmpty());
+        assertFalse(segment.readBuffer.isEmpty());
 
         for (int i = 0; i < DRAIN_THRESHOLD * 2; i++) {
           map.get(keyOne);
-          assertTrue(segment.recencyQueue.size() <= DRAIN_THRESHOLD);
+          assertTrue(segment.readBuffer.size() <= DRAIN_THRESHOLD);
         }
 
         // get over many different keys
@@ -2011,21 +2011,41 @@ public class LocalCacheTest extends TestCase {
         for (int i = 0; i < DRAIN_THRESHOLD * 2; i++) {
           map.put(new Object(), new Object());
         }
-        assertTrue(segment.recencyQueue.isEmpty());
+        assertTrue(segment.readBuffer.isEmpty());
 
         for (int i = 0; i < DRAIN_THRESHOLD / 2; i++) {
           map.get(keyOne);
         }
-        assertFalse(segment.recencyQueue.isEmpty());
+        assertFalse(segment.readBuffer.isEmpty());
 
         for (Object key : map.keySet()) {
           map.get(key);
-          assertTrue(segment.recencyQueue.size() <= DRAIN_THRESHOLD);
+          assertTrue(segment.readBuffer.size() <= DRAIN_THRESHOLD);
         }
       }
     }
   }
 
+  public void testDrainReadBufferOnRead_withoutAccessQueue() {
+    LocalCache<Object, Object> map = makeLocalCache(createCacheBuilder()
+        .concurrencyLevel(1)
+        .expireAfterWrite(99999, SECONDS));
+    assertFalse(map.usesAccessQueue());
+    Segment<Object, Object> segment = map.segments[0];
+    Object key = new Object();
+    map.put(key, new Object());
+    assertTrue(segment.readBuffer.isEmpty());
+
+    // reads are only counted towards cleanup, which still drains the buffer periodically
+    for (int i = 1; i < ReadBuffer.DRAIN_PENDING; i++) {
+      map.get(key);
+    }
+    assertEquals(ReadBuffer.DRAIN_PENDING - 1, segment.readBuffer.size());
+    map.get(key);
+    assertTrue(segment.readBuffer.isEmpty());
+    assertTrue(segment.accessQueue.isEmpty());
+  }
+
   public void testRecordRead() {
     for (CacheBuilder<Object, Object> builder : allEvictingMakers()) {
       LocalCache<Object, Object> map = makeLocalCache(builder.concurrencyLevel(1));
@@ -2038,7 +2058,7 @@ public class LocalCacheTest extends TestCase {
         Object value = new Object();
 
         ReferenceEntry<Object, Object> entry = createDummyEntry(key, hash, value, null);
-        // must recordRead for drainRecencyQueue to believe this entry is live
+        // must recordRead for drainReadBuffer to believe this entry is live
         segment.recordWrite(entry, 1, map.ticker.read());
         writeOrder.add(entry);
         readOrder.add(entry);
@@ -2047,11 +2067,11 @@ public class LocalCacheTest extends TestCase {
       checkEvictionQueues(map, segment, readOrder, writeOrder);
       checkExpirationTimes(map);
 
-      // access some of the elements
+      // access some of the elements, without overflowing the (lossy) read buffer
       Random random = new Random();
       List<ReferenceEntry<Object, Object>> reads = Lists.newArrayList();
       Iterator<ReferenceEntry<Object, Object>> i = readOrder.iterator();
-      while (i.hasNext()) {
+      while (i.hasNext() && reads.size() < ReadBuffer.RING_SIZE) {
         ReferenceEntry<Object, Object> entry = i.next();
         if (random.nextBoolean()) {
           segment.recordRead(entry, map.ticker.read());
@@ -2059,7 +2079,7 @@ public class LocalCacheTest extends TestCase {
           i.remove();
         }
       }
-      checkAndDrainRecencyQueue(map, segment, reads);
+      checkAndDrainReadBuffer(map, segment, reads);
       readOrder.addAll(reads);
 
       checkEvictionQueues(map, segment, readOrder, writeOrder);
@@ -2086,7 +2106,7 @@ public class LocalCacheTest extends TestCase {
 
       checkEvictionQueues(map, segment, readOrder, writeOrder);
       checkExpirationTimes(map);
-      assertTrue(segment.recencyQueue.isEmpty());
+      assertTrue(segment.readBuffer.isEmpty());
 
       // access some of the elements
       Random random = new Random();
@@ -2098,11 +2118,11 @@ public class LocalCacheTest extends TestCase {
           map.get(entry.getKey());
           reads.add(entry);
           i.remove();
-          assertTrue(segment.recencyQueue.size() <= DRAIN_THRESHOLD);
+          assertTrue(segment.readBuffer.size() <= DRAIN_THRESHOLD);
         }
       }
-      int undrainedIndex = reads.size() - segment.recencyQueue.size();
-      checkAndDrainRecencyQueue(map, segment, reads.subList(undrainedIndex, reads.size()));
+      int undrainedIndex = reads.size() - segment.readBuffer.size();
+      checkAndDrainReadBuffer(map, segment, reads.subList(undrainedIndex, reads.size()));
       readOrder.addAll(reads);
 
       checkEvictionQueues(map, segment, readOrder, writeOrder);
@@ -2121,7 +2141,7 @@ public class LocalCacheTest extends TestCase {
         Object value = new Object();
 
         ReferenceEntry<Object, Object> entry = createDummyEntry(key, hash, value, null);
-        // must recordRead for drainRecencyQueue to believe this entry is live
+        // must recordRead for drainReadBuffer to believe this entry is live
         segment.recordWrite(entry, 1, map.ticker.read());
         writeOrder.add(entry);
       }
@@ -2148,12 +2168,12 @@ public class LocalCacheTest extends TestCase {
     }
   }
 
-  static <K, V> void checkAndDrainRecencyQueue(LocalCache<K, V> map,
+  static <K, V> void checkAndDrainReadBuffer(LocalCache<K, V> map,
       Segment<K, V> segment, List<ReferenceEntry<K, V>> reads) {
     if (map.evictsBySize() || map.expiresAfterAccess()) {
-      assertSameEntries(reads, ImmutableList.copyOf(segment.recencyQueue));
+      assertSameEntries(reads, ImmutableList.copyOf(segment.readBuffer));
     }
-    segment.drainRecencyQueue();
+    segment.drainReadBuffer();
   }
 
   static <K, V> void checkEvictionQueues(LocalCache<K, V> map,
@@ -2187,7 +2207,7 @@ public class LocalCacheTest extends TestCase {
     for (Segment<K, V> segment : map.segments) {
       long lastAccessTime = 0;
       long lastWriteTime = 0;
-      for (ReferenceEntry<K, V> e : segment.recencyQueue) {
+      for (ReferenceEntry<K, V> e : segment.readBuffer) {
         long accessTime = e.getAccessTime();
         assertTrue(accessTime >= lastAccessTime);
         lastAccessTime = accessTime;
@@ -2510,6 +2530,7 @@ public class LocalCacheTest extends TestCase {
     assertEquals(localCacheOne.valueEquivalence, localCacheTwo.valueEquivalence);
     assertEquals(localCacheOne.maxWeight, localCacheTwo.maxWeight);
     assertEquals(localCacheOne.weigher, localCacheTwo.weigher);
+    assertEquals(localCacheOne.evictionPolicy, localCacheTwo.evictionPolicy);
     assertEquals(localCacheOne.expireAfterAccessNanos, localCacheTwo.expireAfterAccessNanos);
     assertEquals(localCacheOne.expireAfterWriteNanos, localCacheTwo.expireAfterWriteNanos);
     assertEquals(localCacheOne.refreshNanos, localCacheTwo.refreshNanos);
@@ -2527,6 +2548,7 @@ public class LocalCacheTest extends TestCase {
     assertEquals(localCacheTwo.valueEquivalence, localCacheThree.valueEquivalence);
     assertEquals(localCacheTwo.maxWeight, localCacheThree.maxWeight);
     assertEquals(localCacheTwo.weigher, localCacheThree.weigher);
+    assertEquals(localCacheTwo.evictionPolicy, localCacheThree.evictionPolicy);
     assertEquals(localCacheTwo.expireAfterAccessNanos, localCacheThree.expireAfterAccessNanos);
     assertEquals(localCacheTwo.expireAfterWriteNanos, localCacheThree.expireAfterWriteNanos);
     assertEquals(localCacheTwo.removalListener, localCacheThree.removalListener);
@@ -2544,6 +2566,7 @@ public class LocalCacheTest extends TestCase {
         .expireAfterAccess(123, NANOSECONDS)
         .maximumWeight(789)
         .weigher(weigher)
+        .evictionPolicy(EvictionPolicy.TINY_LFU)
         .concurrencyLevel(12)
         .removalListener(listener)
         .ticker(ticker)
@@ -2565,6 +2588,7 @@ public class LocalCacheTest extends TestCase {
     assertEquals(localCacheOne.valueEquivalence, localCacheTwo.valueEquivalence);
     assertEquals(localCacheOne.maxWeight, localCacheTwo.maxWeight);
     assertEquals(localCacheOne.weigher, localCacheTwo.weigher);
+    assertEquals(localCacheOne.evictionPolicy, localCacheTwo.evictionPolicy);
     assertEquals(localCacheOne.expireAfterAccessNanos, localCacheTwo.expireAfterAccessNanos);
     assertEquals(localCacheOne.expireAfterWriteNanos, localCacheTwo.expireAfterWriteNanos);
     assertEquals(localCacheOne.removalListener, localCacheTwo.removalListener);
@@ -2580,6 +2604,7 @@ public class LocalCacheTest extends TestCase {
     assertEquals(localCacheTwo.valueEquivalence, localCacheThree.valueEquivalence);
     assertEquals(localCacheTwo.maxWeight, localCacheThree.maxWeight);
     assertEquals(localCacheTwo.weigher, localCacheThree.weigher);
+    assertEquals(localCacheTwo.evictionPolicy, localCacheThree.evictionPolicy);
     assertEquals(localCacheTwo.expireAfterAccessNanos, localCacheThree.expireAfterAccessNanos);
     assertEquals(localCacheTwo.expireAfterWriteNanos, localCacheThree.expireAfterWriteNanos);
     assertEquals(localCacheTwo.removalListener, localCacheThree.removalListener);
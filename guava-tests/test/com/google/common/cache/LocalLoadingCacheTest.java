@@ -298,11 +298,11 @@ public class LocalLoadingCacheTest extends TestCase {
 
     Object one = new Object();
     assertSame(one, cache.getUnchecked(one));
-    assertTrue(segment.recencyQueue.isEmpty());
+    assertTrue(segment.readBuffer.isEmpty());
     assertSame(one, map.get(one));
-    assertSame(one, segment.recencyQueue.peek().getKey());
+    assertSame(one, segment.readBuffer.iterator().next().getKey());
     assertSame(one, cache.getUnchecked(one));
-    assertFalse(segment.recencyQueue.isEmpty());
+    assertFalse(segment.readBuffer.isEmpty());
   }
 
   public void testRecursiveComputation() throws InterruptedException {
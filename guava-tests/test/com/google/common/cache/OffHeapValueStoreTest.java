@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.cache.CacheBuilder.UNSET_INT;
+import static com.google.common.cache.OffHeapValueStore.DEDICATED;
+import static com.google.common.cache.OffHeapValueStore.MAX_SLAB_SHIFT;
+import static com.google.common.cache.OffHeapValueStore.MIN_SLAB_SHIFT;
+import static com.google.common.cache.OffHeapValueStore.slabShift;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Strings;
+import com.google.common.cache.LocalCache.Segment;
+import com.google.common.cache.LocalCache.ValueReference;
+import com.google.common.cache.OffHeapValueStore.OffHeapValueReference;
+import com.google.common.collect.Lists;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link OffHeapValueStore} and caches built with
+ * {@link CacheBuilder#offHeapValues}.
+ */
+public class OffHeapValueStoreTest extends TestCase {
+
+  /** Serializes strings as UTF-8. */
+  static final ValueSerializer<String> STRINGS = StringSerializer.INSTANCE;
+
+  private static final CacheLoader<Object, String> TO_STRING =
+      CacheLoader.from(Functions.toStringFunction());
+
+  enum StringSerializer implements ValueSerializer<String> {
+    INSTANCE;
+
+    @Override
+    public byte[] serialize(String value) {
+      return value.getBytes(UTF_8);
+    }
+
+    @Override
+    public String deserialize(ByteBuffer buffer) {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return new String(bytes, UTF_8);
+    }
+  }
+
+  public void testSizeClass() {
+    OffHeapValueStore<Integer, String> store = newStore();
+    assertEquals(0, store.sizeClass(0));
+    assertEquals(0, store.sizeClass(16));
+    assertEquals(1, store.sizeClass(17));
+    assertEquals(1, store.sizeClass(32));
+    assertEquals(store.availableSlabs.length - 1, store.sizeClass(store.slabSize / 8));
+    assertEquals(DEDICATED, store.sizeClass(store.slabSize / 8 + 1));
+  }
+
+  public void testSlabShift() {
+    assertEquals(MAX_SLAB_SHIFT, slabShift(UNSET_INT));
+    assertEquals(MIN_SLAB_SHIFT, slabShift(0));
+    assertEquals(MIN_SLAB_SHIFT, slabShift(1000));
+    assertEquals(16, slabShift(1 << 20));
+    assertEquals(16, slabShift((1 << 21) - 1));
+    assertEquals(MAX_SLAB_SHIFT, slabShift(Long.MAX_VALUE));
+  }
+
+  public void testReferenceValue() {
+    OffHeapValueStore<Integer, String> store = newStore();
+    ValueReference<Integer, String> one = store.referenceValue(1, "one");
+    ValueReference<Integer, String> two = store.referenceValue(2, "two");
+    assertEquals("one", one.get());
+    assertEquals("two", two.get());
+    assertEquals(3, one.getWeight());
+    assertTrue(one.isActive());
+    assertFalse(one.isLoading());
+    assertEquals(32, store.allocatedBytes());
+    assertEquals(store.slabSize, store.reservedBytes());
+  }
+
+  public void testRetire_reusesChunk() {
+    OffHeapValueStore<Integer, String> store = newStore();
+    OffHeapValueReference<Integer, String> one =
+        (OffHeapValueReference<Integer, String>) store.referenceValue(1, "one");
+    OffHeapValueStore.retire(one);
+    assertNull(one.get());
+    assertFalse(one.isActive());
+    assertEquals(0, store.allocatedBytes());
+
+    // retiring twice does not free the chunk twice
+    OffHeapValueStore.retire(one);
+    OffHeapValueReference<Integer, String> two =
+        (OffHeapValueReference<Integer, String>) store.referenceValue(2, "two");
+    OffHeapValueReference<Integer, String> three =
+        (OffHeapValueReference<Integer, String>) store.referenceValue(3, "three");
+    assertSame(one.slab, two.slab);
+    assertEquals(one.offset, two.offset);
+    assertFalse(two.offset == three.offset);
+    assertEquals("two", two.get());
+    assertEquals("three", three.get());
+  }
+
+  public void testRetire_waitsForReaders() {
+    final AtomicReference<OffHeapValueReference<Integer, String>> reference =
+        new AtomicReference<OffHeapValueReference<Integer, String>>();
+    final OffHeapValueStore<Integer, String> store = new OffHeapValueStore<Integer, String>(
+        new ValueSerializer<String>() {
+          @Override
+          public byte[] serialize(String value) {
+            return STRINGS.serialize(value);
+          }
+
+          @Override
+          public String deserialize(ByteBuffer buffer) {
+            // the value is removed while it is being read
+            OffHeapValueStore.retire(reference.get());
+            assertEquals(16, reference.get().store.allocatedBytes());
+            return STRINGS.deserialize(buffer);
+          }
+        },
+        null,
+        UNSET_INT);
+    reference.set((OffHeapValueReference<Integer, String>) store.referenceValue(1, "one"));
+
+    assertEquals("one", reference.get().get());
+    assertEquals(0, store.allocatedBytes());
+    assertNull(reference.get().get());
+  }
+
+  public void testDedicatedBuffer() {
+    OffHeapValueStore<Integer, String> store = newStore();
+    String large = Strings.repeat("x", store.slabSize);
+    ValueReference<Integer, String> reference = store.referenceValue(1, large);
+    assertEquals(large, reference.get());
+    assertEquals(store.slabSize, store.allocatedBytes());
+    assertEquals(store.slabSize, store.reservedBytes());
+    OffHeapValueStore.retire(reference);
+    assertEquals(0, store.allocatedBytes());
+    assertEquals(0, store.reservedBytes());
+  }
+
+  public void testFree_releasesEmptySlabs() {
+    OffHeapValueStore<Integer, String> store =
+        new OffHeapValueStore<Integer, String>(STRINGS, null, 0);
+    assertEquals(1 << MIN_SLAB_SHIFT, store.slabSize);
+    int chunksPerSlab = store.slabSize / 16;
+    List<ValueReference<Integer, String>> references = Lists.newArrayList();
+    for (int i = 0; i < 2 * chunksPerSlab + 1; i++) {
+      references.add(store.referenceValue(i, "x"));
+    }
+    assertEquals(3 * store.slabSize, store.reservedBytes());
+
+    for (ValueReference<Integer, String> reference : references) {
+      OffHeapValueStore.retire(reference);
+    }
+    // one empty slab is kept for reuse
+    assertEquals(0, store.allocatedBytes());
+    assertEquals(store.slabSize, store.reservedBytes());
+
+    // by any size class
+    ValueReference<Integer, String> larger = store.referenceValue(0, Strings.repeat("y", 100));
+    assertEquals(128, store.allocatedBytes());
+    assertEquals(store.slabSize, store.reservedBytes());
+    assertEquals(Strings.repeat("y", 100), larger.get());
+  }
+
+  public void testCache_getAndReplace() {
+    LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .offHeapValues(STRINGS)
+        .build(TO_STRING);
+    Segment<Integer, String> segment = CacheTesting.toLocalCache(cache).segments[0];
+
+    cache.put(1, "one");
+    String first = cache.getIfPresent(1);
+    assertEquals("one", first);
+    assertNotSame(first, cache.getIfPresent(1));
+    assertEquals(16, segment.offHeapStore.allocatedBytes());
+
+    cache.put(1, "uno");
+    assertEquals("uno", cache.getIfPresent(1));
+    assertTrue(cache.asMap().replace(1, "uno", "eins"));
+    assertEquals("eins", cache.getIfPresent(1));
+    assertEquals(16, segment.offHeapStore.allocatedBytes());
+
+    cache.invalidate(1);
+    assertNull(cache.getIfPresent(1));
+    assertEquals(0, segment.offHeapStore.allocatedBytes());
+  }
+
+  public void testCache_evictionFreesSpace() {
+    LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumSize(10)
+        .offHeapValues(STRINGS)
+        .build(new CacheLoader<Integer, String>() {
+          @Override
+          public String load(Integer key) {
+            return Strings.repeat("v", key);
+          }
+        });
+    Segment<Integer, String> segment = CacheTesting.toLocalCache(cache).segments[0];
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, cache.getUnchecked(i).length());
+    }
+    cache.cleanUp();
+    assertEquals(10, cache.size());
+    // the ten retained values are 990 to 999 bytes long
+    assertEquals(10 * 1024, segment.offHeapStore.allocatedBytes());
+
+    cache.invalidateAll();
+    assertEquals(0, segment.offHeapStore.allocatedBytes());
+  }
+
+  public void testCache_weighsSerializedValues() {
+    LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumWeight(100)
+        .offHeapValues(STRINGS)
+        .build(TO_STRING);
+    cache.put(1, Strings.repeat("a", 40));
+    cache.put(2, Strings.repeat("b", 40));
+    assertEquals(2, cache.size());
+    cache.put(3, Strings.repeat("c", 40));
+    assertEquals(2, cache.size());
+    assertNull(cache.getIfPresent(1));
+
+    Segment<Integer, String> segment = CacheTesting.toLocalCache(cache).segments[0];
+    assertEquals(80, segment.totalWeight);
+  }
+
+  public void testCache_sharesSlabsAcrossSegments() {
+    LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(4)
+        .maximumWeight(200000)
+        .offHeapValues(STRINGS)
+        .build(new CacheLoader<Integer, String>() {
+          @Override
+          public String load(Integer key) {
+            return Strings.repeat("v", key % 1500);
+          }
+        });
+    LocalCache<Integer, String> map = CacheTesting.toLocalCache(cache);
+    OffHeapValueStore<Integer, String> store = map.segments[0].offHeapStore;
+    for (Segment<Integer, String> segment : map.segments) {
+      assertSame(store, segment.offHeapStore);
+    }
+    assertEquals(8192, store.slabSize);
+
+    for (int i = 0; i < 20000; i++) {
+      cache.getUnchecked((i * 7919) % 5000);
+    }
+    // chunk rounding and partly used slabs cost less than the maximum weight again
+    assertTrue(store.reservedBytes() < 2 * 200000);
+
+    cache.invalidateAll();
+    assertEquals(0, store.allocatedBytes());
+    assertEquals(store.slabSize, store.reservedBytes());
+  }
+
+  public void testCache_refreshRetiresOldValue() {
+    LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .offHeapValues(STRINGS)
+        .build(new CacheLoader<Integer, String>() {
+          int count;
+
+          @Override
+          public String load(Integer key) {
+            return key + "-" + count++;
+          }
+        });
+    Segment<Integer, String> segment = CacheTesting.toLocalCache(cache).segments[0];
+    assertEquals("1-0", cache.getUnchecked(1));
+    cache.refresh(1);
+    assertEquals("1-1", cache.getUnchecked(1));
+    assertEquals(16, segment.offHeapStore.allocatedBytes());
+  }
+
+  public void testCache_serialization() {
+    LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+        .maximumWeight(1000)
+        .offHeapValues(STRINGS)
+        .build(TO_STRING);
+    cache.put(1, "one");
+    LocalCache<Integer, String> copy =
+        CacheTesting.toLocalCache(SerializableTester.reserialize(cache));
+    assertSame(STRINGS, copy.valueSerializer);
+    assertTrue(copy.weighsSerializedValues);
+    assertEquals(1000, copy.maxWeight);
+  }
+
+  private static OffHeapValueStore<Integer, String> newStore() {
+    return new OffHeapValueStore<Integer, String>(STRINGS, null, UNSET_INT);
+  }
+}
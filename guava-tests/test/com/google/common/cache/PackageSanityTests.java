@@ -30,7 +30,16 @@ public class PackageSanityTests extends AbstractPackageSanityTests {
       @Override public Object load(Object key) {
         return key;
       }});
-    setDefault(LocalCache.class, new LocalCache<Object, Object>(CacheBuilder.newBuilder(), null));
+    LocalCache<Object, Object> localCache =
+        new LocalCache<Object, Object>(CacheBuilder.newBuilder(), null);
+    setDefault(LocalCache.class, localCache);
+    setDefault(LocalCache.Segment.class, localCache.segments[0]);
     setDefault(CacheBuilder.class, CacheBuilder.newBuilder());
+    setDefault(LocalCache.LoadingValueReference.class,
+        new LocalCache.LoadingValueReference<Object, Object>());
+    long[] latencyCounts = new long[LatencyDistribution.BUCKET_COUNT];
+    latencyCounts[0] = 1;
+    setDistinctValues(LatencyDistribution.class,
+        LatencyDistribution.EMPTY, LatencyDistribution.of(latencyCounts));
   }
 }
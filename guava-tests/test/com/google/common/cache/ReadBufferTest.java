@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link ReadBuffer}.
+ */
+public class ReadBufferTest extends TestCase {
+
+  public void testOffer_null() {
+    ReadBuffer<Integer> buffer = new ReadBuffer<Integer>();
+    try {
+      buffer.offer(null);
+      fail();
+    } catch (NullPointerException expected) {}
+  }
+
+  public void testOfferAndPoll_fifo() {
+    ReadBuffer<Integer> buffer = new ReadBuffer<Integer>();
+    assertTrue(buffer.isEmpty());
+    assertNull(buffer.poll());
+    for (int i = 0; i < 10; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertEquals(10, buffer.size());
+    assertThat(ImmutableList.copyOf(buffer)).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)
+        .inOrder();
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Integer.valueOf(i), buffer.poll());
+    }
+    assertNull(buffer.poll());
+    assertTrue(buffer.isEmpty());
+  }
+
+  public void testOffer_lossyWhenFull() {
+    ReadBuffer<Integer> buffer = new ReadBuffer<Integer>();
+    for (int i = 0; i < ReadBuffer.RING_SIZE; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertFalse(buffer.offer(-1));
+    assertEquals(ReadBuffer.RING_SIZE, buffer.size());
+
+    // draining makes room again
+    assertEquals(Integer.valueOf(0), buffer.poll());
+    assertTrue(buffer.offer(ReadBuffer.RING_SIZE));
+    List<Integer> drained = Lists.newArrayList();
+    for (Integer e; (e = buffer.poll()) != null; ) {
+      drained.add(e);
+    }
+    assertEquals(ReadBuffer.RING_SIZE, drained.size());
+    assertFalse(drained.contains(-1));
+  }
+
+  public void testShouldDrain() {
+    ReadBuffer<Integer> buffer = new ReadBuffer<Integer>();
+    assertFalse(buffer.shouldDrain());
+    for (int i = 1; i < ReadBuffer.DRAIN_PENDING; i++) {
+      buffer.offer(i);
+      assertFalse(buffer.shouldDrain());
+    }
+    buffer.offer(ReadBuffer.DRAIN_PENDING);
+    assertTrue(buffer.shouldDrain());
+
+    buffer.clear();
+    assertTrue(buffer.isEmpty());
+    assertFalse(buffer.shouldDrain());
+  }
+
+  public void testConcurrentOffer() throws Exception {
+    final ReadBuffer<Integer> buffer = new ReadBuffer<Integer>();
+    final int nThreads = 8;
+    final int offersPerThread = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger accepted = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+    try {
+      List<Future<?>> futures = Lists.newArrayList();
+      for (int t = 0; t < nThreads; t++) {
+        futures.add(executor.submit(new Runnable() {
+          @Override public void run() {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              throw new AssertionError(e);
+            }
+            for (int i = 0; i < offersPerThread; i++) {
+              if (buffer.offer(i)) {
+                accepted.incrementAndGet();
+              }
+            }
+          }
+        }));
+      }
+
+      // drain concurrently, as the cache does under its lock
+      int polled = 0;
+      start.countDown();
+      while (!allDone(futures)) {
+        if (buffer.poll() != null) {
+          polled++;
+        }
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      while (buffer.poll() != null) {
+        polled++;
+      }
+      assertEquals(accepted.get(), polled);
+      assertTrue(buffer.stripes() <= ReadBuffer.MAX_STRIPES);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean allDone(List<Future<?>> futures) {
+    for (Future<?> future : futures) {
+      if (!future.isDone()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.cache.CacheExpirationTest.ValueExpiry;
+import com.google.common.cache.LocalCache.ReferenceEntry;
+import com.google.common.cache.LocalCache.Segment;
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.FakeTicker;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TimerWheel}.
+ */
+public class TimerWheelTest extends TestCase {
+  FakeTicker ticker;
+  LocalCache<Integer, Long> map;
+  Segment<Integer, Long> segment;
+  TimerWheel<Integer, Long> timerWheel;
+
+  @Override
+  protected void setUp() {
+    ticker = new FakeTicker();
+    map = CacheTesting.toLocalCache(CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .expireAfter(new ValueExpiry())
+        .ticker(ticker)
+        .build(TestingCacheLoaders.<Integer, Long>constantLoader(null)));
+    segment = map.segments[0];
+    timerWheel = segment.timerWheel;
+  }
+
+  public void testSpans() {
+    for (int i = 0; i < TimerWheel.SHIFT.length; i++) {
+      assertEquals(1L << TimerWheel.SHIFT[i], TimerWheel.SPANS[i]);
+    }
+    assertThat(TimerWheel.SPANS[0]).isAtLeast(SECONDS.toNanos(1));
+    assertThat(TimerWheel.SPANS[3]).isAtLeast(DAYS.toNanos(1));
+  }
+
+  public void testFindBucket_levels() {
+    assertEquals(0, levelOf(timerWheel.findBucket(SECONDS.toNanos(30))));
+    assertEquals(1, levelOf(timerWheel.findBucket(MINUTES.toNanos(30))));
+    assertEquals(2, levelOf(timerWheel.findBucket(HOURS.toNanos(10))));
+    assertEquals(3, levelOf(timerWheel.findBucket(DAYS.toNanos(3))));
+    assertEquals(4, levelOf(timerWheel.findBucket(DAYS.toNanos(365))));
+  }
+
+  public void testSchedule() {
+    map.put(1, HOURS.toMillis(10));
+    map.put(2, SECONDS.toMillis(10));
+    ReferenceEntry<Integer, Long> hours = segment.getEntry(1, map.hash(1));
+    ReferenceEntry<Integer, Long> seconds = segment.getEntry(2, map.hash(2));
+
+    assertEquals(2, timerWheel.size());
+    assertTrue(timerWheel.contains(hours));
+    assertThat(ImmutableList.copyOf(timerWheel)).containsExactly(hours, seconds);
+    assertSame(seconds, timerWheel.peek());
+
+    map.remove(1);
+    assertFalse(timerWheel.contains(hours));
+    assertEquals(1, timerWheel.size());
+  }
+
+  public void testAdvance_cascades() {
+    map.put(1, HOURS.toMillis(10));
+    ReferenceEntry<Integer, Long> entry = segment.getEntry(1, map.hash(1));
+    ReferenceEntry<Integer, Long> bucket = entry.getNextInWriteQueue();
+    assertEquals(2, levelOf(bucket));
+
+    // once most of its lifetime has passed, the entry moves to a finer level
+    ticker.advance(HOURS.toNanos(10) - SECONDS.toNanos(5));
+    map.cleanUp();
+    assertEquals(0, levelOf(entry.getNextInWriteQueue()));
+    assertTrue(map.containsKey(1));
+
+    ticker.advance(5, SECONDS);
+    ticker.advance(2, SECONDS);
+    map.cleanUp();
+    assertFalse(timerWheel.contains(entry));
+    assertEquals(0, map.size());
+  }
+
+  public void testAdvance_extendedEntryIsRescheduled() {
+    map.put(1, 1000L);
+    ReferenceEntry<Integer, Long> entry = segment.getEntry(1, map.hash(1));
+
+    // simulate a read whose update of the wheel was lost
+    entry.setAccessTime(ticker.read() + MINUTES.toNanos(10));
+    ticker.advance(5, SECONDS);
+    map.cleanUp();
+    assertTrue(timerWheel.contains(entry));
+    assertEquals(1, levelOf(entry.getNextInWriteQueue()));
+    assertTrue(map.containsKey(1));
+  }
+
+  public void testClear() {
+    for (int i = 1; i <= 100; i++) {
+      map.put(i, SECONDS.toMillis(i));
+    }
+    assertEquals(100, timerWheel.size());
+    map.clear();
+    assertTrue(timerWheel.isEmpty());
+    assertEquals(0, timerWheel.size());
+  }
+
+  public void testAdvance_manyEntries() {
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, MILLISECONDS.convert(i, MINUTES));
+    }
+    for (int i = 0; i < 1000; i += 10) {
+      ticker.advance(10, MINUTES);
+      map.cleanUp();
+      CacheTesting.checkExpiration(map);
+      assertThat((long) map.size()).isAtMost(1000L - i);
+      assertThat((long) map.size()).isAtLeast(1000L - i - 11);
+    }
+    ticker.advance(20, MINUTES);
+    map.cleanUp();
+    assertEquals(0, map.size());
+  }
+
+  private int levelOf(ReferenceEntry<Integer, Long> sentinel) {
+    for (int i = 0; i < timerWheel.wheel.length; i++) {
+      for (ReferenceEntry<Integer, Long> bucket : timerWheel.wheel[i]) {
+        if (bucket == sentinel) {
+          return i;
+        }
+      }
+    }
+    throw new AssertionError("not a bucket");
+  }
+}
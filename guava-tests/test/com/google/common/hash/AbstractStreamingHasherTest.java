@@ -53,6 +53,25 @@ public class AbstractStreamingHasherTest extends TestCase {
     sink.assertBytes(expected);
   }
 
+  public void testByteBuffer() {
+    byte[] expected = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+    for (boolean direct : new boolean[] {false, true}) {
+      ByteBuffer buffer = HashTestUtils.byteBuffer(expected, direct);
+      buffer.limit(7);
+      Sink sink = new Sink(4);
+      sink.putByte((byte) 1);
+      buffer.position(1);
+      sink.putBytes(buffer);
+      assertEquals(7, buffer.position());
+      assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+      buffer.limit(10);
+      sink.putBytes(buffer);
+      HashCode unused = sink.hash();
+      sink.assertInvariants(10);
+      sink.assertBytes(expected);
+    }
+  }
+
   public void testShort() {
     Sink sink = new Sink(4);
     sink.putShort((short) 0x0201);
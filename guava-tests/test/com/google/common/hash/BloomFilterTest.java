@@ -18,9 +18,12 @@ package com.google.common.hash;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.hash.BloomFilterStrategies.BitArray;
+import static com.google.common.hash.BloomFilterStrategies.LockFreeBitArray;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 import com.google.common.math.LongMath;
 import com.google.common.primitives.Ints;
 import com.google.common.testing.EqualsTester;
@@ -31,8 +34,20 @@ import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
@@ -47,7 +62,7 @@ public class BloomFilterTest extends TestCase {
     long numBits = Integer.MAX_VALUE;
     numBits++;
 
-    BitArray bitArray = new BitArray(numBits);
+    BitArray bitArray = new LockFreeBitArray(numBits);
     assertTrue(
         "BitArray.bitSize() must return a positive number, but was " + bitArray.bitSize(),
         bitArray.bitSize() > 0);
@@ -138,6 +153,117 @@ public class BloomFilterTest extends TestCase {
     assertEquals(actualFpp, expectedFpp, 0.00033);
   }
 
+  public void testCreateAndCheckBlockedBloomFilterWithKnownFalsePositives() {
+    int numInsertions = 1000000;
+    BloomFilter<String> bf = BloomFilter.create(
+        Funnels.unencodedCharsFunnel(), numInsertions, 0.03,
+        BloomFilterStrategies.MURMUR128_BLOCKED_512);
+
+    // Insert "numInsertions" even numbers into the BF.
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      bf.put(Integer.toString(i));
+    }
+
+    // Assert that the BF "might" have all of the even numbers.
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      assertTrue(bf.mightContain(Integer.toString(i)));
+    }
+
+    // Now we check for known false positives using a set of known false positives.
+    // (These are all of the false positives under 900.)
+    ImmutableSet<Integer> falsePositives = ImmutableSet.of(
+        63, 65, 115, 167, 299, 399, 521, 567, 583, 775);
+    for (int i = 1; i < 900; i += 2) {
+      if (!falsePositives.contains(i)) {
+        assertFalse("BF should not contain " + i, bf.mightContain(Integer.toString(i)));
+      }
+    }
+
+    // Check that there are exactly 28813 false positives for this BF.
+    int knownNumberOfFalsePositives = 28813;
+    int numFpp = 0;
+    for (int i = 1; i < numInsertions * 2; i += 2) {
+      if (bf.mightContain(Integer.toString(i))) {
+        numFpp++;
+      }
+    }
+    assertEquals(knownNumberOfFalsePositives, numFpp);
+    double actualFpp = (double) knownNumberOfFalsePositives / numInsertions;
+    double expectedFpp = bf.expectedFpp();
+    // The normal order of (expected, actual) is reversed here on purpose.
+    assertEquals(actualFpp, expectedFpp, 0.00033);
+    assertTrue(actualFpp < 0.03);
+  }
+
+  public void testBlockedBitsWithinOneBlock() {
+    int numHashFunctions = 7;
+    BitArray bits = new LockFreeBitArray(64 * BloomFilterStrategies.BLOCK_BITS);
+    for (int i = 0; i < 100; i++) {
+      BitArray elementBits = new LockFreeBitArray(bits.bitSize());
+      BloomFilterStrategies.MURMUR128_BLOCKED_512.put(
+          i, Funnels.integerFunnel(), numHashFunctions, elementBits);
+      long minIndex = Long.MAX_VALUE;
+      long maxIndex = Long.MIN_VALUE;
+      for (long index = 0; index < elementBits.bitSize(); index++) {
+        if (elementBits.get(index)) {
+          minIndex = Math.min(minIndex, index);
+          maxIndex = Math.max(maxIndex, index);
+        }
+      }
+      assertTrue(elementBits.bitCount() > 0);
+      assertTrue(elementBits.bitCount() <= numHashFunctions);
+      assertEquals(
+          minIndex / BloomFilterStrategies.BLOCK_BITS, maxIndex / BloomFilterStrategies.BLOCK_BITS);
+    }
+  }
+
+  public void testOptimalNumOfBlockedBits() {
+    for (double fpp : new double[] {0.5, 0.03, 0.001, 1e-6}) {
+      for (long n : new long[] {1, 1000, 1000000}) {
+        long unblocked = BloomFilter.optimalNumOfBits(n, fpp);
+        int k = BloomFilter.optimalNumOfHashFunctions(n, unblocked);
+        long blocked = BloomFilter.optimalNumOfBlockedBits(n, fpp, k);
+        assertEquals(0, blocked % BloomFilterStrategies.BLOCK_BITS);
+        assertTrue(blocked >= unblocked);
+        double lambda = (double) n * BloomFilterStrategies.BLOCK_BITS / blocked;
+        assertTrue(BloomFilter.blockedFpp(lambda, k) <= fpp);
+      }
+    }
+  }
+
+  public void testBlockedFpp() {
+    assertEquals(0.0, BloomFilter.blockedFpp(0.0, 5));
+    // few elements per block behave like an unblocked filter
+    double lambda = 0.001;
+    assertEquals(lambda * Math.pow(5.0 / BloomFilterStrategies.BLOCK_BITS, 5),
+        BloomFilter.blockedFpp(lambda, 5), 1e-15);
+    assertEquals(1.0, BloomFilter.blockedFpp(100000, 5), 1e-9);
+    for (double load : new double[] {0.0, 1.0, 50.0, 500.0}) {
+      double fractionOfBitsSet =
+          1 - Math.exp(load * (Math.pow(1 - 1.0 / BloomFilterStrategies.BLOCK_BITS, 5) - 1));
+      assertEquals(load, BloomFilter.blockLoad(fractionOfBitsSet, 5), 1e-9 * (load + 1));
+    }
+  }
+
+  public void testCreateBlocked() throws Exception {
+    BloomFilter<Integer> bf = BloomFilter.createBlocked(Funnels.integerFunnel(), 1000, 0.01);
+    assertEquals(0, bf.bitSize() % BloomFilterStrategies.BLOCK_BITS);
+    assertTrue(bf.bitSize() > BloomFilter.create(Funnels.integerFunnel(), 1000, 0.01).bitSize());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bf.put(i));
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bf.mightContain(i));
+    }
+    assertTrue(bf.expectedFpp() < 0.01);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    bf.writeTo(out);
+    assertEquals(bf, BloomFilter.readFrom(
+        new ByteArrayInputStream(out.toByteArray()), Funnels.integerFunnel()));
+    SerializableTester.reserializeAndAssert(bf);
+  }
+
   public void testCreateAndCheckBloomFilterWithKnownUtf8FalsePositives64() {
     int numInsertions = 1000000;
     BloomFilter<String> bf = BloomFilter.create(
@@ -470,13 +596,243 @@ public class BloomFilterTest extends TestCase {
     assertEquals(bf, BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()), funnel));
   }
 
+  public void testBitArray_concurrentSetsAreNotLost() throws Exception {
+    final int numThreads = 8;
+    final LockFreeBitArray bits = new LockFreeBitArray(64 * 1024);
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    List<Future<Integer>> futures = Lists.newArrayList();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (int t = 0; t < numThreads; t++) {
+        final int offset = t;
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws InterruptedException {
+            startSignal.await();
+            // interleave the threads' bits so that they all write to the same words
+            int changed = 0;
+            for (long i = offset; i < bits.bitSize(); i += numThreads) {
+              if (bits.set(i)) {
+                changed++;
+              }
+            }
+            return changed;
+          }
+        }));
+      }
+      startSignal.countDown();
+      int changed = 0;
+      for (Future<Integer> future : futures) {
+        changed += future.get();
+      }
+      assertEquals(bits.bitSize(), changed);
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(bits.bitSize(), bits.bitCount());
+    for (int i = 0; i < bits.data.length(); i++) {
+      assertEquals(-1L, bits.data.get(i));
+    }
+  }
+
+  public void testConcurrentPutAndMightContain() throws Exception {
+    final int numThreads = 4;
+    final int numInsertions = 10000;
+    final BloomFilter<Integer> bf =
+        BloomFilter.create(Funnels.integerFunnel(), numThreads * numInsertions, 0.01);
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    List<Future<?>> futures = Lists.newArrayList();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (int t = 0; t < numThreads; t++) {
+        final int offset = t * numInsertions;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws InterruptedException {
+            startSignal.await();
+            for (int i = offset; i < offset + numInsertions; i++) {
+              bf.put(i);
+              assertTrue(bf.mightContain(i));
+            }
+            return null;
+          }
+        }));
+      }
+      startSignal.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    BloomFilter<Integer> sequential =
+        BloomFilter.create(Funnels.integerFunnel(), numThreads * numInsertions, 0.01);
+    for (int i = 0; i < numThreads * numInsertions; i++) {
+      assertTrue(bf.mightContain(i));
+      sequential.put(i);
+    }
+    assertEquals(sequential, bf);
+    assertEquals(sequential.expectedFpp(), bf.expectedFpp());
+  }
+
+  public void testPutAll_bitCount() {
+    BloomFilter<Integer> bf1 = BloomFilter.create(Funnels.integerFunnel(), 100);
+    BloomFilter<Integer> bf2 = BloomFilter.create(Funnels.integerFunnel(), 100);
+    for (int i = 0; i < 50; i++) {
+      bf1.put(i);
+      bf2.put(i + 25);
+    }
+    BloomFilter<Integer> union = BloomFilter.create(Funnels.integerFunnel(), 100);
+    for (int i = 0; i < 75; i++) {
+      union.put(i);
+    }
+    bf1.putAll(bf2);
+    assertEquals(union, bf1);
+    assertEquals(union.expectedFpp(), bf1.expectedFpp());
+  }
+
+  public void testMap() throws Exception {
+    BloomFilter<Integer> bf = BloomFilter.create(Funnels.integerFunnel(), 1000, 0.01);
+    for (int i = 0; i < 500; i++) {
+      bf.put(i);
+    }
+    File file = File.createTempFile("BloomFilterTest", ".bloom");
+    try {
+      writeTo(bf, file);
+      BloomFilter<Integer> mapped = BloomFilter.map(file, Funnels.integerFunnel());
+      assertEquals(bf, mapped);
+      assertEquals(bf.hashCode(), mapped.hashCode());
+      assertEquals(bf.expectedFpp(), mapped.expectedFpp());
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(bf.mightContain(i), mapped.mightContain(i));
+      }
+
+      // puts are written through to the file
+      for (int i = 500; i < 1000; i++) {
+        assertEquals(bf.put(i), mapped.put(i));
+      }
+      assertEquals(bf, mapped);
+      assertEquals(bf.expectedFpp(), mapped.expectedFpp());
+      assertEquals(bf, BloomFilter.map(file, Funnels.integerFunnel()));
+      assertEquals(bf, BloomFilter.readFrom(
+          new ByteArrayInputStream(Files.toByteArray(file)), Funnels.integerFunnel()));
+
+      BloomFilter<Integer> copy = mapped.copy();
+      assertEquals(bf, copy);
+      SerializableTester.reserializeAndAssert(mapped);
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testMap_putAll() throws Exception {
+    BloomFilter<Integer> bf = BloomFilter.create(Funnels.integerFunnel(), 1000, 0.01);
+    BloomFilter<Integer> other = BloomFilter.create(Funnels.integerFunnel(), 1000, 0.01);
+    for (int i = 0; i < 500; i++) {
+      bf.put(i);
+      other.put(i + 250);
+    }
+    File file = File.createTempFile("BloomFilterTest", ".bloom");
+    try {
+      writeTo(bf, file);
+      BloomFilter<Integer> mapped = BloomFilter.map(file, Funnels.integerFunnel());
+      mapped.putAll(other);
+      bf.putAll(other);
+      assertEquals(bf, mapped);
+      assertEquals(bf.expectedFpp(), mapped.expectedFpp());
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testMap_invalidFile() throws Exception {
+    BloomFilter<Integer> bf = BloomFilter.create(Funnels.integerFunnel(), 1000, 0.01);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    bf.writeTo(out);
+    byte[] bytes = out.toByteArray();
+    File file = File.createTempFile("BloomFilterTest", ".bloom");
+    try {
+      Files.write(Arrays.copyOf(bytes, bytes.length - 1), file);
+      try {
+        BloomFilter.map(file, Funnels.integerFunnel());
+        fail();
+      } catch (IOException expected) {
+      }
+
+      bytes[0] = 42; // strategy ordinal
+      Files.write(bytes, file);
+      try {
+        BloomFilter.map(file, Funnels.integerFunnel());
+        fail();
+      } catch (IOException expected) {
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testReadFrom_blockedPartialBlock() throws Exception {
+    for (int dataLength : new int[] {0, 4, 12}) {
+      try {
+        BloomFilter.readFrom(
+            new ByteArrayInputStream(blockedFilterBytes(dataLength)), Funnels.integerFunnel());
+        fail();
+      } catch (IOException expected) {
+        assertTrue(expected.getCause() instanceof IllegalArgumentException);
+      }
+    }
+    BloomFilter<Integer> bf = BloomFilter.readFrom(
+        new ByteArrayInputStream(blockedFilterBytes(16)), Funnels.integerFunnel());
+    assertFalse(bf.mightContain(1));
+    assertTrue(bf.put(1));
+  }
+
+  public void testMap_blockedPartialBlock() throws Exception {
+    File file = File.createTempFile("BloomFilterTest", ".bloom");
+    try {
+      Files.write(blockedFilterBytes(4), file);
+      try {
+        BloomFilter.map(file, Funnels.integerFunnel());
+        fail();
+      } catch (IOException expected) {
+        assertTrue(expected.getCause() instanceof IllegalArgumentException);
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  /** Returns the serial form of an empty blocked filter with {@code dataLength} longs of bits. */
+  private static byte[] blockedFilterBytes(int dataLength) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(BloomFilterStrategies.MURMUR128_BLOCKED_512.ordinal());
+    out.writeByte(5); // numHashFunctions
+    out.writeInt(dataLength);
+    for (int i = 0; i < dataLength; i++) {
+      out.writeLong(0);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeTo(BloomFilter<?> bf, File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      bf.writeTo(out);
+    } finally {
+      out.close();
+    }
+  }
+
   /**
    * This test will fail whenever someone updates/reorders the BloomFilterStrategies constants.
    * Only appending a new constant is allowed.
    */
   public void testBloomFilterStrategies() {
-    assertThat(BloomFilterStrategies.values()).hasLength(2);
+    assertThat(BloomFilterStrategies.values()).hasLength(3);
     assertEquals(BloomFilterStrategies.MURMUR128_MITZ_32, BloomFilterStrategies.values()[0]);
     assertEquals(BloomFilterStrategies.MURMUR128_MITZ_64, BloomFilterStrategies.values()[1]);
+    assertEquals(BloomFilterStrategies.MURMUR128_BLOCKED_512, BloomFilterStrategies.values()[2]);
   }
 }
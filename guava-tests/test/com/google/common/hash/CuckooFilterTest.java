@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Charsets;
+import com.google.common.primitives.Ints;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests for {@link CuckooFilter}.
+ */
+public class CuckooFilterTest extends TestCase {
+
+  public void testBasic() {
+    CuckooFilter<Integer> cf = CuckooFilter.create(Funnels.integerFunnel(), 100);
+    assertFalse(cf.mightContain(1));
+    assertTrue(cf.put(1));
+    assertTrue(cf.mightContain(1));
+    assertEquals(1, cf.approximateElementCount());
+    assertTrue(cf.remove(1));
+    assertFalse(cf.mightContain(1));
+    assertEquals(0, cf.approximateElementCount());
+    assertFalse(cf.remove(1));
+  }
+
+  public void testKnownFalsePositives() {
+    int numInsertions = 1000000;
+    CuckooFilter<Integer> cf = CuckooFilter.create(Funnels.integerFunnel(), numInsertions, 0.03);
+
+    // Insert "numInsertions" even numbers into the CF.
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      assertTrue(cf.put(i));
+    }
+    assertEquals(numInsertions, cf.approximateElementCount());
+
+    // Assert that the CF "might" have all of the even numbers.
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      assertTrue(cf.mightContain(i));
+    }
+
+    // Now we check for the odd numbers, which were never inserted.
+    int numFpp = 0;
+    for (int i = 1; i < numInsertions * 2; i += 2) {
+      if (cf.mightContain(i)) {
+        numFpp++;
+      }
+    }
+    double actualFpp = (double) numFpp / numInsertions;
+    assertThat(actualFpp).isLessThan(0.03);
+    assertEquals(cf.expectedFpp(), actualFpp, 0.001);
+  }
+
+  public void testRemove_allInserted() {
+    int numInsertions = 100000;
+    CuckooFilter<Integer> cf = CuckooFilter.create(Funnels.integerFunnel(), numInsertions, 0.01);
+    for (int i = 0; i < numInsertions; i++) {
+      cf.put(i);
+    }
+    // remove the even numbers; the odd numbers must remain
+    for (int i = 0; i < numInsertions; i += 2) {
+      assertTrue(cf.remove(i));
+    }
+    for (int i = 1; i < numInsertions; i += 2) {
+      assertTrue(cf.mightContain(i));
+    }
+    assertEquals(numInsertions / 2, cf.approximateElementCount());
+    for (int i = 1; i < numInsertions; i += 2) {
+      assertTrue(cf.remove(i));
+    }
+    assertEquals(0, cf.approximateElementCount());
+    assertEquals(CuckooFilter.create(Funnels.integerFunnel(), numInsertions, 0.01), cf);
+  }
+
+  public void testPutTwice_removeOnce() {
+    CuckooFilter<String> cf = CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    assertTrue(cf.put("a"));
+    assertTrue(cf.put("a"));
+    assertTrue(cf.remove("a"));
+    assertTrue(cf.mightContain("a"));
+    assertTrue(cf.remove("a"));
+    assertFalse(cf.mightContain("a"));
+  }
+
+  public void testPut_sameElementUntilFull() {
+    CuckooFilter<String> cf = CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    int copies = 0;
+    while (cf.put("a")) {
+      copies++;
+    }
+    // two buckets, and one copy as the victim
+    assertEquals(2 * CuckooFilter.BUCKET_SIZE + 1, copies);
+    assertFalse(cf.put("b"));
+    assertTrue(cf.remove("a"));
+    assertTrue(cf.put("b"));
+    assertTrue(cf.mightContain("a"));
+    assertTrue(cf.mightContain("b"));
+  }
+
+  public void testPut_untilFull() {
+    int expectedInsertions = 10000;
+    CuckooFilter<Integer> cf = CuckooFilter.create(Funnels.integerFunnel(), expectedInsertions);
+    int inserted = 0;
+    while (cf.put(inserted)) {
+      inserted++;
+    }
+    // a full filter rejects elements without changing
+    CuckooFilter<Integer> full = cf.copy();
+    assertFalse(cf.put(inserted));
+    assertEquals(full, cf);
+
+    long capacity = cf.bitSize() / cf.fingerprintBits();
+    assertThat(inserted).isAtLeast(expectedInsertions);
+    assertThat((double) inserted / capacity).isGreaterThan(0.94);
+    assertEquals(inserted, cf.approximateElementCount());
+    for (int i = 0; i < inserted; i++) {
+      assertTrue(cf.mightContain(i));
+    }
+    assertThat(cf.expectedFpp()).isLessThan(0.03);
+
+    // removing an element makes room for the victim
+    assertTrue(cf.remove(0));
+    for (int i = 1; i < inserted; i++) {
+      assertTrue(cf.mightContain(i));
+    }
+    for (int i = 1; i < inserted; i++) {
+      assertTrue(cf.remove(i));
+    }
+    assertEquals(0, cf.approximateElementCount());
+  }
+
+  public void testPreconditions() {
+    try {
+      CuckooFilter.create(Funnels.unencodedCharsFunnel(), -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      CuckooFilter.create(Funnels.unencodedCharsFunnel(), 1, 0.0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      CuckooFilter.create(Funnels.unencodedCharsFunnel(), 1, 1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      CuckooFilter.create(Funnels.unencodedCharsFunnel(), 1, 1e-9);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      CuckooFilter.create(Funnels.unencodedCharsFunnel(), Long.MAX_VALUE / 2, 0.03);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicInstanceMethods(CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100));
+    tester.testAllPublicStaticMethods(CuckooFilter.class);
+  }
+
+  public void testOptimalFingerprintBits() {
+    assertEquals(9, CuckooFilter.optimalFingerprintBits(0.03));
+    assertEquals(10, CuckooFilter.optimalFingerprintBits(0.01));
+    assertEquals(5, CuckooFilter.optimalFingerprintBits(0.5));
+    assertEquals(CuckooFilter.MAX_FINGERPRINT_BITS, CuckooFilter.optimalFingerprintBits(2e-9));
+  }
+
+  public void testOptimalNumOfBuckets() {
+    assertEquals(1, CuckooFilter.optimalNumOfBuckets(0));
+    assertEquals(1, CuckooFilter.optimalNumOfBuckets(3));
+    assertEquals(2, CuckooFilter.optimalNumOfBuckets(4));
+    assertEquals(27778, CuckooFilter.optimalNumOfBuckets(100000));
+  }
+
+  /** A cuckoo filter takes less space than a counting Bloom filter with 4-bit counters. */
+  public void testBitsPerElement() {
+    int expectedInsertions = 1000000;
+    for (double fpp : new double[] {0.03, 0.01, 0.001, 0.0001}) {
+      CuckooFilter<Integer> cf =
+          CuckooFilter.create(Funnels.integerFunnel(), expectedInsertions, fpp);
+      long countingBloomBits = 4 * BloomFilter.optimalNumOfBits(expectedInsertions, fpp);
+      assertThat(cf.bitSize()).isLessThan(countingBloomBits / 2);
+    }
+  }
+
+  public void testExpectedFpp() {
+    CuckooFilter<Integer> cf = CuckooFilter.create(Funnels.integerFunnel(), 100, 0.03);
+    assertEquals(0.0, cf.expectedFpp());
+    for (int i = 0; i < 100; i++) {
+      cf.put(i);
+    }
+    assertThat(cf.expectedFpp()).isGreaterThan(0.0);
+    assertThat(cf.expectedFpp()).isLessThan(0.03);
+  }
+
+  public void testCopy() {
+    CuckooFilter<String> original = CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    CuckooFilter<String> copy = original.copy();
+    assertNotSame(original, copy);
+    assertEquals(original, copy);
+    copy.put("a");
+    assertFalse(original.mightContain("a"));
+  }
+
+  public void testEquals() {
+    CuckooFilter<String> cf1 = CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    cf1.put("1");
+    cf1.put("2");
+
+    CuckooFilter<String> cf2 = CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    cf2.put("1");
+    cf2.put("2");
+
+    new EqualsTester()
+        .addEqualityGroup(cf1, cf2)
+        .addEqualityGroup(CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100))
+        .addEqualityGroup(CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01))
+        .addEqualityGroup(CuckooFilter.create(Funnels.unencodedCharsFunnel(), 200))
+        .addEqualityGroup(CuckooFilter.create(Funnels.stringFunnel(Charsets.UTF_8), 100))
+        .testEquals();
+  }
+
+  public void testPutAll() {
+    CuckooFilter<Integer> cf1 = CuckooFilter.create(Funnels.integerFunnel(), 1000);
+    CuckooFilter<Integer> cf2 = CuckooFilter.create(Funnels.integerFunnel(), 1000);
+    for (int i = 0; i < 500; i++) {
+      cf1.put(i);
+      cf2.put(i + 500);
+    }
+    assertTrue(cf1.isCompatible(cf2));
+    assertTrue(cf1.putAll(cf2));
+    assertEquals(1000, cf1.approximateElementCount());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(cf1.mightContain(i));
+    }
+    assertEquals(500, cf2.approximateElementCount());
+  }
+
+  public void testPutAll_full() {
+    CuckooFilter<Integer> cf1 = CuckooFilter.create(Funnels.integerFunnel(), 1000);
+    CuckooFilter<Integer> cf2 = CuckooFilter.create(Funnels.integerFunnel(), 1000);
+    for (int i = 0; i < 1000; i++) {
+      cf1.put(i);
+      cf2.put(i + 1000);
+    }
+    assertFalse(cf1.putAll(cf2));
+    assertFalse(cf1.put(-1));
+  }
+
+  public void testPutAll_incompatible() {
+    CuckooFilter<Integer> cf = CuckooFilter.create(Funnels.integerFunnel(), 1000);
+    CuckooFilter<Integer> differentSize = CuckooFilter.create(Funnels.integerFunnel(), 2000);
+    CuckooFilter<Integer> differentFpp = CuckooFilter.create(Funnels.integerFunnel(), 1000, 0.01);
+    assertFalse(cf.isCompatible(cf));
+    assertFalse(cf.isCompatible(differentSize));
+    assertFalse(cf.isCompatible(differentFpp));
+    try {
+      cf.putAll(cf);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      cf.putAll(differentSize);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      cf.putAll(differentFpp);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testJavaSerialization() {
+    CuckooFilter<byte[]> cf = CuckooFilter.create(Funnels.byteArrayFunnel(), 100);
+    for (int i = 0; i < 10; i++) {
+      cf.put(Ints.toByteArray(i));
+    }
+
+    CuckooFilter<byte[]> copy = SerializableTester.reserialize(cf);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(copy.mightContain(Ints.toByteArray(i)));
+    }
+    assertEquals(cf.expectedFpp(), copy.expectedFpp());
+
+    SerializableTester.reserializeAndAssert(cf);
+  }
+
+  public void testCustomSerialization() throws Exception {
+    Funnel<byte[]> funnel = Funnels.byteArrayFunnel();
+    CuckooFilter<byte[]> cf = CuckooFilter.create(funnel, 100);
+    for (int i = 0; i < 100; i++) {
+      cf.put(Ints.toByteArray(i));
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    cf.writeTo(out);
+
+    CuckooFilter<byte[]> read =
+        CuckooFilter.readFrom(new ByteArrayInputStream(out.toByteArray()), funnel);
+    assertEquals(cf, read);
+    assertEquals(100, read.approximateElementCount());
+  }
+
+  public void testCustomSerialization_withVictim() throws Exception {
+    CuckooFilter<CharSequence> cf = CuckooFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    while (cf.put("a")) {}
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    cf.writeTo(out);
+    CuckooFilter<CharSequence> read = CuckooFilter.readFrom(
+        new ByteArrayInputStream(out.toByteArray()), Funnels.unencodedCharsFunnel());
+    assertEquals(cf, read);
+    assertEquals(cf.approximateElementCount(), read.approximateElementCount());
+    assertFalse(read.put("b"));
+  }
+
+  public void testReadFrom_invalid() {
+    // zero buckets
+    byte[] bytes = new byte[25];
+    bytes[0] = 9;
+    try {
+      CuckooFilter.readFrom(new ByteArrayInputStream(bytes), Funnels.integerFunnel());
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+}
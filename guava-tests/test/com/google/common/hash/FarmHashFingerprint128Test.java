@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for FarmHashFingerprint128.
+ */
+public class FarmHashFingerprint128Test extends TestCase {
+
+  private static final HashFunction HASH_FN = Hashing.farmHashFingerprint128();
+
+  // Expected values are the low and high halves of CityHash128 from CityHash 1.1.
+  public void testKnownValues() {
+    assertHash(0x3df09dfc64c09a2bL, 0x3cb540c392e51e29L, "");
+    assertHash(0x6f72e4abb491a74aL, 0x65148f580b45f347L, "hello");
+    assertHash(0xa7f9a86a2d60c968L, 0xbf1498f876dbe279L,
+        "The quick brown fox jumps over the lazy dog");
+    assertHash(0x3d683d27a953e3e1L, 0x3ef506a3dd470f82L,
+        "The quick brown fox jumps over the lazy dog.");
+  }
+
+  /** Covers each length class of the algorithm, with inputs of {@code (byte) (i * 31 + 7)}. */
+  public void testKnownValues_lengths() {
+    byte[] input = new byte[1000];
+    for (int i = 0; i < input.length; i++) {
+      input[i] = (byte) (i * 31 + 7);
+    }
+    assertHash(0x2fbf70079ceacfa3L, 0xc07d4481a0365e29L, input, 1);
+    assertHash(0x23ce08bdf9647a81L, 0x07c7f3fd44132f65L, input, 3);
+    assertHash(0xd29be0c38e8940e9L, 0x4386f4a889426fd1L, input, 8);
+    assertHash(0xc414ab0048d78763L, 0xbc1377dd9752400eL, input, 16);
+    assertHash(0x10111a8ed7ff3ad6L, 0xa33ea8faf90a6a91L, input, 17);
+    assertHash(0x78a05bd81d7f23c3L, 0x30c6df7559c77b3dL, input, 63);
+    assertHash(0x530175d94275f72fL, 0xb6a8bede30649a6fL, input, 64);
+    assertHash(0xe21b381076626781L, 0x7553aac117bc4379L, input, 127);
+    assertHash(0x0f3a047ae7668225L, 0x84fa7762b61d1fcbL, input, 128);
+    assertHash(0x0edf9813d4c212a8L, 0x990c999bdfed047bL, input, 199);
+    assertHash(0x83f3c1481a9f7020L, 0x32030257f1aef110L, input, 255);
+    assertHash(0x348d6eda1e0511f2L, 0x5bde187c410bf9d7L, input, 256);
+    assertHash(0x0533a5ad3d67054bL, 0xb414ab3080c19f2eL, input, 300);
+    assertHash(0xf9db3ff2830425eeL, 0xde36936c3c9f4405L, input, 383);
+    assertHash(0x9bf140ff0e3dcfb4L, 0x64bb126cf9a82b53L, input, 1000);
+  }
+
+  private static void assertHash(long low, long high, String stringInput) {
+    byte[] input = HashTestUtils.ascii(stringInput);
+    assertHash(low, high, input, input.length);
+  }
+
+  private static void assertHash(long low, long high, byte[] input, int length) {
+    HashCode expected = toHashCode(low, high);
+    assertEquals(expected, HASH_FN.hashBytes(input, 0, length));
+    assertEquals(expected, HASH_FN.newHasher().putBytes(input, 0, length).hash());
+    assertEquals(low, HASH_FN.hashBytes(input, 0, length).asLong());
+
+    // the same bytes at an offset
+    byte[] shifted = new byte[length + 5];
+    System.arraycopy(input, 0, shifted, 5, length);
+    assertEquals(expected, HASH_FN.hashBytes(shifted, 5, length));
+  }
+
+  private static HashCode toHashCode(long low, long high) {
+    ByteBuffer bb = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    bb.putLong(low).putLong(high);
+    return HashCode.fromBytes(bb.array());
+  }
+
+  public void testInvariants() {
+    HashTestUtils.checkAvalanche(HASH_FN, 250, 0.17);
+    HashTestUtils.checkNoFunnels(HASH_FN);
+    HashTestUtils.assertInvariants(HASH_FN);
+  }
+
+  public void testToString() {
+    assertEquals("Hashing.farmHashFingerprint128()", HASH_FN.toString());
+  }
+}
@@ -21,6 +21,7 @@ import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Strings;
+import com.google.common.primitives.Longs;
 
 import junit.framework.TestCase;
 
@@ -143,6 +144,15 @@ public class FarmHashFingerprint64Test extends TestCase {
     assertEquals(0x388ee898bad75cbfL, hasher.hash().asLong());
   }
 
+  public void testHashLong() {
+    long[] values = {0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 0x0123456789abcdefL};
+    for (long value : values) {
+      assertEquals(HASH_FN.newHasher().putLong(value).hash(), HASH_FN.hashLong(value));
+      assertEquals(HASH_FN.hashBytes(Longs.toByteArray(Long.reverseBytes(value))),
+          HASH_FN.hashLong(value));
+    }
+  }
+
   /** Convenience method to compute a fingerprint on a full bytes array. */
   private static long fingerprint(byte[] bytes) {
     return fingerprint(bytes, bytes.length);
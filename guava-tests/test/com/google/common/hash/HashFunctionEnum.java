@@ -37,6 +37,8 @@ enum HashFunctionEnum {
   SHA512(Hashing.sha512()),
   SIP_HASH24(Hashing.sipHash24()),
   FARMHASH_FINGERPRINT_64(Hashing.farmHashFingerprint64()),
+  FARMHASH_FINGERPRINT_128(Hashing.farmHashFingerprint128()),
+  XX_HASH_64(Hashing.xxHash64()),
 
   // Hash functions found in //javatests for comparing against current implementation of CityHash.
   // These can probably be removed sooner or later.
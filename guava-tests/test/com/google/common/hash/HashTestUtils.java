@@ -26,6 +26,8 @@ import com.google.common.testing.EqualsTester;
 
 import org.junit.Assert;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Random;
@@ -172,6 +174,23 @@ final class HashTestUtils {
         }
       }
     },
+    PUT_BYTE_BUFFER() {
+      @Override void performAction(Random random, Iterable<? extends PrimitiveSink> sinks) {
+        byte[] value = new byte[random.nextInt(128)];
+        random.nextBytes(value);
+        int pos = random.nextInt(value.length + 1);
+        int limit = pos + random.nextInt(value.length - pos + 1);
+        boolean direct = random.nextBoolean();
+        ByteOrder order = random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        for (PrimitiveSink sink : sinks) {
+          ByteBuffer buffer = byteBuffer(value, direct).order(order);
+          buffer.limit(limit).position(pos);
+          sink.putBytes(buffer);
+          assertEquals(limit, buffer.position());
+          assertEquals(order, buffer.order());
+        }
+      }
+    },
     PUT_STRING() {
       @Override void performAction(Random random, Iterable<? extends PrimitiveSink> sinks) {
         char[] value = new char[random.nextInt(128)];
@@ -482,6 +501,7 @@ final class HashTestUtils {
     Random random = new Random(42085L);
     for (int i = 0; i < trials; i++) {
       assertHashBytesEquivalence(hashFunction, random);
+      assertHashByteBufferEquivalence(hashFunction, random);
       assertHashIntEquivalence(hashFunction, random);
       assertHashLongEquivalence(hashFunction, random);
       assertHashStringEquivalence(hashFunction, random);
@@ -501,6 +521,39 @@ final class HashTestUtils {
         hashFunction.newHasher(size).putBytes(bytes, off, len).hash());
   }
 
+  private static void assertHashByteBufferEquivalence(HashFunction hashFunction, Random random) {
+    int size = random.nextInt(2048);
+    byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    int off = random.nextInt(size + 1);
+    int len = random.nextInt(size - off + 1);
+    HashCode expected = hashFunction.hashBytes(bytes, off, len);
+    for (boolean direct : new boolean[] {false, true}) {
+      ByteBuffer buffer = byteBuffer(bytes, direct);
+      buffer.limit(off + len).position(off);
+      assertEquals(expected, hashFunction.hashBytes(buffer));
+      assertEquals(off + len, buffer.position());
+      assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+
+      // a buffer that does not start at the beginning of its backing array
+      buffer.position(off);
+      ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+      assertEquals(expected, hashFunction.newHasher().putBytes(slice).hash());
+      assertEquals(len, slice.position());
+      assertEquals(ByteOrder.LITTLE_ENDIAN, slice.order());
+    }
+  }
+
+  /** Returns a buffer holding {@code bytes}, either wrapping them or copied to direct memory. */
+  static ByteBuffer byteBuffer(byte[] bytes, boolean direct) {
+    if (!direct) {
+      return ByteBuffer.wrap(bytes);
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes).clear();
+    return buffer;
+  }
+
   private static void assertHashIntEquivalence(HashFunction hashFunction, Random random) {
     int i = random.nextInt();
     assertEquals(hashFunction.hashInt(i),
@@ -409,6 +409,121 @@ public class HashingTest extends TestCase {
     assertEquals(expected, actual);
   }
 
+  private static final ImmutableList<HashFunction> BULK_HASH_FUNCTIONS =
+      ImmutableList.of(
+          Hashing.murmur3_32(),
+          Hashing.murmur3_32(-1),
+          Hashing.murmur3_128(),
+          Hashing.murmur3_128(0x7fffffff),
+          Hashing.farmHashFingerprint64(),
+          Hashing.sipHash24(),
+          Hashing.crc32());
+
+  public void testHashLongs() {
+    Random random = new Random(RANDOM_SEED);
+    long[] input = new long[100];
+    for (int i = 0; i < input.length; i++) {
+      input[i] = random.nextLong();
+    }
+    input[0] = 0;
+    input[1] = -1;
+    for (HashFunction function : BULK_HASH_FUNCTIONS) {
+      int[] intOutput = new int[input.length + 1];
+      Hashing.hashLongs(function, input, intOutput);
+      for (int i = 0; i < input.length; i++) {
+        assertEquals(function.toString(), function.hashLong(input[i]).asInt(), intOutput[i]);
+      }
+      assertEquals(0, intOutput[input.length]);
+      if (function.bits() >= 64) {
+        long[] longOutput = new long[input.length];
+        Hashing.hashLongs(function, input, longOutput);
+        for (int i = 0; i < input.length; i++) {
+          assertEquals(function.toString(), function.hashLong(input[i]).asLong(), longOutput[i]);
+        }
+      }
+    }
+  }
+
+  public void testHashBytes() {
+    Random random = new Random(RANDOM_SEED);
+    byte[] bytes = new byte[500];
+    random.nextBytes(bytes);
+    // every length that the implementations treat differently, at every alignment mod 16
+    int[] offsets = new int[200];
+    int[] lengths = new int[200];
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = i % 17;
+      lengths[i] = i;
+    }
+    for (HashFunction function : BULK_HASH_FUNCTIONS) {
+      int[] intOutput = new int[offsets.length];
+      Hashing.hashBytes(function, bytes, offsets, lengths, intOutput);
+      for (int i = 0; i < offsets.length; i++) {
+        assertEquals(
+            function + " " + i,
+            function.hashBytes(bytes, offsets[i], lengths[i]).asInt(),
+            intOutput[i]);
+      }
+      if (function.bits() >= 64) {
+        long[] longOutput = new long[offsets.length];
+        Hashing.hashBytes(function, bytes, offsets, lengths, longOutput);
+        for (int i = 0; i < offsets.length; i++) {
+          assertEquals(
+              function + " " + i,
+              function.hashBytes(bytes, offsets[i], lengths[i]).asLong(),
+              longOutput[i]);
+        }
+      }
+    }
+  }
+
+  public void testHashLongs_preconditions() {
+    try {
+      Hashing.hashLongs(Hashing.murmur3_32(), new long[1], new long[1]);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      Hashing.hashLongs(Hashing.murmur3_128(), new long[2], new int[1]);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testHashBytes_preconditions() {
+    byte[] bytes = new byte[10];
+    try {
+      Hashing.hashBytes(Hashing.murmur3_32(), bytes, new int[1], new int[1], new long[1]);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      Hashing.hashBytes(Hashing.murmur3_32(), bytes, new int[2], new int[1], new int[2]);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      Hashing.hashBytes(Hashing.murmur3_32(), bytes, new int[2], new int[2], new int[1]);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    // the second range is checked before the first is hashed
+    int[] output = {42, 42};
+    try {
+      Hashing.hashBytes(
+          Hashing.murmur3_32(), bytes, new int[] {0, 5}, new int[] {10, 6}, output);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+    assertEquals(42, output[0]);
+    try {
+      Hashing.hashBytes(
+          Hashing.farmHashFingerprint64(), bytes, new int[] {5}, new int[] {-1}, new long[1]);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
   private static final String EMPTY_STRING = "";
   private static final String TQBFJOTLD = "The quick brown fox jumps over the lazy dog";
   private static final String TQBFJOTLDP = "The quick brown fox jumps over the lazy dog.";
@@ -484,6 +599,12 @@ public class HashingTest extends TestCase {
           .put(Hashing.farmHashFingerprint64(), EMPTY_STRING, "4f40902f3b6ae19a")
           .put(Hashing.farmHashFingerprint64(), TQBFJOTLD, "34511b3bf383beab")
           .put(Hashing.farmHashFingerprint64(), TQBFJOTLDP, "737d7e5f8660653e")
+          .put(Hashing.farmHashFingerprint128(), EMPTY_STRING, "2b9ac064fc9df03d291ee592c340b53c")
+          .put(Hashing.farmHashFingerprint128(), TQBFJOTLD, "68c9602d6aa8f9a779e2db76f89814bf")
+          .put(Hashing.farmHashFingerprint128(), TQBFJOTLDP, "e1e353a9273d683d820f47dda306f53e")
+          .put(Hashing.xxHash64(), EMPTY_STRING, "99e9d85137db46ef")
+          .put(Hashing.xxHash64(), TQBFJOTLD, "bc71da1f362d240b")
+          .put(Hashing.xxHash64(), TQBFJOTLDP, "73ad51577033ad44")
           .build();
 
   public void testAllHashFunctionsHaveKnownHashes() throws Exception {
@@ -513,7 +634,8 @@ public class HashingTest extends TestCase {
   public void testNullPointers() {
     NullPointerTester tester = new NullPointerTester()
         .setDefault(byte[].class, "secret key".getBytes(UTF_8))
-        .setDefault(HashCode.class, HashCode.fromLong(0));
+        .setDefault(HashCode.class, HashCode.fromLong(0))
+        .setDefault(HashFunction.class, Hashing.farmHashFingerprint64());
     tester.testAllPublicStaticMethods(Hashing.class);
   }
 
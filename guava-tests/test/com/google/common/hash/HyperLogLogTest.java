@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.Lists;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for {@link HyperLogLog}.
+ */
+public class HyperLogLogTest extends TestCase {
+
+  public void testEmpty() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    assertEquals(0, hll.cardinality());
+    assertEquals(HyperLogLog.DEFAULT_PRECISION, hll.precision());
+  }
+
+  public void testDuplicatesAreNotCounted() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    for (int i = 0; i < 10; i++) {
+      for (long j = 0; j < 100; j++) {
+        hll.put(j);
+      }
+    }
+    assertEquals(100, hll.cardinality());
+  }
+
+  /** While sparse, the sketch is nearly exact. */
+  public void testSparse_nearlyExact() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    for (long i = 1; i <= 4000; i++) {
+      hll.put(i);
+      if (i % 100 == 0) {
+        assertEquals((double) i, hll.cardinality(), i * 0.001);
+      }
+    }
+    assertTrue(hll.isSparse());
+  }
+
+  public void testSwitchesToRegisters() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel(), 10);
+    long i = 0;
+    while (hll.isSparse()) {
+      hll.put(i++);
+    }
+    // the sparse entries would take more than the 1024 bytes of the registers
+    assertThat(i).isGreaterThan(1024L / 4);
+    assertEquals((double) i, hll.cardinality(), i * 0.1);
+  }
+
+  /**
+   * The root-mean-square relative error of the estimates, over several sketches of each
+   * cardinality, is about the documented relative standard error.
+   */
+  public void testAccuracy() {
+    int precision = 12;
+    int trials = 10;
+    double expectedError = HyperLogLog.create(Funnels.longFunnel(), precision)
+        .relativeStandardError();
+    assertEquals(0.01625, expectedError, 1e-6);
+    for (int cardinality : new int[] {2000, 10000, 100000}) {
+      double sumOfSquares = 0;
+      for (int trial = 0; trial < trials; trial++) {
+        HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel(), precision);
+        for (long i = 0; i < cardinality; i++) {
+          hll.put(((long) trial << 32) + i);
+        }
+        double error = (hll.cardinality() - cardinality) / (double) cardinality;
+        sumOfSquares += error * error;
+      }
+      double rmse = Math.sqrt(sumOfSquares / trials);
+      assertThat(rmse).isLessThan(2 * expectedError);
+    }
+  }
+
+  public void testLargeCardinality() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    int cardinality = 2000000;
+    for (long i = 0; i < cardinality; i++) {
+      hll.put(i);
+    }
+    assertEquals(cardinality, hll.cardinality(), 4 * 0.0081 * cardinality);
+  }
+
+  public void testEstimate() {
+    // all registers zero
+    assertEquals(0.0, HyperLogLog.estimate(new int[] {16, 0, 0, 0}));
+    // all registers saturated: the cardinality could be anything larger
+    assertEquals(Double.POSITIVE_INFINITY, HyperLogLog.estimate(new int[] {0, 0, 0, 16}));
+    // one register of 1 among m behaves like linear counting, about 1
+    assertEquals(1.0, HyperLogLog.estimate(new int[] {1023, 1, 0, 0, 0, 0, 0, 0, 0, 0}), 0.01);
+  }
+
+  public void testPutAll() {
+    for (int[] sizes : new int[][] {{100, 200}, {100, 100000}, {100000, 100}, {50000, 80000}}) {
+      HyperLogLog<Long> union = HyperLogLog.create(Funnels.longFunnel());
+      HyperLogLog<Long> hll1 = HyperLogLog.create(Funnels.longFunnel());
+      HyperLogLog<Long> hll2 = HyperLogLog.create(Funnels.longFunnel());
+      for (long i = 0; i < sizes[0]; i++) {
+        hll1.put(i);
+        union.put(i);
+      }
+      // the elements overlap by half of the smaller sketch
+      long start = sizes[0] - Math.min(sizes[0], sizes[1]) / 2;
+      for (long i = start; i < start + sizes[1]; i++) {
+        hll2.put(i);
+        union.put(i);
+      }
+      assertTrue(hll1.isCompatible(hll2));
+      HyperLogLog<Long> hll2Copy = hll2.copy();
+      hll1.putAll(hll2);
+      assertEquals(hll2Copy, hll2);
+      if (hll1.isSparse() == union.isSparse()) {
+        assertEquals(union, hll1);
+      }
+      assertEquals(union.cardinality(), hll1.cardinality(), union.cardinality() * 0.001);
+    }
+  }
+
+  /** Sparse entries are converted to the registers they would have updated. */
+  public void testPutAll_sparseIntoRegisters() {
+    HyperLogLog<Long> union = HyperLogLog.create(Funnels.longFunnel(), 10);
+    HyperLogLog<Long> dense = HyperLogLog.create(Funnels.longFunnel(), 10);
+    HyperLogLog<Long> sparse = HyperLogLog.create(Funnels.longFunnel(), 10);
+    for (long i = 0; i < 10000; i++) {
+      dense.put(i);
+      union.put(i);
+    }
+    for (long i = 10000; i < 10100; i++) {
+      sparse.put(i);
+      union.put(i);
+    }
+    assertFalse(dense.isSparse());
+    assertTrue(sparse.isSparse());
+    dense.putAll(sparse);
+    assertEquals(union, dense);
+    sparse.putAll(dense);
+    assertFalse(sparse.isSparse());
+    assertEquals(union, sparse);
+  }
+
+  /** Methods that only read a sketch may be called concurrently, even while it buffers entries. */
+  public void testConcurrentReaders() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int round = 0; round < 100; round++) {
+        final HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+        for (long i = 0; i < 3000; i++) {
+          hll.put(i);
+        }
+        HyperLogLog<Long> expected = hll.copy();
+        final long cardinality = expected.cardinality();
+        final byte[] bytes = toByteArray(expected);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = Lists.newArrayList();
+        for (int t = 0; t < 4; t++) {
+          futures.add(executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+              start.await();
+              return hll.cardinality() == cardinality && Arrays.equals(bytes, toByteArray(hll));
+            }
+          }));
+        }
+        start.countDown();
+        for (Future<Boolean> future : futures) {
+          assertTrue(future.get());
+        }
+        assertEquals(expected, hll);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static byte[] toByteArray(HyperLogLog<?> hll) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    hll.writeTo(out);
+    return out.toByteArray();
+  }
+
+  public void testPutAll_incompatible() {
+    HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+    try {
+      hll.putAll(hll);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      hll.putAll(HyperLogLog.create(Funnels.longFunnel(), 12));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    assertFalse(hll.isCompatible(HyperLogLog.create(Funnels.longFunnel(), 12)));
+  }
+
+  public void testPreconditions() {
+    try {
+      HyperLogLog.create(Funnels.longFunnel(), HyperLogLog.MIN_PRECISION - 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      HyperLogLog.create(Funnels.longFunnel(), HyperLogLog.MAX_PRECISION + 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicInstanceMethods(HyperLogLog.create(Funnels.longFunnel()));
+    tester.testAllPublicStaticMethods(HyperLogLog.class);
+  }
+
+  public void testEquals() {
+    HyperLogLog<Long> hll1 = HyperLogLog.create(Funnels.longFunnel());
+    HyperLogLog<Long> hll2 = HyperLogLog.create(Funnels.longFunnel());
+    HyperLogLog<Long> dense1 = HyperLogLog.create(Funnels.longFunnel(), 4);
+    HyperLogLog<Long> dense2 = HyperLogLog.create(Funnels.longFunnel(), 4);
+    for (long i = 0; i < 100; i++) {
+      hll1.put(i);
+      hll2.put(99 - i);
+      dense1.put(i);
+      dense2.put(99 - i);
+    }
+    new EqualsTester()
+        .addEqualityGroup(hll1, hll2)
+        .addEqualityGroup(dense1, dense2)
+        .addEqualityGroup(HyperLogLog.create(Funnels.longFunnel()))
+        .addEqualityGroup(HyperLogLog.create(Funnels.longFunnel(), 12))
+        .addEqualityGroup(HyperLogLog.create(Funnels.integerFunnel()))
+        .testEquals();
+  }
+
+  public void testCopy() {
+    HyperLogLog<Long> original = HyperLogLog.create(Funnels.longFunnel());
+    original.put(1L);
+    HyperLogLog<Long> copy = original.copy();
+    assertEquals(original, copy);
+    copy.put(2L);
+    assertEquals(1, original.cardinality());
+    assertEquals(2, copy.cardinality());
+  }
+
+  public void testJavaSerialization() {
+    HyperLogLog<Long> sparse = HyperLogLog.create(Funnels.longFunnel());
+    HyperLogLog<Long> dense = HyperLogLog.create(Funnels.longFunnel(), 8);
+    for (long i = 0; i < 1000; i++) {
+      sparse.put(i);
+      dense.put(i);
+    }
+    assertEquals(1000, SerializableTester.reserializeAndAssert(sparse).cardinality());
+    assertEquals(dense.cardinality(), SerializableTester.reserializeAndAssert(dense).cardinality());
+  }
+
+  public void testCustomSerialization() throws Exception {
+    for (int cardinality : new int[] {0, 1, 1000, 100000}) {
+      HyperLogLog<Long> hll = HyperLogLog.create(Funnels.longFunnel());
+      for (long i = 0; i < cardinality; i++) {
+        hll.put(i);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      hll.writeTo(out);
+      if (hll.isSparse()) {
+        // the differences between this many entries take at most four bytes, except the first
+        assertThat(out.size()).isAtMost(6 + 4 * cardinality + 1);
+      } else {
+        assertEquals(2 + (1 << HyperLogLog.DEFAULT_PRECISION), out.size());
+      }
+      HyperLogLog<Long> read =
+          HyperLogLog.readFrom(new ByteArrayInputStream(out.toByteArray()), Funnels.longFunnel());
+      assertEquals(hll, read);
+      assertEquals(hll.cardinality(), read.cardinality());
+    }
+  }
+
+  public void testReadFrom_invalid() {
+    byte[][] invalid = {
+      {}, // empty
+      {3, 0, 0, 0, 0, 0}, // precision too small
+      {14, 2, 0, 0, 0, 0}, // unknown representation
+      {14, 0, 0, 0, 0, 2, 65, 1}, // the second entry has the same index as the first
+      {14, 0, 0, 0, 0, 1, 0}, // no leading zeros
+    };
+    for (byte[] bytes : invalid) {
+      try {
+        HyperLogLog.readFrom(new ByteArrayInputStream(bytes), Funnels.longFunnel());
+        fail();
+      } catch (IOException expected) {
+      }
+    }
+  }
+}
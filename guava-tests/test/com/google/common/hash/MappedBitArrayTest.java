@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import com.google.common.hash.BloomFilterStrategies.BitArray;
+import com.google.common.hash.BloomFilterStrategies.LockFreeBitArray;
+import com.google.common.primitives.Longs;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Tests for {@link MappedBitArray}.
+ */
+public class MappedBitArrayTest extends TestCase {
+  private static final int WORD_COUNT = 37;
+  private static final int DATA_OFFSET = 6;
+
+  private File file;
+  private RandomAccessFile randomAccessFile;
+
+  @Override
+  protected void setUp() throws IOException {
+    file = File.createTempFile("MappedBitArrayTest", ".bits");
+    randomAccessFile = new RandomAccessFile(file, "rw");
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    randomAccessFile.close();
+    file.delete();
+  }
+
+  /** Writes {@code words} as big endian longs after DATA_OFFSET bytes of header. */
+  private void write(long[] words) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(DATA_OFFSET + words.length * Longs.BYTES);
+    buffer.position(DATA_OFFSET);
+    for (long word : words) {
+      buffer.putLong(word);
+    }
+    randomAccessFile.write(buffer.array());
+  }
+
+  private static long[] randomWords() {
+    Random random = new Random(0);
+    long[] words = new long[WORD_COUNT];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = random.nextLong();
+    }
+    return words;
+  }
+
+  public void testGet() throws IOException {
+    long[] words = randomWords();
+    write(words);
+    BitArray expected = new LockFreeBitArray(words);
+    // regions of 16 bytes, so that words straddle regions
+    for (int log2RegionSize : new int[] {4, 30}) {
+      BitArray bits = MappedBitArray.map(
+          randomAccessFile.getChannel(), DATA_OFFSET, WORD_COUNT, log2RegionSize);
+      assertEquals(expected.bitSize(), bits.bitSize());
+      assertEquals(expected.bitCount(), bits.bitCount());
+      for (long i = 0; i < bits.bitSize(); i++) {
+        assertEquals(expected.get(i), bits.get(i));
+      }
+      for (int i = 0; i < WORD_COUNT; i++) {
+        assertEquals(words[i], bits.getWord(i));
+      }
+      assertEquals(expected, bits);
+      assertEquals(expected.hashCode(), bits.hashCode());
+    }
+  }
+
+  public void testSet() throws IOException {
+    write(new long[WORD_COUNT]);
+    BitArray bits = MappedBitArray.map(randomAccessFile.getChannel(), DATA_OFFSET, WORD_COUNT, 4);
+    BitArray expected = new LockFreeBitArray(bits.bitSize());
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      long index = (random.nextLong() & Long.MAX_VALUE) % bits.bitSize();
+      assertEquals(expected.set(index), bits.set(index));
+      assertTrue(bits.get(index));
+      assertEquals(expected.bitCount(), bits.bitCount());
+    }
+    assertEquals(expected, bits);
+
+    // the bits were written to the file
+    BitArray remapped = MappedBitArray.map(randomAccessFile.getChannel(), DATA_OFFSET, WORD_COUNT);
+    assertEquals(expected, remapped);
+    assertEquals(expected.bitCount(), remapped.bitCount());
+  }
+
+  public void testBitCount_afterSet() throws IOException {
+    long[] words = randomWords();
+    write(words);
+    BitArray bits = MappedBitArray.map(randomAccessFile.getChannel(), DATA_OFFSET, WORD_COUNT);
+    BitArray expected = new LockFreeBitArray(words);
+    for (long i = 0; i < 100; i++) {
+      assertEquals(expected.set(i), bits.set(i));
+    }
+    // the first count reads the file, which includes the bits set so far
+    assertEquals(expected.bitCount(), bits.bitCount());
+  }
+
+  public void testPutAll() throws IOException {
+    write(new long[WORD_COUNT]);
+    BitArray bits = MappedBitArray.map(randomAccessFile.getChannel(), DATA_OFFSET, WORD_COUNT, 4);
+    BitArray other = new LockFreeBitArray(randomWords());
+    bits.set(0);
+    bits.putAll(other);
+    other.set(0);
+    assertEquals(other, bits);
+    assertEquals(other.bitCount(), bits.bitCount());
+
+    try {
+      bits.putAll(new LockFreeBitArray(64));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testNulls() throws IOException {
+    write(new long[WORD_COUNT]);
+    NullPointerTester tester = new NullPointerTester()
+        .setDefault(FileChannel.class, randomAccessFile.getChannel())
+        .setDefault(BitArray.class, new LockFreeBitArray(WORD_COUNT * Long.SIZE));
+    tester.testAllPublicStaticMethods(MappedBitArray.class);
+    tester.testAllPublicInstanceMethods(
+        MappedBitArray.map(randomAccessFile.getChannel(), DATA_OFFSET, WORD_COUNT));
+  }
+
+  public void testMap_fileTooShort() throws IOException {
+    write(new long[WORD_COUNT - 1]);
+    try {
+      MappedBitArray.map(randomAccessFile.getChannel(), DATA_OFFSET, WORD_COUNT);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
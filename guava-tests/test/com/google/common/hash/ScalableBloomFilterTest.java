@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for {@link ScalableBloomFilter}.
+ */
+public class ScalableBloomFilterTest extends TestCase {
+
+  public void testBasic() {
+    ScalableBloomFilter<Integer> sbf = ScalableBloomFilter.create(Funnels.integerFunnel(), 100);
+    assertFalse(sbf.mightContain(1));
+    assertTrue(sbf.put(1));
+    assertTrue(sbf.mightContain(1));
+    assertFalse(sbf.put(1));
+    assertEquals(1, sbf.stageCount());
+  }
+
+  /** The false positive probability stays bounded far past the initial expected insertions. */
+  public void testFppBoundedPastExpectedInsertions() {
+    int initialExpectedInsertions = 1000;
+    int numInsertions = 100 * initialExpectedInsertions;
+    double fpp = 0.01;
+    ScalableBloomFilter<Integer> sbf =
+        ScalableBloomFilter.create(Funnels.integerFunnel(), initialExpectedInsertions, fpp);
+    BloomFilter<Integer> bf =
+        BloomFilter.create(Funnels.integerFunnel(), initialExpectedInsertions, fpp);
+
+    // Insert "numInsertions" even numbers into both filters.
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      sbf.put(i);
+      bf.put(i);
+    }
+    for (int i = 0; i < numInsertions * 2; i += 2) {
+      assertTrue(sbf.mightContain(i));
+    }
+    // 1000 * (2^7 - 1) >= 100000
+    assertEquals(7, sbf.stageCount());
+
+    // Now we check for the odd numbers, which were never inserted.
+    int numFpp = 0;
+    for (int i = 1; i < numInsertions * 2; i += 2) {
+      if (sbf.mightContain(i)) {
+        numFpp++;
+      }
+    }
+    double actualFpp = (double) numFpp / numInsertions;
+    assertThat(sbf.expectedFpp()).isLessThan(fpp);
+    assertEquals(sbf.expectedFpp(), actualFpp, 0.001);
+
+    // whereas a BloomFilter is saturated
+    assertThat(bf.expectedFpp()).isGreaterThan(0.99);
+  }
+
+  public void testStageFpp() {
+    double sum = 0;
+    for (int i = 0; i < 50; i++) {
+      sum += ScalableBloomFilter.stageFpp(0.03, i);
+    }
+    assertEquals(0.03, sum, 1e-12);
+    assertEquals(0.015, ScalableBloomFilter.stageFpp(0.03, 0), 1e-12);
+    assertEquals(0.0075, ScalableBloomFilter.stageFpp(0.03, 1), 1e-12);
+  }
+
+  public void testPreconditions() {
+    try {
+      ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 1, 0.0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 1, 1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testNullPointers() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicInstanceMethods(
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100));
+    tester.testAllPublicStaticMethods(ScalableBloomFilter.class);
+  }
+
+  public void testCopy() {
+    ScalableBloomFilter<Integer> original = ScalableBloomFilter.create(Funnels.integerFunnel(), 10);
+    for (int i = 0; i < 100; i++) {
+      original.put(i);
+    }
+    ScalableBloomFilter<Integer> copy = original.copy();
+    assertNotSame(original, copy);
+    assertEquals(original, copy);
+    for (int i = 100; i < 1000; i++) {
+      copy.put(i);
+    }
+    assertThat(copy.stageCount()).isGreaterThan(original.stageCount());
+    assertFalse(original.equals(copy));
+  }
+
+  public void testEquals() {
+    ScalableBloomFilter<String> sbf1 =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    sbf1.put("1");
+    sbf1.put("2");
+
+    ScalableBloomFilter<String> sbf2 =
+        ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100);
+    sbf2.put("1");
+    sbf2.put("2");
+
+    new EqualsTester()
+        .addEqualityGroup(sbf1, sbf2)
+        .addEqualityGroup(ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100))
+        .addEqualityGroup(ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 100, 0.01))
+        .addEqualityGroup(ScalableBloomFilter.create(Funnels.unencodedCharsFunnel(), 200))
+        .testEquals();
+  }
+
+  public void testJavaSerialization() {
+    ScalableBloomFilter<Integer> sbf = ScalableBloomFilter.create(Funnels.integerFunnel(), 10);
+    for (int i = 0; i < 100; i++) {
+      sbf.put(i);
+    }
+    ScalableBloomFilter<Integer> copy = SerializableTester.reserializeAndAssert(sbf);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(copy.mightContain(i));
+    }
+    copy.put(100);
+    assertTrue(copy.mightContain(100));
+  }
+
+  public void testCustomSerialization() throws Exception {
+    Funnel<Integer> funnel = Funnels.integerFunnel();
+    ScalableBloomFilter<Integer> sbf = ScalableBloomFilter.create(funnel, 10);
+    for (int i = 0; i < 100; i++) {
+      sbf.put(i);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    sbf.writeTo(out);
+
+    ScalableBloomFilter<Integer> read =
+        ScalableBloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()), funnel);
+    assertEquals(sbf, read);
+    assertEquals(sbf.stageCount(), read.stageCount());
+  }
+
+  public void testReadFrom_invalid() {
+    // no stages
+    byte[] bytes = new byte[20];
+    bytes[7] = 10;
+    try {
+      ScalableBloomFilter.readFrom(new ByteArrayInputStream(bytes), Funnels.integerFunnel());
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  public void testConcurrentPuts() throws Exception {
+    final ScalableBloomFilter<Integer> sbf =
+        ScalableBloomFilter.create(Funnels.integerFunnel(), 100);
+    int numThreads = 4;
+    final int perThread = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int t = 0; t < numThreads; t++) {
+        final int start = t * perThread;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int i = start; i < start + perThread; i++) {
+              sbf.put(i);
+              assertTrue(sbf.mightContain(i));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    for (int i = 0; i < numThreads * perThread; i++) {
+      assertTrue(sbf.mightContain(i));
+    }
+    // small stages are filled slightly past their probability by the put that fills them, and
+    // puts racing with the addition of a stage may overfill it further
+    assertThat(sbf.expectedFpp()).isLessThan(0.031);
+  }
+}
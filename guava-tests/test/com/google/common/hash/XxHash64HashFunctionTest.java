@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.hash.Hashing.xxHash64;
+
+import com.google.common.primitives.Longs;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link XxHash64HashFunction}.
+ */
+public class XxHash64HashFunctionTest extends TestCase {
+
+  // Expected values are from the reference implementation, XXH64 of xxHash 0.6.
+  public void testKnownValues() {
+    assertHash(0, 0xEF46DB3751D8E999L, "");
+    assertHash(0, 0x26C7827D889F6DA3L, "hello");
+    assertHash(1, 0x23DD71CB04D0A1B2L, "hello");
+    assertHash(0x123456789abcdefL, 0x59BB211C8B41BA57L, "hello");
+    assertHash(0, 0x0B242D361FDA71BCL, "The quick brown fox jumps over the lazy dog");
+    assertHash(1, 0xDF5091B6DAD2C6DBL, "The quick brown fox jumps over the lazy dog");
+    assertHash(
+        0x123456789abcdefL, 0xB6A7EF96F8D9F8B9L, "The quick brown fox jumps over the lazy dog");
+  }
+
+  /** Covers each of the tail and stripe paths, with inputs of {@code (byte) (i * 31 + 7)}. */
+  public void testKnownValues_lengths() {
+    byte[] input = new byte[1000];
+    for (int i = 0; i < input.length; i++) {
+      input[i] = (byte) (i * 31 + 7);
+    }
+    assertHash(0, 0xa96c7f0ce858bbb7L, input, 1);
+    assertHash(0, 0x56e6957632a487f9L, input, 3);
+    assertHash(0, 0xc60d15b1e3ff8f04L, input, 4);
+    assertHash(0, 0xafbefc3d6c6f9a8eL, input, 7);
+    assertHash(0, 0x3da5c7aa269683e0L, input, 8);
+    assertHash(0, 0x4a74f3a1a39ad4a1L, input, 31);
+    assertHash(0, 0x8d57d6a4671cc43dL, input, 32);
+    assertHash(0, 0x62c9fd21ed857664L, input, 33);
+    assertHash(0, 0x7bbabbc45729d17eL, input, 64);
+    assertHash(0, 0xefa0ad2d3e70c151L, input, 100);
+    assertHash(0, 0x8d2ba0cd7fece76cL, input, 300);
+    assertHash(0, 0x99594f4828043d35L, input, 1000);
+    assertHash(-1, 0x298f4c84b24f5380L, input, 0);
+    assertHash(-1, 0xf52503fe9d55f874L, input, 4);
+    assertHash(-1, 0x33aee9656e99f801L, input, 8);
+    assertHash(-1, 0xa428e1465b2e4331L, input, 32);
+    assertHash(-1, 0x9e62fecf60a3f51bL, input, 300);
+  }
+
+  private static void assertHash(long seed, long expected, String stringInput) {
+    byte[] input = HashTestUtils.ascii(stringInput);
+    assertHash(seed, expected, input, input.length);
+  }
+
+  private static void assertHash(long seed, long expected, byte[] input, int length) {
+    HashCode expectedHash = HashCode.fromLong(expected);
+    assertEquals(expectedHash, xxHash64(seed).hashBytes(input, 0, length));
+    assertEquals(expectedHash, xxHash64(seed).newHasher().putBytes(input, 0, length).hash());
+    assertEquals(expected, xxHash64(seed).hashBytes(input, 0, length).asLong());
+  }
+
+  /** Feeding the hasher in pieces of any size gives the hash of the whole input. */
+  public void testStreaming() {
+    Random random = new Random(0);
+    byte[] input = new byte[500];
+    random.nextBytes(input);
+    for (int length = 0; length <= input.length; length += 7) {
+      HashCode expected = xxHash64(length).hashBytes(input, 0, length);
+      Hasher hasher = xxHash64(length).newHasher();
+      int off = 0;
+      while (off < length) {
+        int chunk = Math.min(random.nextInt(70), length - off);
+        hasher.putBytes(input, off, chunk);
+        off += chunk;
+      }
+      assertEquals(expected, hasher.hash());
+    }
+  }
+
+  public void testHashLong() {
+    long[] values = {0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 0x0123456789abcdefL};
+    for (long seed : new long[] {0, 42}) {
+      for (long value : values) {
+        HashCode expected = xxHash64(seed).hashBytes(Longs.toByteArray(Long.reverseBytes(value)));
+        assertEquals(expected, xxHash64(seed).hashLong(value));
+        assertEquals(expected, xxHash64(seed).newHasher().putLong(value).hash());
+      }
+    }
+  }
+
+  public void testInvariants() {
+    HashTestUtils.checkAvalanche(xxHash64(), 250, 0.17);
+    HashTestUtils.checkNoFunnels(xxHash64());
+    HashTestUtils.assertInvariants(xxHash64());
+    HashTestUtils.assertInvariants(xxHash64(-1));
+  }
+
+  public void testToString() {
+    assertEquals("Hashing.xxHash64(0)", xxHash64().toString());
+    assertEquals("Hashing.xxHash64(-1)", xxHash64(-1).toString());
+  }
+
+  public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(xxHash64(), xxHash64(0))
+        .addEqualityGroup(xxHash64(1))
+        .addEqualityGroup(xxHash64(1L << 32))
+        .testEquals();
+  }
+
+  public void testSerialization() {
+    SerializableTester.reserializeAndAssert(xxHash64(42));
+  }
+}
@@ -29,9 +29,12 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import com.google.common.primitives.UnsignedBytes;
 import com.google.common.testing.TestLogHandler;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import junit.framework.TestSuite;
 
@@ -41,6 +44,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Tests for the default implementations of {@code ByteSource} methods.
@@ -174,6 +179,80 @@ public class ByteSourceTest extends IoTestCase {
     assertEquals("cfa0c5002275c90508338a5cdb2a9781", byteSource.hash(Hashing.md5()).toString());
   }
 
+  public void testTreeHash() throws IOException {
+    HashFunction sha256 = Hashing.sha256();
+    // 10000 bytes in chunks of 3000 form the tree ((0 1) (2 3))
+    HashCode leaf0 = leafHash(sha256, 0, 3000);
+    HashCode leaf1 = leafHash(sha256, 3000, 3000);
+    HashCode leaf2 = leafHash(sha256, 6000, 3000);
+    HashCode leaf3 = leafHash(sha256, 9000, 1000);
+    HashCode expected =
+        nodeHash(sha256, nodeHash(sha256, leaf0, leaf1), nodeHash(sha256, leaf2, leaf3));
+    assertEquals(expected, source.treeHash(sha256, 3000, MoreExecutors.directExecutor()));
+
+    // 10000 bytes in chunks of 4000 form the tree ((0 1) 2)
+    expected = nodeHash(sha256,
+        nodeHash(sha256, leafHash(sha256, 0, 4000), leafHash(sha256, 4000, 4000)),
+        leafHash(sha256, 8000, 2000));
+    assertEquals(expected, source.treeHash(sha256, 4000, MoreExecutors.directExecutor()));
+
+    // a single chunk
+    assertEquals(leafHash(sha256, 0, bytes.length),
+        source.treeHash(sha256, bytes.length, MoreExecutors.directExecutor()));
+    assertEquals(leafHash(sha256, 0, bytes.length),
+        source.treeHash(sha256, Long.MAX_VALUE, MoreExecutors.directExecutor()));
+    assertEquals(sha256.hashBytes(new byte[1]),
+        ByteSource.empty().treeHash(sha256, 100, MoreExecutors.directExecutor()));
+  }
+
+  /** The result does not depend on how many threads hash the chunks, or in which order. */
+  public void testTreeHash_parallel() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int chunkSize : new int[] {1, 7, 100, 1024, 4999, 5000, 10000}) {
+        HashCode expected =
+            source.treeHash(Hashing.murmur3_128(), chunkSize, MoreExecutors.directExecutor());
+        assertEquals(expected, source.treeHash(Hashing.murmur3_128(), chunkSize, executor));
+        assertEquals(expected,
+            ByteSource.wrap(bytes).treeHash(Hashing.murmur3_128(), chunkSize, executor));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testTreeHash_ioException() {
+    for (TestOption option : EnumSet.of(OPEN_THROWS, SKIP_THROWS, READ_THROWS, CLOSE_THROWS)) {
+      TestByteSource failingSource = new TestByteSource(bytes, option);
+      try {
+        failingSource.treeHash(Hashing.md5(), 1000, MoreExecutors.directExecutor());
+        fail(option.toString());
+      } catch (IOException expected) {
+      }
+    }
+  }
+
+  public void testTreeHash_invalidChunkSize() throws IOException {
+    try {
+      source.treeHash(Hashing.md5(), 0, MoreExecutors.directExecutor());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static HashCode leafHash(HashFunction hashFunction, int off, int len) {
+    return hashFunction.newHasher().putByte((byte) 0).putBytes(bytes, off, len).hash();
+  }
+
+  private static HashCode nodeHash(HashFunction hashFunction, HashCode left, HashCode right) {
+    return hashFunction
+        .newHasher()
+        .putByte((byte) 1)
+        .putBytes(left.asBytes())
+        .putBytes(right.asBytes())
+        .hash();
+  }
+
   public void testContentEquals() throws IOException {
     assertTrue(source.contentEquals(source));
     assertTrue(source.wasStreamOpened() && source.wasStreamClosed());
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.Lists;
+import com.google.common.testing.FakeTicker;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ConcurrencyLimitingExecutorService} and {@link ConcurrencyLimit}.
+ */
+public class ConcurrencyLimitingExecutorServiceTest extends TestCase {
+  private final FakeTicker ticker = new FakeTicker();
+  private final ManualExecutorService delegate = new ManualExecutorService();
+
+  public void testQueuesAndRejectsAboveLimit() throws Exception {
+    ConcurrencyLimitingExecutorService executor = MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.aimd(2, 2, 1, SECONDS, 0.5), 1, ticker);
+    ListenableFuture<Integer> first = executor.submit(Callables.returning(1));
+    ListenableFuture<Integer> second = executor.submit(Callables.returning(2));
+    ListenableFuture<Integer> third = executor.submit(Callables.returning(3));
+    try {
+      executor.submit(Callables.returning(4));
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+    assertEquals(2, delegate.tasks.size());
+    assertEquals(2, executor.getInFlightCount());
+    assertEquals(1, executor.getQueuedCount());
+    assertEquals(1, executor.getRejectedCount());
+
+    delegate.runNext();
+    assertEquals(1, (int) first.get());
+    assertFalse(third.isDone());
+    // the queued task took the place of the completed one
+    assertEquals(2, delegate.tasks.size());
+    assertEquals(0, executor.getQueuedCount());
+
+    delegate.runAll();
+    assertEquals(2, (int) second.get());
+    assertEquals(3, (int) third.get());
+    assertEquals(0, executor.getInFlightCount());
+  }
+
+  public void testAimd_increasesWhileBusyAndFast() {
+    ConcurrencyLimitingExecutorService executor = MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.aimd(2, 4, 100, MILLISECONDS, 0.5), 100, ticker);
+    for (int i = 0; i < 10; i++) {
+      executor.execute(Runnables.doNothing());
+    }
+    assertEquals(2, delegate.tasks.size());
+    delegate.runNext(); // 2 in flight, so the limit grows to 3 and two queued tasks start
+    assertEquals(3, executor.getLimit());
+    assertEquals(3, executor.getInFlightCount());
+    delegate.runNext();
+    delegate.runNext();
+    assertEquals(4, executor.getLimit());
+    delegate.runAll();
+    assertEquals(4, executor.getLimit()); // capped at maxLimit
+  }
+
+  public void testAimd_doesNotIncreaseWhenIdle() {
+    ConcurrencyLimitingExecutorService executor = MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.aimd(4, 10, 100, MILLISECONDS, 0.5), 0, ticker);
+    for (int i = 0; i < 5; i++) {
+      executor.execute(Runnables.doNothing());
+      delegate.runAll();
+    }
+    // only one task ever ran at a time, which says nothing about whether 5 would be safe
+    assertEquals(4, executor.getLimit());
+  }
+
+  public void testAimd_backsOffWhenSlow() {
+    ConcurrencyLimitingExecutorService executor = MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.aimd(8, 10, 100, MILLISECONDS, 0.5), 100, ticker);
+    for (int i = 0; i < 10; i++) {
+      executor.execute(advanceTicker(200));
+    }
+    delegate.runNext();
+    assertEquals(4, executor.getLimit());
+    assertEquals(7, executor.getInFlightCount()); // still above the new limit
+    assertEquals(2, executor.getQueuedCount());
+    delegate.runNext();
+    assertEquals(2, executor.getLimit());
+    delegate.runNext();
+    delegate.runNext();
+    delegate.runNext();
+    assertEquals(1, executor.getLimit()); // never below one
+  }
+
+  public void testVegas() {
+    ConcurrencyLimitingExecutorService executor = MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.vegas(10, 20), 100, ticker);
+    for (int i = 0; i < 30; i++) {
+      executor.execute(Runnables.doNothing());
+    }
+    // the first task sets the shortest latency; nothing is queued, so the limit grows
+    ticker.advance(10, MILLISECONDS);
+    delegate.runNext();
+    assertEquals(11, executor.getLimit());
+    // the next one finishes only a little later, which means little queueing
+    ticker.advance(1, MILLISECONDS);
+    delegate.runNext();
+    assertEquals(12, executor.getLimit());
+    // latency has tripled, which means that about two thirds of the tasks are queued
+    ticker.advance(20, MILLISECONDS);
+    delegate.runNext();
+    assertEquals(11, executor.getLimit());
+  }
+
+  public void testShutdown_drainsQueueThenShutsDownDelegate() throws Exception {
+    ConcurrencyLimitingExecutorService executor = MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.vegas(1, 1), 10, ticker);
+    executor.execute(Runnables.doNothing());
+    ListenableFuture<?> queued = executor.submit(Runnables.doNothing());
+    executor.shutdown();
+    assertTrue(executor.isShutdown());
+    assertFalse(executor.isTerminated());
+    assertFalse(delegate.isShutdown());
+    try {
+      executor.execute(Runnables.doNothing());
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+    assertFalse(executor.awaitTermination(10, MILLISECONDS));
+
+    delegate.runNext();
+    assertFalse(delegate.isShutdown());
+    delegate.runNext();
+    assertTrue(queued.isDone());
+    assertTrue(delegate.isShutdown());
+    assertTrue(executor.isTerminated());
+    assertTrue(executor.awaitTermination(0, MILLISECONDS));
+  }
+
+  public void testShutdownNow_returnsQueuedAndUnstartedTasks() {
+    ConcurrencyLimitingExecutorService executor = MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.vegas(1, 1), 10, ticker);
+    Runnable running = Runnables.doNothing();
+    Runnable queued = new Runnable() {
+      @Override
+      public void run() {}
+    };
+    executor.execute(running);
+    executor.execute(queued);
+    List<Runnable> neverRun = executor.shutdownNow();
+    assertEquals(2, neverRun.size());
+    assertTrue(neverRun.contains(running));
+    assertTrue(neverRun.contains(queued));
+    assertTrue(executor.isTerminated());
+  }
+
+  public void testDelegateRejection() {
+    ConcurrencyLimitingExecutorService executor = MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.vegas(1, 1), 10, ticker);
+    delegate.shutdown();
+    try {
+      executor.execute(Runnables.doNothing());
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+    assertEquals(0, executor.getInFlightCount());
+  }
+
+  public void testParameterValidation() {
+    try {
+      ConcurrencyLimit.vegas(0, 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      ConcurrencyLimit.vegas(2, 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      ConcurrencyLimit.aimd(1, 1, 0, SECONDS, 0.5);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      ConcurrencyLimit.aimd(1, 1, 1, SECONDS, 1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      MoreExecutors.concurrencyLimitingDecorator(delegate, ConcurrencyLimit.vegas(1, 1), -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testLimitNotShared() {
+    ConcurrencyLimit concurrencyLimit = ConcurrencyLimit.vegas(1, 1);
+    MoreExecutors.concurrencyLimitingDecorator(delegate, concurrencyLimit, 1);
+    try {
+      MoreExecutors.concurrencyLimitingDecorator(delegate, concurrencyLimit, 1);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  public void testNulls() {
+    NullPointerTester tester = new NullPointerTester()
+        .setDefault(int.class, 1)
+        .setDefault(long.class, 1L)
+        .setDefault(double.class, 0.5)
+        .setDefault(ConcurrencyLimit.class, ConcurrencyLimit.vegas(1, 1));
+    tester.testAllPublicStaticMethods(ConcurrencyLimit.class);
+    tester.testAllPublicInstanceMethods(MoreExecutors.concurrencyLimitingDecorator(
+        delegate, ConcurrencyLimit.vegas(1, 1), 1, ticker));
+  }
+
+  private Runnable advanceTicker(final long millis) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        ticker.advance(millis, MILLISECONDS);
+      }
+    };
+  }
+
+  /** An executor whose tasks run only when the test says so. */
+  private static final class ManualExecutorService extends AbstractExecutorService {
+    final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+    boolean shutdown;
+
+    void runNext() {
+      tasks.remove().run();
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        runNext();
+      }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      if (shutdown) {
+        throw new RejectedExecutionException();
+      }
+      tasks.add(command);
+    }
+
+    @Override
+    public void shutdown() {
+      shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      shutdown = true;
+      List<Runnable> result = Lists.newArrayList(tasks);
+      tasks.clear();
+      return result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return shutdown && tasks.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return isTerminated();
+    }
+  }
+}
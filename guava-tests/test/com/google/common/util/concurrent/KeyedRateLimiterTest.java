@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.Lists;
+import com.google.common.testing.FakeTicker;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for {@link KeyedRateLimiter}.
+ */
+public class KeyedRateLimiterTest extends TestCase {
+  private final FakeTicker ticker = new FakeTicker();
+
+  public void testKeysAreIndependent() {
+    KeyedRateLimiter<String> limiter = KeyedRateLimiter.create(1.0, 2, 100, ticker);
+    assertTrue(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("b", 2));
+    assertFalse(limiter.tryAcquire("b"));
+    assertEquals(2, limiter.size());
+
+    ticker.advance(1, SECONDS);
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("b"));
+  }
+
+  public void testFailedAcquireTakesNothing() {
+    KeyedRateLimiter<String> limiter = KeyedRateLimiter.create(1.0, 2, 100, ticker);
+    assertFalse(limiter.tryAcquire("a", 3));
+    assertEquals(0, limiter.size());
+    assertTrue(limiter.tryAcquire("a", 2));
+    assertFalse(limiter.tryAcquire("a"));
+  }
+
+  public void testBurstIsCapped() {
+    KeyedRateLimiter<String> limiter = KeyedRateLimiter.create(2.0, 4, 100, ticker);
+    assertTrue(limiter.tryAcquire("a", 4));
+    ticker.advance(10, SECONDS);
+    assertTrue(limiter.tryAcquire("a", 4));
+    assertFalse(limiter.tryAcquire("a"));
+    ticker.advance(500, MILLISECONDS);
+    assertTrue(limiter.tryAcquire("a"));
+  }
+
+  public void testReserve() {
+    KeyedRateLimiter<String> limiter = KeyedRateLimiter.create(5.0, 1, 100, ticker);
+    assertEquals(0, limiter.reserve("a", 1));
+    assertEquals(200000, limiter.reserve("a", 1));
+    assertEquals(600000, limiter.reserve("a", 2));
+    assertEquals(0, limiter.reserve("b", 1));
+    ticker.advance(500, MILLISECONDS);
+    assertEquals(300000, limiter.reserve("a", 1));
+    assertFalse(limiter.tryAcquire("a"));
+  }
+
+  public void testRefilledKeysAreRemoved() {
+    KeyedRateLimiter<Integer> limiter =
+        new KeyedRateLimiter<Integer>(1.0, 1, 100, 1, ticker);
+    for (int i = 0; i < 50; i++) {
+      assertTrue(limiter.tryAcquire(i));
+    }
+    assertEquals(50, limiter.size());
+    ticker.advance(1, SECONDS);
+    // every bucket is full again, so the new key replaces all of them
+    assertTrue(limiter.tryAcquire(50));
+    assertEquals(1, limiter.size());
+  }
+
+  public void testLeastRecentlyUsedKeyIsEvicted() {
+    KeyedRateLimiter<Integer> limiter = new KeyedRateLimiter<Integer>(1.0, 1, 3, 1, ticker);
+    assertTrue(limiter.tryAcquire(0));
+    assertTrue(limiter.tryAcquire(1));
+    assertTrue(limiter.tryAcquire(2));
+    assertTrue(limiter.reserve(0, 1) > 0); // 0 is now the most recently used
+    assertTrue(limiter.tryAcquire(3)); // evicts 1
+    assertEquals(3, limiter.size());
+    assertFalse(limiter.tryAcquire(0));
+    assertFalse(limiter.tryAcquire(2));
+    assertFalse(limiter.tryAcquire(3));
+    assertTrue(limiter.tryAcquire(1)); // evicts 2, as failed attempts do not count as uses
+    assertEquals(3, limiter.size());
+  }
+
+  public void testSizeIsBounded() {
+    KeyedRateLimiter<Integer> limiter = new KeyedRateLimiter<Integer>(1.0, 1, 1000, 8, ticker);
+    for (int i = 0; i < 100000; i++) {
+      assertTrue(limiter.tryAcquire(i));
+    }
+    // each of the 8 segments keeps at most 125 keys
+    assertTrue(limiter.size() <= 1000);
+  }
+
+  public void testMaximumKeys_huge() {
+    // segment tables grow with the keys in use rather than being sized for maximumKeys
+    for (int concurrencyLevel : new int[] {1, 4}) {
+      KeyedRateLimiter<Integer> limiter =
+          new KeyedRateLimiter<Integer>(1.0, 1, Integer.MAX_VALUE, concurrencyLevel, ticker);
+      for (int i = 0; i < 100; i++) {
+        assertTrue(limiter.tryAcquire(i));
+      }
+      for (int i = 0; i < 100; i++) {
+        assertFalse(limiter.tryAcquire(i));
+      }
+      assertEquals(100, limiter.size());
+    }
+  }
+
+  public void testTableGrowsWithKeys() {
+    KeyedRateLimiter<Integer> limiter = new KeyedRateLimiter<Integer>(1.0, 1, 10000, 1, ticker);
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(limiter.tryAcquire(i));
+    }
+    assertEquals(10000, limiter.size());
+    for (int i = 0; i < 10000; i++) {
+      assertFalse(limiter.tryAcquire(i));
+    }
+    assertEquals(10000, limiter.size());
+  }
+
+  public void testConcurrent() throws Exception {
+    final KeyedRateLimiter<Integer> limiter = KeyedRateLimiter.create(1000.0, 100, 1000, ticker);
+    int numThreads = 4;
+    final int attemptsPerThread = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Integer>> futures = Lists.newArrayList();
+      for (int t = 0; t < numThreads; t++) {
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int acquired = 0;
+            for (int i = 0; i < attemptsPerThread; i++) {
+              if (limiter.tryAcquire(i % 10)) {
+                acquired++;
+              }
+            }
+            return acquired;
+          }
+        }));
+      }
+      int acquired = 0;
+      for (Future<Integer> future : futures) {
+        acquired += future.get();
+      }
+      // the time never advances, so exactly the permits in the 10 full buckets are handed out
+      assertEquals(1000, acquired);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testParameterValidation() {
+    try {
+      KeyedRateLimiter.create(0.0, 1, 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      KeyedRateLimiter.create(1.0, Double.NaN, 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      KeyedRateLimiter.create(1.0, 1, 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    KeyedRateLimiter<String> limiter = KeyedRateLimiter.create(1.0, 1, 1);
+    try {
+      limiter.tryAcquire("a", 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      limiter.reserve("a", -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testToString() {
+    assertEquals("KeyedRateLimiter[stableRate=5.0qps, maxBurstPermits=2.0]",
+        KeyedRateLimiter.create(5.0, 2, 10).toString());
+  }
+
+  public void testNulls() {
+    NullPointerTester tester = new NullPointerTester()
+        .setDefault(int.class, 1)
+        .setDefault(double.class, 1.0d);
+    tester.testAllPublicStaticMethods(KeyedRateLimiter.class);
+    tester.testAllPublicInstanceMethods(KeyedRateLimiter.create(5.0, 1, 10));
+  }
+}
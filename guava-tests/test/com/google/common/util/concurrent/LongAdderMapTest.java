@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link LongAdderMap}.
+ */
+public class LongAdderMapTest extends TestCase {
+  public void testNulls() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicStaticMethods(LongAdderMap.class);
+    tester.testAllPublicInstanceMethods(LongAdderMap.create());
+  }
+
+  public void testAddAndGet() {
+    LongAdderMap<String> map = LongAdderMap.create();
+    assertEquals(0L, map.get("a"));
+    assertFalse(map.containsKey("a"));
+    map.increment("a");
+    map.add("a", 41);
+    map.decrement("b");
+    assertEquals(42L, map.get("a"));
+    assertEquals(-1L, map.get("b"));
+    assertEquals(2, map.size());
+    assertTrue(map.containsKey("a"));
+    assertEquals(41L, map.sum());
+  }
+
+  public void testRemove() {
+    LongAdderMap<String> map = LongAdderMap.create();
+    map.add("a", 5);
+    assertEquals(5L, map.remove("a"));
+    assertFalse(map.containsKey("a"));
+    assertEquals(0L, map.remove("a"));
+    assertTrue(map.isEmpty());
+  }
+
+  public void testRemoveAllZeros() {
+    LongAdderMap<String> map = LongAdderMap.create();
+    map.add("a", 1);
+    map.add("b", 1);
+    map.decrement("b");
+    map.add("c", 0);
+    map.removeAllZeros();
+    assertEquals(ImmutableMap.of("a", 1L), map.asMap());
+  }
+
+  public void testAsMap_isSnapshot() {
+    LongAdderMap<String> map = LongAdderMap.create();
+    map.add("a", 1);
+    map.add("b", 2);
+    Map<String, Long> snapshot = map.asMap();
+    map.add("a", 10);
+    map.add("c", 3);
+    assertEquals(ImmutableMap.of("a", 1L, "b", 2L), snapshot);
+    assertEquals(ImmutableMap.of("a", 11L, "b", 2L, "c", 3L), map.asMap());
+  }
+
+  public void testClear() {
+    LongAdderMap<String> map = LongAdderMap.create();
+    map.add("a", 1);
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(0L, map.sum());
+  }
+
+  public void testToString() {
+    LongAdderMap<String> map = LongAdderMap.create();
+    map.add("a", 1);
+    assertEquals("{a=1}", map.toString());
+  }
+
+  public void testModify_basher() throws InterruptedException {
+    int nTasks = 3000;
+    int nThreads = 100;
+    final int addsPerTask = 1000;
+    final String key = "key";
+
+    final LongAdderMap<String> map = LongAdderMap.create();
+
+    ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+    for (int i = 0; i < nTasks; i++) {
+      threadPool.submit(new Runnable() {
+        @Override public void run() {
+          for (int j = 0; j < addsPerTask; j++) {
+            map.add(key, j);
+            map.decrement(key);
+          }
+        }
+      });
+    }
+
+    threadPool.shutdown();
+    assertTrue(threadPool.awaitTermination(300, TimeUnit.SECONDS));
+
+    long perTask = (long) addsPerTask * (addsPerTask - 1) / 2 - addsPerTask;
+    assertEquals(nTasks * perTask, map.get(key));
+  }
+}
@@ -20,6 +20,7 @@ import com.google.common.testing.AbstractPackageSanityTests;
 import com.google.common.util.concurrent.RateLimiter.SleepingStopwatch;
 
 import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Basic sanity tests for the entire package.
@@ -42,8 +43,11 @@ public class PackageSanityTests extends AbstractPackageSanityTests {
   public PackageSanityTests() {
     setDefault(AbstractFuture.class, SettableFuture.create());
     setDefault(Class.class, IOException.class);
+    setDefault(ConcurrencyLimit.class, ConcurrencyLimit.vegas(1, 1));
     setDefault(RateLimiter.class, RateLimiter.create(1.0));
     setDefault(SleepingStopwatch.class, NO_OP_STOPWATCH);
+    // so that the workers of executors created by the sanity tests do not keep the JVM alive
+    setDefault(ThreadFactory.class, new ThreadFactoryBuilder().setDaemon(true).build());
     setDefault(long.class, 0L);
   }
 }
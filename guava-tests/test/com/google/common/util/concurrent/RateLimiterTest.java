@@ -25,6 +25,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import com.google.common.collect.ImmutableClassToInstanceMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.testing.FakeTicker;
 import com.google.common.testing.NullPointerTester;
 import com.google.common.testing.NullPointerTester.Visibility;
 import com.google.common.util.concurrent.RateLimiter.SleepingStopwatch;
@@ -39,6 +40,10 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -494,6 +499,144 @@ public class RateLimiterTest extends TestCase {
     }
   }
 
+  public void testTokenBucket_burstThenRate() {
+    RateLimiter limiter = RateLimiter.createTokenBucket(stopwatch, 5.0, 3);
+    limiter.acquire(); // R0.00, the bucket starts full
+    limiter.acquire(); // R0.00
+    limiter.acquire(); // R0.00
+    limiter.acquire(); // R0.20, the bucket is empty
+    limiter.acquire(); // R0.20
+    assertEvents("R0.00", "R0.00", "R0.00", "R0.20", "R0.20");
+  }
+
+  public void testTokenBucket_requestsPayTheirOwnCost() {
+    RateLimiter limiter = RateLimiter.createTokenBucket(stopwatch, 1.0, 2);
+    limiter.acquire(2); // R0.00, the bucket holds 2 permits
+    limiter.acquire(3); // R3.00, waits for its own 3 permits
+    limiter.acquire(1); // R1.00
+    stopwatch.sleepMillis(1500);
+    limiter.acquire(2); // R0.50, the bucket refilled 1.5 permits
+    limiter.acquire(4); // R4.00, more than the bucket can hold
+    assertEvents("R0.00", "R3.00", "R1.00", "U1.50", "R0.50", "R4.00");
+  }
+
+  public void testTokenBucket_burstIsCapped() {
+    RateLimiter limiter = RateLimiter.createTokenBucket(stopwatch, 2.0, 4);
+    limiter.acquire(4); // R0.00
+    stopwatch.sleepMillis(10000);
+    limiter.acquire(4); // R0.00, only 4 permits were saved in 10 seconds
+    limiter.acquire(1); // R0.50
+    assertEvents("R0.00", "U10.00", "R0.00", "R0.50");
+  }
+
+  public void testTokenBucket_setRate() {
+    RateLimiter limiter = RateLimiter.createTokenBucket(stopwatch, 1.0, 1);
+    limiter.acquire(1); // R0.00
+    limiter.acquire(2); // R2.00
+    assertEquals(1.0, limiter.getRate(), EPSILON);
+    limiter.setRate(4.0);
+    assertEquals(4.0, limiter.getRate(), EPSILON);
+    limiter.acquire(2); // R0.50, at the new rate
+    stopwatch.sleepMillis(1000);
+    limiter.acquire(2); // R0.25, the bucket still holds at most one permit
+    assertEvents("R0.00", "R2.00", "R0.50", "U1.00", "R0.25");
+  }
+
+  public void testTokenBucket_reserve() {
+    RateLimiter limiter = RateLimiter.createTokenBucket(stopwatch, 5.0, 1);
+    assertEquals(0, limiter.reserve(1));
+    assertEquals(200000, limiter.reserve(1));
+    assertEquals(600000, limiter.reserve(2));
+    stopwatch.sleepMillis(500);
+    assertEquals(300000, limiter.reserve(1));
+    assertEvents("U0.50");
+  }
+
+  public void testTokenBucket_tryAcquire() {
+    RateLimiter limiter = RateLimiter.createTokenBucket(stopwatch, 5.0, 2);
+    assertTrue(limiter.tryAcquire(2));
+    assertFalse(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire(100, MILLISECONDS));
+    assertTrue(limiter.tryAcquire(200, MILLISECONDS));
+    assertFalse(limiter.tryAcquire(2, 300, MILLISECONDS));
+    assertTrue(limiter.tryAcquire(2, Long.MAX_VALUE, MICROSECONDS));
+    assertEvents("R0.00", "R0.20", "R0.40");
+  }
+
+  /** Unlike the smooth rate limiters, the token bucket is precise at a million permits a second. */
+  public void testTokenBucket_highRate() {
+    FakeTicker ticker = new FakeTicker();
+    RateLimiter limiter = RateLimiter.createTokenBucket(4000000.0, 4, ticker);
+    assertEquals(4000000.0, limiter.getRate(), EPSILON);
+    int acquired = 0;
+    for (int i = 0; i < 1000; i++) {
+      ticker.advance(1, MICROSECONDS);
+      while (limiter.tryAcquire()) {
+        acquired++;
+      }
+    }
+    assertEquals(4000, acquired);
+  }
+
+  public void testTokenBucket_concurrent() throws Exception {
+    final FakeTicker ticker = new FakeTicker();
+    final RateLimiter limiter = RateLimiter.createTokenBucket(1000.0, 500, ticker);
+    int numThreads = 4;
+    final int attemptsPerThread = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Integer>> futures = Lists.newArrayList();
+      for (int t = 0; t < numThreads; t++) {
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int acquired = 0;
+            for (int i = 0; i < attemptsPerThread; i++) {
+              if (limiter.tryAcquire()) {
+                acquired++;
+              }
+            }
+            return acquired;
+          }
+        }));
+      }
+      int acquired = 0;
+      for (Future<Integer> future : futures) {
+        acquired += future.get();
+      }
+      // the time never advances, so exactly the permits in the full bucket are handed out
+      assertEquals(500, acquired);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testTokenBucket_parameterValidation() {
+    for (double maxBurstPermits : new double[] {0.0, -1.0, Double.NaN}) {
+      try {
+        RateLimiter.createTokenBucket(1.0, maxBurstPermits);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+    try {
+      RateLimiter.createTokenBucket(0.0, 1.0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    RateLimiter limiter = RateLimiter.createTokenBucket(stopwatch, 1.0, 1.0);
+    try {
+      limiter.reserve(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testTokenBucket_toString() {
+    assertEquals("RateLimiter[stableRate=5.0qps, maxBurstPermits=2.0]",
+        RateLimiter.createTokenBucket(stopwatch, 5.0, 2).toString());
+  }
+
   public void testNulls() {
     NullPointerTester tester = new NullPointerTester()
         .setDefault(SleepingStopwatch.class, stopwatch)
@@ -501,6 +644,8 @@ public class RateLimiterTest extends TestCase {
         .setDefault(double.class, 1.0d);
     tester.testStaticMethods(RateLimiter.class, Visibility.PACKAGE);
     tester.testInstanceMethods(RateLimiter.create(stopwatch, 5.0), Visibility.PACKAGE);
+    tester.testInstanceMethods(
+        RateLimiter.createTokenBucket(stopwatch, 5.0, 1.0), Visibility.PACKAGE);
   }
 
   private long measureTotalTimeMillis(RateLimiter rateLimiter, int permits, Random random) {
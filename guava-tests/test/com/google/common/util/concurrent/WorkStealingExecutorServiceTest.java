@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link MoreExecutors#newWorkStealingExecutorService}.
+ */
+public class WorkStealingExecutorServiceTest extends TestCase {
+  private ListeningExecutorService executor;
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (executor != null) {
+      executor.shutdownNow();
+      assertTrue(executor.awaitTermination(10, SECONDS));
+    }
+  }
+
+  public void testSubmit() throws Exception {
+    executor = MoreExecutors.newWorkStealingExecutorService(4);
+    List<ListenableFuture<Integer>> futures = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      futures.add(executor.submit(Callables.returning(i)));
+    }
+    assertEquals(4950, sum(Futures.allAsList(futures).get(10, SECONDS)));
+  }
+
+  public void testNestedSubmissions() throws Exception {
+    executor = MoreExecutors.newWorkStealingExecutorService(4);
+    final AtomicInteger count = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(1 << 12);
+    // a binary tree of tasks, most of which are stolen from the worker that forked them
+    fork(0, count, done);
+    assertTrue(done.await(10, SECONDS));
+    assertEquals((1 << 13) - 1, count.get());
+  }
+
+  private void fork(final int depth, final AtomicInteger count, final CountDownLatch done) {
+    count.incrementAndGet();
+    if (depth == 12) {
+      done.countDown();
+      return;
+    }
+    for (int i = 0; i < 2; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          fork(depth + 1, count, done);
+        }
+      });
+    }
+  }
+
+  public void testListenersRunOnCompletingWorker() throws Exception {
+    executor = MoreExecutors.newWorkStealingExecutorService(2);
+    final CountDownLatch bothRunning = new CountDownLatch(2);
+    final CountDownLatch listenerRan = new CountDownLatch(1);
+    final AtomicReference<Thread> completingThread = new AtomicReference<Thread>();
+    final AtomicReference<Thread> listenerThread = new AtomicReference<Thread>();
+
+    // keeps the other worker busy, so that it can not steal the listener
+    ListenableFuture<?> blocker = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws InterruptedException {
+        bothRunning.countDown();
+        bothRunning.await();
+        listenerRan.await();
+        return null;
+      }
+    });
+    ListenableFuture<?> completer = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws InterruptedException {
+        bothRunning.countDown();
+        bothRunning.await();
+        SettableFuture<String> future = SettableFuture.create();
+        Futures.transform(future, new Function<String, Void>() {
+          @Override
+          public Void apply(String input) {
+            listenerThread.set(Thread.currentThread());
+            listenerRan.countDown();
+            return null;
+          }
+        }, executor);
+        completingThread.set(Thread.currentThread());
+        future.set("done");
+        return null;
+      }
+    });
+
+    completer.get(10, SECONDS);
+    blocker.get(10, SECONDS);
+    assertSame(completingThread.get(), listenerThread.get());
+  }
+
+  public void testShutdown() throws Exception {
+    executor = MoreExecutors.newWorkStealingExecutorService(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    ListenableFuture<?> running = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws InterruptedException {
+        release.await();
+        return null;
+      }
+    });
+    executor.shutdown();
+    assertTrue(executor.isShutdown());
+    assertFalse(executor.isTerminated());
+    try {
+      executor.execute(Runnables.doNothing());
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+    release.countDown();
+    assertTrue(executor.awaitTermination(10, SECONDS));
+    assertTrue(executor.isTerminated());
+    assertTrue(running.isDone());
+  }
+
+  public void testShutdownNow() throws Exception {
+    executor = MoreExecutors.newWorkStealingExecutorService(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch never = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        Uninterruptibles.awaitUninterruptibly(never, 100, SECONDS);
+      }
+    });
+    started.await();
+    Runnable queued = Runnables.doNothing();
+    executor.execute(queued);
+    List<Runnable> neverRun = executor.shutdownNow();
+    assertEquals(1, neverRun.size());
+    assertSame(queued, neverRun.get(0));
+    never.countDown();
+    assertTrue(executor.awaitTermination(10, SECONDS));
+  }
+
+  public void testInterruptDoesNotStopWorker() throws Exception {
+    executor = MoreExecutors.newWorkStealingExecutorService(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    ListenableFuture<?> sleeper = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws InterruptedException {
+        started.countDown();
+        Thread.sleep(SECONDS.toMillis(100));
+        return null;
+      }
+    });
+    started.await();
+    sleeper.cancel(true);
+    assertEquals(42, (int) executor.submit(Callables.returning(42)).get(10, SECONDS));
+  }
+
+  public void testErrorDoesNotStopWorker() throws Exception {
+    executor = MoreExecutors.newWorkStealingExecutorService(1);
+    final CountDownLatch forkedRan = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        // queued on this worker's own deque, which no other worker could drain
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            forkedRan.countDown();
+          }
+        });
+        throw new AssertionError("expected");
+      }
+    });
+    assertTrue(forkedRan.await(10, SECONDS));
+    assertEquals(42, (int) executor.submit(Callables.returning(42)).get(10, SECONDS));
+    assertFalse(executor.isTerminated());
+  }
+
+  private static int sum(List<Integer> values) {
+    int sum = 0;
+    for (int value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+}
@@ -14,7 +14,9 @@
 
 package com.google.common.cache;
 
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
@@ -269,4 +271,80 @@ public abstract class AbstractCache<K, V> implements Cache<K, V> {
       evictionCount.add(otherStats.evictionCount());
     }
   }
+
+  /**
+   * A thread-safe {@link StatsCounter} implementation which, in addition to the counts kept by
+   * {@link SimpleStatsCounter}, records the distributions of load and lookup latencies, which are
+   * available from {@link CacheStats#loadLatency} and {@link CacheStats#getLatency}.
+   *
+   * <p>Each distribution is a fixed-size histogram (see {@link LatencyDistribution}) whose counts
+   * are striped across threads, so recording a latency neither allocates nor serializes
+   * concurrent callers.
+   *
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // AtomicLongArray
+  public static final class LatencyStatsCounter implements StatsCounter {
+    private final SimpleStatsCounter counts = new SimpleStatsCounter();
+    private final LatencyRecorder loadLatency = new LatencyRecorder();
+    private final LatencyRecorder getLatency = new LatencyRecorder();
+
+    /**
+     * Constructs an instance with all counts initialized to zero and empty distributions.
+     */
+    public LatencyStatsCounter() {}
+
+    @Override
+    public void recordHits(int count) {
+      counts.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+      counts.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+      counts.recordLoadSuccess(loadTime);
+      loadLatency.record(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+      counts.recordLoadException(loadTime);
+      loadLatency.record(loadTime);
+    }
+
+    /**
+     * Records the latency of a cache lookup. This should be called once per lookup, whether it was
+     * a hit or a miss, with the time it took including any time spent loading or waiting for
+     * another thread to load the value.
+     *
+     * @param latency the number of nanoseconds the lookup took
+     */
+    public void recordGet(long latency) {
+      getLatency.record(latency);
+    }
+
+    @Override
+    public void recordEviction() {
+      counts.recordEviction();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+      CacheStats stats = counts.snapshot();
+      return new CacheStats(
+          stats.hitCount(),
+          stats.missCount(),
+          stats.loadSuccessCount(),
+          stats.loadExceptionCount(),
+          stats.totalLoadTime(),
+          stats.evictionCount(),
+          loadLatency.snapshot(),
+          getLatency.snapshot());
+    }
+  }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.CacheLoader.UnsupportedLoadingOperationException;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Map;
+
+/**
+ * Starts computing or retrieving values, based on a key, for use in populating an
+ * {@link AsyncLoadingCache}.
+ *
+ * <p>Most implementations will only need to implement {@link #load}. Other methods may be
+ * overridden as desired.
+ *
+ * <p>Usage example: <pre>   {@code
+ *
+ *   AsyncCacheLoader<Key, Graph> loader = new AsyncCacheLoader<Key, Graph>() {
+ *     public ListenableFuture<Graph> load(Key key) {
+ *       return graphService.fetchGraph(key);
+ *     }
+ *   };
+ *   AsyncLoadingCache<Key, Graph> cache = CacheBuilder.newBuilder().buildAsync(loader);}</pre>
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtIncompatible
+public abstract class AsyncCacheLoader<K, V> {
+  /**
+   * Constructor for use by subclasses.
+   */
+  protected AsyncCacheLoader() {}
+
+  /**
+   * Starts computing or retrieving the value corresponding to {@code key}. This method should
+   * return promptly; the work of loading the value should be performed asynchronously.
+   *
+   * <p>If this method throws an exception, or if the returned future fails, the failure is
+   * reported to every caller waiting on the load and the key is removed from the cache.
+   *
+   * @param key the non-null key whose value should be loaded
+   * @return a future for the value associated with {@code key}; <b>must not be null, and must not
+   *     complete with null</b>
+   * @throws Exception if unable to start loading the result
+   */
+  public abstract ListenableFuture<V> load(K key) throws Exception;
+
+  /**
+   * Starts computing or retrieving the values corresponding to {@code keys}. This method is called
+   * by {@link AsyncLoadingCache#getAll}.
+   *
+   * <p>If the resulting map doesn't contain all requested {@code keys} then the futures for the
+   * missing keys fail, and those keys are removed from the cache. Entries for keys that were not
+   * requested are ignored.
+   *
+   * <p>This method should be overridden when bulk retrieval is significantly more efficient than
+   * many individual lookups. Note that {@link AsyncLoadingCache#getAll} will defer to individual
+   * calls to {@link #load} if this method is not overridden.
+   *
+   * @param keys the unique, non-null keys whose values should be loaded
+   * @return a future for a map from each key in {@code keys} to the value associated with that
+   *     key; <b>may not contain null values</b>
+   * @throws Exception if unable to start loading the result
+   */
+  public ListenableFuture<Map<K, V>> loadAll(Iterable<? extends K> keys) throws Exception {
+    // This will be caught by getAll(), causing it to fall back to multiple calls to load
+    throw new UnsupportedLoadingOperationException();
+  }
+
+  /**
+   * Returns an asynchronous cache loader based on an <i>existing</i> function instance.
+   *
+   * @param function the function to be used for loading values; must never return {@code null}
+   * @return a cache loader that starts loading values by passing each key to {@code function}
+   */
+  public static <K, V> AsyncCacheLoader<K, V> from(final AsyncFunction<K, V> function) {
+    checkNotNull(function);
+    return new AsyncCacheLoader<K, V>() {
+      @Override
+      public ListenableFuture<V> load(K key) throws Exception {
+        return function.apply(checkNotNull(key));
+      }
+    };
+  }
+}
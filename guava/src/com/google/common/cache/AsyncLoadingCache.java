@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import javax.annotation.Nullable;
+
+/**
+ * A semi-persistent mapping from keys to futures of values. Values are automatically loaded by the
+ * cache using an {@link AsyncCacheLoader}, and are stored in the cache until either evicted or
+ * manually invalidated.
+ *
+ * <p>Unlike a {@link LoadingCache}, no method of this cache waits for a value to be loaded. The
+ * future of an in-flight load is itself stored as the cache entry, so concurrent requests for the
+ * same key share a single load without blocking. Futures which fail, or which complete with
+ * {@code null}, are removed from the cache automatically so that a subsequent request loads the
+ * value again.
+ *
+ * <p>Implementations of this interface are expected to be thread-safe, and can be safely accessed
+ * by multiple concurrent threads.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtIncompatible
+public interface AsyncLoadingCache<K, V> {
+
+  /**
+   * Returns the future associated with {@code key} in this cache, or {@code null} if there is no
+   * cached future for {@code key}. The returned future may still be loading.
+   */
+  @Nullable
+  ListenableFuture<V> getIfPresent(Object key);
+
+  /**
+   * Returns the future associated with {@code key} in this cache, first starting to load the value
+   * if necessary. This method never blocks waiting for a value to load.
+   *
+   * <p>If another call to {@link #get} or {@link #getAll} is currently loading the value for
+   * {@code key}, returns the future of that load.
+   *
+   * <p>If {@link AsyncCacheLoader#load} throws an exception, the returned future fails with that
+   * exception.
+   */
+  ListenableFuture<V> get(K key);
+
+  /**
+   * Returns a future for a map of the values associated with {@code keys}, starting to load those
+   * values if necessary. This method never blocks waiting for values to load.
+   *
+   * <p>Caches loaded by an {@link AsyncCacheLoader} will issue a single request to
+   * {@link AsyncCacheLoader#loadAll} for all keys which are not already present in the cache, if
+   * that method is implemented. The returned future fails if the value for any key fails to load.
+   *
+   * <p>Note that duplicate elements in {@code keys}, as determined by {@link Object#equals}, will
+   * be ignored.
+   */
+  ListenableFuture<ImmutableMap<K, V>> getAll(Iterable<? extends K> keys);
+
+  /**
+   * Associates {@code valueFuture} with {@code key} in this cache. If the cache previously
+   * contained a future associated with {@code key}, the old future is replaced by
+   * {@code valueFuture}. If {@code valueFuture} fails, it is removed from the cache.
+   */
+  void put(K key, ListenableFuture<V> valueFuture);
+
+  /**
+   * Discards any cached future for key {@code key}. A load which is in flight for {@code key}
+   * continues, but its result is not cached.
+   */
+  void invalidate(Object key);
+
+  /**
+   * Discards all entries in the cache.
+   */
+  void invalidateAll();
+
+  /**
+   * Returns the approximate number of entries in this cache, including entries whose values are
+   * still loading.
+   */
+  long size();
+
+  /**
+   * Returns a current snapshot of this cache's cumulative statistics. All stats are initialized to
+   * zero, and are monotonically increasing over the lifetime of the cache.
+   *
+   * <p>Load statistics measure the time from starting a load to the completion of its future.
+   */
+  CacheStats stats();
+
+  /**
+   * Performs any pending maintenance operations needed by the cache. Exactly which activities are
+   * performed -- if any -- is implementation-dependent.
+   */
+  void cleanUp();
+}
@@ -18,6 +18,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
 import com.google.common.base.Ascii;
@@ -29,6 +30,7 @@ import com.google.common.base.Ticker;
 import com.google.common.cache.AbstractCache.SimpleStatsCounter;
 import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.cache.LocalCache.Strength;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
@@ -39,6 +41,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
 
 /**
  * <p>A builder of {@link LoadingCache} and {@link Cache} instances having any combination of the
@@ -184,6 +187,15 @@ public final class CacheBuilder<K, V> {
         }
       };
 
+  @GwtIncompatible // LatencyStatsCounter
+  static final Supplier<StatsCounter> LATENCY_STATS_COUNTER =
+      new Supplier<StatsCounter>() {
+        @Override
+        public StatsCounter get() {
+          return new AbstractCache.LatencyStatsCounter();
+        }
+      };
+
   enum NullListener implements RemovalListener<Object, Object> {
     INSTANCE;
 
@@ -219,13 +231,21 @@ public final class CacheBuilder<K, V> {
   long maximumSize = UNSET_INT;
   long maximumWeight = UNSET_INT;
   Weigher<? super K, ? super V> weigher;
+  EvictionPolicy evictionPolicy;
 
   Strength keyStrength;
   Strength valueStrength;
+  @GwtIncompatible // ValueSerializer
+  ValueSerializer<?> valueSerializer;
+  /** Whether {@link #offHeapValues} was called, which is never the case under GWT. */
+  boolean storesValuesOffHeap;
 
+  Expiry<? super K, ? super V> expiry;
   long expireAfterWriteNanos = UNSET_INT;
   long expireAfterAccessNanos = UNSET_INT;
   long refreshNanos = UNSET_INT;
+  int refreshBatchSize = UNSET_INT;
+  long refreshBatchNanos = UNSET_INT;
 
   Equivalence<Object> keyEquivalence;
   Equivalence<Object> valueEquivalence;
@@ -421,7 +441,9 @@ public final class CacheBuilder<K, V> {
   /**
    * Specifies the maximum weight of entries the cache may contain. Weight is determined using the
    * {@link Weigher} specified with {@link #weigher}, and use of this method requires a
-   * corresponding call to {@link #weigher} prior to calling {@link #build}.
+   * corresponding call to {@link #weigher} prior to calling {@link #build}, unless values are
+   * stored {@linkplain #offHeapValues off heap}. In that case each entry may instead weigh the
+   * number of bytes in its serialized value.
    *
    * <p>Note that the cache <b>may evict an entry before this limit is exceeded</b>. As the cache
    * size grows close to the maximum, the cache evicts entries that are less likely to be used
@@ -506,7 +528,15 @@ public final class CacheBuilder<K, V> {
     if (expireAfterWriteNanos == 0 || expireAfterAccessNanos == 0) {
       return 0;
     }
-    return (weigher == null) ? maximumSize : maximumWeight;
+    return (weigher == null && maximumWeight == UNSET_INT) ? maximumSize : maximumWeight;
+  }
+
+  /**
+   * Returns true if entries weigh the serialized size of their off-heap values, which is the case
+   * when a maximum weight is set without a weigher.
+   */
+  boolean weighsSerializedValues() {
+    return storesValuesOffHeap && weigher == null && maximumWeight != UNSET_INT;
   }
 
   // Make a safe contravariant cast now so we don't have to do it over and over.
@@ -515,6 +545,35 @@ public final class CacheBuilder<K, V> {
     return (Weigher<K1, V1>) MoreObjects.firstNonNull(weigher, OneWeigher.INSTANCE);
   }
 
+  /**
+   * Specifies the algorithm used to choose which entry to evict when the cache exceeds its
+   * {@linkplain #maximumSize maximum size} or {@linkplain #maximumWeight maximum weight}. By
+   * default, {@link EvictionPolicy#LRU} is used.
+   *
+   * <p>{@link EvictionPolicy#TINY_LFU} guards frequently used entries against being flushed out by
+   * a burst of rarely used ones, such as a scan over cold keys during a batch job: a newly added
+   * entry is only retained if it has been used more often than the entry it would displace.
+   *
+   * <p>The eviction policy has no effect unless a maximum size or weight is also specified.
+   *
+   * @param policy the eviction policy to use
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if an eviction policy was already set
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // To be supported
+  public CacheBuilder<K, V> evictionPolicy(EvictionPolicy policy) {
+    checkState(
+        evictionPolicy == null, "eviction policy was already set to %s", evictionPolicy);
+    evictionPolicy = checkNotNull(policy);
+    return this;
+  }
+
+  EvictionPolicy getEvictionPolicy() {
+    return MoreObjects.firstNonNull(evictionPolicy, EvictionPolicy.LRU);
+  }
+
   /**
    * Specifies that each key (not value) stored in the cache should be wrapped in a
    * {@link WeakReference} (by default, strong references are used).
@@ -593,6 +652,7 @@ public final class CacheBuilder<K, V> {
 
   CacheBuilder<K, V> setValueStrength(Strength strength) {
     checkState(valueStrength == null, "Value strength was already set to %s", valueStrength);
+    checkState(!storesValuesOffHeap, "value strength can not be combined with offHeapValues");
     valueStrength = checkNotNull(strength);
     return this;
   }
@@ -601,6 +661,56 @@ public final class CacheBuilder<K, V> {
     return MoreObjects.firstNonNull(valueStrength, Strength.STRONG);
   }
 
+  /**
+   * Specifies that values should be serialized and stored outside of the Java heap, in direct
+   * {@link java.nio.ByteBuffer} memory (by default, values are stored on the heap). Only the keys
+   * and small per-entry references remain on the heap, which reduces garbage collection pauses
+   * for caches holding large amounts of data.
+   *
+   * <p>Each read of a value deserializes a new copy of it, which costs more than returning an
+   * on-heap value. Off-heap space is allocated in power-of-two sized chunks and is freed when an
+   * entry is evicted, expired, replaced or removed, for reuse by later values. When a
+   * {@linkplain #maximumWeight maximum weight} is set without a {@linkplain #weigher weigher},
+   * each entry weighs the number of bytes in its serialized value, bounding the off-heap memory
+   * used by live values. Off-heap memory is reserved in slabs which are shared by all values of the
+   * cache, and which are sized from the maximum weight in that case; the reserved memory is not
+   * counted against the maximum weight, and may exceed it by the unused space of partly filled
+   * slabs.
+   *
+   * <p><b>Note:</b> when this method is used, values are compared using {@link Object#equals},
+   * so the serializer must produce values equal to the ones it serialized.
+   *
+   * <p>This feature cannot be used in conjunction with {@link #weakValues} or {@link #softValues}.
+   *
+   * @param serializer the serializer used to store values off heap
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if a serializer or value strength was already set
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // java.nio.ByteBuffer
+  public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> offHeapValues(
+      ValueSerializer<V1> serializer) {
+    checkState(valueSerializer == null, "value serializer was already set to %s", valueSerializer);
+    checkState(getValueStrength() == Strength.STRONG,
+        "offHeapValues can not be combined with %s values", valueStrength);
+
+    // safely limiting the kinds of caches this can produce
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, V1> me = (CacheBuilder<K1, V1>) this;
+    me.valueSerializer = checkNotNull(serializer);
+    me.storesValuesOffHeap = true;
+    return me;
+  }
+
+  // Make a safe cast now; the serializer's type was fixed by offHeapValues.
+  @SuppressWarnings("unchecked")
+  @Nullable
+  @GwtIncompatible // ValueSerializer
+  <V1 extends V> ValueSerializer<V1> getValueSerializer() {
+    return (ValueSerializer<V1>) valueSerializer;
+  }
+
   /**
    * Specifies that each entry should be automatically removed from the cache once a fixed duration
    * has elapsed after the entry's creation, or the most recent replacement of its value.
@@ -625,6 +735,7 @@ public final class CacheBuilder<K, V> {
         expireAfterWriteNanos == UNSET_INT,
         "expireAfterWrite was already set to %s ns",
         expireAfterWriteNanos);
+    checkState(expiry == null, "expireAfterWrite can not be combined with expireAfter");
     checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
     this.expireAfterWriteNanos = unit.toNanos(duration);
     return this;
@@ -661,6 +772,7 @@ public final class CacheBuilder<K, V> {
         expireAfterAccessNanos == UNSET_INT,
         "expireAfterAccess was already set to %s ns",
         expireAfterAccessNanos);
+    checkState(expiry == null, "expireAfterAccess can not be combined with expireAfter");
     checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
     this.expireAfterAccessNanos = unit.toNanos(duration);
     return this;
@@ -672,6 +784,53 @@ public final class CacheBuilder<K, V> {
         : expireAfterAccessNanos;
   }
 
+  /**
+   * Specifies that each entry should be automatically removed from the cache once a duration
+   * computed by {@code expiry} has elapsed. The duration is computed when the entry is created, and
+   * may be recomputed when its value is replaced or when it is read, so that each entry can have
+   * its own lifetime; for example, one derived from the value itself.
+   *
+   * <p>Entries are expired using a timing wheel in each segment, so expiration does not depend on
+   * the number of distinct durations in use. Expired entries may be counted in {@link Cache#size},
+   * but will never be visible to read or write operations, and are cleaned up as part of the
+   * routine maintenance described in the class javadoc.
+   *
+   * <p><b>Warning:</b> after invoking this method, do not continue to use <i>this</i> cache builder
+   * reference; instead use the reference this method <i>returns</i>. At runtime, these point to the
+   * same instance, but only the returned reference has the correct generic type information so as
+   * to ensure type safety.
+   *
+   * @param expiry the expiry to use in calculating the lifetime of cache entries
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if an expiry, time to live or time to idle was already set
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // To be supported
+  public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> expireAfter(
+      Expiry<? super K1, ? super V1> expiry) {
+    checkState(this.expiry == null, "expiry was already set to %s", this.expiry);
+    checkState(
+        expireAfterWriteNanos == UNSET_INT,
+        "expireAfter can not be combined with expireAfterWrite");
+    checkState(
+        expireAfterAccessNanos == UNSET_INT,
+        "expireAfter can not be combined with expireAfterAccess");
+
+    // safely limiting the kinds of caches this can produce
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, V1> me = (CacheBuilder<K1, V1>) this;
+    me.expiry = checkNotNull(expiry);
+    return me;
+  }
+
+  // Make a safe contravariant cast now so we don't have to do it over and over.
+  @SuppressWarnings("unchecked")
+  @Nullable
+  <K1 extends K, V1 extends V> Expiry<K1, V1> getExpiry() {
+    return (Expiry<K1, V1>) expiry;
+  }
+
   /**
    * Specifies that active entries are eligible for automatic refresh once a fixed duration has
    * elapsed after the entry's creation, or the most recent replacement of its value. The semantics
@@ -711,6 +870,56 @@ public final class CacheBuilder<K, V> {
     return (refreshNanos == UNSET_INT) ? DEFAULT_REFRESH_NANOS : refreshNanos;
   }
 
+  /**
+   * Specifies that automatic refreshes scheduled by {@link #refreshAfterWrite} should be coalesced
+   * into calls to {@link CacheLoader#loadAll}, rather than reloading each stale entry with its own
+   * call to {@link CacheLoader#reload}. This can greatly reduce the number of requests made to a
+   * backing store when many entries become stale at about the same time.
+   *
+   * <p>A stale entry continues to return its old value while its refresh is pending. Pending
+   * refreshes are loaded once {@code maxBatchSize} of them have accumulated, or by the first cache
+   * operation, including a read, which observes that {@code duration} has elapsed since the oldest
+   * of them was scheduled. If the old value expires while its refresh is pending, a read of that
+   * entry loads the batch at once rather than waiting for it. Like other refreshes, a batch is
+   * loaded by the thread performing the cache operation that issues it. Refreshes requested
+   * explicitly with {@link LoadingCache#refresh} are never batched.
+   *
+   * <p>If the cache loader does not implement {@link CacheLoader#loadAll}, pending refreshes fall
+   * back to {@link CacheLoader#reload} and later refreshes are not batched. Keys missing from the
+   * map returned by {@code loadAll} keep their old value, and the failure is logged.
+   *
+   * @param maxBatchSize the number of pending refreshes that causes a batch to be loaded
+   *     immediately
+   * @param duration the longest time a refresh waits for other refreshes to join its batch, before
+   *     the next cache operation loads it
+   * @param unit the unit that {@code duration} is expressed in
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maxBatchSize} is not positive or {@code duration}
+   *     is negative
+   * @throws IllegalStateException if refresh batching was already configured
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // To be supported (synchronously).
+  public CacheBuilder<K, V> refreshBatching(int maxBatchSize, long duration, TimeUnit unit) {
+    checkNotNull(unit);
+    checkState(refreshBatchSize == UNSET_INT,
+        "refresh batch size was already set to %s", refreshBatchSize);
+    checkArgument(maxBatchSize > 0, "maxBatchSize must be positive: %s", maxBatchSize);
+    checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
+    this.refreshBatchSize = maxBatchSize;
+    this.refreshBatchNanos = unit.toNanos(duration);
+    return this;
+  }
+
+  int getRefreshBatchSize() {
+    return refreshBatchSize;
+  }
+
+  long getRefreshBatchNanos() {
+    return refreshBatchNanos;
+  }
+
   /**
    * Specifies a nanosecond-precision time source for this cache. By default,
    * {@link System#nanoTime} is used.
@@ -788,8 +997,34 @@ public final class CacheBuilder<K, V> {
     return this;
   }
 
+  /**
+   * Enable the accumulation of {@link CacheStats} during the operation of the cache, as with
+   * {@link #recordStats}, including the distributions of load and lookup latencies. These are
+   * available from {@link CacheStats#loadLatency} and {@link CacheStats#getLatency}, for example to
+   * monitor the 99th percentile lookup latency with {@code stats.getLatency().percentile(99)}.
+   *
+   * <p>In addition to the bookkeeping performed by {@code recordStats}, each lookup (where a call
+   * to a bulk method such as {@code getAll} is one lookup) reads the cache's
+   * {@linkplain #ticker ticker} twice, and each cache segment keeps fixed-size histograms of a few
+   * kilobytes per processor.
+   *
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // LatencyStatsCounter
+  public CacheBuilder<K, V> recordLatencyStats() {
+    statsCounterSupplier = LATENCY_STATS_COUNTER;
+    return this;
+  }
+
   boolean isRecordingStats() {
-    return statsCounterSupplier == CACHE_STATS_COUNTER;
+    return statsCounterSupplier != NULL_STATS_COUNTER;
+  }
+
+  @GwtIncompatible // LatencyStatsCounter
+  boolean isRecordingLatency() {
+    return statsCounterSupplier == LATENCY_STATS_COUNTER;
   }
 
   Supplier<? extends StatsCounter> getStatsCounterSupplier() {
@@ -811,6 +1046,7 @@ public final class CacheBuilder<K, V> {
   public <K1 extends K, V1 extends V> LoadingCache<K1, V1> build(
       CacheLoader<? super K1, V1> loader) {
     checkWeightWithWeigher();
+    checkRefreshBatching();
     return new LocalCache.LocalLoadingCache<K1, V1>(this, loader);
   }
 
@@ -828,17 +1064,61 @@ public final class CacheBuilder<K, V> {
    */
   public <K1 extends K, V1 extends V> Cache<K1, V1> build() {
     checkWeightWithWeigher();
+    checkRefreshBatching();
     checkNonLoadingCache();
     return new LocalCache.LocalManualCache<K1, V1>(this);
   }
 
+  /**
+   * Builds a cache which stores the future of each value, starting to load it with the supplied
+   * {@code AsyncCacheLoader} when a key is first requested. No method of the returned cache blocks
+   * waiting for a value to load: concurrent requests for the same key share the in-flight future,
+   * and futures which fail are removed from the cache so that the next request loads again.
+   *
+   * <p>Weighers, removal listeners, weak or soft values and {@link #refreshAfterWrite} are not
+   * supported by asynchronous caches, since they would observe futures rather than values.
+   *
+   * <p>This method does not alter the state of this {@code CacheBuilder} instance, so it can be
+   * invoked again to create multiple independent caches.
+   *
+   * @param loader the asynchronous cache loader used to start loading new values
+   * @return a cache having the requested features
+   * @throws IllegalStateException if an option that is not supported by asynchronous caches was
+   *     configured
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // ListenableFuture
+  public <K1 extends K, V1 extends V> AsyncLoadingCache<K1, V1> buildAsync(
+      AsyncCacheLoader<? super K1, V1> loader) {
+    checkNotNull(loader);
+    checkState(weigher == null, "weigher is not supported by asynchronous caches");
+    checkState(valueStrength == null, "value strength is not supported by asynchronous caches");
+    checkState(!storesValuesOffHeap, "offHeapValues is not supported by asynchronous caches");
+    checkState(removalListener == null,
+        "removalListener is not supported by asynchronous caches");
+    checkState(refreshNanos == UNSET_INT,
+        "refreshAfterWrite is not supported by asynchronous caches");
+    checkWeightWithWeigher();
+    checkRefreshBatching();
+    @SuppressWarnings("unchecked") // the cache only holds futures, which the checks above allow
+    CacheBuilder<K1, ListenableFuture<V1>> self = (CacheBuilder<K1, ListenableFuture<V1>>) this;
+    return new LocalCache.LocalAsyncLoadingCache<K1, V1>(self, loader);
+  }
+
   private void checkNonLoadingCache() {
     checkState(refreshNanos == UNSET_INT, "refreshAfterWrite requires a LoadingCache");
   }
 
+  private void checkRefreshBatching() {
+    checkState(refreshBatchSize == UNSET_INT || refreshNanos != UNSET_INT,
+        "refreshBatching requires refreshAfterWrite");
+  }
+
   private void checkWeightWithWeigher() {
     if (weigher == null) {
-      checkState(maximumWeight == UNSET_INT, "maximumWeight requires weigher");
+      checkState(maximumWeight == UNSET_INT || storesValuesOffHeap,
+          "maximumWeight requires weigher");
     } else {
       if (strictParsing) {
         checkState(maximumWeight != UNSET_INT, "weigher requires maximumWeight");
@@ -869,18 +1149,27 @@ public final class CacheBuilder<K, V> {
     if (maximumWeight != UNSET_INT) {
       s.add("maximumWeight", maximumWeight);
     }
+    if (evictionPolicy != null) {
+      s.add("evictionPolicy", Ascii.toLowerCase(evictionPolicy.toString()));
+    }
     if (expireAfterWriteNanos != UNSET_INT) {
       s.add("expireAfterWrite", expireAfterWriteNanos + "ns");
     }
     if (expireAfterAccessNanos != UNSET_INT) {
       s.add("expireAfterAccess", expireAfterAccessNanos + "ns");
     }
+    if (expiry != null) {
+      s.addValue("expiry");
+    }
     if (keyStrength != null) {
       s.add("keyStrength", Ascii.toLowerCase(keyStrength.toString()));
     }
     if (valueStrength != null) {
       s.add("valueStrength", Ascii.toLowerCase(valueStrength.toString()));
     }
+    if (storesValuesOffHeap) {
+      s.addValue("offHeapValues");
+    }
     if (keyEquivalence != null) {
       s.addValue("keyEquivalence");
     }
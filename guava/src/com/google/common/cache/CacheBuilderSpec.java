@@ -44,6 +44,8 @@ import javax.annotation.Nullable;
  * <li>{@code initialCapacity=[integer]}: sets {@link CacheBuilder#initialCapacity}.
  * <li>{@code maximumSize=[long]}: sets {@link CacheBuilder#maximumSize}.
  * <li>{@code maximumWeight=[long]}: sets {@link CacheBuilder#maximumWeight}.
+ * <li>{@code evictionPolicy=[policy]}: sets {@link CacheBuilder#evictionPolicy} to the named
+ *     {@link EvictionPolicy}, such as {@code lru} or {@code tiny_lfu}.
  * <li>{@code expireAfterAccess=[duration]}: sets {@link CacheBuilder#expireAfterAccess}.
  * <li>{@code expireAfterWrite=[duration]}: sets {@link CacheBuilder#expireAfterWrite}.
  * <li>{@code refreshAfterWrite=[duration]}: sets {@link CacheBuilder#refreshAfterWrite}.
@@ -96,6 +98,7 @@ public final class CacheBuilderSpec {
           .put("maximumSize", new MaximumSizeParser())
           .put("maximumWeight", new MaximumWeightParser())
           .put("concurrencyLevel", new ConcurrencyLevelParser())
+          .put("evictionPolicy", new EvictionPolicyParser())
           .put("weakKeys", new KeyStrengthParser(Strength.WEAK))
           .put("softValues", new ValueStrengthParser(Strength.SOFT))
           .put("weakValues", new ValueStrengthParser(Strength.WEAK))
@@ -110,6 +113,7 @@ public final class CacheBuilderSpec {
   @VisibleForTesting Long maximumSize;
   @VisibleForTesting Long maximumWeight;
   @VisibleForTesting Integer concurrencyLevel;
+  @VisibleForTesting EvictionPolicy evictionPolicy;
   @VisibleForTesting Strength keyStrength;
   @VisibleForTesting Strength valueStrength;
   @VisibleForTesting Boolean recordStats;
@@ -180,6 +184,9 @@ public final class CacheBuilderSpec {
     if (concurrencyLevel != null) {
       builder.concurrencyLevel(concurrencyLevel);
     }
+    if (evictionPolicy != null) {
+      builder.evictionPolicy(evictionPolicy);
+    }
     if (keyStrength != null) {
       switch (keyStrength) {
         case WEAK:
@@ -242,6 +249,7 @@ public final class CacheBuilderSpec {
         maximumSize,
         maximumWeight,
         concurrencyLevel,
+        evictionPolicy,
         keyStrength,
         valueStrength,
         recordStats,
@@ -263,6 +271,7 @@ public final class CacheBuilderSpec {
         && Objects.equal(maximumSize, that.maximumSize)
         && Objects.equal(maximumWeight, that.maximumWeight)
         && Objects.equal(concurrencyLevel, that.concurrencyLevel)
+        && Objects.equal(evictionPolicy, that.evictionPolicy)
         && Objects.equal(keyStrength, that.keyStrength)
         && Objects.equal(valueStrength, that.valueStrength)
         && Objects.equal(recordStats, that.recordStats)
@@ -398,6 +407,24 @@ public final class CacheBuilderSpec {
     }
   }
 
+  /** Parse evictionPolicy */
+  static class EvictionPolicyParser implements ValueParser {
+    @Override
+    public void parse(CacheBuilderSpec spec, String key, @Nullable String value) {
+      checkArgument(value != null && !value.isEmpty(), "value of key %s omitted", key);
+      checkArgument(
+          spec.evictionPolicy == null,
+          "eviction policy was already set to %s",
+          spec.evictionPolicy);
+      try {
+        spec.evictionPolicy = EvictionPolicy.valueOf(value.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(
+            format("key %s value set to %s, must be an eviction policy", key, value), e);
+      }
+    }
+  }
+
   /** Parse recordStats */
   static class RecordStatsParser implements ValueParser {
 
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.LocalCache.LocalAsyncLoadingCache;
+import com.google.common.cache.LocalCache.LocalManualCache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A handle to inspect and change, while the cache is in use, the size bound and expiration
+ * durations with which a cache was built by {@link CacheBuilder}. This allows a cache to be tuned
+ * without rebuilding it and discarding its contents:
+ *
+ * <pre>   {@code
+ *
+ *   CachePolicy policy = CachePolicy.of(cache);
+ *   if (policy.isBounded()) {
+ *     policy.setMaximum(config.getCacheSize());
+ *   }}</pre>
+ *
+ * <p>Only the policies the cache was built with can be changed; for example, a cache built without
+ * {@link CacheBuilder#expireAfterAccess} cannot be made to expire entries after access.
+ *
+ * <p>Changes take effect immediately for lookups, including for entries already in the cache:
+ * an entry expires once the current duration has elapsed since it was last accessed or written.
+ * When the maximum is lowered, the cache does not evict the excess entries all at once; instead,
+ * each subsequent write to the cache, or cleanup performed during reads or by {@link
+ * Cache#cleanUp}, evicts a small batch of entries, so that the cache converges on the new maximum
+ * without blocking other operations for long.
+ *
+ * <p>The maximum is spread evenly across the cache's internal segments, whose number is fixed when
+ * the cache is built. A cache built with a small maximum may therefore have fewer segments, and so
+ * less concurrency, than one built with a large maximum and resized down.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtIncompatible
+public final class CachePolicy {
+  private final LocalCache<?, ?> localCache;
+
+  private CachePolicy(LocalCache<?, ?> localCache) {
+    this.localCache = localCache;
+  }
+
+  /**
+   * Returns the policy of {@code cache}.
+   *
+   * @throws IllegalArgumentException if {@code cache} was not built by {@link CacheBuilder}
+   */
+  public static CachePolicy of(Cache<?, ?> cache) {
+    checkNotNull(cache);
+    checkArgument(
+        cache instanceof LocalManualCache, "cache was not built by CacheBuilder: %s", cache);
+    return new CachePolicy(((LocalManualCache<?, ?>) cache).localCache);
+  }
+
+  /**
+   * Returns the policy of {@code cache}.
+   *
+   * @throws IllegalArgumentException if {@code cache} was not built by {@link CacheBuilder}
+   */
+  public static CachePolicy of(AsyncLoadingCache<?, ?> cache) {
+    checkNotNull(cache);
+    checkArgument(
+        cache instanceof LocalAsyncLoadingCache, "cache was not built by CacheBuilder: %s", cache);
+    return new CachePolicy(((LocalAsyncLoadingCache<?, ?>) cache).localCache);
+  }
+
+  /**
+   * Returns true if the cache was built with {@link CacheBuilder#maximumSize} or
+   * {@link CacheBuilder#maximumWeight}.
+   */
+  public boolean isBounded() {
+    return localCache.evictsBySize();
+  }
+
+  /**
+   * Returns true if the maximum is a {@linkplain CacheBuilder#maximumWeight maximum weight} rather
+   * than a maximum number of entries.
+   */
+  public boolean isWeighted() {
+    return localCache.customWeigher();
+  }
+
+  /**
+   * Returns the maximum number of entries, or the maximum weight if the cache is
+   * {@linkplain #isWeighted weighted}.
+   *
+   * @throws IllegalStateException if the cache is not {@linkplain #isBounded bounded}
+   */
+  public long getMaximum() {
+    checkState(isBounded(), "cache is not bounded");
+    return localCache.maxWeight;
+  }
+
+  /**
+   * Changes the maximum number of entries, or the maximum weight if the cache is
+   * {@linkplain #isWeighted weighted}. If the cache currently holds more than the new maximum, the
+   * excess entries are evicted incrementally by subsequent operations.
+   *
+   * @throws IllegalArgumentException if {@code maximum} is negative
+   * @throws IllegalStateException if the cache is not {@linkplain #isBounded bounded}
+   */
+  public void setMaximum(long maximum) {
+    checkArgument(maximum >= 0, "maximum must not be negative: %s", maximum);
+    checkState(isBounded(), "cache is not bounded");
+    localCache.setMaxWeight(maximum);
+  }
+
+  /** Returns true if the cache was built with {@link CacheBuilder#expireAfterAccess}. */
+  public boolean expiresAfterAccess() {
+    return localCache.expiresAfterAccess();
+  }
+
+  /**
+   * Returns how long after the last access to an entry it expires, in the given unit.
+   *
+   * @throws IllegalStateException if the cache does not {@linkplain #expiresAfterAccess expire
+   *     after access}
+   */
+  public long getExpireAfterAccess(TimeUnit unit) {
+    checkState(expiresAfterAccess(), "cache does not expire after access");
+    return unit.convert(localCache.expireAfterAccessNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Changes how long after the last access to an entry it expires.
+   *
+   * @throws IllegalArgumentException if {@code duration} is not positive
+   * @throws IllegalStateException if the cache does not {@linkplain #expiresAfterAccess expire
+   *     after access}
+   */
+  public void setExpireAfterAccess(long duration, TimeUnit unit) {
+    checkNotNull(unit);
+    checkArgument(duration > 0, "duration must be positive: %s %s", duration, unit);
+    checkState(expiresAfterAccess(), "cache does not expire after access");
+    localCache.expireAfterAccessNanos = unit.toNanos(duration);
+  }
+
+  /** Returns true if the cache was built with {@link CacheBuilder#expireAfterWrite}. */
+  public boolean expiresAfterWrite() {
+    return localCache.expiresAfterWrite();
+  }
+
+  /**
+   * Returns how long after an entry is written it expires, in the given unit.
+   *
+   * @throws IllegalStateException if the cache does not {@linkplain #expiresAfterWrite expire
+   *     after write}
+   */
+  public long getExpireAfterWrite(TimeUnit unit) {
+    checkState(expiresAfterWrite(), "cache does not expire after write");
+    return unit.convert(localCache.expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Changes how long after an entry is written it expires.
+   *
+   * @throws IllegalArgumentException if {@code duration} is not positive
+   * @throws IllegalStateException if the cache does not {@linkplain #expiresAfterWrite expire
+   *     after write}
+   */
+  public void setExpireAfterWrite(long duration, TimeUnit unit) {
+    checkNotNull(unit);
+    checkArgument(duration > 0, "duration must be positive: %s %s", duration, unit);
+    checkState(expiresAfterWrite(), "cache does not expire after write");
+    localCache.expireAfterWriteNanos = unit.toNanos(duration);
+  }
+}
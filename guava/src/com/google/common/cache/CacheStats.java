@@ -15,7 +15,9 @@
 package com.google.common.cache;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
@@ -45,6 +47,9 @@ import javax.annotation.Nullable;
  * <li>No stats are modified when a cache entry is invalidated or manually removed.
  * <li>No stats are modified by operations invoked on the {@linkplain Cache#asMap asMap} view of the
  *     cache.
+ * <li>When the cache was built with {@link CacheBuilder#recordLatencyStats}, the loading time of
+ *     each load is also counted in {@code loadLatency}, and the time taken by each lookup is
+ *     counted in {@code getLatency}.
  * </ul>
  *
  * <p>A lookup is specifically defined as an invocation of one of the methods
@@ -62,6 +67,8 @@ public final class CacheStats {
   private final long loadExceptionCount;
   private final long totalLoadTime;
   private final long evictionCount;
+  private final LatencyDistribution loadLatency;
+  private final LatencyDistribution getLatency;
 
   /**
    * Constructs a new {@code CacheStats} instance.
@@ -76,6 +83,32 @@ public final class CacheStats {
       long loadExceptionCount,
       long totalLoadTime,
       long evictionCount) {
+    this(
+        hitCount,
+        missCount,
+        loadSuccessCount,
+        loadExceptionCount,
+        totalLoadTime,
+        evictionCount,
+        LatencyDistribution.EMPTY,
+        LatencyDistribution.EMPTY);
+  }
+
+  /**
+   * Constructs a new {@code CacheStats} instance which includes latency distributions.
+   *
+   * @since 20.0
+   */
+  @Beta
+  public CacheStats(
+      long hitCount,
+      long missCount,
+      long loadSuccessCount,
+      long loadExceptionCount,
+      long totalLoadTime,
+      long evictionCount,
+      LatencyDistribution loadLatency,
+      LatencyDistribution getLatency) {
     checkArgument(hitCount >= 0);
     checkArgument(missCount >= 0);
     checkArgument(loadSuccessCount >= 0);
@@ -89,6 +122,8 @@ public final class CacheStats {
     this.loadExceptionCount = loadExceptionCount;
     this.totalLoadTime = totalLoadTime;
     this.evictionCount = evictionCount;
+    this.loadLatency = checkNotNull(loadLatency);
+    this.getLatency = checkNotNull(getLatency);
   }
 
   /**
@@ -213,6 +248,31 @@ public final class CacheStats {
     return evictionCount;
   }
 
+  /**
+   * Returns the distribution of the time spent loading new values, with one latency counted each
+   * time {@code loadSuccessCount} or {@code loadExceptionCount} is incremented. This is empty
+   * unless the cache was built with {@link CacheBuilder#recordLatencyStats}.
+   *
+   * @since 20.0
+   */
+  @Beta
+  public LatencyDistribution loadLatency() {
+    return loadLatency;
+  }
+
+  /**
+   * Returns the distribution of the time taken by {@link Cache} lookup methods, including any time
+   * spent loading or waiting for a value to be loaded. Each call to {@link Cache#getAllPresent} or
+   * {@link LoadingCache#getAll} is counted as a single lookup. This is empty unless the cache was
+   * built with {@link CacheBuilder#recordLatencyStats}.
+   *
+   * @since 20.0
+   */
+  @Beta
+  public LatencyDistribution getLatency() {
+    return getLatency;
+  }
+
   /**
    * Returns a new {@code CacheStats} representing the difference between this {@code CacheStats}
    * and {@code other}. Negative values, which aren't supported by {@code CacheStats} will be
@@ -225,7 +285,9 @@ public final class CacheStats {
         Math.max(0, loadSuccessCount - other.loadSuccessCount),
         Math.max(0, loadExceptionCount - other.loadExceptionCount),
         Math.max(0, totalLoadTime - other.totalLoadTime),
-        Math.max(0, evictionCount - other.evictionCount));
+        Math.max(0, evictionCount - other.evictionCount),
+        loadLatency.minus(other.loadLatency),
+        getLatency.minus(other.getLatency));
   }
 
   /**
@@ -241,13 +303,22 @@ public final class CacheStats {
         loadSuccessCount + other.loadSuccessCount,
         loadExceptionCount + other.loadExceptionCount,
         totalLoadTime + other.totalLoadTime,
-        evictionCount + other.evictionCount);
+        evictionCount + other.evictionCount,
+        loadLatency.plus(other.loadLatency),
+        getLatency.plus(other.getLatency));
   }
 
   @Override
   public int hashCode() {
     return Objects.hashCode(
-        hitCount, missCount, loadSuccessCount, loadExceptionCount, totalLoadTime, evictionCount);
+        hitCount,
+        missCount,
+        loadSuccessCount,
+        loadExceptionCount,
+        totalLoadTime,
+        evictionCount,
+        loadLatency,
+        getLatency);
   }
 
   @Override
@@ -259,20 +330,28 @@ public final class CacheStats {
           && loadSuccessCount == other.loadSuccessCount
           && loadExceptionCount == other.loadExceptionCount
           && totalLoadTime == other.totalLoadTime
-          && evictionCount == other.evictionCount;
+          && evictionCount == other.evictionCount
+          && loadLatency.equals(other.loadLatency)
+          && getLatency.equals(other.getLatency);
     }
     return false;
   }
 
   @Override
   public String toString() {
-    return MoreObjects.toStringHelper(this)
+    MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this)
         .add("hitCount", hitCount)
         .add("missCount", missCount)
         .add("loadSuccessCount", loadSuccessCount)
         .add("loadExceptionCount", loadExceptionCount)
         .add("totalLoadTime", totalLoadTime)
-        .add("evictionCount", evictionCount)
-        .toString();
+        .add("evictionCount", evictionCount);
+    if (loadLatency.count() > 0) {
+      helper.add("loadLatency", loadLatency);
+    }
+    if (getLatency.count() > 0) {
+      helper.add("getLatency", getLatency);
+    }
+    return helper.toString();
   }
 }
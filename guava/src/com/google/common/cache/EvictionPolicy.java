@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+
+/**
+ * The page-replacement algorithm used by a size-bounded cache to choose which entry to evict when
+ * it exceeds its {@linkplain CacheBuilder#maximumSize maximum size} or
+ * {@linkplain CacheBuilder#maximumWeight maximum weight}.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtCompatible
+public enum EvictionPolicy {
+  /**
+   * Evicts the least recently used entry. This is the default policy, and performs well when
+   * recently used entries are the most likely to be used again.
+   */
+  LRU,
+
+  /**
+   * Evicts the least recently used entry, unless a newly added entry has been used less frequently
+   * than it, in which case the new entry is evicted instead. Access frequencies are estimated by a
+   * compact, periodically aged count-min sketch, so entries that are used often are retained even
+   * when a scan over many rarely used keys passes through the cache.
+   *
+   * <p>This policy typically yields a higher hit rate than {@link #LRU} for skewed (for example,
+   * Zipfian) and scan-heavy workloads, at the cost of approximately eight bytes of bookkeeping per
+   * entry of maximum size. Workloads in which entries are mostly used shortly after being added may
+   * see a lower hit rate.
+   */
+  TINY_LFU
+}
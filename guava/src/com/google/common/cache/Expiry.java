@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+
+/**
+ * Calculates when cache entries expire. A single duration is computed for each entry when it is
+ * created, and may be recomputed whenever the entry is updated or read; the entry expires once
+ * that duration has elapsed. This allows the lifetime of an entry to depend on its value, such as
+ * the time to live of an HTTP response.
+ *
+ * <p>All times and durations are in nanoseconds, as measured by the cache's
+ * {@linkplain CacheBuilder#ticker ticker}. A duration of zero expires the entry immediately.
+ * Negative durations are treated as zero, and very long durations are capped at about 146 years.
+ *
+ * <p>An instance may be called concurrently by multiple threads to process different entries, and
+ * may be called while holding internal locks, so implementations should be fast and must not access
+ * the cache.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtCompatible
+public interface Expiry<K, V> {
+
+  /**
+   * Returns the duration until the entry should be automatically removed, starting from its
+   * creation.
+   *
+   * @param key the key of the entry
+   * @param value the value of the entry
+   * @param currentTime the current time, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterCreate(K key, V value, long currentTime);
+
+  /**
+   * Returns the duration until the entry should be automatically removed, starting from the
+   * replacement of its value. To leave the expiration time unchanged, return
+   * {@code currentDuration}.
+   *
+   * @param key the key of the entry
+   * @param value the new value of the entry
+   * @param currentTime the current time, in nanoseconds
+   * @param currentDuration the entry's remaining duration, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterUpdate(K key, V value, long currentTime, long currentDuration);
+
+  /**
+   * Returns the duration until the entry should be automatically removed, starting from its last
+   * read. To leave the expiration time unchanged, return {@code currentDuration}.
+   *
+   * @param key the key of the entry
+   * @param value the value of the entry
+   * @param currentTime the current time, in nanoseconds
+   * @param currentDuration the entry's remaining duration, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterRead(K key, V value, long currentTime, long currentDuration);
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/*
+ * Source:
+ * https://github.com/ben-manes/caffeine/blob/master/caffeine/src/main/java/com/github/benmanes/caffeine/cache/FrequencySketch.java
+ *
+ * Modified by The Guava Authors: adapted to a segment-local, lock-guarded sketch
+ * sized from the segment's maximum.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.math.IntMath;
+
+/**
+ * A probabilistic multiset for estimating the popularity of an element within a time window, used
+ * by {@link EvictionPolicy#TINY_LFU} to decide whether a new entry should be admitted in place of
+ * the eviction victim.
+ *
+ * <p>This is a count-min sketch with four-bit counters, sixteen of which are packed into each
+ * {@code long}. An element's frequency is the minimum of its four counters, each chosen by an
+ * independent hash of the element's hash code, so the estimate may be too high but never too low.
+ * A counter saturates at 15, which is plenty to distinguish hot entries from cold ones.
+ *
+ * <p>To keep the history fresh, all counters are halved once the number of recorded increments
+ * reaches ten times the maximum size. This "aging" lets the sketch adapt when popularity shifts.
+ *
+ * <p>Instances are not thread-safe; a cache segment only uses its sketch while holding its lock.
+ *
+ * <p>This class is derived from Caffeine's {@code FrequencySketch}, by Ben Manes.
+ */
+@GwtIncompatible
+final class FrequencySketch {
+
+  /*
+   * Each element selects one of the four 16-bit "lanes" of its counters' longs using the low two
+   * bits of its hash, and then the counter within that lane using the hash index i. This keeps all
+   * four of an element's counters in distinct positions while the table index spreads the load.
+   */
+
+  /** Multipliers from FNV-1a and CityHash, used to derive independent table indexes. */
+  private static final long[] SEED = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  private int sampleSize;
+  private int tableMask;
+  private long[] table;
+  private int size;
+
+  /**
+   * Creates an empty sketch; {@link #ensureCapacity} must be called before the sketch is used.
+   */
+  FrequencySketch() {}
+
+  /**
+   * Initializes and increases the capacity of this sketch so that it accurately estimates the
+   * popularity of up to {@code maximumSize} elements. Growing the sketch discards its history.
+   */
+  void ensureCapacity(long maximumSize) {
+    checkArgument(maximumSize >= 0);
+    int maximum = (int) Math.min(maximumSize, Integer.MAX_VALUE >>> 1);
+    if ((table != null) && (table.length >= maximum)) {
+      return;
+    }
+
+    table = new long[(maximum == 0) ? 1 : IntMath.ceilingPowerOfTwo(maximum)];
+    tableMask = Math.max(0, table.length - 1);
+    sampleSize = (maximumSize == 0) ? 10 : (10 * maximum);
+    if (sampleSize <= 0) {
+      sampleSize = Integer.MAX_VALUE;
+    }
+    size = 0;
+  }
+
+  /**
+   * Returns the estimated number of occurrences of an element with the given hash, up to the
+   * maximum of 15.
+   */
+  int frequency(int hash) {
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Increments the popularity of the element with the given hash if it does not exceed the
+   * maximum of 15. The popularity of all elements will be periodically down sampled when the
+   * observed events exceed a threshold.
+   */
+  void increment(int hash) {
+    int start = (hash & 3) << 2;
+
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      added |= incrementAt(index, start + i);
+    }
+
+    if (added && (++size == sampleSize)) {
+      reset();
+    }
+  }
+
+  /**
+   * Increments the specified counter by 1 if it is not already at the maximum value (15).
+   *
+   * @param i the table index (16 counters)
+   * @param j the counter to increment
+   * @return if incremented
+   */
+  private boolean incrementAt(int i, int j) {
+    int offset = j << 2;
+    long mask = (0xfL << offset);
+    if ((table[i] & mask) != mask) {
+      table[i] += (1L << offset);
+      return true;
+    }
+    return false;
+  }
+
+  /** Reduces every counter by half of its original value. */
+  @VisibleForTesting
+  void reset() {
+    int count = 0;
+    for (int i = 0; i < table.length; i++) {
+      count += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1) - (count >>> 2);
+  }
+
+  /**
+   * Returns the table index for the counter at the specified depth.
+   *
+   * @param item the element's hash
+   * @param i the counter depth
+   * @return the table index
+   */
+  private int indexOf(int item, int i) {
+    long hash = (item + SEED[i]) * SEED[i];
+    hash += (hash >>> 32);
+    return ((int) hash) & tableMask;
+  }
+
+  @VisibleForTesting
+  int size() {
+    return size;
+  }
+
+  @VisibleForTesting
+  int sampleSize() {
+    return sampleSize;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.base.MoreObjects;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable histogram of latencies, in nanoseconds, recorded by a cache. Instances are obtained
+ * from {@link CacheStats#loadLatency} and {@link CacheStats#getLatency}, and are only populated
+ * for caches built with {@link CacheBuilder#recordLatencyStats}.
+ *
+ * <p>Latencies are counted in logarithmic buckets, eight per power of two, so the memory used by a
+ * histogram is fixed regardless of the number of latencies recorded. As a consequence, the value
+ * returned by {@link #percentile} is the upper bound of the bucket containing that percentile,
+ * which is exact for latencies below 16 nanoseconds and otherwise overestimates the true latency
+ * by less than 12.5%. Latencies above {@link #MAX_LATENCY} (more than an hour) are counted as
+ * {@code MAX_LATENCY}.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtCompatible
+public final class LatencyDistribution {
+
+  /*
+   * Bucket i < SUB_BUCKETS counts the latency i exactly. Above that, each power of two is split
+   * into SUB_BUCKETS linear buckets, indexed by the exponent and the SUB_BUCKET_BITS bits that
+   * follow the most significant bit of the latency.
+   */
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 41;
+
+  /** The number of buckets in a histogram. */
+  static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) << SUB_BUCKET_BITS;
+
+  /** The largest latency that can be distinguished, in nanoseconds: about 73 minutes. */
+  public static final long MAX_LATENCY = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  static final LatencyDistribution EMPTY = new LatencyDistribution(new long[0], 0);
+
+  /** Returns the index of the bucket counting {@code latency}. */
+  static int bucketFor(long latency) {
+    if (latency < SUB_BUCKETS) {
+      return (int) Math.max(latency, 0);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(latency);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (latency >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+  }
+
+  /** Returns the largest latency counted by the bucket at {@code index}. */
+  static long upperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long lowerBound = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+
+  /**
+   * Returns a distribution of the given bucket counts, which are copied. There must be either no
+   * buckets or exactly {@link #BUCKET_COUNT} buckets.
+   */
+  static LatencyDistribution of(long[] bucketCounts) {
+    checkArgument(bucketCounts.length == 0 || bucketCounts.length == BUCKET_COUNT);
+    long count = 0;
+    for (long bucketCount : bucketCounts) {
+      checkArgument(bucketCount >= 0);
+      count += bucketCount;
+    }
+    return (count == 0) ? EMPTY : new LatencyDistribution(bucketCounts.clone(), count);
+  }
+
+  private final long[] bucketCounts; // empty if count == 0
+  private final long count;
+
+  private LatencyDistribution(long[] bucketCounts, long count) {
+    this.bucketCounts = bucketCounts;
+    this.count = count;
+  }
+
+  /** Returns the number of latencies recorded. */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Returns the latency, in nanoseconds, below which {@code percentile} percent of the recorded
+   * latencies fall, or {@code 0} if no latencies were recorded. For example, {@code percentile(50)}
+   * returns the median latency, and {@code percentile(99.9)} the latency exceeded by only one in a
+   * thousand operations.
+   *
+   * @throws IllegalArgumentException if {@code percentile} is not between 0 and 100, inclusive
+   */
+  public long percentile(double percentile) {
+    checkArgument(
+        percentile >= 0.0 && percentile <= 100.0, "percentile out of range: %s", percentile);
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile * count / 100.0));
+    long seen = 0;
+    for (int i = 0; i < bucketCounts.length; i++) {
+      seen += bucketCounts[i];
+      if (seen >= rank) {
+        return upperBound(i);
+      }
+    }
+    // unreachable, as the bucket counts sum to count
+    throw new AssertionError();
+  }
+
+  /**
+   * Returns the distribution of latencies recorded in this distribution but not in {@code other}.
+   * Negative bucket counts are rounded up to zero.
+   */
+  LatencyDistribution minus(LatencyDistribution other) {
+    checkNotNull(other);
+    if (count == 0 || other.count == 0) {
+      return this;
+    }
+    long[] difference = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      difference[i] = Math.max(0, bucketCounts[i] - other.bucketCounts[i]);
+    }
+    return of(difference);
+  }
+
+  /** Returns the distribution of latencies recorded in either this or {@code other}. */
+  LatencyDistribution plus(LatencyDistribution other) {
+    if (other.count == 0) {
+      return this;
+    } else if (count == 0) {
+      return other;
+    }
+    long[] sum = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      sum[i] = bucketCounts[i] + other.bucketCounts[i];
+    }
+    return new LatencyDistribution(sum, count + other.count);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bucketCounts);
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object instanceof LatencyDistribution) {
+      LatencyDistribution other = (LatencyDistribution) object;
+      return Arrays.equals(bucketCounts, other.bucketCounts);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("count", count)
+        .add("p50", percentile(50))
+        .add("p99", percentile(99))
+        .add("p999", percentile(99.9))
+        .toString();
+  }
+}
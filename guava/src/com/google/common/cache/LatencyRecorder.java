@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.cache.LatencyDistribution.BUCKET_COUNT;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.math.IntMath;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent, fixed-memory histogram of latencies, snapshotted as a {@link LatencyDistribution}.
+ *
+ * <p>The bucket counts are striped: each thread increments the buckets of the stripe selected by
+ * its {@linkplain Striped64#threadHashCode hash code}, so that threads recording concurrently
+ * rarely write to the same cache line. Recording never allocates once the calling thread's hash
+ * code has been initialized.
+ */
+@GwtIncompatible
+final class LatencyRecorder {
+
+  /**
+   * The number of stripes. MUST be a power of two. As in {@link Striped64}, there is one stripe per
+   * processor, since at most that many threads can record at the same time.
+   */
+  static final int STRIPES = IntMath.ceilingPowerOfTwo(Striped64.NCPU);
+
+  /** The bucket counts, with those of stripe {@code s} starting at {@code s * BUCKET_COUNT}. */
+  private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKET_COUNT);
+
+  /** Records a latency of {@code nanos}. */
+  void record(long nanos) {
+    counts.incrementAndGet(stripe() * BUCKET_COUNT + LatencyDistribution.bucketFor(nanos));
+  }
+
+  private static int stripe() {
+    int[] hc = Striped64.threadHashCode.get();
+    if (hc == null) {
+      Striped64.threadHashCode.set(hc = new int[1]);
+      int r = Striped64.rng.nextInt(); // Avoid zero to allow xorShift rehash
+      hc[0] = (r == 0) ? 1 : r;
+    }
+    return hc[0] & (STRIPES - 1);
+  }
+
+  /**
+   * Returns the latencies recorded so far. This may be an inconsistent view, as it may be
+   * interleaved with concurrent recording.
+   */
+  LatencyDistribution snapshot() {
+    long[] bucketCounts = new long[BUCKET_COUNT];
+    for (int i = 0; i < counts.length(); i++) {
+      bucketCounts[i % BUCKET_COUNT] += counts.get(i);
+    }
+    return LatencyDistribution.of(bucketCounts);
+  }
+}
@@ -14,6 +14,7 @@
 
 package com.google.common.cache;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.cache.CacheBuilder.NULL_TICKER;
@@ -29,7 +30,7 @@ import com.google.common.base.Equivalence;
 import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
-import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.LatencyStatsCounter;
 import com.google.common.cache.AbstractCache.StatsCounter;
 import com.google.common.cache.CacheBuilder.NullListener;
 import com.google.common.cache.CacheBuilder.OneWeigher;
@@ -65,6 +66,7 @@ import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
@@ -73,8 +75,8 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -113,8 +115,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
    * higher than performing just the operation without enforcing the capacity constraint.
    *
    * This implementation uses a per-segment queue to record a memento of the additions, removals,
-   * and accesses that were performed on the map. The queue is drained on writes and when it exceeds
-   * its capacity threshold.
+   * and accesses that were performed on the map. Accesses are recorded in a lossy buffer striped by
+   * thread, so that reads neither allocate nor contend with one another. The buffer is drained on
+   * writes and when it exceeds its capacity threshold.
    *
    * The Least Recently Used page replacement algorithm was chosen due to its simplicity, high hit
    * rate, and ability to be implemented with O(1) time complexity. The initial LRU implementation
@@ -138,9 +141,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   static final int CONTAINS_VALUE_RETRIES = 3;
 
   /**
-   * Number of cache access operations that can be buffered per segment before the cache's recency
-   * ordering information is updated. This is used to avoid lock contention by recording a memento
-   * of reads and delaying a lock acquisition until the threshold is crossed or a mutation occurs.
+   * Number of cache access operations that can be buffered per segment and thread stripe before
+   * the cache's recency ordering information is updated. This is used to avoid lock contention by
+   * recording a memento of reads and delaying a lock acquisition until the threshold is crossed or
+   * a mutation occurs.
    *
    * <p>This must be a (2^n)-1 as it is used as a mask.
    */
@@ -153,6 +157,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   // TODO(fry): empirically optimize this
   static final int DRAIN_MAX = 16;
 
+  /**
+   * Maximum number of entries evicted in a single write or cleanup run beyond those needed to make
+   * room for the written entry, when a segment is over its maximum weight because the maximum was
+   * lowered. Spreads the work of shrinking the cache across subsequent operations.
+   */
+  static final int EVICTION_BATCH = 16;
+
+  /**
+   * The longest lifetime an {@link Expiry} may give an entry (about 146 years), so that an entry's
+   * expiration time cannot overflow relative to the current time.
+   */
+  static final long MAXIMUM_EXPIRY_NANOS = Long.MAX_VALUE >> 1;
+
   // Fields
 
   static final Logger logger = Logger.getLogger(LocalCache.class.getName());
@@ -187,17 +204,50 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   /** Strategy for referencing values. */
   final Strength valueStrength;
 
-  /** The maximum weight of this map. UNSET_INT if there is no maximum. */
-  final long maxWeight;
+  /**
+   * The maximum weight of this map. UNSET_INT if there is no maximum. May be changed after
+   * construction by {@link #setMaxWeight}.
+   */
+  volatile long maxWeight;
+
+  /**
+   * Guards changes to {@link #maxWeight}. This is not the monitor of the map itself, which is
+   * visible to users as {@link Cache#asMap}.
+   */
+  private final Object maxWeightLock = new Object();
 
   /** Weigher to weigh cache entries. */
   final Weigher<K, V> weigher;
 
-  /** How long after the last access to an entry the map will retain that entry. */
-  final long expireAfterAccessNanos;
+  /** Serializes values which are stored off heap, or null if values are stored on the heap. */
+  @Nullable final ValueSerializer<V> valueSerializer;
+
+  /** Whether entries weigh the serialized size of their values, rather than using the weigher. */
+  final boolean weighsSerializedValues;
+
+  /** Holds the serialized values of all segments, or null if values are stored on the heap. */
+  @Nullable final OffHeapValueStore<K, V> offHeapStore;
+
+  /**
+   * Computes the lifetime of each entry, or null if entries do not expire variably. When non-null,
+   * the access time of each entry holds the time at which it expires.
+   */
+  @Nullable final Expiry<K, V> expiry;
+
+  /** The page-replacement algorithm used when evicting by size. */
+  final EvictionPolicy evictionPolicy;
 
-  /** How long after the last write to an entry the map will retain that entry. */
-  final long expireAfterWriteNanos;
+  /**
+   * How long after the last access to an entry the map will retain that entry. May be changed
+   * after construction, but only between positive values.
+   */
+  volatile long expireAfterAccessNanos;
+
+  /**
+   * How long after the last write to an entry the map will retain that entry. May be changed after
+   * construction, but only between positive values.
+   */
+  volatile long expireAfterWriteNanos;
 
   /** How long after the last write an entry becomes a candidate for refresh. */
   final long refreshNanos;
@@ -224,11 +274,23 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
    */
   final StatsCounter globalStatsCounter;
 
+  /**
+   * Whether the stats counters are {@link LatencyStatsCounter}s, to which the latency of each
+   * lookup is reported.
+   */
+  final boolean recordsLatency;
+
   /**
    * The default cache loader to use on loading operations.
    */
   @Nullable final CacheLoader<? super K, V> defaultLoader;
 
+  /**
+   * Coalesces automatic refreshes by the default loader into bulk loads, or null if refreshes are
+   * not batched.
+   */
+  @Nullable final RefreshBatcher<K, V> refreshBatcher;
+
   /**
    * Creates a new, empty map with the specified strategy, initial capacity and concurrency level.
    */
@@ -244,6 +306,17 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     maxWeight = builder.getMaximumWeight();
     weigher = builder.getWeigher();
+    valueSerializer = builder.getValueSerializer();
+    weighsSerializedValues = builder.weighsSerializedValues();
+    offHeapStore =
+        (valueSerializer == null)
+            ? null
+            : new OffHeapValueStore<K, V>(
+                valueSerializer,
+                weighsSerializedValues ? null : weigher,
+                weighsSerializedValues ? maxWeight : UNSET_INT);
+    expiry = builder.getExpiry();
+    evictionPolicy = builder.getEvictionPolicy();
     expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
     expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
     refreshNanos = builder.getRefreshNanos();
@@ -254,10 +327,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
             ? LocalCache.<RemovalNotification<K, V>>discardingQueue()
             : new ConcurrentLinkedQueue<RemovalNotification<K, V>>();
 
-    ticker = builder.getTicker(recordsTime());
+    recordsLatency = builder.isRecordingLatency();
+    ticker = builder.getTicker(recordsTime() || recordsLatency);
     entryFactory = EntryFactory.getFactory(keyStrength, usesAccessEntries(), usesWriteEntries());
     globalStatsCounter = builder.getStatsCounterSupplier().get();
     defaultLoader = loader;
+    refreshBatcher =
+        (loader == null || builder.getRefreshBatchSize() == CacheBuilder.UNSET_INT)
+            ? null
+            : new RefreshBatcher<K, V>(
+                this, loader, builder.getRefreshBatchSize(), builder.getRefreshBatchNanos());
 
     int initialCapacity = Math.min(builder.getInitialCapacity(), MAXIMUM_CAPACITY);
     if (evictsBySize() && !customWeigher()) {
@@ -291,15 +370,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
 
     if (evictsBySize()) {
-      // Ensure sum of segment max weights = overall max weights
-      long maxSegmentWeight = maxWeight / segmentCount + 1;
-      long remainder = maxWeight % segmentCount;
       for (int i = 0; i < this.segments.length; ++i) {
-        if (i == remainder) {
-          maxSegmentWeight--;
-        }
-        this.segments[i] =
-            createSegment(segmentSize, maxSegmentWeight, builder.getStatsCounterSupplier().get());
+        this.segments[i] = createSegment(
+            segmentSize,
+            maxSegmentWeight(maxWeight, segmentCount, i),
+            builder.getStatsCounterSupplier().get());
       }
     } else {
       for (int i = 0; i < this.segments.length; ++i) {
@@ -309,16 +384,56 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
+  /**
+   * Returns the maximum weight of the segment at {@code index}, such that the sum of the segment
+   * max weights equals the overall max weight.
+   */
+  static long maxSegmentWeight(long maxWeight, int segmentCount, int index) {
+    return maxWeight / segmentCount + ((index < maxWeight % segmentCount) ? 1 : 0);
+  }
+
+  /**
+   * Changes the maximum weight of this map. Segments which are over their new maximum weight are
+   * not evicted immediately, but converge on it incrementally: each subsequent write or cleanup of
+   * a segment evicts at most {@link #EVICTION_BATCH} entries beyond those needed to make room for
+   * the written entry.
+   */
+  void setMaxWeight(long maxWeight) {
+    checkState(evictsBySize());
+    checkArgument(maxWeight >= 0);
+    synchronized (maxWeightLock) {
+      this.maxWeight = maxWeight;
+      for (int i = 0; i < segments.length; ++i) {
+        Segment<K, V> segment = segments[i];
+        long maxSegmentWeight = maxSegmentWeight(maxWeight, segments.length, i);
+        boolean lowered = maxSegmentWeight < segment.maxSegmentWeight;
+        // publish the new maximum before the flag, which Segment.stopShrinking relies on
+        segment.maxSegmentWeight = maxSegmentWeight;
+        if (lowered) {
+          segment.shrinking = true;
+        }
+      }
+    }
+  }
+
   boolean evictsBySize() {
     return maxWeight >= 0;
   }
 
   boolean customWeigher() {
-    return weigher != OneWeigher.INSTANCE;
+    return weigher != OneWeigher.INSTANCE || weighsSerializedValues;
+  }
+
+  boolean storesValuesOffHeap() {
+    return valueSerializer != null;
+  }
+
+  boolean usesFrequencySketch() {
+    return evictsBySize() && evictionPolicy == EvictionPolicy.TINY_LFU;
   }
 
   boolean expires() {
-    return expiresAfterWrite() || expiresAfterAccess();
+    return expiresAfterWrite() || expiresAfterAccess() || expiresVariably();
   }
 
   boolean expiresAfterWrite() {
@@ -329,6 +444,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return expireAfterAccessNanos > 0;
   }
 
+  boolean expiresVariably() {
+    return expiry != null;
+  }
+
   boolean refreshes() {
     return refreshNanos > 0;
   }
@@ -350,15 +469,17 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   boolean recordsTime() {
-    return recordsWrite() || recordsAccess();
+    return recordsWrite() || recordsAccess() || expiresVariably();
   }
 
   boolean usesWriteEntries() {
-    return usesWriteQueue() || recordsWrite();
+    // the timer wheel is threaded through the write queue links
+    return usesWriteQueue() || recordsWrite() || expiresVariably();
   }
 
   boolean usesAccessEntries() {
-    return usesAccessQueue() || recordsAccess();
+    // the expiration time is stored as the access time
+    return usesAccessQueue() || recordsAccess() || expiresVariably();
   }
 
   boolean usesKeyReferences() {
@@ -1920,9 +2041,20 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     if (expiresAfterWrite() && (now - entry.getWriteTime() >= expireAfterWriteNanos)) {
       return true;
     }
+    if (expiresVariably() && (now - entry.getAccessTime() >= 0)) {
+      return true;
+    }
     return false;
   }
 
+  /**
+   * Returns {@code duration}, as computed by an {@link Expiry}, limited to a range which cannot
+   * overflow when added to the current time.
+   */
+  static long boundedExpiry(long duration) {
+    return Math.max(0, Math.min(duration, MAXIMUM_EXPIRY_NANOS));
+  }
+
   // queues
 
   // Guarded By Segment.this
@@ -2047,9 +2179,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     volatile AtomicReferenceArray<ReferenceEntry<K, V>> table;
 
     /**
-     * The maximum weight of this segment. UNSET_INT if there is no maximum.
+     * The maximum weight of this segment. UNSET_INT if there is no maximum. Changed by
+     * {@link LocalCache#setMaxWeight}.
      */
-    final long maxSegmentWeight;
+    volatile long maxSegmentWeight;
+
+    /**
+     * True if the maximum weight was lowered and the segment may still be over it, in which case
+     * eviction proceeds in batches. Cleared by {@link #stopShrinking}.
+     */
+    volatile boolean shrinking;
 
     /**
      * The key reference queue contains entries whose keys have been garbage collected, and which
@@ -2064,24 +2203,33 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     final ReferenceQueue<V> valueReferenceQueue;
 
     /**
-     * The recency queue is used to record which entries were accessed for updating the access
-     * list's ordering. It is drained as a batch operation when either the DRAIN_THRESHOLD is
-     * crossed or a write occurs on the segment.
+     * The read buffer is used to record which entries were accessed for updating the access list's
+     * ordering. It is drained as a batch operation when either a reader's stripe of the buffer
+     * fills halfway or a write occurs on the segment. When entries are not ordered by access, each
+     * read adds the null entry instead, so that queues are still drained on a small fraction of
+     * read operations.
+     *
+     * <p>Reads are recorded in striped, fixed-size ring buffers rather than a shared linked queue,
+     * so that recording a read neither allocates nor contends with reads on other threads. When a
+     * buffer is full the read is simply not recorded, which may delay, but never hasten,
+     * expiration after access; see {@link ReadBuffer}.
      */
-    final Queue<ReferenceEntry<K, V>> recencyQueue;
+    final ReadBuffer<ReferenceEntry<K, V>> readBuffer = new ReadBuffer<ReferenceEntry<K, V>>();
 
     /**
-     * A counter of the number of reads since the last write, used to drain queues on a small
-     * fraction of read operations.
+     * A queue of elements currently in the map, ordered by write time. Elements are added to the
+     * tail of the queue on write. When entries expire variably this is the {@link #timerWheel}.
      */
-    final AtomicInteger readCount = new AtomicInteger();
+    @GuardedBy("this")
+    final Queue<ReferenceEntry<K, V>> writeQueue;
 
     /**
-     * A queue of elements currently in the map, ordered by write time. Elements are added to the
-     * tail of the queue on write.
+     * Schedules the expiration of entries with a variable lifetime. Null unless the map was built
+     * with an {@link Expiry}.
      */
     @GuardedBy("this")
-    final Queue<ReferenceEntry<K, V>> writeQueue;
+    @Nullable
+    final TimerWheel<K, V> timerWheel;
 
     /**
      * A queue of elements currently in the map, ordered by access time. Elements are added to the
@@ -2090,6 +2238,21 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     @GuardedBy("this")
     final Queue<ReferenceEntry<K, V>> accessQueue;
 
+    /**
+     * Estimates how often keys in this segment have been used, in order to decide whether a new
+     * entry should be admitted in place of the eviction victim. Null unless the map uses the
+     * {@link EvictionPolicy#TINY_LFU} eviction policy.
+     */
+    @GuardedBy("this")
+    @Nullable
+    final FrequencySketch frequencySketch;
+
+    /**
+     * Holds the serialized values of the map, shared by all segments. Null unless the map stores
+     * values off heap.
+     */
+    @Nullable final OffHeapValueStore<K, V> offHeapStore;
+
     /** Accumulates cache statistics. */
     final StatsCounter statsCounter;
 
@@ -2103,19 +2266,28 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.statsCounter = checkNotNull(statsCounter);
       initTable(newEntryArray(initialCapacity));
 
+      if (map.usesFrequencySketch()) {
+        frequencySketch = new FrequencySketch();
+        frequencySketch.ensureCapacity(table.length());
+      } else {
+        frequencySketch = null;
+      }
+
       keyReferenceQueue = map.usesKeyReferences() ? new ReferenceQueue<K>() : null;
 
       valueReferenceQueue = map.usesValueReferences() ? new ReferenceQueue<V>() : null;
 
-      recencyQueue =
-          map.usesAccessQueue()
-              ? new ConcurrentLinkedQueue<ReferenceEntry<K, V>>()
-              : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      offHeapStore = map.offHeapStore;
 
-      writeQueue =
-          map.usesWriteQueue()
-              ? new WriteQueue<K, V>()
-              : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      timerWheel = map.expiresVariably() ? new TimerWheel<K, V>(this, map.ticker.read()) : null;
+
+      if (map.usesWriteQueue()) {
+        writeQueue = new WriteQueue<K, V>();
+      } else if (timerWheel != null) {
+        writeQueue = timerWheel;
+      } else {
+        writeQueue = LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      }
 
       accessQueue =
           map.usesAccessQueue()
@@ -2170,14 +2342,54 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     @GuardedBy("this")
     void setValue(ReferenceEntry<K, V> entry, K key, V value, long now) {
       ValueReference<K, V> previous = entry.getValueReference();
-      int weight = map.weigher.weigh(key, value);
-      checkState(weight >= 0, "Weights must be non-negative");
+      ValueReference<K, V> valueReference;
+      if (offHeapStore == null) {
+        int weight = map.weigher.weigh(key, value);
+        checkState(weight >= 0, "Weights must be non-negative");
+        valueReference = map.valueStrength.referenceValue(this, entry, value, weight);
+      } else {
+        valueReference = offHeapStore.referenceValue(key, value);
+      }
+
+      if (map.expiresVariably()) {
+        setExpirationTime(entry, key, value, previous.get(), now);
+      }
 
-      ValueReference<K, V> valueReference =
-          map.valueStrength.referenceValue(this, entry, value, weight);
       entry.setValueReference(valueReference);
-      recordWrite(entry, weight, now);
+      recordWrite(entry, valueReference.getWeight(), now);
       previous.notifyNewValue(value);
+      retireValue(previous);
+    }
+
+    /**
+     * Frees the off-heap space of a value reference which has been removed from the segment.
+     */
+    @GuardedBy("this")
+    void retireValue(ValueReference<K, V> valueReference) {
+      if (offHeapStore != null) {
+        OffHeapValueStore.retire(valueReference);
+      }
+    }
+
+    /**
+     * Returns the value of {@code entry}, or null if it has been collected. When values are stored
+     * off heap, a value which is replaced while it is being read is retired, so the replacement is
+     * read instead.
+     */
+    @Nullable
+    V readValue(ReferenceEntry<K, V> entry) {
+      ValueReference<K, V> valueReference = entry.getValueReference();
+      for (;;) {
+        V value = valueReference.get();
+        if ((value != null) || (offHeapStore == null)) {
+          return value;
+        }
+        ValueReference<K, V> current = entry.getValueReference();
+        if (current == valueReference) {
+          return null;
+        }
+        valueReference = current;
+      }
     }
 
     // loading
@@ -2262,6 +2474,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
               }
 
               // immediately reuse invalid entries
+              retireValue(valueReference);
               writeQueue.remove(e);
               accessQueue.remove(e);
               this.count = newCount; // write-volatile
@@ -2310,6 +2523,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
 
       checkState(!Thread.holdsLock(e), "Recursive load of: %s", key);
+      // the value may be a refresh waiting for its batch, which nothing else might issue
+      RefreshBatcher<K, V> batcher = map.refreshBatcher;
+      if (batcher != null) {
+        batcher.beginWait(valueReference);
+      }
       // don't consider expiration as we're concurrent with loading
       try {
         V value = valueReference.waitForValue();
@@ -2321,6 +2539,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         recordRead(e, now);
         return value;
       } finally {
+        if (batcher != null) {
+          batcher.endWait();
+        }
         statsCounter.recordMisses(1);
       }
     }
@@ -2395,6 +2616,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (map.refreshes()
           && (now - entry.getWriteTime() > map.refreshNanos)
           && !entry.getValueReference().isLoading()) {
+        RefreshBatcher<K, V> batcher = map.refreshBatcher;
+        if (batcher != null && loader == map.defaultLoader && batcher.isBatching()) {
+          // keep returning the old value until the batch containing this refresh completes
+          LoadingValueReference<K, V> loadingValueReference =
+              insertLoadingValueReference(key, hash, true);
+          if (loadingValueReference != null) {
+            batcher.add(key, hash, loadingValueReference);
+          }
+          return oldValue;
+        }
         V newValue = refresh(key, hash, loader, true);
         if (newValue != null) {
           return newValue;
@@ -2560,11 +2791,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       while (valueReferenceQueue.poll() != null) {}
     }
 
-    // recency queue, shared by expiration and eviction
+    // read buffer, shared by expiration and eviction
 
     /**
      * Records the relative order in which this read was performed by adding {@code entry} to the
-     * recency queue. At write-time, or when the queue is full past the threshold, the queue will be
+     * read buffer. At write-time, or when the buffer is full past the threshold, the buffer will be
      * drained and the entries therein processed.
      *
      * <p>Note: locked reads should use {@link #recordLockedRead}.
@@ -2573,7 +2804,17 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (map.recordsAccess()) {
         entry.setAccessTime(now);
       }
-      recencyQueue.add(entry);
+      if (map.expiresVariably()) {
+        updateExpirationTimeOnRead(entry, now);
+      }
+      if (buffersReads()) {
+        readBuffer.offer(entry);
+      }
+    }
+
+    /** Returns whether {@link #recordRead} adds the entries that are read to the read buffer. */
+    boolean buffersReads() {
+      return map.usesAccessQueue() || map.expiresVariably();
     }
 
     /**
@@ -2588,17 +2829,56 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (map.recordsAccess()) {
         entry.setAccessTime(now);
       }
+      if (map.expiresVariably()) {
+        updateExpirationTimeOnRead(entry, now);
+        writeQueue.add(entry);
+      }
+      recordFrequency(entry);
       accessQueue.add(entry);
     }
 
+    /**
+     * Sets the time at which {@code entry} expires, after it was created or updated with
+     * {@code value}.
+     *
+     * @param oldValue the value being replaced, or null if the entry is being created
+     */
+    @GuardedBy("this")
+    void setExpirationTime(
+        ReferenceEntry<K, V> entry, K key, V value, @Nullable V oldValue, long now) {
+      long duration;
+      if (oldValue == null) {
+        duration = map.expiry.expireAfterCreate(key, value, now);
+      } else {
+        long currentDuration = Math.max(0, entry.getAccessTime() - now);
+        duration = map.expiry.expireAfterUpdate(key, value, now, currentDuration);
+      }
+      entry.setAccessTime(now + boundedExpiry(duration));
+    }
+
+    /**
+     * Recomputes the time at which {@code entry} expires, after it was read. The timer wheel is
+     * updated when the read is drained; until then, it may expire the entry late but never early.
+     */
+    void updateExpirationTimeOnRead(ReferenceEntry<K, V> entry, long now) {
+      K key = entry.getKey();
+      V value = entry.getValueReference().get();
+      if (key == null || value == null) {
+        return;
+      }
+      long currentDuration = Math.max(0, entry.getAccessTime() - now);
+      long duration = map.expiry.expireAfterRead(key, value, now, currentDuration);
+      entry.setAccessTime(now + boundedExpiry(duration));
+    }
+
     /**
      * Updates eviction metadata that {@code entry} was just written. This currently amounts to
      * adding {@code entry} to relevant eviction lists.
      */
     @GuardedBy("this")
     void recordWrite(ReferenceEntry<K, V> entry, int weight, long now) {
-      // we are already under lock, so drain the recency queue immediately
-      drainRecencyQueue();
+      // we are already under lock, so drain the read buffer immediately
+      drainReadBuffer();
       totalWeight += weight;
 
       if (map.recordsAccess()) {
@@ -2607,27 +2887,48 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (map.recordsWrite()) {
         entry.setWriteTime(now);
       }
+      recordFrequency(entry);
       accessQueue.add(entry);
       writeQueue.add(entry);
     }
 
     /**
-     * Drains the recency queue, updating eviction metadata that the entries therein were read in
-     * the specified relative order. This currently amounts to adding them to relevant eviction
-     * lists (accounting for the fact that they could have been removed from the map since being
-     * added to the recency queue).
+     * Records a use of {@code entry} in the frequency sketch, if this segment has one.
      */
     @GuardedBy("this")
-    void drainRecencyQueue() {
+    void recordFrequency(ReferenceEntry<K, V> entry) {
+      if (frequencySketch != null) {
+        frequencySketch.increment(entry.getHash());
+      }
+    }
+
+    /**
+     * Drains the read buffer, updating eviction metadata that the entries therein were read in the
+     * specified relative order. This currently amounts to adding them to relevant eviction lists
+     * (accounting for the fact that they could have been removed from the map since being added to
+     * the read buffer).
+     */
+    @GuardedBy("this")
+    void drainReadBuffer() {
       ReferenceEntry<K, V> e;
-      while ((e = recencyQueue.poll()) != null) {
-        // An entry may be in the recency queue despite it being removed from
+      while ((e = readBuffer.poll()) != null) {
+        if (e == nullEntry()) {
+          continue; // a read that only counts towards cleanup
+        }
+        // Reads of entries that have since been removed still count towards the
+        // popularity of their key.
+        recordFrequency(e);
+        // An entry may be in the read buffer despite it being removed from
         // the map . This can occur when the entry was concurrently read while a
         // writer is removing it from the segment or after a clear has removed
         // all of the segment's entries.
         if (accessQueue.contains(e)) {
           accessQueue.add(e);
         }
+        // reschedule for the expiration time computed by the read
+        if (timerWheel != null && timerWheel.contains(e)) {
+          timerWheel.add(e);
+        }
       }
     }
 
@@ -2649,7 +2950,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @GuardedBy("this")
     void expireEntries(long now) {
-      drainRecencyQueue();
+      drainReadBuffer();
+
+      if (timerWheel != null) {
+        timerWheel.advance(now);
+      }
 
       ReferenceEntry<K, V> e;
       while ((e = writeQueue.peek()) != null && map.isExpired(e, now)) {
@@ -2683,6 +2988,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      * Performs eviction if the segment is over capacity. Avoids flushing the entire cache if the
      * newest entry exceeds the maximum weight all on its own.
      *
+     * <p>If the segment is {@linkplain #shrinking shrinking} towards a lowered maximum weight, at
+     * most {@link #EVICTION_BATCH} entries are evicted beyond those
+     * needed to offset the newest entry's weight.
+     *
+     * <p>When a frequency sketch is in use, the newest entry is evicted in place of the least
+     * recently used entry if it has not been used more often than that entry.
+     *
      * @param newest the most recently added entry
      */
     @GuardedBy("this")
@@ -2691,22 +3003,97 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         return;
       }
 
-      drainRecencyQueue();
+      drainReadBuffer();
+
+      // read this volatile field only once
+      long maxSegmentWeight = this.maxSegmentWeight;
+      int newestWeight = newest.getValueReference().getWeight();
+      long weightBeforeWrite = totalWeight - newestWeight;
 
       // If the newest entry by itself is too heavy for the segment, don't bother evicting
       // anything else, just that
-      if (newest.getValueReference().getWeight() > maxSegmentWeight) {
+      ReferenceEntry<K, V> candidate = newest;
+      if (newestWeight > maxSegmentWeight) {
         if (!removeEntry(newest, newest.getHash(), RemovalCause.SIZE)) {
           throw new AssertionError();
         }
+        candidate = null;
+      }
+
+      if (frequencySketch != null) {
+        frequencySketch.ensureCapacity(table.length());
+      } else {
+        candidate = null;
       }
 
+      boolean shrinking = this.shrinking;
+      int extraEvictions = 0;
       while (totalWeight > maxSegmentWeight) {
+        if (shrinking && totalWeight <= weightBeforeWrite && ++extraEvictions > EVICTION_BATCH) {
+          return;
+        }
+        ReferenceEntry<K, V> e = getNextEvictable();
+        if (candidate != null) {
+          if (candidate != e && evictsCandidateInsteadOf(candidate, e)) {
+            e = candidate;
+          }
+          // only the newest entry is subject to admission; everything else is evicted in LRU order
+          candidate = null;
+        }
+        if (!removeEntry(e, e.getHash(), RemovalCause.SIZE)) {
+          throw new AssertionError();
+        }
+      }
+      if (shrinking) {
+        stopShrinking();
+      }
+    }
+
+    /**
+     * Clears {@link #shrinking} once the segment is within its maximum weight. {@link
+     * LocalCache#setMaxWeight} lowers the maximum before setting the flag, so if it ran since the
+     * caller read the maximum, rereading it here finds the segment over it, and the flag is set
+     * again rather than lost.
+     */
+    @GuardedBy("this")
+    void stopShrinking() {
+      shrinking = false;
+      if (totalWeight > maxSegmentWeight) {
+        shrinking = true;
+      }
+    }
+
+    /**
+     * Evicts at most {@link #EVICTION_BATCH} entries if the segment is {@linkplain #shrinking
+     * shrinking} towards a lowered maximum weight.
+     */
+    @GuardedBy("this")
+    void evictBatch() {
+      if (!shrinking) {
+        return;
+      }
+      long maxSegmentWeight = this.maxSegmentWeight;
+      for (int i = 0; i < EVICTION_BATCH && totalWeight > maxSegmentWeight; i++) {
         ReferenceEntry<K, V> e = getNextEvictable();
         if (!removeEntry(e, e.getHash(), RemovalCause.SIZE)) {
           throw new AssertionError();
         }
       }
+      if (totalWeight <= maxSegmentWeight) {
+        stopShrinking();
+      }
+    }
+
+    /**
+     * Returns true if {@code candidate} should be evicted instead of {@code victim}, which is the
+     * case when the candidate carries weight and has not been used more often than the victim.
+     */
+    @GuardedBy("this")
+    boolean evictsCandidateInsteadOf(
+        ReferenceEntry<K, V> candidate, ReferenceEntry<K, V> victim) {
+      return candidate.getValueReference().getWeight() > 0
+          && frequencySketch.frequency(candidate.getHash())
+              <= frequencySketch.frequency(victim.getHash());
     }
 
     // TODO(fry): instead implement this with an eviction head
@@ -2774,7 +3161,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         tryDrainReferenceQueues();
         return null;
       }
-      V value = entry.getValueReference().get();
+      V value = readValue(entry);
       if (value == null) {
         tryDrainReferenceQueues();
         return null;
@@ -2797,7 +3184,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
             return null;
           }
 
-          V value = e.getValueReference().get();
+          V value = readValue(e);
           if (value != null) {
             recordRead(e, now);
             return scheduleRefresh(e, e.getKey(), hash, value, now, map.defaultLoader);
@@ -2818,7 +3205,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           if (e == null) {
             return false;
           }
-          return e.getValueReference().get() != null;
+          return readValue(e) != null;
         }
 
         return false;
@@ -3292,6 +3679,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
                 enqueueNotification(
                     key, e.getHash(), value, e.getValueReference().getWeight(), cause);
               }
+              retireValue(e.getValueReference());
             }
           }
           for (int i = 0; i < table.length(); ++i) {
@@ -3300,7 +3688,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           clearReferenceQueues();
           writeQueue.clear();
           accessQueue.clear();
-          readCount.set(0);
+          readBuffer.clear();
 
           ++modCount;
           count = 0; // write-volatile
@@ -3322,6 +3710,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         ValueReference<K, V> valueReference,
         RemovalCause cause) {
       enqueueNotification(key, hash, value, valueReference.getWeight(), cause);
+      retireValue(valueReference);
       writeQueue.remove(entry);
       accessQueue.remove(entry);
 
@@ -3360,6 +3749,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           entry.getValueReference().get(),
           entry.getValueReference().getWeight(),
           RemovalCause.COLLECTED);
+      retireValue(entry.getValueReference());
       writeQueue.remove(entry);
       accessQueue.remove(entry);
     }
@@ -3515,8 +3905,14 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      * is not observed after a sufficient number of reads, try cleaning up from the read thread.
      */
     void postReadCleanup() {
-      if ((readCount.incrementAndGet() & DRAIN_THRESHOLD) == 0) {
+      if (!buffersReads()) {
+        readBuffer.offer(LocalCache.<K, V>nullEntry());
+      }
+      if (readBuffer.shouldDrain()) {
         cleanUp();
+      } else if (map.refreshBatcher != null && !isHeldByCurrentThread()) {
+        // read-only traffic must not hold a batch of refreshes past its window
+        map.refreshBatcher.flushIfDue();
       }
     }
 
@@ -3548,8 +3944,8 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (tryLock()) {
         try {
           drainReferenceQueues();
-          expireEntries(now); // calls drainRecencyQueue
-          readCount.set(0);
+          expireEntries(now); // calls drainReadBuffer
+          evictBatch();
         } finally {
           unlock();
         }
@@ -3560,6 +3956,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       // locked cleanup may generate notifications we can send unlocked
       if (!isHeldByCurrentThread()) {
         map.processPendingNotifications();
+        if (map.refreshBatcher != null) {
+          map.refreshBatcher.flushIfDue();
+        }
       }
     }
   }
@@ -3622,7 +4021,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     public ListenableFuture<V> loadFuture(K key, CacheLoader<? super K, V> loader) {
       try {
-        stopwatch.start();
+        if (!stopwatch.isRunning()) {
+          // a batched refresh starts timing before falling back to reload
+          stopwatch.start();
+        }
         V previousValue = oldValue.get();
         if (previousValue == null) {
           V newValue = loader.load(key);
@@ -4031,7 +4433,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   @Nullable
   public V getIfPresent(Object key) {
     int hash = hash(checkNotNull(key));
+    long start = recordsLatency ? ticker.read() : 0;
     V value = segmentFor(hash).get(key, hash);
+    if (recordsLatency) {
+      recordGetLatency(start);
+    }
     if (value == null) {
       globalStatsCounter.recordMisses(1);
     } else {
@@ -4050,7 +4456,23 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
   V get(K key, CacheLoader<? super K, V> loader) throws ExecutionException {
     int hash = hash(checkNotNull(key));
-    return segmentFor(hash).get(key, hash, loader);
+    if (!recordsLatency) {
+      return segmentFor(hash).get(key, hash, loader);
+    }
+    long start = ticker.read();
+    try {
+      return segmentFor(hash).get(key, hash, loader);
+    } finally {
+      recordGetLatency(start);
+    }
+  }
+
+  /**
+   * Records the time since {@code start} as the latency of one lookup. All lookup methods record
+   * into {@link #globalStatsCounter}, so that each call to a bulk method is counted once.
+   */
+  void recordGetLatency(long start) {
+    ((LatencyStatsCounter) globalStatsCounter).recordGet(ticker.read() - start);
   }
 
   V getOrLoad(K key) throws ExecutionException {
@@ -4058,6 +4480,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   ImmutableMap<K, V> getAllPresent(Iterable<?> keys) {
+    long start = recordsLatency ? ticker.read() : 0;
     int hits = 0;
     int misses = 0;
 
@@ -4076,10 +4499,14 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
     globalStatsCounter.recordHits(hits);
     globalStatsCounter.recordMisses(misses);
+    if (recordsLatency) {
+      recordGetLatency(start);
+    }
     return ImmutableMap.copyOf(result);
   }
 
   ImmutableMap<K, V> getAll(Iterable<? extends K> keys) throws ExecutionException {
+    long start = recordsLatency ? ticker.read() : 0;
     int hits = 0;
     int misses = 0;
 
@@ -4113,7 +4540,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           // loadAll not implemented, fallback to load
           for (K key : keysToLoad) {
             misses--; // get will count this miss
-            result.put(key, get(key, defaultLoader));
+            // bypass get(K, CacheLoader) so that the latency is only recorded for getAll
+            int hash = hash(key);
+            result.put(key, segmentFor(hash).get(key, hash, defaultLoader));
           }
         }
       }
@@ -4121,6 +4550,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     } finally {
       globalStatsCounter.recordHits(hits);
       globalStatsCounter.recordMisses(misses);
+      if (recordsLatency) {
+        recordGetLatency(start);
+      }
     }
   }
 
@@ -4722,6 +5154,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     final long expireAfterAccessNanos;
     final long maxWeight;
     final Weigher<K, V> weigher;
+    final EvictionPolicy evictionPolicy;
+    final ValueSerializer<V> valueSerializer;
+    final boolean weighsSerializedValues;
+    final Expiry<K, V> expiry;
     final int concurrencyLevel;
     final RemovalListener<? super K, ? super V> removalListener;
     final Ticker ticker;
@@ -4739,6 +5175,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           cache.expireAfterAccessNanos,
           cache.maxWeight,
           cache.weigher,
+          cache.evictionPolicy,
+          cache.valueSerializer,
+          cache.weighsSerializedValues,
+          cache.expiry,
           cache.concurrencyLevel,
           cache.removalListener,
           cache.ticker,
@@ -4754,6 +5194,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         long expireAfterAccessNanos,
         long maxWeight,
         Weigher<K, V> weigher,
+        EvictionPolicy evictionPolicy,
+        ValueSerializer<V> valueSerializer,
+        boolean weighsSerializedValues,
+        Expiry<K, V> expiry,
         int concurrencyLevel,
         RemovalListener<? super K, ? super V> removalListener,
         Ticker ticker,
@@ -4766,6 +5210,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.expireAfterAccessNanos = expireAfterAccessNanos;
       this.maxWeight = maxWeight;
       this.weigher = weigher;
+      this.evictionPolicy = evictionPolicy;
+      this.valueSerializer = valueSerializer;
+      this.weighsSerializedValues = weighsSerializedValues;
+      this.expiry = expiry;
       this.concurrencyLevel = concurrencyLevel;
       this.removalListener = removalListener;
       this.ticker = (ticker == Ticker.systemTicker() || ticker == NULL_TICKER) ? null : ticker;
@@ -4788,7 +5236,15 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (expireAfterAccessNanos > 0) {
         builder.expireAfterAccess(expireAfterAccessNanos, TimeUnit.NANOSECONDS);
       }
-      if (weigher != OneWeigher.INSTANCE) {
+      if (expiry != null) {
+        builder.expireAfter(expiry);
+      }
+      if (valueSerializer != null) {
+        builder.offHeapValues(valueSerializer);
+      }
+      if (weighsSerializedValues) {
+        builder.maximumWeight(maxWeight);
+      } else if (weigher != OneWeigher.INSTANCE) {
         builder.weigher(weigher);
         if (maxWeight != UNSET_INT) {
           builder.maximumWeight(maxWeight);
@@ -4798,6 +5254,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           builder.maximumSize(maxWeight);
         }
       }
+      if (evictionPolicy != EvictionPolicy.LRU) {
+        builder.evictionPolicy(evictionPolicy);
+      }
       if (ticker != null) {
         builder.ticker(ticker);
       }
@@ -4949,12 +5408,11 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @Override
     public CacheStats stats() {
-      SimpleStatsCounter aggregator = new SimpleStatsCounter();
-      aggregator.incrementBy(localCache.globalStatsCounter);
+      CacheStats stats = localCache.globalStatsCounter.snapshot();
       for (Segment<K, V> segment : localCache.segments) {
-        aggregator.incrementBy(segment.statsCounter);
+        stats = stats.plus(segment.statsCounter.snapshot());
       }
-      return aggregator.snapshot();
+      return stats;
     }
 
     @Override
@@ -5019,4 +5477,249 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       return new LoadingSerializationProxy<K, V>(localCache);
     }
   }
+
+  @GwtIncompatible // not yet emulated
+  static class LocalAsyncLoadingCache<K, V> implements AsyncLoadingCache<K, V> {
+    final LocalCache<K, ListenableFuture<V>> localCache;
+    final AsyncCacheLoader<? super K, V> loader;
+
+    LocalAsyncLoadingCache(
+        CacheBuilder<? super K, ? super ListenableFuture<V>> builder,
+        AsyncCacheLoader<? super K, V> loader) {
+      this.localCache = new LocalCache<K, ListenableFuture<V>>(builder, null);
+      this.loader = checkNotNull(loader);
+    }
+
+    @Override
+    @Nullable
+    public ListenableFuture<V> getIfPresent(Object key) {
+      return localCache.getIfPresent(key);
+    }
+
+    @Override
+    public ListenableFuture<V> get(K key) {
+      ListenableFuture<V> future = localCache.getIfPresent(key);
+      if (future != null) {
+        return future;
+      }
+
+      // The in-flight future is stored as the entry itself, so that concurrent callers share it
+      // without blocking. Only the caller which succeeds in storing it starts the load.
+      SettableFuture<V> proxy = SettableFuture.create();
+      future = localCache.putIfAbsent(key, proxy);
+      if (future != null) {
+        return future;
+      }
+      load(key, proxy);
+      return proxy;
+    }
+
+    @Override
+    public ListenableFuture<ImmutableMap<K, V>> getAll(Iterable<? extends K> keys) {
+      final Map<K, ListenableFuture<V>> futures = Maps.newLinkedHashMap();
+      Map<K, SettableFuture<V>> proxies = Maps.newLinkedHashMap();
+      for (K key : keys) {
+        if (futures.containsKey(key)) {
+          continue;
+        }
+        ListenableFuture<V> future = localCache.getIfPresent(key);
+        if (future == null) {
+          SettableFuture<V> proxy = SettableFuture.create();
+          future = localCache.putIfAbsent(key, proxy);
+          if (future == null) {
+            proxies.put(key, proxy);
+            future = proxy;
+          }
+        }
+        futures.put(key, future);
+      }
+      if (!proxies.isEmpty()) {
+        loadAll(proxies);
+      }
+
+      return Futures.transform(
+          Futures.allAsList(futures.values()),
+          new Function<List<V>, ImmutableMap<K, V>>() {
+            @Override
+            public ImmutableMap<K, V> apply(List<V> values) {
+              ImmutableMap.Builder<K, V> result = ImmutableMap.builder();
+              Iterator<V> valueIterator = values.iterator();
+              for (K key : futures.keySet()) {
+                result.put(key, valueIterator.next());
+              }
+              return result.build();
+            }
+          });
+    }
+
+    @Override
+    public void put(K key, ListenableFuture<V> valueFuture) {
+      checkNotNull(valueFuture);
+      localCache.put(key, valueFuture);
+      removeWhenFailed(key, valueFuture);
+    }
+
+    @Override
+    public void invalidate(Object key) {
+      checkNotNull(key);
+      localCache.remove(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+      localCache.clear();
+    }
+
+    @Override
+    public long size() {
+      return localCache.longSize();
+    }
+
+    @Override
+    public CacheStats stats() {
+      CacheStats stats = localCache.globalStatsCounter.snapshot();
+      for (Segment<K, ListenableFuture<V>> segment : localCache.segments) {
+        stats = stats.plus(segment.statsCounter.snapshot());
+      }
+      return stats;
+    }
+
+    @Override
+    public void cleanUp() {
+      localCache.cleanUp();
+    }
+
+    /**
+     * Starts loading the value for {@code key} into {@code proxy}, which must already be stored in
+     * the cache.
+     */
+    void load(K key, SettableFuture<V> proxy) {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      try {
+        ListenableFuture<V> loading = loader.load(key);
+        if (loading == null) {
+          proxy.setException(
+              new InvalidCacheLoadException("AsyncCacheLoader returned null for key " + key + "."));
+        } else {
+          proxy.setFuture(loading);
+        }
+      } catch (Throwable t) {
+        if (t instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        proxy.setException(t);
+      }
+      recordLoad(proxy, stopwatch);
+      removeWhenFailed(key, proxy);
+    }
+
+    /**
+     * Starts loading the values for the keys of {@code proxies}, each of which must already be
+     * stored in the cache, using a single call to {@link AsyncCacheLoader#loadAll} if it is
+     * supported.
+     */
+    void loadAll(final Map<K, SettableFuture<V>> proxies) {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      ListenableFuture<? extends Map<?, V>> loading;
+      try {
+        loading = loader.loadAll(proxies.keySet());
+        if (loading == null) {
+          loading = Futures.immediateFailedFuture(
+              new InvalidCacheLoadException("AsyncCacheLoader returned null map from loadAll"));
+        }
+      } catch (UnsupportedLoadingOperationException e) {
+        for (Map.Entry<K, SettableFuture<V>> entry : proxies.entrySet()) {
+          load(entry.getKey(), entry.getValue());
+        }
+        return;
+      } catch (Throwable t) {
+        if (t instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        loading = Futures.immediateFailedFuture(t);
+      }
+
+      final ListenableFuture<? extends Map<?, V>> result = loading;
+      result.addListener(
+          new Runnable() {
+            @Override
+            public void run() {
+              Map<?, V> values = null;
+              Throwable failure = null;
+              try {
+                values = getUninterruptibly(result);
+                if (values == null) {
+                  failure = new InvalidCacheLoadException(
+                      "AsyncCacheLoader returned null map from loadAll");
+                }
+              } catch (ExecutionException e) {
+                failure = e.getCause();
+              } catch (Throwable t) {
+                failure = t;
+              }
+              for (Map.Entry<K, SettableFuture<V>> entry : proxies.entrySet()) {
+                if (failure != null) {
+                  entry.getValue().setException(failure);
+                  continue;
+                }
+                V value = values.get(entry.getKey());
+                if (value == null) {
+                  entry.getValue().setException(
+                      new InvalidCacheLoadException("loadAll failed to return a value for "
+                          + entry.getKey()));
+                } else {
+                  entry.getValue().set(value);
+                }
+              }
+            }
+          },
+          directExecutor());
+      recordLoad(result, stopwatch);
+      for (Map.Entry<K, SettableFuture<V>> entry : proxies.entrySet()) {
+        removeWhenFailed(entry.getKey(), entry.getValue());
+      }
+    }
+
+    /** Records the outcome of {@code future} as a load which started when {@code stopwatch} did. */
+    void recordLoad(final ListenableFuture<?> future, final Stopwatch stopwatch) {
+      future.addListener(
+          new Runnable() {
+            @Override
+            public void run() {
+              long loadTime = stopwatch.elapsed(NANOSECONDS);
+              if (succeeded(future)) {
+                localCache.globalStatsCounter.recordLoadSuccess(loadTime);
+              } else {
+                localCache.globalStatsCounter.recordLoadException(loadTime);
+              }
+            }
+          },
+          directExecutor());
+    }
+
+    /**
+     * Removes {@code future} from the cache if it fails or completes with null, so that the next
+     * request for {@code key} loads the value again.
+     */
+    void removeWhenFailed(final Object key, final ListenableFuture<V> future) {
+      future.addListener(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (!succeeded(future)) {
+                localCache.remove(key, future);
+              }
+            }
+          },
+          directExecutor());
+    }
+
+    static boolean succeeded(Future<?> future) {
+      try {
+        return getUninterruptibly(future) != null;
+      } catch (Throwable t) {
+        return false;
+      }
+    }
+  }
 }
@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.LocalCache.LoadingValueReference;
+import com.google.common.cache.LocalCache.ReferenceEntry;
+import com.google.common.cache.LocalCache.ValueReference;
+
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Stores the serialized values of a cache in direct {@link ByteBuffer} slabs, so that the heap
+ * holds only a small {@link ValueReference} per entry. One store is shared by all segments of a
+ * cache.
+ *
+ * <p>Space is handed out in power-of-two chunks, from 16 bytes up to an eighth of a slab. A slab
+ * is carved into chunks of a single size class while it is in use, and keeps its own list of freed
+ * chunks, threaded through the free chunks themselves. Once all of a slab's chunks are freed, the
+ * slab is released, unless no other empty slab is being kept, in which case it is kept for reuse by
+ * any size class. Values too large for the biggest chunk are stored in a buffer of their own. The
+ * garbage collector reclaims the direct memory of released slabs and freed buffers.
+ *
+ * <p>Slabs are sized from the cache's maximum weight when entries weigh their serialized size, so
+ * that a small cache does not reserve much more memory than it is allowed to hold, and are
+ * otherwise 1 MiB large. The memory {@linkplain #reservedBytes
+ * reserved} by slabs is not counted against the maximum weight, and may exceed the {@linkplain
+ * #allocatedBytes allocated} memory by about one slab per size class, plus the free chunks of
+ * slabs that also hold live ones.
+ *
+ * <p>Reads do not hold any lock, so a chunk is not freed while it is being deserialized. Each
+ * reference counts its active readers; retiring the reference prevents new reads, and the chunk is
+ * freed by whichever of the retiring thread or the last reader finishes last.
+ */
+@GwtIncompatible
+final class OffHeapValueStore<K, V> {
+  static final int MIN_SLAB_SHIFT = 12;
+  static final int MAX_SLAB_SHIFT = 20;
+
+  /** Slabs are sized so that the maximum weight spans at least this many of them. */
+  static final int MIN_SLABS = 16;
+
+  static final int MIN_CHUNK_SHIFT = 4;
+
+  /** The largest chunk is an eighth of a slab. */
+  static final int MAX_CHUNK_SHIFT_BELOW_SLAB = 3;
+
+  /** The size class of values stored in a buffer of their own. */
+  static final int DEDICATED = -1;
+
+  /** Terminates a free list. */
+  static final int NIL = -1;
+
+  final ValueSerializer<V> serializer;
+
+  /** Weighs each value, or null if values weigh the number of bytes they occupy. */
+  @Nullable final Weigher<? super K, ? super V> weigher;
+
+  final int slabSize;
+  final int maxChunkShift;
+
+  /**
+   * The first of a list of slabs with free chunks, for each size class. A slab is in the list of
+   * its size class for as long as it has free or uncarved space and holds at least one live chunk.
+   */
+  @GuardedBy("this")
+  final Slab[] availableSlabs;
+
+  /** An empty slab kept for reuse by any size class, or null. */
+  @GuardedBy("this")
+  @Nullable
+  Slab spareSlab;
+
+  /** The number of slabs in use, including the spare slab. */
+  @GuardedBy("this")
+  int slabCount;
+
+  /** The number of off-heap bytes held by live chunks and dedicated buffers. */
+  @GuardedBy("this")
+  long allocatedBytes;
+
+  /** The number of off-heap bytes held by dedicated buffers. */
+  @GuardedBy("this")
+  long dedicatedBytes;
+
+  /**
+   * Creates a store whose slabs are sized for a cache holding at most {@code maxBytes} of
+   * serialized values, or holding an unknown amount if {@code maxBytes} is negative.
+   */
+  OffHeapValueStore(
+      ValueSerializer<V> serializer,
+      @Nullable Weigher<? super K, ? super V> weigher,
+      long maxBytes) {
+    this.serializer = checkNotNull(serializer);
+    this.weigher = weigher;
+    int slabShift = slabShift(maxBytes);
+    this.slabSize = 1 << slabShift;
+    this.maxChunkShift = slabShift - MAX_CHUNK_SHIFT_BELOW_SLAB;
+    this.availableSlabs = new Slab[maxChunkShift - MIN_CHUNK_SHIFT + 1];
+  }
+
+  /**
+   * Returns the base-two logarithm of the slab size for a cache holding at most {@code maxBytes}.
+   */
+  static int slabShift(long maxBytes) {
+    if (maxBytes < 0) {
+      return MAX_SLAB_SHIFT;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(Math.max(maxBytes / MIN_SLABS, 1));
+    return Math.min(Math.max(shift, MIN_SLAB_SHIFT), MAX_SLAB_SHIFT);
+  }
+
+  /**
+   * Serializes {@code value} into newly allocated off-heap space, returning a reference to it.
+   */
+  ValueReference<K, V> referenceValue(K key, V value) {
+    checkNotNull(key);
+    byte[] bytes = serializer.serialize(checkNotNull(value));
+    checkNotNull(bytes, "%s returned null for %s", serializer, value);
+    int weight = (weigher == null) ? bytes.length : weigher.weigh(key, value);
+    checkState(weight >= 0, "Weights must be non-negative");
+
+    int sizeClass = sizeClass(bytes.length);
+    Slab slab;
+    ByteBuffer buffer;
+    int offset;
+    if (sizeClass == DEDICATED) {
+      slab = null;
+      buffer = ByteBuffer.allocateDirect(bytes.length);
+      offset = 0;
+      synchronized (this) {
+        allocatedBytes += bytes.length;
+        dedicatedBytes += bytes.length;
+      }
+    } else {
+      synchronized (this) {
+        slab = allocate(sizeClass);
+        offset = slab.lastAllocated;
+      }
+      buffer = slab.buffer;
+    }
+    ByteBuffer target = buffer.duplicate();
+    target.position(offset);
+    target.put(bytes);
+    return new OffHeapValueReference<K, V>(this, slab, buffer, offset, bytes.length, weight);
+  }
+
+  /**
+   * Releases the off-heap space of {@code valueReference}, or of the old value of a loading
+   * reference, once it has no readers. Subsequent reads of the reference return null. This method
+   * has no effect on other kinds of references, or if called more than once.
+   */
+  static void retire(ValueReference<?, ?> valueReference) {
+    checkNotNull(valueReference);
+    if (valueReference instanceof OffHeapValueReference) {
+      ((OffHeapValueReference<?, ?>) valueReference).retire();
+    } else if (valueReference instanceof LoadingValueReference) {
+      retire(((LoadingValueReference<?, ?>) valueReference).getOldValue());
+    }
+  }
+
+  /** Returns the number of off-heap bytes held by live values, including unused chunk space. */
+  @VisibleForTesting
+  synchronized long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /** Returns the number of off-heap bytes reserved by slabs and dedicated buffers. */
+  synchronized long reservedBytes() {
+    return (long) slabCount * slabSize + dedicatedBytes;
+  }
+
+  /**
+   * Returns the size class of chunks which hold {@code length} bytes, or {@link #DEDICATED} if the
+   * value needs a buffer of its own.
+   */
+  int sizeClass(int length) {
+    int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+    if (shift > maxChunkShift) {
+      return DEDICATED;
+    }
+    return Math.max(shift, MIN_CHUNK_SHIFT) - MIN_CHUNK_SHIFT;
+  }
+
+  static int chunkSize(int sizeClass) {
+    return 1 << (sizeClass + MIN_CHUNK_SHIFT);
+  }
+
+  /**
+   * Allocates a chunk of {@code sizeClass}, returning its slab with the chunk's offset in
+   * {@link Slab#lastAllocated}.
+   */
+  @GuardedBy("this")
+  Slab allocate(int sizeClass) {
+    Slab slab = availableSlabs[sizeClass];
+    if (slab == null) {
+      slab = spareSlab;
+      if (slab == null) {
+        slab = new Slab(ByteBuffer.allocateDirect(slabSize));
+        slabCount++;
+      } else {
+        spareSlab = null;
+      }
+      slab.reset(sizeClass);
+      link(slab);
+    }
+    int chunkSize = chunkSize(sizeClass);
+    slab.allocate(chunkSize);
+    if (slab.isFull(slabSize)) {
+      unlink(slab);
+    }
+    allocatedBytes += chunkSize;
+    return slab;
+  }
+
+  synchronized void free(OffHeapValueReference<K, V> valueReference) {
+    Slab slab = valueReference.slab;
+    if (slab == null) {
+      allocatedBytes -= valueReference.length;
+      dedicatedBytes -= valueReference.length;
+      return;
+    }
+    allocatedBytes -= chunkSize(slab.sizeClass);
+    boolean wasFull = slab.isFull(slabSize);
+    slab.free(valueReference.offset);
+    if (slab.liveChunks == 0) {
+      if (!wasFull) {
+        unlink(slab);
+      }
+      if (spareSlab == null) {
+        spareSlab = slab;
+      } else {
+        slabCount--;
+      }
+    } else if (wasFull) {
+      link(slab);
+    }
+  }
+
+  @GuardedBy("this")
+  private void link(Slab slab) {
+    Slab first = availableSlabs[slab.sizeClass];
+    slab.previous = null;
+    slab.next = first;
+    if (first != null) {
+      first.previous = slab;
+    }
+    availableSlabs[slab.sizeClass] = slab;
+  }
+
+  @GuardedBy("this")
+  private void unlink(Slab slab) {
+    if (slab.previous == null) {
+      availableSlabs[slab.sizeClass] = slab.next;
+    } else {
+      slab.previous.next = slab.next;
+    }
+    if (slab.next != null) {
+      slab.next.previous = slab.previous;
+    }
+    slab.previous = null;
+    slab.next = null;
+  }
+
+  /**
+   * A direct buffer carved into chunks of one size class. All fields are guarded by the store.
+   */
+  static final class Slab {
+    final ByteBuffer buffer;
+    int sizeClass;
+
+    /** The offset of the next chunk to carve from the uncarved end of the slab. */
+    int carvingOffset;
+
+    /** The offset of the first freed chunk, or {@link #NIL}. */
+    int freeList;
+
+    int liveChunks;
+
+    /** The offset of the chunk returned by the last call to {@link #allocate}. */
+    int lastAllocated;
+
+    @Nullable Slab previous;
+    @Nullable Slab next;
+
+    Slab(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    void reset(int sizeClass) {
+      this.sizeClass = sizeClass;
+      carvingOffset = 0;
+      freeList = NIL;
+      liveChunks = 0;
+    }
+
+    void allocate(int chunkSize) {
+      if (freeList != NIL) {
+        lastAllocated = freeList;
+        freeList = buffer.getInt(freeList);
+      } else {
+        lastAllocated = carvingOffset;
+        carvingOffset += chunkSize;
+      }
+      liveChunks++;
+    }
+
+    void free(int offset) {
+      buffer.putInt(offset, freeList);
+      freeList = offset;
+      liveChunks--;
+    }
+
+    boolean isFull(int slabSize) {
+      return (freeList == NIL) && (carvingOffset == slabSize);
+    }
+  }
+
+  /**
+   * References a value serialized in off-heap memory. The value is deserialized by each call to
+   * {@link #get}, and a retired reference returns null.
+   */
+  static final class OffHeapValueReference<K, V> implements ValueReference<K, V> {
+    @SuppressWarnings("rawtypes") // updaters can't be parameterized
+    static final AtomicIntegerFieldUpdater<OffHeapValueReference> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(OffHeapValueReference.class, "state");
+
+    /** Set in {@link #state} once the reference has been retired. */
+    static final int RETIRED = Integer.MIN_VALUE;
+
+    final OffHeapValueStore<K, V> store;
+
+    /** The slab holding the value, or null if the value has a buffer of its own. */
+    @Nullable final Slab slab;
+
+    final ByteBuffer buffer;
+    final int offset;
+    final int length;
+    final int weight;
+
+    /** The number of active readers, combined with the {@link #RETIRED} bit. */
+    volatile int state;
+
+    OffHeapValueReference(
+        OffHeapValueStore<K, V> store,
+        @Nullable Slab slab,
+        ByteBuffer buffer,
+        int offset,
+        int length,
+        int weight) {
+      this.store = store;
+      this.slab = slab;
+      this.buffer = buffer;
+      this.offset = offset;
+      this.length = length;
+      this.weight = weight;
+    }
+
+    @Override
+    public V get() {
+      if (!tryAcquire()) {
+        return null;
+      }
+      try {
+        ByteBuffer source = buffer.asReadOnlyBuffer();
+        source.limit(offset + length);
+        source.position(offset);
+        return store.serializer.deserialize(source);
+      } finally {
+        release();
+      }
+    }
+
+    @Override
+    public V waitForValue() {
+      return get();
+    }
+
+    @Override
+    public int getWeight() {
+      return weight;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> getEntry() {
+      return null;
+    }
+
+    @Override
+    public ValueReference<K, V> copyFor(
+        ReferenceQueue<V> queue, V value, ReferenceEntry<K, V> entry) {
+      return this;
+    }
+
+    @Override
+    public void notifyNewValue(V newValue) {}
+
+    @Override
+    public boolean isLoading() {
+      return false;
+    }
+
+    @Override
+    public boolean isActive() {
+      return state >= 0;
+    }
+
+    boolean tryAcquire() {
+      for (;;) {
+        int current = state;
+        if (current < 0) {
+          return false;
+        }
+        if (STATE.compareAndSet(this, current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void release() {
+      if (STATE.decrementAndGet(this) == RETIRED) {
+        store.free(this);
+      }
+    }
+
+    void retire() {
+      for (;;) {
+        int current = state;
+        if (current < 0) {
+          return;
+        }
+        if (STATE.compareAndSet(this, current, current | RETIRED)) {
+          if (current == 0) {
+            store.free(this);
+          }
+          return;
+        }
+      }
+    }
+  }
+}
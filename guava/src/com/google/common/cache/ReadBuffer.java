@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.ImmutableList;
+import com.google.common.math.IntMath;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+
+/**
+ * A lossy, striped, multiple-producer single-consumer buffer used by a cache segment to record
+ * reads without allocating or contending on a single queue.
+ *
+ * <p>The buffer consists of fixed-size ring buffers ("stripes"), each of which is selected by a
+ * per-thread hash code. Stripes are created lazily, and the number of stripes doubles (up to the
+ * number of processors) when producers are observed to contend for the same stripe. If the
+ * selected stripe is full or contended, the element is simply dropped: recency information is
+ * an optimization, so losing a small number of reads under heavy load is acceptable.
+ *
+ * <p>Producers may call {@link #offer} and {@link #shouldDrain} concurrently from any thread. All
+ * other operations that consume or reset the buffer must be performed by a single thread at a
+ * time, which the cache ensures by holding the segment lock.
+ *
+ * <p>Within a stripe, elements are consumed in the order they were offered. No ordering is
+ * guaranteed between elements offered to different stripes.
+ *
+ * <p>Because reads may be dropped and stripes are drained one after another, a segment's access
+ * queue only approximates the order in which its entries were read. An entry whose read was lost
+ * keeps its old position in the queue, although its access time is still updated, so an
+ * expire-after-access sweep, which stops at the first unexpired entry, may stop at it early. This
+ * delays the expiration of the entries behind it, but never expires an entry early.
+ */
+@GwtIncompatible
+final class ReadBuffer<E> implements Iterable<E> {
+
+  /** The maximum number of elements pending in a single stripe. MUST be a power of two. */
+  static final int RING_SIZE = LocalCache.DRAIN_THRESHOLD + 1;
+
+  private static final int RING_MASK = RING_SIZE - 1;
+
+  /**
+   * The number of pending elements in a stripe at which {@link #shouldDrain} asks for the buffer
+   * to be drained, leaving room for the reads that happen before the drain does.
+   */
+  static final int DRAIN_PENDING = RING_SIZE / 2;
+
+  /** The maximum number of stripes, beyond which contention is resolved by rehashing. */
+  static final int MAX_STRIPES = IntMath.ceilingPowerOfTwo(Striped64.NCPU);
+
+  /** The stripes. When non-null, the length is a power of two. */
+  private volatile Ring<E>[] rings;
+
+  /** Spinlock used when creating stripes and when resizing the table of stripes. */
+  private final AtomicBoolean busy = new AtomicBoolean();
+
+  @SuppressWarnings("unchecked")
+  ReadBuffer() {
+    rings = new Ring[1];
+  }
+
+  /**
+   * Adds {@code e} to the calling thread's stripe, unless that stripe is full or was concurrently
+   * written by another thread, in which case {@code e} is discarded.
+   *
+   * @return true if {@code e} was added to the buffer
+   */
+  boolean offer(E e) {
+    checkNotNull(e);
+    int[] hc = Striped64.threadHashCode.get();
+    Ring<E>[] rings = this.rings;
+    Ring<E> ring;
+    if (hc == null || (ring = rings[hc[0] & (rings.length - 1)]) == null) {
+      return offerSlow(e);
+    }
+    switch (ring.offer(e)) {
+      case Ring.SUCCESS:
+        return true;
+      case Ring.FULL:
+        return false;
+      default:
+        contended(rings, hc);
+        return false;
+    }
+  }
+
+  /**
+   * Returns whether the calling thread's stripe holds at least {@link #DRAIN_PENDING} elements,
+   * signaling that the buffer should be drained. This is derived from the stripe's write and read
+   * indexes, so that checking it does not write to any shared state.
+   */
+  boolean shouldDrain() {
+    int[] hc = Striped64.threadHashCode.get();
+    if (hc == null) {
+      return false;
+    }
+    Ring<E>[] rings = this.rings;
+    Ring<E> ring = rings[hc[0] & (rings.length - 1)];
+    return ring != null && ring.size() >= DRAIN_PENDING;
+  }
+
+  /**
+   * Removes and returns an element from the buffer, or returns null if no elements are available.
+   */
+  @Nullable
+  E poll() {
+    for (Ring<E> ring : rings) {
+      if (ring != null) {
+        E e = ring.poll();
+        if (e != null) {
+          return e;
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Discards all pending elements. */
+  void clear() {
+    while (poll() != null) {}
+  }
+
+  /** Returns the number of elements pending in the buffer. */
+  int size() {
+    int size = 0;
+    for (Ring<E> ring : rings) {
+      if (ring != null) {
+        size += ring.size();
+      }
+    }
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /** Returns the number of stripes that may currently be used. */
+  int stripes() {
+    return rings.length;
+  }
+
+  /** Returns an iterator over a snapshot of the pending elements, in per-stripe order. */
+  @Override
+  public Iterator<E> iterator() {
+    ImmutableList.Builder<E> builder = ImmutableList.builder();
+    for (Ring<E> ring : rings) {
+      if (ring != null) {
+        ring.copyTo(builder);
+      }
+    }
+    return builder.build().iterator();
+  }
+
+  private boolean offerSlow(E e) {
+    return createRing().offer(e) == Ring.SUCCESS;
+  }
+
+  /**
+   * Returns the calling thread's stripe, initializing the thread's hash code and attaching a new
+   * stripe as necessary.
+   */
+  private Ring<E> createRing() {
+    int[] hc = Striped64.threadHashCode.get();
+    if (hc == null) {
+      Striped64.threadHashCode.set(hc = new int[1]);
+      int r = Striped64.rng.nextInt(); // Avoid zero to allow xorShift rehash
+      hc[0] = (r == 0) ? 1 : r;
+    }
+    while (true) {
+      Ring<E>[] rings = this.rings;
+      int index = hc[0] & (rings.length - 1);
+      Ring<E> ring = rings[index];
+      if (ring != null) {
+        return ring;
+      }
+      if (busy.compareAndSet(false, true)) {
+        try {
+          // recheck under lock, as the table may have been resized or the slot filled
+          if (this.rings == rings && rings[index] == null) {
+            rings[index] = ring = new Ring<E>();
+          }
+        } finally {
+          busy.set(false);
+        }
+        if (ring != null) {
+          return ring;
+        }
+      } else {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Responds to contention on a stripe by doubling the number of stripes, or by moving the calling
+   * thread to a different stripe if the maximum number of stripes has been reached.
+   */
+  private void contended(Ring<E>[] rings, int[] hc) {
+    int n = rings.length;
+    if (n < MAX_STRIPES && this.rings == rings && busy.compareAndSet(false, true)) {
+      try {
+        if (this.rings == rings) {
+          @SuppressWarnings("unchecked")
+          Ring<E>[] newRings = new Ring[n << 1];
+          System.arraycopy(rings, 0, newRings, 0, n);
+          this.rings = newRings;
+        }
+      } finally {
+        busy.set(false);
+      }
+    }
+    int h = hc[0];
+    h ^= h << 13; // Rehash
+    h ^= h >>> 17;
+    h ^= h << 5;
+    hc[0] = h;
+  }
+
+  /** A single-consumer ring buffer whose slots are claimed by producers with a CAS. */
+  static final class Ring<E> {
+    static final int SUCCESS = 0;
+    static final int FULL = 1;
+    static final int FAILED = 2;
+
+    final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<E>(RING_SIZE);
+    final AtomicLong writeCounter = new AtomicLong();
+    volatile long readCounter;
+
+    int offer(E e) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      if (tail - head >= RING_SIZE) {
+        return FULL;
+      }
+      if (writeCounter.compareAndSet(tail, tail + 1)) {
+        buffer.lazySet((int) tail & RING_MASK, e);
+        return SUCCESS;
+      }
+      return FAILED;
+    }
+
+    @Nullable
+    E poll() {
+      long head = readCounter;
+      if (head == writeCounter.get()) {
+        return null;
+      }
+      int index = (int) head & RING_MASK;
+      E e = buffer.get(index);
+      if (e == null) {
+        // the producer has claimed the slot but not yet published its element
+        return null;
+      }
+      buffer.lazySet(index, null);
+      readCounter = head + 1;
+      return e;
+    }
+
+    int size() {
+      return (int) (writeCounter.get() - readCounter);
+    }
+
+    void copyTo(ImmutableList.Builder<E> builder) {
+      for (long i = readCounter, tail = writeCounter.get(); i < tail; i++) {
+        E e = buffer.get((int) i & RING_MASK);
+        if (e != null) {
+          builder.add(e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheLoader.UnsupportedLoadingOperationException;
+import com.google.common.cache.LocalCache.LoadingValueReference;
+import com.google.common.cache.LocalCache.Segment;
+import com.google.common.cache.LocalCache.ValueReference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Coalesces the automatic refreshes of a {@link LocalCache} into calls to
+ * {@link CacheLoader#loadAll}, so that many entries which become stale at about the same time are
+ * reloaded by a single request to the backing store.
+ *
+ * <p>Each pending refresh has already installed a {@link LoadingValueReference}, so the cache
+ * keeps serving the old value until the batch completes and concurrent reads do not schedule the
+ * same refresh twice. A batch is issued once it holds {@code maxBatchSize} keys, or by the first
+ * cache operation, read or write, to observe that {@code windowNanos} have elapsed since the oldest
+ * pending refresh was scheduled. As the cache owns no threads, batches are loaded by whichever
+ * thread issues them, in the same way that unbatched refreshes call {@link CacheLoader#reload}.
+ *
+ * <p>Every read checks whether the window has elapsed, so {@link #flushIfDue} first reads the
+ * window without locking, and only synchronizes once a batch is due.
+ *
+ * <p>A thread about to wait for a pending refresh, because the old value has expired in the
+ * meantime, could otherwise be the only thread left to issue its batch. It calls
+ * {@link #beginWait} first, which issues the batch at once, as does any refresh added while a
+ * thread is waiting.
+ *
+ * <p>If the loader does not implement {@code loadAll}, each pending refresh falls back to
+ * {@link CacheLoader#reload}, and later refreshes are no longer batched.
+ */
+@GwtIncompatible
+final class RefreshBatcher<K, V> {
+  final LocalCache<K, V> map;
+  final CacheLoader<? super K, V> loader;
+  final int maxBatchSize;
+  final long windowNanos;
+
+  @GuardedBy("this")
+  List<PendingRefresh<K, V>> pending = new ArrayList<PendingRefresh<K, V>>();
+
+  /**
+   * The time at which the oldest pending refresh was scheduled. Written while holding the lock,
+   * but readable without it.
+   */
+  volatile long windowStart;
+
+  /** The number of pending refreshes, readable without locking. */
+  volatile int pendingCount;
+
+  /**
+   * The number of threads between {@link #beginWait} and {@link #endWait}, for which refreshes
+   * are not held back.
+   */
+  @GuardedBy("this")
+  int waiters;
+
+  /** Set once {@link CacheLoader#loadAll} is found not to be implemented. */
+  volatile boolean loadAllUnsupported;
+
+  RefreshBatcher(
+      LocalCache<K, V> map, CacheLoader<? super K, V> loader, int maxBatchSize, long windowNanos) {
+    this.map = checkNotNull(map);
+    this.loader = checkNotNull(loader);
+    this.maxBatchSize = maxBatchSize;
+    this.windowNanos = windowNanos;
+  }
+
+  /**
+   * Returns true if refreshes should be scheduled with {@link #add} rather than reloaded
+   * individually.
+   */
+  boolean isBatching() {
+    return !loadAllUnsupported;
+  }
+
+  /**
+   * Schedules a refresh of {@code key} into {@code loadingValueReference}, which must already be
+   * installed in the cache. Issues the pending batch if it has become full or its window has
+   * elapsed.
+   */
+  void add(K key, int hash, LoadingValueReference<K, V> loadingValueReference) {
+    List<PendingRefresh<K, V>> batch = null;
+    long now = map.ticker.read();
+    synchronized (this) {
+      if (pending.isEmpty()) {
+        windowStart = now;
+      }
+      pending.add(new PendingRefresh<K, V>(
+          checkNotNull(key), hash, checkNotNull(loadingValueReference)));
+      if (pending.size() >= maxBatchSize || now - windowStart >= windowNanos || waiters > 0) {
+        batch = drain();
+      } else {
+        pendingCount = pending.size();
+      }
+    }
+    if (batch != null) {
+      load(batch);
+    }
+  }
+
+  /**
+   * Issues the pending batch if its window has elapsed. This must not be called while holding a
+   * segment lock.
+   */
+  void flushIfDue() {
+    if (pendingCount == 0 || map.ticker.read() - windowStart < windowNanos) {
+      return;
+    }
+    List<PendingRefresh<K, V>> batch = null;
+    synchronized (this) {
+      if (!pending.isEmpty() && (map.ticker.read() - windowStart >= windowNanos)) {
+        batch = drain();
+      }
+    }
+    if (batch != null) {
+      load(batch);
+    }
+  }
+
+  /**
+   * Called before waiting for {@code valueReference} to load. Issues the pending batch if it
+   * includes {@code valueReference}; if the refresh has not been added yet, {@link #add} issues it
+   * instead, until {@link #endWait} is called. This must not be called while holding a segment
+   * lock.
+   */
+  void beginWait(ValueReference<K, V> valueReference) {
+    List<PendingRefresh<K, V>> batch = null;
+    synchronized (this) {
+      waiters++;
+      for (PendingRefresh<K, V> refresh : pending) {
+        if (refresh.loadingValueReference == valueReference) {
+          batch = drain();
+          break;
+        }
+      }
+    }
+    if (batch != null) {
+      load(batch);
+    }
+  }
+
+  /** Called after waiting for a value, once for each call to {@link #beginWait}. */
+  synchronized void endWait() {
+    waiters--;
+  }
+
+  @GuardedBy("this")
+  private List<PendingRefresh<K, V>> drain() {
+    List<PendingRefresh<K, V>> batch = pending;
+    pending = new ArrayList<PendingRefresh<K, V>>();
+    pendingCount = 0;
+    return batch;
+  }
+
+  void load(List<PendingRefresh<K, V>> batch) {
+    List<K> keys = new ArrayList<K>(batch.size());
+    for (PendingRefresh<K, V> refresh : batch) {
+      refresh.loadingValueReference.stopwatch.start();
+      keys.add(refresh.key);
+    }
+
+    Map<? super K, V> result = null;
+    Throwable failure = null;
+    try {
+      result = loader.loadAll(keys);
+      if (result == null) {
+        failure = new InvalidCacheLoadException(loader + " returned null map from loadAll");
+      }
+    } catch (UnsupportedLoadingOperationException e) {
+      loadAllUnsupported = true;
+      for (PendingRefresh<K, V> refresh : batch) {
+        Segment<K, V> segment = map.segmentFor(refresh.hash);
+        segment.loadAsync(refresh.key, refresh.hash, refresh.loadingValueReference, loader);
+      }
+      return;
+    } catch (Throwable t) {
+      if (t instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      failure = t;
+    }
+
+    // Every key in the batch is charged with the full duration of the batched load.
+    for (PendingRefresh<K, V> refresh : batch) {
+      LoadingValueReference<K, V> loadingValueReference = refresh.loadingValueReference;
+      if (failure != null) {
+        loadingValueReference.setException(failure);
+      } else {
+        V value = result.get(refresh.key);
+        if (value == null) {
+          loadingValueReference.setException(new InvalidCacheLoadException(
+              "loadAll failed to return a value for " + refresh.key));
+        } else {
+          loadingValueReference.set(value);
+        }
+      }
+      try {
+        map.segmentFor(refresh.hash).getAndRecordStats(
+            refresh.key, refresh.hash, loadingValueReference, loadingValueReference.futureValue);
+      } catch (Throwable t) {
+        LocalCache.logger.log(Level.WARNING, "Exception thrown during refresh", t);
+      }
+    }
+  }
+
+  static final class PendingRefresh<K, V> {
+    final K key;
+    final int hash;
+    final LoadingValueReference<K, V> loadingValueReference;
+
+    PendingRefresh(K key, int hash, LoadingValueReference<K, V> loadingValueReference) {
+      this.key = key;
+      this.hash = hash;
+      this.loadingValueReference = loadingValueReference;
+    }
+  }
+}
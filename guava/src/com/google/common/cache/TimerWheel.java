@@ -0,0 +1,368 @@
+/*
+ * Copyright 2017 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/*
+ * Source:
+ * https://github.com/ben-manes/caffeine/blob/master/caffeine/src/main/java/com/github/benmanes/caffeine/cache/TimerWheel.java
+ *
+ * Modified by The Guava Authors: entries are linked through LocalCache's write queue
+ * links and the wheel serves as a segment's write queue.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.cache.LocalCache.connectWriteOrder;
+import static com.google.common.cache.LocalCache.nullEntry;
+import static com.google.common.cache.LocalCache.nullifyWriteOrder;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.LocalCache.AbstractReferenceEntry;
+import com.google.common.cache.LocalCache.ReferenceEntry;
+import com.google.common.cache.LocalCache.Segment;
+import com.google.common.math.LongMath;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A hierarchical timing wheel which expires the entries of a cache segment that uses a variable,
+ * per-entry {@link Expiry}. Scheduling, rescheduling and removing an entry are constant time
+ * operations, and advancing the wheel only visits the buckets whose time span has passed, so that
+ * entries with widely different lifetimes can be expired without a sorted structure or a scan of
+ * the whole segment.
+ *
+ * <p>The wheel consists of several levels of buckets, each level spanning a coarser amount of time
+ * than the one before it: roughly seconds, minutes, hours and days. An entry is placed in the
+ * finest level whose span covers the time remaining until it expires. When the wheel advances past
+ * a bucket, each of its entries is either removed, if it has expired, or rescheduled into a finer
+ * bucket. Entries whose expiration time has since been extended are rescheduled in the same way,
+ * so a lost update to the wheel only delays removal and never causes an early one.
+ *
+ * <p>The expiration time of an entry is stored in its {@linkplain ReferenceEntry#getAccessTime
+ * access time}, and each bucket is a doubly-linked list threaded through the entries' write queue
+ * links, which are otherwise unused when expiring variably. This wheel is used as the segment's
+ * write queue, so that entries are scheduled on write and descheduled on removal without any
+ * further bookkeeping. All operations must be performed while holding the segment lock.
+ *
+ * <p>This class is derived from Caffeine's {@code TimerWheel}, by Ben Manes.
+ */
+@GwtIncompatible
+final class TimerWheel<K, V> extends AbstractQueue<ReferenceEntry<K, V>> {
+
+  /** The number of buckets in each level of the wheel. Each MUST be a power of two. */
+  static final int[] BUCKETS = {64, 64, 32, 4, 1};
+
+  /** The time spanned by a single bucket in each level, rounded up to a power of two. */
+  static final long[] SPANS = {
+    LongMath.ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)), // 1.07s
+    LongMath.ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)), // 1.14m
+    LongMath.ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)), // 1.22h
+    LongMath.ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 1.63d
+    BUCKETS[3] * LongMath.ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+    BUCKETS[3] * LongMath.ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+  };
+
+  static final long[] SHIFT = {
+    Long.numberOfTrailingZeros(SPANS[0]),
+    Long.numberOfTrailingZeros(SPANS[1]),
+    Long.numberOfTrailingZeros(SPANS[2]),
+    Long.numberOfTrailingZeros(SPANS[3]),
+    Long.numberOfTrailingZeros(SPANS[4]),
+  };
+
+  final Segment<K, V> segment;
+
+  @GuardedBy("segment")
+  final ReferenceEntry<K, V>[][] wheel;
+
+  /** The time at which the wheel was last advanced. */
+  @GuardedBy("segment")
+  long nanos;
+
+  @SuppressWarnings("unchecked")
+  TimerWheel(Segment<K, V> segment, long now) {
+    this.segment = checkNotNull(segment);
+    this.nanos = now;
+    wheel = new ReferenceEntry[BUCKETS.length][];
+    for (int i = 0; i < wheel.length; i++) {
+      wheel[i] = new ReferenceEntry[BUCKETS[i]];
+      for (int j = 0; j < wheel[i].length; j++) {
+        wheel[i][j] = new Sentinel<K, V>();
+      }
+    }
+  }
+
+  /**
+   * Advances the wheel to {@code currentTime}, removing the entries that have expired and
+   * rescheduling the others found in the buckets that were passed.
+   */
+  @GuardedBy("segment")
+  void advance(long currentTime) {
+    long previousTime = nanos;
+    nanos = currentTime;
+
+    // If the ticker wrapped around from negative to positive, shift both times into the positive
+    // range so that the unsigned bucket arithmetic below remains monotonic.
+    if ((previousTime < 0) && (currentTime > 0)) {
+      previousTime += Long.MAX_VALUE;
+      currentTime += Long.MAX_VALUE;
+    }
+
+    for (int i = 0; i < SHIFT.length; i++) {
+      long previousTicks = previousTime >>> SHIFT[i];
+      long currentTicks = currentTime >>> SHIFT[i];
+      if ((currentTicks - previousTicks) <= 0L) {
+        break;
+      }
+      expire(i, previousTicks, currentTicks - previousTicks);
+    }
+  }
+
+  /**
+   * Expires or reschedules the entries in the buckets of level {@code index} which were passed
+   * in the last {@code delta} ticks.
+   */
+  @GuardedBy("segment")
+  void expire(int index, long previousTicks, long delta) {
+    ReferenceEntry<K, V>[] timerWheel = wheel[index];
+    int mask = timerWheel.length - 1;
+    int steps = (int) Math.min(1 + delta, timerWheel.length);
+    int start = (int) (previousTicks & mask);
+    int end = start + steps;
+
+    // Entries are detached into a private list, rather than iterated in place, so that entries
+    // rescheduled into the same bucket are not visited twice. The list stays circular so that
+    // entries copied or removed by the segment while it is being processed are relinked correctly.
+    Sentinel<K, V> pending = new Sentinel<K, V>();
+    for (int i = start; i < end; i++) {
+      ReferenceEntry<K, V> sentinel = timerWheel[i & mask];
+      ReferenceEntry<K, V> first = sentinel.getNextInWriteQueue();
+      if (first == sentinel) {
+        continue;
+      }
+      ReferenceEntry<K, V> last = sentinel.getPreviousInWriteQueue();
+      connectWriteOrder(sentinel, sentinel);
+      connectWriteOrder(pending.getPreviousInWriteQueue(), first);
+      connectWriteOrder(last, pending);
+
+      ReferenceEntry<K, V> e;
+      while ((e = pending.getNextInWriteQueue()) != pending) {
+        remove(e);
+        if (segment.map.isExpired(e, nanos)) {
+          segment.removeEntry(e, e.getHash(), RemovalCause.EXPIRED);
+        } else {
+          schedule(e);
+        }
+      }
+    }
+  }
+
+  /** Links {@code entry} into the bucket covering its expiration time. */
+  @GuardedBy("segment")
+  void schedule(ReferenceEntry<K, V> entry) {
+    ReferenceEntry<K, V> sentinel = findBucket(entry.getAccessTime());
+    connectWriteOrder(sentinel.getPreviousInWriteQueue(), entry);
+    connectWriteOrder(entry, sentinel);
+  }
+
+  /** Returns the sentinel of the bucket which should hold an entry expiring at {@code time}. */
+  @GuardedBy("segment")
+  ReferenceEntry<K, V> findBucket(long time) {
+    long duration = time - nanos;
+    int length = wheel.length - 1;
+    for (int i = 0; i < length; i++) {
+      if (duration < SPANS[i + 1]) {
+        long ticks = time >>> SHIFT[i];
+        int index = (int) (ticks & (wheel[i].length - 1));
+        return wheel[i][index];
+      }
+    }
+    return wheel[length][0];
+  }
+
+  // implements Queue
+
+  /** Schedules {@code entry}, or reschedules it if its expiration time has changed. */
+  @Override
+  public boolean offer(ReferenceEntry<K, V> entry) {
+    // unlink
+    connectWriteOrder(entry.getPreviousInWriteQueue(), entry.getNextInWriteQueue());
+    schedule(entry);
+    return true;
+  }
+
+  /** Returns an entry of the wheel, preferring those in the finest levels. */
+  @Override
+  @Nullable
+  public ReferenceEntry<K, V> peek() {
+    for (ReferenceEntry<K, V>[] timerWheel : wheel) {
+      for (ReferenceEntry<K, V> sentinel : timerWheel) {
+        ReferenceEntry<K, V> next = sentinel.getNextInWriteQueue();
+        if (next != sentinel) {
+          return next;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  @Nullable
+  public ReferenceEntry<K, V> poll() {
+    ReferenceEntry<K, V> next = peek();
+    if (next != null) {
+      remove(next);
+    }
+    return next;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean remove(Object o) {
+    ReferenceEntry<K, V> e = (ReferenceEntry) o;
+    ReferenceEntry<K, V> previous = e.getPreviousInWriteQueue();
+    ReferenceEntry<K, V> next = e.getNextInWriteQueue();
+    connectWriteOrder(previous, next);
+    nullifyWriteOrder(e);
+
+    return next != nullEntry();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean contains(Object o) {
+    ReferenceEntry<K, V> e = (ReferenceEntry) o;
+    return e.getNextInWriteQueue() != nullEntry();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return peek() == null;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (ReferenceEntry<K, V>[] timerWheel : wheel) {
+      for (ReferenceEntry<K, V> sentinel : timerWheel) {
+        for (ReferenceEntry<K, V> e = sentinel.getNextInWriteQueue();
+            e != sentinel;
+            e = e.getNextInWriteQueue()) {
+          size++;
+        }
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    for (ReferenceEntry<K, V>[] timerWheel : wheel) {
+      for (ReferenceEntry<K, V> sentinel : timerWheel) {
+        ReferenceEntry<K, V> e = sentinel.getNextInWriteQueue();
+        while (e != sentinel) {
+          ReferenceEntry<K, V> next = e.getNextInWriteQueue();
+          nullifyWriteOrder(e);
+          e = next;
+        }
+        connectWriteOrder(sentinel, sentinel);
+      }
+    }
+  }
+
+  @Override
+  public Iterator<ReferenceEntry<K, V>> iterator() {
+    return new Iterator<ReferenceEntry<K, V>>() {
+      int level;
+      int bucket;
+      @Nullable ReferenceEntry<K, V> next = advanceFrom(wheel[0][0]);
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public ReferenceEntry<K, V> next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        ReferenceEntry<K, V> result = next;
+        next = advanceFrom(result);
+        return result;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+      /** Returns the entry following {@code e}, moving on to later buckets as they run out. */
+      @Nullable
+      ReferenceEntry<K, V> advanceFrom(ReferenceEntry<K, V> e) {
+        ReferenceEntry<K, V> candidate = e.getNextInWriteQueue();
+        while (candidate == wheel[level][bucket]) {
+          if (++bucket == wheel[level].length) {
+            bucket = 0;
+            if (++level == wheel.length) {
+              return null;
+            }
+          }
+          candidate = wheel[level][bucket].getNextInWriteQueue();
+        }
+        return candidate;
+      }
+    };
+  }
+
+  /** The head of a bucket's circular, doubly-linked list. */
+  static final class Sentinel<K, V> extends AbstractReferenceEntry<K, V> {
+    ReferenceEntry<K, V> nextWrite = this;
+    ReferenceEntry<K, V> previousWrite = this;
+
+    @Override
+    public long getAccessTime() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void setAccessTime(long time) {}
+
+    @Override
+    public ReferenceEntry<K, V> getNextInWriteQueue() {
+      return nextWrite;
+    }
+
+    @Override
+    public void setNextInWriteQueue(ReferenceEntry<K, V> next) {
+      this.nextWrite = next;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> getPreviousInWriteQueue() {
+      return previousWrite;
+    }
+
+    @Override
+    public void setPreviousInWriteQueue(ReferenceEntry<K, V> previous) {
+      this.previousWrite = previous;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts cache values to and from bytes, so that a cache built with
+ * {@link CacheBuilder#offHeapValues} can store its values outside of the Java heap.
+ *
+ * <p>A value read from the cache is a new deserialized copy, so {@code deserialize} must produce a
+ * value {@linkplain Object#equals equal} to the one that was serialized. Implementations may be
+ * called concurrently by multiple threads, and {@code serialize} may be called while holding
+ * internal locks.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtIncompatible // java.nio.ByteBuffer
+public interface ValueSerializer<V> {
+
+  /**
+   * Returns the serialized form of {@code value}. The returned array is copied, and is not
+   * retained by the cache.
+   */
+  byte[] serialize(V value);
+
+  /**
+   * Returns the value serialized in the remaining bytes of {@code buffer}. The buffer is read-only
+   * and only valid during this call; implementations must not retain it.
+   */
+  V deserialize(ByteBuffer buffer);
+}
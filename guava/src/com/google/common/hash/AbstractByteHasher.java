@@ -57,6 +57,21 @@ abstract class AbstractByteHasher extends AbstractHasher {
     }
   }
 
+  /**
+   * Updates this hasher with the remaining bytes of the given buffer, leaving its position at its
+   * limit.
+   */
+  protected void update(ByteBuffer b) {
+    if (b.hasArray()) {
+      update(b.array(), b.arrayOffset() + b.position(), b.remaining());
+      b.position(b.limit());
+    } else {
+      for (int remaining = b.remaining(); remaining > 0; remaining--) {
+        update(b.get());
+      }
+    }
+  }
+
   @Override
   public Hasher putByte(byte b) {
     update(b);
@@ -77,6 +92,13 @@ abstract class AbstractByteHasher extends AbstractHasher {
     return this;
   }
 
+  @Override
+  public Hasher putBytes(ByteBuffer bytes) {
+    checkNotNull(bytes);
+    update(bytes);
+    return this;
+  }
+
   /**
    * Updates the sink with the given number of bytes from the buffer.
    */
@@ -16,6 +16,7 @@ package com.google.common.hash;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -74,6 +75,16 @@ abstract class AbstractCompositeHashFunction extends AbstractStreamingHashFuncti
         return this;
       }
 
+      @Override
+      public Hasher putBytes(ByteBuffer bytes) {
+        int position = bytes.position();
+        for (Hasher hasher : hashers) {
+          bytes.position(position);
+          hasher.putBytes(bytes);
+        }
+        return this;
+      }
+
       @Override
       public Hasher putShort(short s) {
         for (Hasher hasher : hashers) {
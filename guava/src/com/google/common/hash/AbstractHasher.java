@@ -16,12 +16,14 @@ package com.google.common.hash;
 
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
  * An abstract hasher, implementing {@link #putBoolean(boolean)}, {@link #putDouble(double)},
- * {@link #putFloat(float)}, {@link #putUnencodedChars(CharSequence)}, and
- * {@link #putString(CharSequence, Charset)} as prescribed by {@link Hasher}.
+ * {@link #putFloat(float)}, {@link #putBytes(ByteBuffer)},
+ * {@link #putUnencodedChars(CharSequence)}, and {@link #putString(CharSequence, Charset)} as
+ * prescribed by {@link Hasher}.
  *
  * @author Dimitris Andreou
  */
@@ -42,6 +44,19 @@ abstract class AbstractHasher implements Hasher {
     return putInt(Float.floatToRawIntBits(f));
   }
 
+  @Override
+  public Hasher putBytes(ByteBuffer b) {
+    if (b.hasArray()) {
+      putBytes(b.array(), b.arrayOffset() + b.position(), b.remaining());
+      b.position(b.limit());
+    } else {
+      for (int remaining = b.remaining(); remaining > 0; remaining--) {
+        putByte(b.get());
+      }
+    }
+    return this;
+  }
+
   @Override
   public Hasher putUnencodedChars(CharSequence charSequence) {
     for (int i = 0, len = charSequence.length(); i < len; i++) {
@@ -18,7 +18,9 @@ import com.google.common.base.Preconditions;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * Skeleton implementation of {@link HashFunction}, appropriate for non-streaming algorithms. All
@@ -74,6 +76,11 @@ abstract class AbstractNonStreamingHashFunction implements HashFunction {
     return hashBytes(input, 0, input.length);
   }
 
+  @Override
+  public HashCode hashBytes(ByteBuffer input) {
+    return newHasher(input.remaining()).putBytes(input).hash();
+  }
+
   /**
    * In-memory stream-based implementation of Hasher.
    */
@@ -107,6 +114,12 @@ abstract class AbstractNonStreamingHashFunction implements HashFunction {
       return this;
     }
 
+    @Override
+    public Hasher putBytes(ByteBuffer bytes) {
+      stream.write(bytes);
+      return this;
+    }
+
     @Override
     public Hasher putShort(short s) {
       stream.write(s & BOTTOM_BYTE);
@@ -156,6 +169,15 @@ abstract class AbstractNonStreamingHashFunction implements HashFunction {
       super(expectedInputSize);
     }
 
+    void write(ByteBuffer input) {
+      int remaining = input.remaining();
+      if (count + remaining > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + remaining));
+      }
+      input.get(buf, count, remaining);
+      count += remaining;
+    }
+
     byte[] byteArray() {
       return buf;
     }
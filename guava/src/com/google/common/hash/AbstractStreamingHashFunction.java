@@ -68,6 +68,11 @@ abstract class AbstractStreamingHashFunction implements HashFunction {
     return newHasher().putBytes(input, off, len).hash();
   }
 
+  @Override
+  public HashCode hashBytes(ByteBuffer input) {
+    return newHasher().putBytes(input).hash();
+  }
+
   @Override
   public Hasher newHasher(int expectedInputSize) {
     Preconditions.checkArgument(expectedInputSize >= 0);
@@ -153,10 +158,25 @@ abstract class AbstractStreamingHashFunction implements HashFunction {
 
     @Override
     public final Hasher putBytes(byte[] bytes, int off, int len) {
-      return putBytes(ByteBuffer.wrap(bytes, off, len).order(ByteOrder.LITTLE_ENDIAN));
+      return putBytesInternal(ByteBuffer.wrap(bytes, off, len).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Processes whole chunks straight from {@code readBuffer}, so that direct buffers are not
+     * copied to the heap; its byte order is only changed while this runs.
+     */
+    @Override
+    public final Hasher putBytes(ByteBuffer readBuffer) {
+      ByteOrder order = readBuffer.order();
+      try {
+        readBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        return putBytesInternal(readBuffer);
+      } finally {
+        readBuffer.order(order);
+      }
     }
 
-    private Hasher putBytes(ByteBuffer readBuffer) {
+    private Hasher putBytesInternal(ByteBuffer readBuffer) {
       // If we have room for all of it, this is easy
       if (readBuffer.remaining() <= buffer.remaining()) {
         buffer.put(readBuffer);
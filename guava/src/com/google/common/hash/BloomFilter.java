@@ -22,16 +22,21 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.hash.BloomFilterStrategies.BitArray;
+import com.google.common.hash.BloomFilterStrategies.LockFreeBitArray;
+import com.google.common.math.LongMath;
 import com.google.common.primitives.SignedBytes;
 import com.google.common.primitives.UnsignedBytes;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.math.RoundingMode;
 
 import javax.annotation.Nullable;
 
@@ -54,6 +59,15 @@ import javax.annotation.Nullable;
  * of the code may not be readable by older versions of the code (e.g., a serialized bloom filter
  * generated today may <i>not</i> be readable by a binary that was compiled 6 months ago).
  *
+ * <p>As of Guava 20.0, this class is thread-safe and lock-free: {@link #put} and {@link #putAll}
+ * set bits using compare-and-swap, so they may be called concurrently with each other and with
+ * {@link #mightContain}, which never blocks. Once {@code put(t)} has returned,
+ * {@code mightContain(t)} returns {@code true} in every thread. Methods that read the whole filter,
+ * such as {@link #expectedFpp}, {@link #copy} and {@link #writeTo}, may not reflect puts made
+ * concurrently with them. A filter opened with {@link #map} gives the same guarantees, but its
+ * {@code put} and {@code putAll} briefly hold one of a set of striped locks to set a bit that is
+ * not yet set.
+ *
  * @param <T> the type of instances that the {@code BloomFilter} accepts
  * @author Dimitris Andreou
  * @author Kevin Bourrillion
@@ -118,6 +132,16 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     this.numHashFunctions = numHashFunctions;
     this.funnel = checkNotNull(funnel);
     this.strategy = checkNotNull(strategy);
+    if (strategy == BloomFilterStrategies.MURMUR128_BLOCKED_512) {
+      // the blocked strategy picks a block modulo the number of blocks, so the bits must be a
+      // positive whole number of blocks
+      long bitSize = bits.bitSize();
+      checkArgument(
+          bitSize > 0 && bitSize % BloomFilterStrategies.BLOCK_BITS == 0,
+          "bitSize (%s) of a blocked filter must be a positive multiple of %s",
+          bitSize,
+          BloomFilterStrategies.BLOCK_BITS);
+    }
   }
 
   /**
@@ -177,7 +201,12 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
    */
   public double expectedFpp() {
     // You down with FPP? (Yeah you know me!) Who's down with FPP? (Every last homie!)
-    return Math.pow((double) bits.bitCount() / bitSize(), numHashFunctions);
+    double fractionOfBitsSet = (double) bits.bitCount() / bitSize();
+    if (strategy == BloomFilterStrategies.MURMUR128_BLOCKED_512 && fractionOfBitsSet < 1.0) {
+      // fractionOfBitsSet^k underestimates the probability for blocked filters
+      return blockedFpp(blockLoad(fractionOfBitsSet, numHashFunctions), numHashFunctions);
+    }
+    return Math.pow(fractionOfBitsSet, numHashFunctions);
   }
 
   /**
@@ -339,8 +368,11 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
      */
     long numBits = optimalNumOfBits(expectedInsertions, fpp);
     int numHashFunctions = optimalNumOfHashFunctions(expectedInsertions, numBits);
+    if (strategy == BloomFilterStrategies.MURMUR128_BLOCKED_512) {
+      numBits = optimalNumOfBlockedBits(expectedInsertions, fpp, numHashFunctions);
+    }
     try {
-      return new BloomFilter<T>(new BitArray(numBits), numHashFunctions, funnel, strategy);
+      return new BloomFilter<T>(new LockFreeBitArray(numBits), numHashFunctions, funnel, strategy);
     } catch (IllegalArgumentException e) {
       throw new IllegalArgumentException("Could not create BloomFilter of " + numBits + " bits", e);
     }
@@ -393,6 +425,33 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     return create(funnel, expectedInsertions, 0.03); // FYI, for 3%, we always get 5 hash functions
   }
 
+  /**
+   * Creates a <i>blocked</i> {@link BloomFilter BloomFilter<T>} with the expected number of
+   * insertions and expected false positive probability.
+   *
+   * <p>A blocked Bloom filter sets all the bits for an element within one 64-byte block, so that
+   * {@link #mightContain} and {@link #put} access one or two cache lines instead of one per hash
+   * function. This can make operations on filters much larger than the processor's caches several
+   * times faster. In exchange, because elements are not spread evenly across blocks, a blocked
+   * filter needs more bits than an ordinary one to achieve the same false positive probability.
+   * The constructed filter is sized to make up for this, which costs increasingly more memory for
+   * lower values of {@code fpp}: about 3% more for 3%, 8% more for 0.1%, and 36% more for 0.0001%.
+   *
+   * <p>Blocked filters are otherwise used like ordinary ones, and have the same serialized forms,
+   * but are only {@linkplain #isCompatible compatible} with other blocked filters.
+   *
+   * @param funnel the funnel of T's that the constructed {@code BloomFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code BloomFilter<T>}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code BloomFilter}
+   * @since 20.0
+   */
+  public static <T> BloomFilter<T> createBlocked(
+      Funnel<? super T> funnel, long expectedInsertions, double fpp) {
+    return create(funnel, expectedInsertions, fpp, BloomFilterStrategies.MURMUR128_BLOCKED_512);
+  }
+
   // Cheat sheet:
   //
   // m: total bits
@@ -437,6 +496,78 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     return (long) (-n * Math.log(p) / (Math.log(2) * Math.log(2)));
   }
 
+  /**
+   * Computes m (total bits of a blocked Bloom filter), a multiple of the block size, which is
+   * expected to achieve, for the specified expected insertions and number of hash functions, the
+   * required false positive probability.
+   *
+   * @param n expected insertions (must be positive)
+   * @param p false positive rate (must be 0 < p < 1)
+   * @param k number of hash functions (must be positive)
+   */
+  @VisibleForTesting
+  static long optimalNumOfBlockedBits(long n, double p, int k) {
+    long m = roundUpToBlocks(optimalNumOfBits(n, p));
+    // stop before overflowing; the caller cannot allocate that many bits anyway
+    while (m < Long.MAX_VALUE / 2
+        && blockedFpp((double) n * BloomFilterStrategies.BLOCK_BITS / m, k) > p) {
+      m = roundUpToBlocks(m + m / 64);
+    }
+    return m;
+  }
+
+  private static long roundUpToBlocks(long m) {
+    int blockBits = BloomFilterStrategies.BLOCK_BITS;
+    return Math.max(1, LongMath.divide(m, blockBits, RoundingMode.CEILING)) * blockBits;
+  }
+
+  /**
+   * Computes the expected false positive probability of a blocked Bloom filter with k hash
+   * functions, into each block of which lambda elements were put on average.
+   *
+   * See "Cache-, Hash- and Space-Efficient Bloom Filters" by Putze, Sanders and Singler for the
+   * formula: the number of elements in a block is approximately Poisson distributed with mean
+   * lambda = n * B / m, where B is the number of bits in a block, and a block into which i elements
+   * were put behaves as an ordinary Bloom filter of B bits.
+   *
+   * @param lambda the mean number of elements per block (must be non-negative and finite)
+   * @param k number of hash functions (must be positive)
+   */
+  @VisibleForTesting
+  static double blockedFpp(double lambda, int k) {
+    double logLambda = Math.log(lambda);
+    double bitUnsetPerHash = 1.0 - 1.0 / BloomFilterStrategies.BLOCK_BITS;
+    // sum P(i elements in the block) * p(i) for i up to well past the mean, working with the
+    // logarithm of the Poisson probability, which underflows for large lambda
+    long maxElements = (long) (lambda + 20 * Math.sqrt(lambda) + 20);
+    double logPoisson = -lambda;
+    double fpp = 0.0;
+    for (long i = 0; i <= maxElements; i++) {
+      double blockFpp = Math.pow(1.0 - Math.pow(bitUnsetPerHash, (double) k * i), k);
+      fpp += Math.exp(logPoisson) * blockFpp;
+      logPoisson += logLambda - Math.log(i + 1);
+    }
+    return Math.min(fpp, 1.0);
+  }
+
+  /**
+   * Estimates the mean number of elements per block of a blocked Bloom filter with k hash
+   * functions, given the fraction of its bits that are set. Under the model of
+   * {@link #blockedFpp}, the expected fraction of bits set is
+   * 1 - e ^ (lambda * ((1 - 1/B) ^ k - 1)), which is inverted here.
+   *
+   * @param fractionOfBitsSet the fraction of bits set (must be 0 <= fractionOfBitsSet < 1)
+   * @param k number of hash functions (must be positive)
+   */
+  @VisibleForTesting
+  static double blockLoad(double fractionOfBitsSet, int k) {
+    double bitUnsetPerElement = Math.pow(1.0 - 1.0 / BloomFilterStrategies.BLOCK_BITS, k);
+    return Math.log(1.0 - fractionOfBitsSet) / (bitUnsetPerElement - 1.0);
+  }
+
+  /** The number of bytes preceding the bitset in the form written by {@link #writeTo}. */
+  private static final int HEADER_BYTES = 6;
+
   private Object writeReplace() {
     return new SerialForm<T>(this);
   }
@@ -448,14 +579,14 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     final Strategy strategy;
 
     SerialForm(BloomFilter<T> bf) {
-      this.data = bf.bits.data;
+      this.data = bf.bits.toPlainArray();
       this.numHashFunctions = bf.numHashFunctions;
       this.funnel = bf.funnel;
       this.strategy = bf.strategy;
     }
 
     Object readResolve() {
-      return new BloomFilter<T>(new BitArray(data), numHashFunctions, funnel, strategy);
+      return new BloomFilter<T>(new LockFreeBitArray(data), numHashFunctions, funnel, strategy);
     }
 
     private static final long serialVersionUID = 1;
@@ -469,7 +600,7 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
    * <p>Use {@linkplain #readFrom(InputStream, Funnel)} to reconstruct the written BloomFilter.
    */
   public void writeTo(OutputStream out) throws IOException {
-    // Serial form:
+    // Serial form (HEADER_BYTES followed by the bitset):
     // 1 signed byte for the strategy
     // 1 unsigned byte for the number of hash functions
     // 1 big endian int, the number of longs in our bitset
@@ -477,9 +608,9 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     DataOutputStream dout = new DataOutputStream(out);
     dout.writeByte(SignedBytes.checkedCast(strategy.ordinal()));
     dout.writeByte(UnsignedBytes.checkedCast(numHashFunctions)); // note: checked at the c'tor
-    dout.writeInt(bits.data.length);
-    for (long value : bits.data) {
-      dout.writeLong(value);
+    dout.writeInt(bits.wordCount());
+    for (int i = 0; i < bits.wordCount(); i++) {
+      dout.writeLong(bits.getWord(i));
     }
   }
 
@@ -514,7 +645,7 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
       for (int i = 0; i < data.length; i++) {
         data[i] = din.readLong();
       }
-      return new BloomFilter<T>(new BitArray(data), numHashFunctions, funnel, strategy);
+      return new BloomFilter<T>(new LockFreeBitArray(data), numHashFunctions, funnel, strategy);
     } catch (RuntimeException e) {
       IOException ioException =
           new IOException(
@@ -529,4 +660,66 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
       throw ioException;
     }
   }
+
+  /**
+   * Opens the {@code BloomFilter<T>} that was written to {@code file} by
+   * {@linkplain #writeTo(OutputStream)}, without reading it: the filter's bits remain in the file,
+   * which is mapped into memory. Opening a filter therefore takes about the same time regardless of
+   * its size, and the file's pages are read by the operating system as they are first accessed,
+   * and shared with other processes mapping the same file.
+   *
+   * <p>The returned filter writes through to the file: {@link #put} and {@link #putAll} modify the
+   * mapped pages, which the operating system writes back to the file, even if this process ends
+   * abruptly. Nothing forces those pages to the storage device, however, so puts may be lost if
+   * the operating system crashes or the machine loses power before it has written them back. The
+   * file remains mapped until the filter is garbage collected. The file must not be modified by
+   * other means, in particular truncated, while it is mapped. {@link #copy} and Java serialization
+   * read the whole filter into memory.
+   *
+   * <p>The format of {@code writeTo} stores the number of longs in the filter in an {@code int},
+   * so a filter cannot exceed 16GB.
+   *
+   * <p>The {@code Funnel} to be used is not encoded in the file, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to populate
+   * the original Bloom filter!
+   *
+   * @throws IOException if the file cannot be opened for reading and writing, or if its data does
+   *     not appear to be a BloomFilter serialized using the {@linkplain #writeTo(OutputStream)}
+   *     method.
+   * @since 20.0
+   */
+  public static <T> BloomFilter<T> map(File file, Funnel<T> funnel) throws IOException {
+    checkNotNull(file, "File");
+    checkNotNull(funnel, "Funnel");
+    int strategyOrdinal = -1;
+    int numHashFunctions = -1;
+    int dataLength = -1;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      // see writeTo for the serial form
+      strategyOrdinal = randomAccessFile.readByte();
+      numHashFunctions = UnsignedBytes.toInt(randomAccessFile.readByte());
+      dataLength = randomAccessFile.readInt();
+
+      Strategy strategy = BloomFilterStrategies.values()[strategyOrdinal];
+      BitArray bits =
+          MappedBitArray.map(randomAccessFile.getChannel(), HEADER_BYTES, dataLength);
+      return new BloomFilter<T>(bits, numHashFunctions, funnel, strategy);
+    } catch (RuntimeException e) {
+      IOException ioException =
+          new IOException(
+              "Unable to map BloomFilter from file."
+                  + " strategyOrdinal: "
+                  + strategyOrdinal
+                  + " numHashFunctions: "
+                  + numHashFunctions
+                  + " dataLength: "
+                  + dataLength);
+      ioException.initCause(e);
+      throw ioException;
+    } finally {
+      // the file remains mapped
+      randomAccessFile.close();
+    }
+  }
 }
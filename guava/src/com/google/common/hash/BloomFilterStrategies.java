@@ -21,7 +21,8 @@ import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 
 import java.math.RoundingMode;
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import javax.annotation.Nullable;
 
 /**
@@ -127,92 +128,271 @@ enum BloomFilterStrategies implements BloomFilter.Strategy {
       }
       return true;
     }
+  },
+  /**
+   * A blocked Bloom filter, as described in "Cache-, Hash- and Space-Efficient Bloom Filters" by
+   * Felix Putze, Peter Sanders and Johannes Singler. The lower 64 bits of {@link
+   * Hashing#murmur3_128} select a block of {@link #BLOCK_BITS} bits, the size of a typical cache
+   * line, and all of the element's bits are set within that block, so that a lookup touches one
+   * or two cache lines (depending on the alignment of the array) regardless of the size of the
+   * filter, rather than one per hash function. The bits within the block are derived
+   * from the upper 64 bits as in MURMUR128_MITZ_64, using the most significant bits of the
+   * combined hash after mixing it.
+   *
+   * <p>Because some blocks receive more elements than others, a blocked filter has a higher false
+   * positive probability than an unblocked filter of the same size; see {@link
+   * BloomFilter#createBlocked}. The bit array always holds a positive whole number of blocks,
+   * which the {@code BloomFilter} constructor checks.
+   */
+  MURMUR128_BLOCKED_512() {
+    @Override
+    public <T> boolean put(
+        T object, Funnel<? super T> funnel, int numHashFunctions, BitArray bits) {
+      byte[] bytes = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+      long hash1 = lowerEight(bytes);
+      long hash2 = upperEight(bytes);
+      long blockOffset = blockOffset(hash1, bits);
+
+      boolean bitsChanged = false;
+      long combinedHash = hash2;
+      for (int i = 0; i < numHashFunctions; i++) {
+        bitsChanged |= bits.set(blockOffset + bitInBlock(combinedHash));
+        combinedHash += hash1;
+      }
+      return bitsChanged;
+    }
 
-    private /* static */ long lowerEight(byte[] bytes) {
-      return Longs.fromBytes(
-          bytes[7], bytes[6], bytes[5], bytes[4], bytes[3], bytes[2], bytes[1], bytes[0]);
+    @Override
+    public <T> boolean mightContain(
+        T object, Funnel<? super T> funnel, int numHashFunctions, BitArray bits) {
+      byte[] bytes = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+      long hash1 = lowerEight(bytes);
+      long hash2 = upperEight(bytes);
+      long blockOffset = blockOffset(hash1, bits);
+
+      long combinedHash = hash2;
+      for (int i = 0; i < numHashFunctions; i++) {
+        if (!bits.get(blockOffset + bitInBlock(combinedHash))) {
+          return false;
+        }
+        combinedHash += hash1;
+      }
+      return true;
     }
 
-    private /* static */ long upperEight(byte[] bytes) {
-      return Longs.fromBytes(
-          bytes[15], bytes[14], bytes[13], bytes[12], bytes[11], bytes[10], bytes[9], bytes[8]);
+    private /* static */ long blockOffset(long hash, BitArray bits) {
+      long numBlocks = bits.bitSize() >>> LOG2_BLOCK_BITS;
+      return ((hash & Long.MAX_VALUE) % numBlocks) << LOG2_BLOCK_BITS;
     }
   };
 
-  // Note: We use this instead of java.util.BitSet because we need access to the long[] data field
-  static final class BitArray {
-    final long[] data;
-    long bitCount;
+  private static final int LOG2_BLOCK_BITS = 9;
+
+  /** The number of bits in a block of {@link #MURMUR128_BLOCKED_512}: a 64-byte cache line. */
+  static final int BLOCK_BITS = 1 << LOG2_BLOCK_BITS;
+
+  /**
+   * Returns the index within a block of {@link #MURMUR128_BLOCKED_512} of the bit selected by
+   * {@code combinedHash}, after mixing it with an xor-shift and a multiplication by the golden
+   * ratio. Taking its most significant bits directly would make the indexes an arithmetic
+   * progression modulo the block size; for the elements whose progression has a small step, all
+   * the indexes would fall close together, and those elements' false positive probability would
+   * approach the fraction of bits set, bounding that of the whole filter from below.
+   */
+  private static long bitInBlock(long combinedHash) {
+    long mixed = (combinedHash ^ (combinedHash >>> 32)) * 0x9E3779B97F4A7C15L;
+    return mixed >>> (Long.SIZE - LOG2_BLOCK_BITS);
+  }
+
+  static long lowerEight(byte[] bytes) {
+    return Longs.fromBytes(
+        bytes[7], bytes[6], bytes[5], bytes[4], bytes[3], bytes[2], bytes[1], bytes[0]);
+  }
+
+  static long upperEight(byte[] bytes) {
+    return Longs.fromBytes(
+        bytes[15], bytes[14], bytes[13], bytes[12], bytes[11], bytes[10], bytes[9], bytes[8]);
+  }
+
+  /**
+   * A fixed-size array of bits, stored as 64-bit words, which may be read and written concurrently
+   * without external synchronization. Bits are never cleared, so a bit observed to be set stays
+   * set; however, {@link #bitCount} and the results of {@link #equals} and {@link #copy} may not
+   * reflect writes made concurrently with them.
+   */
+  abstract static class BitArray {
+    static final int LONG_ADDRESSABLE_BITS = 6;
+
+    /** Sets a bit. Returns true if the bit changed value. */
+    abstract boolean set(long bitIndex);
+
+    abstract boolean get(long bitIndex);
+
+    /** Number of 64-bit words */
+    abstract int wordCount();
+
+    /**
+     * Returns the word at {@code index}. Bit {@code i} of the array is bit {@code i % 64} of word
+     * {@code i / 64}.
+     */
+    abstract long getWord(int index);
+
+    /**
+     * Number of set bits (1s). Bits set concurrently with this call may or may not be counted.
+     */
+    abstract long bitCount();
+
+    /**
+     * Combines the two BitArrays using bitwise OR. {@code array} may be modified concurrently, in
+     * which case only the bits set in it before the corresponding word is read are combined.
+     */
+    abstract void putAll(BitArray array);
+
+    /** Number of bits */
+    final long bitSize() {
+      return (long) wordCount() * Long.SIZE;
+    }
+
+    /** Returns a copy of this array, held on the heap. */
+    final BitArray copy() {
+      return new LockFreeBitArray(toPlainArray());
+    }
+
+    /**
+     * Returns the words of this array, read one at a time. This may not be a consistent snapshot
+     * of an array being concurrently modified.
+     */
+    final long[] toPlainArray() {
+      long[] array = new long[wordCount()];
+      for (int i = 0; i < array.length; ++i) {
+        array[i] = getWord(i);
+      }
+      return array;
+    }
+
+    final void checkSameLength(BitArray array) {
+      checkArgument(
+          wordCount() == array.wordCount(),
+          "BitArrays must be of equal length (%s != %s)",
+          wordCount(),
+          array.wordCount());
+    }
+
+    @Override
+    public final boolean equals(@Nullable Object o) {
+      if (o instanceof BitArray) {
+        BitArray bitArray = (BitArray) o;
+        if (wordCount() != bitArray.wordCount()) {
+          return false;
+        }
+        for (int i = 0; i < wordCount(); i++) {
+          if (getWord(i) != bitArray.getWord(i)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      return false;
+    }
 
-    BitArray(long bits) {
+    @Override
+    public final int hashCode() {
+      // equal to Arrays.hashCode(toPlainArray()), without the copy
+      int result = 1;
+      for (int i = 0; i < wordCount(); i++) {
+        result = 31 * result + Longs.hashCode(getWord(i));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * A {@link BitArray} held on the heap. Bits are set with a compare-and-swap of the word
+   * containing them, so concurrent writes of different bits in one word are never lost, and reads
+   * of a bit never block. The number of set bits is kept in a striped counter, so that concurrent
+   * writers do not all contend on it.
+   */
+  // Note: We use this instead of java.util.BitSet because we need access to the data field
+  static final class LockFreeBitArray extends BitArray {
+    final AtomicLongArray data;
+    private final LongAddable bitCount;
+
+    LockFreeBitArray(long bits) {
       this(new long[Ints.checkedCast(LongMath.divide(bits, 64, RoundingMode.CEILING))]);
     }
 
     // Used by serialization
-    BitArray(long[] data) {
+    LockFreeBitArray(long[] data) {
       checkArgument(data.length > 0, "data length is zero!");
-      this.data = data;
+      // We assume that the array is not being concurrently modified
+      this.data = new AtomicLongArray(data);
+      this.bitCount = LongAddables.create();
       long bitCount = 0;
       for (long value : data) {
         bitCount += Long.bitCount(value);
       }
-      this.bitCount = bitCount;
+      this.bitCount.add(bitCount);
     }
 
-    /** Returns true if the bit changed value. */
-    boolean set(long index) {
-      if (!get(index)) {
-        data[(int) (index >>> 6)] |= (1L << index);
-        bitCount++;
-        return true;
+    @Override
+    boolean set(long bitIndex) {
+      if (get(bitIndex)) {
+        return false;
       }
-      return false;
-    }
 
-    boolean get(long index) {
-      return (data[(int) (index >>> 6)] & (1L << index)) != 0;
-    }
+      int longIndex = (int) (bitIndex >>> LONG_ADDRESSABLE_BITS);
+      long mask = 1L << bitIndex; // only cares about low 6 bits of bitIndex
 
-    /** Number of bits */
-    long bitSize() {
-      return (long) data.length * Long.SIZE;
+      long oldValue;
+      long newValue;
+      do {
+        oldValue = data.get(longIndex);
+        newValue = oldValue | mask;
+        if (oldValue == newValue) {
+          // another thread set the bit first
+          return false;
+        }
+      } while (!data.compareAndSet(longIndex, oldValue, newValue));
+
+      bitCount.increment();
+      return true;
     }
 
-    /** Number of set bits (1s) */
-    long bitCount() {
-      return bitCount;
+    @Override
+    boolean get(long bitIndex) {
+      return (data.get((int) (bitIndex >>> LONG_ADDRESSABLE_BITS)) & (1L << bitIndex)) != 0;
     }
 
-    BitArray copy() {
-      return new BitArray(data.clone());
+    @Override
+    int wordCount() {
+      return data.length();
     }
 
-    /** Combines the two BitArrays using bitwise OR. */
-    void putAll(BitArray array) {
-      checkArgument(
-          data.length == array.data.length,
-          "BitArrays must be of equal length (%s != %s)",
-          data.length,
-          array.data.length);
-      bitCount = 0;
-      for (int i = 0; i < data.length; i++) {
-        data[i] |= array.data[i];
-        bitCount += Long.bitCount(data[i]);
-      }
+    @Override
+    long getWord(int index) {
+      return data.get(index);
     }
 
     @Override
-    public boolean equals(@Nullable Object o) {
-      if (o instanceof BitArray) {
-        BitArray bitArray = (BitArray) o;
-        return Arrays.equals(data, bitArray.data);
-      }
-      return false;
+    long bitCount() {
+      return bitCount.sum();
     }
 
     @Override
-    public int hashCode() {
-      return Arrays.hashCode(data);
+    void putAll(BitArray array) {
+      checkSameLength(array);
+      for (int i = 0; i < data.length(); i++) {
+        long otherValue = array.getWord(i);
+
+        long oldValue;
+        long newValue;
+        do {
+          oldValue = data.get(i);
+          newValue = oldValue | otherValue;
+        } while (oldValue != newValue && !data.compareAndSet(i, oldValue, newValue));
+
+        bitCount.add(Long.bitCount(newValue) - Long.bitCount(oldValue));
+      }
     }
   }
 }
@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Supplier;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.zip.Checksum;
 
 /**
@@ -58,6 +59,8 @@ final class ChecksumHashFunction extends AbstractStreamingHashFunction implement
    * Hasher that updates a checksum.
    */
   private final class ChecksumHasher extends AbstractByteHasher {
+    private static final int DIRECT_CHUNK_SIZE = 4096;
+
     private final Checksum checksum;
 
     private ChecksumHasher(Checksum checksum) {
@@ -74,6 +77,21 @@ final class ChecksumHashFunction extends AbstractStreamingHashFunction implement
       checksum.update(bytes, off, len);
     }
 
+    @Override
+    protected void update(ByteBuffer bytes) {
+      if (bytes.hasArray()) {
+        super.update(bytes);
+        return;
+      }
+      // Checksum can only read direct buffers as of Java 8, so copy them a chunk at a time
+      byte[] chunk = new byte[Math.min(bytes.remaining(), DIRECT_CHUNK_SIZE)];
+      while (bytes.hasRemaining()) {
+        int length = Math.min(bytes.remaining(), chunk.length);
+        bytes.get(chunk, 0, length);
+        checksum.update(chunk, 0, length);
+      }
+    }
+
     @Override
     public HashCode hash() {
       long value = checksum.getValue();
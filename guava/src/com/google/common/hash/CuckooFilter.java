@@ -0,0 +1,669 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.hash.BloomFilterStrategies.lowerEight;
+import static com.google.common.hash.BloomFilterStrategies.upperEight;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.math.DoubleMath;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.common.primitives.UnsignedInts;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A cuckoo filter for instances of {@code T}. Like a {@link BloomFilter}, a cuckoo filter offers an
+ * approximate containment test with one-sided error: if it claims that an element is contained in
+ * it, this might be in error, but if it claims that an element is <i>not</i> contained in it, then
+ * this is definitely true. Unlike a {@code BloomFilter}, elements can also be
+ * {@linkplain #remove removed} from a cuckoo filter.
+ *
+ * <p>A cuckoo filter stores a short fingerprint of each element in one of two buckets of a hash
+ * table, chosen by hashing the element, moving other fingerprints to their alternate bucket when
+ * both are full. See <a href="https://www.cs.cmu.edu/~dga/papers/cuckoo-conext2014.pdf">Cuckoo
+ * Filter: Practically Better Than Bloom</a> by Fan, Andersen, Kaminsky and Mitzenmacher. Each
+ * element takes about {@code log2(8 / fpp) / 0.9} bits, where {@code fpp} is the desired false
+ * positive probability: for example, 10 bits at 3%. A counting Bloom filter, the usual alternative
+ * that supports removal, takes four times the space of a {@code BloomFilter}, or 29 bits per
+ * element at 3%.
+ *
+ * <p>The filter counts multiplicities: each {@link #put} stores another copy of the element's
+ * fingerprint, and each {@link #remove} deletes one, so that an element put twice and removed once
+ * is still contained. No more than 8 copies of an element can be stored. <b>Warning:</b> only
+ * remove elements that were previously put; removing any other element may remove the fingerprint
+ * of a different element that was, causing {@link #mightContain} to return {@code false} for it.
+ *
+ * <p>A cuckoo filter has a fixed capacity: once its table is nearly full, {@link #put} fails and
+ * returns {@code false} rather than degrading the false positive probability. The filter is sized
+ * so that this does not happen before the expected number of insertions is reached.
+ *
+ * <p>Cuckoo filters are serializable. They also support a more compact serial representation via
+ * the {@link #writeTo} and {@link #readFrom} methods.
+ *
+ * <p>This class is not thread-safe: concurrent calls to {@link #put}, {@link #remove} or
+ * {@link #putAll}, or such calls concurrent with any other method, must be synchronized
+ * externally.
+ *
+ * @param <T> the type of instances that the {@code CuckooFilter} accepts
+ * @since 20.0
+ */
+@Beta
+public final class CuckooFilter<T> implements Predicate<T>, Serializable {
+  /** The number of fingerprints stored in each bucket. */
+  @VisibleForTesting static final int BUCKET_SIZE = 4;
+
+  /** The fraction of the table that may be filled by the expected number of insertions. */
+  @VisibleForTesting static final double LOAD_FACTOR = 0.9;
+
+  /** The largest fingerprint size, in bits. */
+  @VisibleForTesting static final int MAX_FINGERPRINT_BITS = 32;
+
+  /** The number of fingerprints moved to their alternate bucket before an insertion gives up. */
+  private static final int MAX_KICKS = 500;
+
+  /** The fingerprints, each of {@code fingerprintBits}, packed in buckets of BUCKET_SIZE. */
+  private final long[] data;
+
+  private final long numBuckets;
+
+  /** The size of fingerprints in bits. The fingerprint 0 marks an empty slot. */
+  private final int fingerprintBits;
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<? super T> funnel;
+
+  /**
+   * The fingerprint that could not be placed when the last insertion gave up, or 0 if none. While
+   * there is such a victim, the filter is full.
+   */
+  private long victimFingerprint;
+
+  /** The bucket of the victim, one of the two buckets of its element. */
+  private long victimIndex;
+
+  /** The number of fingerprints stored, including the victim. */
+  private long count;
+
+  /** The state of the generator choosing which fingerprint to move. */
+  private int kickState = 0x9E3779B9;
+
+  private CuckooFilter(
+      long[] data,
+      long numBuckets,
+      int fingerprintBits,
+      Funnel<? super T> funnel,
+      long victimFingerprint,
+      long victimIndex) {
+    checkArgument(
+        fingerprintBits > 0 && fingerprintBits <= MAX_FINGERPRINT_BITS,
+        "fingerprintBits (%s) must be between 1 and %s",
+        fingerprintBits,
+        MAX_FINGERPRINT_BITS);
+    checkArgument(
+        numBuckets > 0 && numBuckets <= maxNumBuckets(fingerprintBits),
+        "numBuckets (%s) must be > 0 and <= %s",
+        numBuckets,
+        maxNumBuckets(fingerprintBits));
+    checkArgument(
+        data.length == numWords(numBuckets, fingerprintBits),
+        "data length (%s) does not match %s buckets of %s-bit fingerprints",
+        data.length,
+        numBuckets,
+        fingerprintBits);
+    checkArgument(
+        victimFingerprint >= 0 && victimFingerprint >>> fingerprintBits == 0,
+        "victimFingerprint (%s) must fit in %s bits",
+        victimFingerprint,
+        fingerprintBits);
+    checkArgument(
+        victimIndex >= 0 && victimIndex < numBuckets,
+        "victimIndex (%s) must be less than numBuckets (%s)",
+        victimIndex,
+        numBuckets);
+    this.data = data;
+    this.numBuckets = numBuckets;
+    this.fingerprintBits = fingerprintBits;
+    this.funnel = checkNotNull(funnel);
+    this.victimFingerprint = victimFingerprint;
+    this.victimIndex = victimIndex;
+    long count = (victimFingerprint == 0) ? 0 : 1;
+    for (long slot = 0; slot < numBuckets * BUCKET_SIZE; slot++) {
+      if (getSlot(slot) != 0) {
+        count++;
+      }
+    }
+    this.count = count;
+  }
+
+  /**
+   * Creates a new {@code CuckooFilter} that's a copy of this instance. The new instance is equal to
+   * this instance but shares no mutable state.
+   */
+  public CuckooFilter<T> copy() {
+    return new CuckooFilter<T>(
+        data.clone(), numBuckets, fingerprintBits, funnel, victimFingerprint, victimIndex);
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this cuckoo filter, and not
+   * removed since, {@code false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(T object) {
+    byte[] bytes = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+    long fingerprint = fingerprint(bytes);
+    long index1 = index(bytes);
+    long index2 = alternateIndex(index1, fingerprint);
+    return bucketContains(index1, fingerprint)
+        || bucketContains(index2, fingerprint)
+        || (fingerprint == victimFingerprint && (index1 == victimIndex || index2 == victimIndex));
+  }
+
+  /**
+   * @deprecated Provided only to satisfy the {@link Predicate} interface; use {@link #mightContain}
+   *     instead.
+   */
+  @Deprecated
+  @Override
+  public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code CuckooFilter}. If this returns {@code true}, subsequent
+   * invocations of {@link #mightContain(Object)} with the same element will return {@code true}
+   * until it is {@linkplain #remove removed}.
+   *
+   * @return true if the element was added; false if the filter is full, in which case the filter is
+   *     unchanged
+   */
+  @CanIgnoreReturnValue
+  public boolean put(T object) {
+    byte[] bytes = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+    return insert(fingerprint(bytes), index(bytes));
+  }
+
+  /**
+   * Removes one occurrence of an element from this {@code CuckooFilter}. The element must have been
+   * {@linkplain #put put} in the filter, and not removed since, at least as many times as it is
+   * removed: removing any other element may instead remove an element that shares its fingerprint,
+   * so that the filter no longer contains it.
+   *
+   * @return true if a fingerprint of the element was found and removed
+   */
+  @CanIgnoreReturnValue
+  public boolean remove(T object) {
+    byte[] bytes = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+    long fingerprint = fingerprint(bytes);
+    long index1 = index(bytes);
+    long index2 = alternateIndex(index1, fingerprint);
+    if (removeFromBucket(index1, fingerprint) || removeFromBucket(index2, fingerprint)) {
+      count--;
+      if (victimFingerprint != 0) {
+        // there is room for the victim now
+        long fingerprintToInsert = victimFingerprint;
+        victimFingerprint = 0;
+        count--;
+        insert(fingerprintToInsert, victimIndex);
+      }
+      return true;
+    }
+    if (fingerprint == victimFingerprint && (index1 == victimIndex || index2 == victimIndex)) {
+      victimFingerprint = 0;
+      count--;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of elements in this filter: the number of successful puts, less the number
+   * of successful removes.
+   */
+  public long approximateElementCount() {
+    return count;
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that has not actually been put in the {@code CuckooFilter}, given
+   * the number of elements it currently contains.
+   */
+  public double expectedFpp() {
+    // an absent element's fingerprint is compared with those in its two buckets
+    double fingerprintsCompared = 2.0 * count / numBuckets;
+    return 1.0 - Math.pow(1.0 - 1.0 / maxFingerprint(), fingerprintsCompared);
+  }
+
+  /** Returns the number of bits in the underlying table. */
+  @VisibleForTesting
+  long bitSize() {
+    return numBuckets * BUCKET_SIZE * fingerprintBits;
+  }
+
+  @VisibleForTesting
+  int fingerprintBits() {
+    return fingerprintBits;
+  }
+
+  /**
+   * Determines whether a given cuckoo filter is compatible with this cuckoo filter. For two cuckoo
+   * filters to be compatible, they must:
+   *
+   * <ul>
+   * <li>not be the same instance
+   * <li>have the same number of buckets
+   * <li>have the same fingerprint size
+   * <li>have equal funnels
+   * <ul>
+   *
+   * @param that The cuckoo filter to check for compatibility.
+   */
+  public boolean isCompatible(CuckooFilter<T> that) {
+    checkNotNull(that);
+    return (this != that)
+        && (this.numBuckets == that.numBuckets)
+        && (this.fingerprintBits == that.fingerprintBits)
+        && (this.funnel.equals(that.funnel));
+  }
+
+  /**
+   * Puts all the elements of another cuckoo filter into this one, as if each element put and not
+   * removed from {@code that} had been put in this filter. The mutations happen to <b>this</b>
+   * instance. Callers must ensure the cuckoo filters are appropriately sized, since a cuckoo filter
+   * can only hold a limited number of elements.
+   *
+   * @param that The cuckoo filter to combine this cuckoo filter with. It is not mutated.
+   * @return true if all the elements of {@code that} were added; false if this filter became full,
+   *     in which case only some of them were added
+   * @throws IllegalArgumentException if {@code isCompatible(that) == false}
+   */
+  @CanIgnoreReturnValue
+  public boolean putAll(CuckooFilter<T> that) {
+    checkNotNull(that);
+    checkArgument(this != that, "Cannot combine a CuckooFilter with itself.");
+    checkArgument(
+        this.numBuckets == that.numBuckets,
+        "CuckooFilters must have the same number of buckets (%s != %s)",
+        this.numBuckets,
+        that.numBuckets);
+    checkArgument(
+        this.fingerprintBits == that.fingerprintBits,
+        "CuckooFilters must have the same fingerprint size (%s != %s)",
+        this.fingerprintBits,
+        that.fingerprintBits);
+    checkArgument(
+        this.funnel.equals(that.funnel),
+        "CuckooFilters must have equal funnels (%s != %s)",
+        this.funnel,
+        that.funnel);
+    // a fingerprint may be inserted in either of its buckets, and the filters share bucket indexes
+    for (long slot = 0; slot < numBuckets * BUCKET_SIZE; slot++) {
+      long fingerprint = that.getSlot(slot);
+      if (fingerprint != 0 && !insert(fingerprint, slot / BUCKET_SIZE)) {
+        return false;
+      }
+    }
+    return that.victimFingerprint == 0 || insert(that.victimFingerprint, that.victimIndex);
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof CuckooFilter) {
+      CuckooFilter<?> that = (CuckooFilter<?>) object;
+      return this.numBuckets == that.numBuckets
+          && this.fingerprintBits == that.fingerprintBits
+          && this.victimFingerprint == that.victimFingerprint
+          && (this.victimFingerprint == 0 || this.victimIndex == that.victimIndex)
+          && this.funnel.equals(that.funnel)
+          && Arrays.equals(this.data, that.data);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(numBuckets, fingerprintBits, funnel, Arrays.hashCode(data));
+  }
+
+  /**
+   * Creates a {@link CuckooFilter CuckooFilter<T>} with the expected number of insertions and
+   * expected false positive probability.
+   *
+   * <p>The filter can usually hold somewhat more elements than {@code expectedInsertions} before
+   * it is full, at which point {@link #put} returns {@code false}. Its false positive probability
+   * stays below {@code fpp} however many elements it holds.
+   *
+   * <p>The constructed {@code CuckooFilter<T>} will be serializable if the provided
+   * {@code Funnel<T>} is.
+   *
+   * <p>It is recommended that the funnel be implemented as a Java enum. This has the benefit of
+   * ensuring proper serialization and deserialization, which is important since {@link #equals}
+   * also relies on object identity of funnels.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CuckooFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code CuckooFilter<T>}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code CuckooFilter}
+   * @throws IllegalArgumentException if {@code fpp} is too small to be reached with fingerprints of
+   *     {@value #MAX_FINGERPRINT_BITS} bits, or the filter would be too large
+   */
+  public static <T> CuckooFilter<T> create(
+      Funnel<? super T> funnel, long expectedInsertions, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(
+        expectedInsertions >= 0, "Expected insertions (%s) must be >= 0", expectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+
+    if (expectedInsertions == 0) {
+      expectedInsertions = 1;
+    }
+    int fingerprintBits = optimalFingerprintBits(fpp);
+    checkArgument(
+        fingerprintBits <= MAX_FINGERPRINT_BITS,
+        "False positive probability (%s) is too small",
+        fpp);
+    long numBuckets = optimalNumOfBuckets(expectedInsertions);
+    checkArgument(
+        numBuckets <= maxNumBuckets(fingerprintBits),
+        "Expected insertions (%s) are too many",
+        expectedInsertions);
+    return new CuckooFilter<T>(
+        new long[(int) numWords(numBuckets, fingerprintBits)],
+        numBuckets,
+        fingerprintBits,
+        funnel,
+        0,
+        0);
+  }
+
+  /**
+   * Creates a {@link CuckooFilter CuckooFilter<T>} with the expected number of insertions and a
+   * default expected false positive probability of 3%.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CuckooFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code CuckooFilter<T>}; must be positive
+   * @return a {@code CuckooFilter}
+   */
+  public static <T> CuckooFilter<T> create(Funnel<? super T> funnel, long expectedInsertions) {
+    return create(funnel, expectedInsertions, 0.03); // FYI, for 3%, we always get 9 bits
+  }
+
+  /**
+   * Computes the number of bits of the fingerprints needed to reach the false positive probability
+   * {@code p} when the table is full, in which case an absent element is compared with
+   * {@code 2 * BUCKET_SIZE} fingerprints, each equal to its own with probability
+   * {@code 1 / (2^bits - 1)}.
+   */
+  @VisibleForTesting
+  static int optimalFingerprintBits(double p) {
+    return DoubleMath.log2(2 * BUCKET_SIZE / p + 1, RoundingMode.CEILING);
+  }
+
+  /** Computes the number of buckets needed to hold {@code n} elements at the LOAD_FACTOR. */
+  @VisibleForTesting
+  static long optimalNumOfBuckets(long n) {
+    return Math.max(1, (long) Math.ceil(n / (BUCKET_SIZE * LOAD_FACTOR)));
+  }
+
+  /** Returns the number of buckets whose fingerprints fill an array of Integer.MAX_VALUE longs. */
+  private static long maxNumBuckets(int fingerprintBits) {
+    return (long) Integer.MAX_VALUE * Long.SIZE / (BUCKET_SIZE * fingerprintBits);
+  }
+
+  private static long numWords(long numBuckets, int fingerprintBits) {
+    return LongMath.divide(
+        numBuckets * BUCKET_SIZE * fingerprintBits, Long.SIZE, RoundingMode.CEILING);
+  }
+
+  private long maxFingerprint() {
+    return (1L << fingerprintBits) - 1;
+  }
+
+  /** Returns the fingerprint of a hash, between 1 and maxFingerprint(). */
+  private long fingerprint(byte[] hashBytes) {
+    return ((upperEight(hashBytes) & Long.MAX_VALUE) % maxFingerprint()) + 1;
+  }
+
+  /** Returns the primary bucket of a hash. */
+  private long index(byte[] hashBytes) {
+    return (lowerEight(hashBytes) & Long.MAX_VALUE) % numBuckets;
+  }
+
+  /**
+   * Returns the other bucket of a fingerprint in bucket {@code index}. This depends only on the
+   * fingerprint and the bucket, not on the element, so that fingerprints can be moved between
+   * their buckets; and it is an involution, so that each bucket is the alternate of the other.
+   */
+  private long alternateIndex(long index, long fingerprint) {
+    long fingerprintHash = ((fingerprint * 0x9E3779B97F4A7C15L) >>> 1) % numBuckets;
+    long alternateIndex = fingerprintHash - index;
+    return (alternateIndex < 0) ? alternateIndex + numBuckets : alternateIndex;
+  }
+
+  /** Stores {@code fingerprint} in its bucket {@code index}, or the alternate bucket. */
+  private boolean insert(long fingerprint, long index) {
+    if (victimFingerprint != 0) {
+      return false;
+    }
+    if (insertIntoBucket(index, fingerprint)
+        || insertIntoBucket(alternateIndex(index, fingerprint), fingerprint)) {
+      count++;
+      return true;
+    }
+    // make room by moving a random fingerprint to its alternate bucket, and so on
+    for (int kick = 0; kick < MAX_KICKS; kick++) {
+      long slot = index * BUCKET_SIZE + (nextKick() & (BUCKET_SIZE - 1));
+      long evicted = getSlot(slot);
+      setSlot(slot, fingerprint);
+      fingerprint = evicted;
+      index = alternateIndex(index, fingerprint);
+      if (insertIntoBucket(index, fingerprint)) {
+        count++;
+        return true;
+      }
+    }
+    // the element was inserted, but at the expense of the last fingerprint moved
+    victimFingerprint = fingerprint;
+    victimIndex = index;
+    count++;
+    return true;
+  }
+
+  private int nextKick() {
+    // xorshift
+    int x = kickState;
+    x ^= x << 13;
+    x ^= x >>> 17;
+    x ^= x << 5;
+    kickState = x;
+    return x;
+  }
+
+  private boolean bucketContains(long index, long fingerprint) {
+    for (long slot = index * BUCKET_SIZE; slot < (index + 1) * BUCKET_SIZE; slot++) {
+      if (getSlot(slot) == fingerprint) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean insertIntoBucket(long index, long fingerprint) {
+    return replaceInBucket(index, 0, fingerprint);
+  }
+
+  private boolean removeFromBucket(long index, long fingerprint) {
+    return replaceInBucket(index, fingerprint, 0);
+  }
+
+  private boolean replaceInBucket(long index, long oldFingerprint, long newFingerprint) {
+    for (long slot = index * BUCKET_SIZE; slot < (index + 1) * BUCKET_SIZE; slot++) {
+      if (getSlot(slot) == oldFingerprint) {
+        setSlot(slot, newFingerprint);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long getSlot(long slot) {
+    long bitIndex = slot * fingerprintBits;
+    int word = (int) (bitIndex >>> 6);
+    int shift = (int) (bitIndex & (Long.SIZE - 1));
+    long value = data[word] >>> shift;
+    if (shift + fingerprintBits > Long.SIZE) {
+      value |= data[word + 1] << (Long.SIZE - shift);
+    }
+    return value & maxFingerprint();
+  }
+
+  private void setSlot(long slot, long fingerprint) {
+    long bitIndex = slot * fingerprintBits;
+    int word = (int) (bitIndex >>> 6);
+    int shift = (int) (bitIndex & (Long.SIZE - 1));
+    long mask = maxFingerprint();
+    data[word] = (data[word] & ~(mask << shift)) | (fingerprint << shift);
+    if (shift + fingerprintBits > Long.SIZE) {
+      // the fingerprint continues in the low bits of the next word
+      int written = Long.SIZE - shift;
+      data[word + 1] = (data[word + 1] & ~(mask >>> written)) | (fingerprint >>> written);
+    }
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(this);
+  }
+
+  private static class SerialForm<T> implements Serializable {
+    final long[] data;
+    final long numBuckets;
+    final int fingerprintBits;
+    final Funnel<? super T> funnel;
+    final long victimFingerprint;
+    final long victimIndex;
+
+    SerialForm(CuckooFilter<T> cf) {
+      this.data = cf.data;
+      this.numBuckets = cf.numBuckets;
+      this.fingerprintBits = cf.fingerprintBits;
+      this.funnel = cf.funnel;
+      this.victimFingerprint = cf.victimFingerprint;
+      this.victimIndex = cf.victimIndex;
+    }
+
+    Object readResolve() {
+      return new CuckooFilter<T>(
+          data, numBuckets, fingerprintBits, funnel, victimFingerprint, victimIndex);
+    }
+
+    private static final long serialVersionUID = 1;
+  }
+
+  /**
+   * Writes this {@code CuckooFilter} to an output stream, with a custom format (not Java
+   * serialization).
+   *
+   * <p>Use {@linkplain #readFrom(InputStream, Funnel)} to reconstruct the written CuckooFilter.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    // Serial form:
+    // 1 unsigned byte for the number of bits of the fingerprints
+    // 1 big endian long, the number of buckets
+    // 1 big endian unsigned int, the victim fingerprint, or 0 if none
+    // 1 big endian long, the bucket of the victim
+    // 1 big endian int, the number of longs in our table
+    // N big endian longs of our table
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeByte(UnsignedBytes.checkedCast(fingerprintBits));
+    dout.writeLong(numBuckets);
+    dout.writeInt((int) victimFingerprint);
+    dout.writeLong(victimIndex);
+    dout.writeInt(data.length);
+    for (long word : data) {
+      dout.writeLong(word);
+    }
+  }
+
+  /**
+   * Reads a byte stream, which was written by {@linkplain #writeTo(OutputStream)}, into a
+   * {@code CuckooFilter<T>}.
+   *
+   * The {@code Funnel} to be used is not encoded in the stream, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to populate
+   * the original cuckoo filter!
+   *
+   * @throws IOException if the InputStream throws an {@code IOException}, or if its data does not
+   *     appear to be a CuckooFilter serialized using the {@linkplain #writeTo(OutputStream)}
+   *     method.
+   */
+  public static <T> CuckooFilter<T> readFrom(InputStream in, Funnel<T> funnel)
+      throws IOException {
+    checkNotNull(in, "InputStream");
+    checkNotNull(funnel, "Funnel");
+    int fingerprintBits = -1;
+    long numBuckets = -1;
+    int dataLength = -1;
+    try {
+      DataInputStream din = new DataInputStream(in);
+      fingerprintBits = UnsignedBytes.toInt(din.readByte());
+      numBuckets = din.readLong();
+      long victimFingerprint = UnsignedInts.toLong(din.readInt());
+      long victimIndex = din.readLong();
+      dataLength = din.readInt();
+
+      long[] data = new long[dataLength];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = din.readLong();
+      }
+      return new CuckooFilter<T>(
+          data, numBuckets, fingerprintBits, funnel, victimFingerprint, victimIndex);
+    } catch (RuntimeException e) {
+      IOException ioException =
+          new IOException(
+              "Unable to deserialize CuckooFilter from InputStream."
+                  + " fingerprintBits: "
+                  + fingerprintBits
+                  + " numBuckets: "
+                  + numBuckets
+                  + " dataLength: "
+                  + dataLength);
+      ioException.initCause(e);
+      throw ioException;
+    }
+  }
+}
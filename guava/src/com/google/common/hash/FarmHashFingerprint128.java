@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.hash.FarmHashFingerprint64.K0;
+import static com.google.common.hash.FarmHashFingerprint64.K1;
+import static com.google.common.hash.FarmHashFingerprint64.hashLength0to16;
+import static com.google.common.hash.FarmHashFingerprint64.shiftMix;
+import static com.google.common.hash.LittleEndianByteArray.load64;
+import static java.lang.Long.rotateRight;
+
+/**
+ * Implementation of FarmHash Fingerprint128, which is CityHash128 from CityHash 1.1. The hash code
+ * holds the low 64 bits of the C++ {@code uint128_t} result followed by the high 64 bits, each in
+ * little-endian order, so that {@link HashCode#asLong()} is the low half.
+ *
+ * <p>The same notes to maintainers as in {@link FarmHashFingerprint64} apply.
+ *
+ * @author Geoff Pike
+ * @author Jyrki Alakuijala
+ */
+final class FarmHashFingerprint128 extends AbstractNonStreamingHashFunction {
+
+  // Multiplier of Hash128to64, the two-argument HashLen16 of the C++ implementation.
+  private static final long K_MUL = 0x9ddfea08eb382d69L;
+
+  @Override
+  public HashCode hashBytes(byte[] input, int off, int len) {
+    checkPositionIndexes(off, off + len, input.length);
+    long[] result = new long[2];
+    fingerprint(input, off, len, result);
+    byte[] bytes = new byte[16];
+    LittleEndianByteArray.store64(bytes, 0, result[0]);
+    LittleEndianByteArray.store64(bytes, 8, result[1]);
+    return HashCode.fromBytesNoCopy(bytes);
+  }
+
+  @Override
+  public int bits() {
+    return 128;
+  }
+
+  @Override
+  public String toString() {
+    return "Hashing.farmHashFingerprint128()";
+  }
+
+  // End of public functions.
+
+  /** Stores the low half of the fingerprint in {@code result[0]} and the high half in [1]. */
+  private static void fingerprint(byte[] bytes, int offset, int length, long[] result) {
+    if (length >= 16) {
+      hashWithSeed(
+          bytes, offset + 16, length - 16, load64(bytes, offset), load64(bytes, offset + 8) + K0,
+          result);
+    } else {
+      hashWithSeed(bytes, offset, length, K0, K1, result);
+    }
+  }
+
+  private static long hashLength16(long u, long v) {
+    return FarmHashFingerprint64.hashLength16(u, v, K_MUL);
+  }
+
+  /** Copy of the method of the same name in {@link FarmHashFingerprint64}. */
+  private static void weakHashLength32WithSeeds(
+      byte[] bytes, int offset, long seedA, long seedB, long[] output) {
+    long part1 = load64(bytes, offset);
+    long part2 = load64(bytes, offset + 8);
+    long part3 = load64(bytes, offset + 16);
+    long part4 = load64(bytes, offset + 24);
+
+    seedA += part1;
+    seedB = rotateRight(seedB + seedA + part4, 21);
+    long c = seedA;
+    seedA += part2;
+    seedA += part3;
+    seedB += rotateRight(seedA, 44);
+    output[0] = seedA + part4;
+    output[1] = seedB + c;
+  }
+
+  private static void hashWithSeed(
+      byte[] bytes, int offset, int length, long seedLow, long seedHigh, long[] result) {
+    if (length < 128) {
+      cityMurmur(bytes, offset, length, seedLow, seedHigh, result);
+      return;
+    }
+
+    // We expect length >= 128 to be the common case. Keep 56 bytes of state: v, w, x, y, and z.
+    long x = seedLow;
+    long y = seedHigh;
+    long z = length * K1;
+    long[] v = new long[2];
+    long[] w = new long[2];
+    v[0] = rotateRight(y ^ K1, 49) * K1 + load64(bytes, offset);
+    v[1] = rotateRight(v[0], 42) * K1 + load64(bytes, offset + 8);
+    w[0] = rotateRight(y + z, 35) * K1 + x;
+    w[1] = rotateRight(x + load64(bytes, offset + 88), 53) * K1;
+
+    // Same inner loop as hashLength65Plus in FarmHashFingerprint64, two 64-byte blocks at a time.
+    do {
+      for (int block = 0; block < 2; block++) {
+        x = rotateRight(x + y + v[0] + load64(bytes, offset + 8), 37) * K1;
+        y = rotateRight(y + v[1] + load64(bytes, offset + 48), 42) * K1;
+        x ^= w[1];
+        y += v[0] + load64(bytes, offset + 40);
+        z = rotateRight(z + w[0], 33) * K1;
+        weakHashLength32WithSeeds(bytes, offset, v[1] * K1, x + w[0], v);
+        weakHashLength32WithSeeds(bytes, offset + 32, z + w[1], y + load64(bytes, offset + 16), w);
+        long tmp = x;
+        x = z;
+        z = tmp;
+        offset += 64;
+      }
+      length -= 128;
+    } while (length >= 128);
+    x += rotateRight(v[0] + z, 49) * K0;
+    y = y * K0 + rotateRight(w[1], 37);
+    z = z * K0 + rotateRight(w[0], 27);
+    w[0] *= 9;
+    v[0] *= K0;
+
+    // If 0 < length < 128, hash up to 4 chunks of 32 bytes each from the end of the input.
+    for (int tailDone = 0; tailDone < length; ) {
+      tailDone += 32;
+      y = rotateRight(x + y, 42) * K0 + v[1];
+      w[0] += load64(bytes, offset + length - tailDone + 16);
+      x = x * K0 + w[0];
+      z += w[1] + load64(bytes, offset + length - tailDone);
+      w[1] += v[0];
+      weakHashLength32WithSeeds(bytes, offset + length - tailDone, v[0] + z, v[1], v);
+      v[0] *= K0;
+    }
+
+    // At this point our 56 bytes of state should contain more than enough information for a
+    // strong 128-bit hash. We use two different 56-byte-to-8-byte hashes to get a 16-byte result.
+    x = hashLength16(x, v[0]);
+    y = hashLength16(y + z, w[0]);
+    result[0] = hashLength16(x + v[1], w[1]) + y;
+    result[1] = hashLength16(x + w[1], y + v[1]);
+  }
+
+  /** Computes the 128-bit hash of fewer than 128 bytes. Based on City and Murmur. */
+  private static void cityMurmur(
+      byte[] bytes, int offset, int length, long seedLow, long seedHigh, long[] result) {
+    long a = seedLow;
+    long b = seedHigh;
+    long c;
+    long d;
+    if (length <= 16) {
+      a = shiftMix(a * K1) * K1;
+      c = b * K1 + hashLength0to16(bytes, offset, length);
+      d = shiftMix(a + (length >= 8 ? load64(bytes, offset) : c));
+    } else {
+      c = hashLength16(load64(bytes, offset + length - 8) + K1, a);
+      d = hashLength16(b + length, c + load64(bytes, offset + length - 16));
+      a += d;
+      int remaining = length - 16;
+      do {
+        a ^= shiftMix(load64(bytes, offset) * K1) * K1;
+        a *= K1;
+        b ^= a;
+        c ^= shiftMix(load64(bytes, offset + 8) * K1) * K1;
+        c *= K1;
+        d ^= c;
+        offset += 16;
+        remaining -= 16;
+      } while (remaining > 0);
+    }
+    a = hashLength16(a, c);
+    b = hashLength16(d, b);
+    result[0] = a ^ b;
+    result[1] = hashLength16(b, a);
+  }
+}
@@ -21,6 +21,8 @@ import static java.lang.Long.rotateRight;
 
 import com.google.common.annotations.VisibleForTesting;
 
+import java.nio.ByteBuffer;
+
 /**
  * Implementation of FarmHash Fingerprint64, an open-source fingerprinting algorithm for strings.
  *
@@ -41,9 +43,9 @@ import com.google.common.annotations.VisibleForTesting;
 final class FarmHashFingerprint64 extends AbstractNonStreamingHashFunction {
 
   // Some primes between 2^63 and 2^64 for various uses.
-  private static final long K0 = 0xc3a5c85c97cb3127L;
-  private static final long K1 = 0xb492b66fbe98f273L;
-  private static final long K2 = 0x9ae16a3b2f90404fL;
+  static final long K0 = 0xc3a5c85c97cb3127L;
+  static final long K1 = 0xb492b66fbe98f273L;
+  static final long K2 = 0x9ae16a3b2f90404fL;
 
   @Override
   public HashCode hashBytes(byte[] input, int off, int len) {
@@ -51,6 +53,30 @@ final class FarmHashFingerprint64 extends AbstractNonStreamingHashFunction {
     return HashCode.fromLong(fingerprint(input, off, len));
   }
 
+  /**
+   * Fingerprints a heap buffer in place. The bytes of a direct buffer are copied first, since this
+   * implementation reads its input through {@link LittleEndianByteArray}.
+   */
+  @Override
+  public HashCode hashBytes(ByteBuffer input) {
+    long fingerprint;
+    if (input.hasArray()) {
+      int offset = input.arrayOffset() + input.position();
+      fingerprint = fingerprint(input.array(), offset, input.remaining());
+      input.position(input.limit());
+    } else {
+      byte[] bytes = new byte[input.remaining()];
+      input.get(bytes);
+      fingerprint = fingerprint(bytes, 0, bytes.length);
+    }
+    return HashCode.fromLong(fingerprint);
+  }
+
+  @Override
+  public HashCode hashLong(long input) {
+    return HashCode.fromLong(fingerprint(input));
+  }
+
   @Override
   public int bits() {
     return 64;
@@ -63,6 +89,18 @@ final class FarmHashFingerprint64 extends AbstractNonStreamingHashFunction {
 
   // End of public functions.
 
+  /**
+   * Returns the fingerprint of the eight little-endian bytes of {@code value}; this is {@link
+   * #hashLength0to16} with both loads replaced by {@code value}.
+   */
+  static long fingerprint(long value) {
+    long mul = K2 + 16;
+    long a = value + K2;
+    long c = rotateRight(value, 37) * mul + a;
+    long d = (rotateRight(a, 25) + value) * mul;
+    return hashLength16(c, d, mul);
+  }
+
   @VisibleForTesting
   static long fingerprint(byte[] bytes, int offset, int length) {
     if (length <= 32) {
@@ -78,11 +116,11 @@ final class FarmHashFingerprint64 extends AbstractNonStreamingHashFunction {
     }
   }
 
-  private static long shiftMix(long val) {
+  static long shiftMix(long val) {
     return val ^ (val >>> 47);
   }
 
-  private static long hashLength16(long u, long v, long mul) {
+  static long hashLength16(long u, long v, long mul) {
     long a = (u ^ v) * mul;
     a ^= (a >>> 47);
     long b = (v ^ a) * mul;
@@ -113,7 +151,7 @@ final class FarmHashFingerprint64 extends AbstractNonStreamingHashFunction {
     output[1] = seedB + c;
   }
 
-  private static long hashLength0to16(byte[] bytes, int offset, int length) {
+  static long hashLength0to16(byte[] bytes, int offset, int length) {
     if (length >= 8) {
       long mul = K2 + length * 2;
       long a = load64(bytes, offset) + K2;
@@ -17,6 +17,7 @@ package com.google.common.hash;
 import com.google.common.annotations.Beta;
 import com.google.common.primitives.Ints;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -173,6 +174,19 @@ public interface HashFunction {
    */
   HashCode hashBytes(byte[] input, int off, int len);
 
+  /**
+   * Shortcut for {@code newHasher().putBytes(input).hash()}. The implementation <i>might</i>
+   * perform better than its longhand equivalent, but should not perform worse. The remaining bytes
+   * of {@code input} are hashed whatever its byte order, and its position will be equal to its
+   * limit when this method returns.
+   *
+   * <p>Most implementations read {@code input} in place, so this avoids copying the contents of a
+   * direct buffer to the heap.
+   *
+   * @since 20.0
+   */
+  HashCode hashBytes(ByteBuffer input);
+
   /**
    * Shortcut for {@code newHasher().putUnencodedChars(input).hash()}. The implementation
    * <i>might</i> perform better than its longhand equivalent, but should not perform worse. Note
@@ -17,6 +17,7 @@ package com.google.common.hash;
 import com.google.common.annotations.Beta;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -62,6 +63,12 @@ public interface Hasher extends PrimitiveSink {
   @Override
   Hasher putBytes(byte[] bytes, int off, int len);
 
+  /**
+   * @since 20.0
+   */
+  @Override
+  Hasher putBytes(ByteBuffer bytes);
+
   @Override
   Hasher putShort(short s);
 
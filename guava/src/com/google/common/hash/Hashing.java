@@ -16,6 +16,7 @@ package com.google.common.hash;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Supplier;
@@ -455,6 +456,57 @@ public final class Hashing {
     static final HashFunction FARMHASH_FINGERPRINT_64 = new FarmHashFingerprint64();
   }
 
+  /**
+   * Returns a hash function implementing FarmHash's Fingerprint128, which is CityHash128 from
+   * CityHash 1.1.
+   *
+   * <p>Like {@link #farmHashFingerprint64()}, this is designed for generating persistent
+   * fingerprints and isn't cryptographically secure; use it where 64 bits would make collisions
+   * too likely. The hash code holds the low 64 bits of the C++ {@code uint128_t} result followed by
+   * the high 64 bits, each in little-endian order, so {@link HashCode#asLong()} is the low half.
+   *
+   * @since 20.0
+   */
+  public static HashFunction farmHashFingerprint128() {
+    return FarmHashFingerprint128Holder.FARMHASH_FINGERPRINT_128;
+  }
+
+  private static class FarmHashFingerprint128Holder {
+    static final HashFunction FARMHASH_FINGERPRINT_128 = new FarmHashFingerprint128();
+  }
+
+  /**
+   * Returns a hash function implementing the 64-bit <a href="http://cyan4973.github.io/xxHash/">
+   * xxHash algorithm</a> (XXH64), using the given seed value. {@link HashCode#asLong()} of its hash
+   * codes equals the result of the reference {@code XXH64} function.
+   *
+   * <p>This is faster than {@link #murmur3_128()} on long inputs, and is well suited to checksums
+   * of large files. It is not cryptographically secure.
+   *
+   * @since 20.0
+   */
+  public static HashFunction xxHash64(long seed) {
+    return new XxHash64HashFunction(seed);
+  }
+
+  /**
+   * Returns a hash function implementing the 64-bit <a href="http://cyan4973.github.io/xxHash/">
+   * xxHash algorithm</a> (XXH64), using a seed value of zero. {@link HashCode#asLong()} of its hash
+   * codes equals the result of the reference {@code XXH64} function.
+   *
+   * <p>This is faster than {@link #murmur3_128()} on long inputs, and is well suited to checksums
+   * of large files. It is not cryptographically secure.
+   *
+   * @since 20.0
+   */
+  public static HashFunction xxHash64() {
+    return XxHash64Holder.XXHASH_64;
+  }
+
+  private static class XxHash64Holder {
+    static final HashFunction XXHASH_64 = new XxHash64HashFunction(0);
+  }
+
   /**
    * Assigns to {@code hashCode} a "bucket" in the range {@code [0, buckets)}, in a uniform manner
    * that minimizes the need for remapping as {@code buckets} grows. That is, {@code
@@ -587,6 +639,176 @@ public final class Hashing {
     return HashCode.fromBytesNoCopy(resultBytes);
   }
 
+  /**
+   * Hashes each element of {@code input} with {@code function}, writing {@code
+   * function.hashLong(input[i]).asLong()} to {@code output[i]}.
+   *
+   * <p>For {@link #murmur3_128(int)} and {@link #farmHashFingerprint64()}, this is a specialized
+   * loop that allocates nothing, which is faster than calling {@link HashFunction#hashLong} for
+   * each element when hashing many small keys. Other functions are called once per element.
+   *
+   * @throws IllegalArgumentException if {@code function} produces fewer than 64 bits, or {@code
+   *     output} is shorter than {@code input}
+   * @since 20.0
+   */
+  @Beta
+  public static void hashLongs(HashFunction function, long[] input, long[] output) {
+    checkArgument(function.bits() >= 64, "%s produces fewer than 64 bits", function);
+    checkOutputLength(input.length, output.length);
+    if (function instanceof Murmur3_128HashFunction) {
+      int seed = ((Murmur3_128HashFunction) function).seed;
+      for (int i = 0; i < input.length; i++) {
+        output[i] = Murmur3_128HashFunction.hashLongToLong(seed, input[i]);
+      }
+    } else if (function instanceof FarmHashFingerprint64) {
+      for (int i = 0; i < input.length; i++) {
+        output[i] = FarmHashFingerprint64.fingerprint(input[i]);
+      }
+    } else {
+      for (int i = 0; i < input.length; i++) {
+        output[i] = function.hashLong(input[i]).asLong();
+      }
+    }
+  }
+
+  /**
+   * Hashes each element of {@code input} with {@code function}, writing {@code
+   * function.hashLong(input[i]).asInt()} to {@code output[i]}.
+   *
+   * <p>For {@link #murmur3_32(int)}, {@link #murmur3_128(int)} and {@link
+   * #farmHashFingerprint64()}, this is a specialized loop that allocates nothing, which is faster
+   * than calling {@link HashFunction#hashLong} for each element when hashing many small keys. Other
+   * functions are called once per element.
+   *
+   * @throws IllegalArgumentException if {@code output} is shorter than {@code input}
+   * @since 20.0
+   */
+  @Beta
+  public static void hashLongs(HashFunction function, long[] input, int[] output) {
+    checkNotNull(function);
+    checkOutputLength(input.length, output.length);
+    if (function instanceof Murmur3_32HashFunction) {
+      int seed = ((Murmur3_32HashFunction) function).seed;
+      for (int i = 0; i < input.length; i++) {
+        output[i] = Murmur3_32HashFunction.hashLongToInt(seed, input[i]);
+      }
+    } else if (function instanceof Murmur3_128HashFunction) {
+      int seed = ((Murmur3_128HashFunction) function).seed;
+      for (int i = 0; i < input.length; i++) {
+        output[i] = (int) Murmur3_128HashFunction.hashLongToLong(seed, input[i]);
+      }
+    } else if (function instanceof FarmHashFingerprint64) {
+      for (int i = 0; i < input.length; i++) {
+        output[i] = (int) FarmHashFingerprint64.fingerprint(input[i]);
+      }
+    } else {
+      for (int i = 0; i < input.length; i++) {
+        output[i] = function.hashLong(input[i]).asInt();
+      }
+    }
+  }
+
+  /**
+   * Hashes the ranges of {@code bytes} starting at each of {@code offsets} and as long as the
+   * corresponding element of {@code lengths} with {@code function}, writing {@code
+   * function.hashBytes(bytes, offsets[i], lengths[i]).asLong()} to {@code output[i]}. All ranges
+   * are checked before any is hashed.
+   *
+   * <p>For {@link #murmur3_128(int)} and {@link #farmHashFingerprint64()}, this is a specialized
+   * loop that allocates nothing, which is faster than calling {@link HashFunction#hashBytes(byte[],
+   * int, int)} for each range when hashing many small keys. Other functions are called once per
+   * range.
+   *
+   * @throws IllegalArgumentException if {@code function} produces fewer than 64 bits, {@code
+   *     offsets} and {@code lengths} have different lengths, or {@code output} is shorter than them
+   * @throws IndexOutOfBoundsException if a range does not lie within {@code bytes}
+   * @since 20.0
+   */
+  @Beta
+  public static void hashBytes(
+      HashFunction function, byte[] bytes, int[] offsets, int[] lengths, long[] output) {
+    checkArgument(function.bits() >= 64, "%s produces fewer than 64 bits", function);
+    checkRanges(bytes, offsets, lengths, output.length);
+    if (function instanceof Murmur3_128HashFunction) {
+      int seed = ((Murmur3_128HashFunction) function).seed;
+      for (int i = 0; i < offsets.length; i++) {
+        output[i] = Murmur3_128HashFunction.hashBytesToLong(seed, bytes, offsets[i], lengths[i]);
+      }
+    } else if (function instanceof FarmHashFingerprint64) {
+      for (int i = 0; i < offsets.length; i++) {
+        output[i] = FarmHashFingerprint64.fingerprint(bytes, offsets[i], lengths[i]);
+      }
+    } else {
+      for (int i = 0; i < offsets.length; i++) {
+        output[i] = function.hashBytes(bytes, offsets[i], lengths[i]).asLong();
+      }
+    }
+  }
+
+  /**
+   * Hashes the ranges of {@code bytes} starting at each of {@code offsets} and as long as the
+   * corresponding element of {@code lengths} with {@code function}, writing {@code
+   * function.hashBytes(bytes, offsets[i], lengths[i]).asInt()} to {@code output[i]}. All ranges
+   * are checked before any is hashed.
+   *
+   * <p>For {@link #murmur3_32(int)}, {@link #murmur3_128(int)} and {@link
+   * #farmHashFingerprint64()}, this is a specialized loop that allocates nothing, which is faster
+   * than calling {@link HashFunction#hashBytes(byte[], int, int)} for each range when hashing many
+   * small keys. Other functions are called once per range.
+   *
+   * @throws IllegalArgumentException if {@code offsets} and {@code lengths} have different
+   *     lengths, or {@code output} is shorter than them
+   * @throws IndexOutOfBoundsException if a range does not lie within {@code bytes}
+   * @since 20.0
+   */
+  @Beta
+  public static void hashBytes(
+      HashFunction function, byte[] bytes, int[] offsets, int[] lengths, int[] output) {
+    checkNotNull(function);
+    checkRanges(bytes, offsets, lengths, output.length);
+    if (function instanceof Murmur3_32HashFunction) {
+      int seed = ((Murmur3_32HashFunction) function).seed;
+      for (int i = 0; i < offsets.length; i++) {
+        output[i] = Murmur3_32HashFunction.hashBytesToInt(seed, bytes, offsets[i], lengths[i]);
+      }
+    } else if (function instanceof Murmur3_128HashFunction) {
+      int seed = ((Murmur3_128HashFunction) function).seed;
+      for (int i = 0; i < offsets.length; i++) {
+        output[i] =
+            (int) Murmur3_128HashFunction.hashBytesToLong(seed, bytes, offsets[i], lengths[i]);
+      }
+    } else if (function instanceof FarmHashFingerprint64) {
+      for (int i = 0; i < offsets.length; i++) {
+        output[i] = (int) FarmHashFingerprint64.fingerprint(bytes, offsets[i], lengths[i]);
+      }
+    } else {
+      for (int i = 0; i < offsets.length; i++) {
+        output[i] = function.hashBytes(bytes, offsets[i], lengths[i]).asInt();
+      }
+    }
+  }
+
+  private static void checkOutputLength(int inputLength, int outputLength) {
+    checkArgument(
+        outputLength >= inputLength,
+        "output length (%s) is less than input length (%s)",
+        outputLength,
+        inputLength);
+  }
+
+  private static void checkRanges(byte[] bytes, int[] offsets, int[] lengths, int outputLength) {
+    checkNotNull(bytes);
+    checkArgument(
+        offsets.length == lengths.length,
+        "offsets length (%s) differs from lengths length (%s)",
+        offsets.length,
+        lengths.length);
+    checkOutputLength(offsets.length, outputLength);
+    for (int i = 0; i < offsets.length; i++) {
+      checkPositionIndexes(offsets[i], offsets[i] + lengths[i], bytes.length);
+    }
+  }
+
   /**
    * Checks that the passed argument is positive, and ceils it to a multiple of 32.
    */
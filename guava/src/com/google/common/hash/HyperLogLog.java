@@ -0,0 +1,617 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct instances of {@code T} put in it,
+ * its <i>cardinality</i>, using a fixed amount of memory however many instances are put. See
+ * <a href="http://algo.inria.fr/flajolet/Publications/FlFuGaMe07.pdf">HyperLogLog</a> by
+ * Flajolet, Fusy, Gandouet and Meunier, and
+ * <a href="http://research.google.com/pubs/pub40671.html">HyperLogLog in Practice</a> by Heule,
+ * Nunkesser and Hall (HLL++), whose 64-bit hashes and sparse representation this class uses.
+ *
+ * <p>Each instance is hashed with {@link Hashing#murmur3_128()}. The first {@code precision} bits
+ * of the hash select one of {@code 2^precision} registers, which records the largest number of
+ * leading zeros seen in the remaining bits. While few instances have been put, the sketch instead
+ * keeps a sorted list of the hashes' first 25 bits and leading zeros, which takes less memory and
+ * gives nearly exact estimates; once that list would take more memory than the registers, the
+ * sketch switches to them. The cardinality is computed with the improved estimator of
+ * <a href="https://arxiv.org/abs/1702.01284">New cardinality estimation algorithms for HyperLogLog
+ * sketches</a> by Otmar Ertl, which is unbiased over the whole range of cardinalities without the
+ * empirical bias correction of HLL++.
+ *
+ * <p>The relative standard error of the {@linkplain #cardinality estimated cardinality} is about
+ * {@code 1.04 / sqrt(2^precision)}: 1.6% for a precision of 12, and 0.81% for the default
+ * precision of 14, with which the registers take 16KB. Below about {@code 2^precision / 4}
+ * distinct instances the error is much smaller.
+ *
+ * <p>Sketches of the same precision and funnel can be {@linkplain #putAll merged}, for example to
+ * count the distinct instances of several streams, each counted in its own sketch. They are
+ * serializable, and also support a more compact serial representation via the {@link #writeTo} and
+ * {@link #readFrom} methods.
+ *
+ * <p>Putting an instance allocates no memory beyond that used to hash it, except occasionally
+ * while the sketch is sparse. This class is not thread-safe: concurrent calls to {@link #put} or
+ * {@link #putAll}, or such calls concurrent with any other method, must be synchronized
+ * externally. The other methods do not modify the sketch, and may be called concurrently with
+ * each other; while the sketch is sparse, they may copy it to merge the instances put recently.
+ *
+ * @param <T> the type of instances that the {@code HyperLogLog} accepts
+ * @since 20.0
+ */
+@Beta
+public final class HyperLogLog<T> implements Serializable {
+  /** The smallest precision. */
+  public static final int MIN_PRECISION = 4;
+
+  /** The largest precision. */
+  public static final int MAX_PRECISION = 18;
+
+  /** The precision used by {@link #create(Funnel)}. */
+  public static final int DEFAULT_PRECISION = 14;
+
+  /** The number of hash bits indexing the sparse entries. */
+  @VisibleForTesting static final int SPARSE_PRECISION = 25;
+
+  /*
+   * A sparse entry is an int holding the first SPARSE_PRECISION bits of a hash, followed by
+   * RHO_BITS bits holding the number of leading zeros of the remaining bits, plus one. Sorting
+   * entries sorts them by index, then by leading zeros.
+   */
+  private static final int RHO_BITS = 6;
+
+  private final Funnel<? super T> funnel;
+  private final int precision;
+
+  /** The registers, or null while the sketch is sparse. */
+  @Nullable private byte[] registers;
+
+  /** The sparse entries, sorted by index, with one entry per index. */
+  @Nullable private int[] sparse;
+  private int sparseSize;
+
+  /** The sparse entries not yet merged into {@code sparse}, in the order they were put. */
+  @Nullable private int[] buffer;
+  private int bufferSize;
+
+  private HyperLogLog(Funnel<? super T> funnel, int precision) {
+    this.funnel = checkNotNull(funnel);
+    this.precision = precision;
+    this.sparse = new int[0];
+    this.buffer = new int[Math.max(8, registerCount() / 32)];
+  }
+
+  /**
+   * Creates a {@code HyperLogLog<T>} sketch with the given precision, which determines its
+   * memory use and accuracy: its registers take {@code 2^precision} bytes, and the relative
+   * standard error of its estimates is about {@code 1.04 / sqrt(2^precision)}.
+   *
+   * <p>The constructed sketch will be serializable if the provided {@code Funnel<T>} is.
+   *
+   * @param funnel the funnel of T's that the constructed sketch will use
+   * @param precision the number of hash bits selecting a register, between
+   *     {@value #MIN_PRECISION} and {@value #MAX_PRECISION}
+   */
+  public static <T> HyperLogLog<T> create(Funnel<? super T> funnel, int precision) {
+    checkNotNull(funnel);
+    checkArgument(
+        precision >= MIN_PRECISION && precision <= MAX_PRECISION,
+        "precision (%s) must be between %s and %s",
+        precision,
+        MIN_PRECISION,
+        MAX_PRECISION);
+    return new HyperLogLog<T>(funnel, precision);
+  }
+
+  /**
+   * Creates a {@code HyperLogLog<T>} sketch with the {@linkplain #DEFAULT_PRECISION default
+   * precision}, whose estimates have a relative standard error of about 0.81%.
+   *
+   * @param funnel the funnel of T's that the constructed sketch will use
+   */
+  public static <T> HyperLogLog<T> create(Funnel<? super T> funnel) {
+    return create(funnel, DEFAULT_PRECISION);
+  }
+
+  /** Returns the number of hash bits selecting a register. */
+  public int precision() {
+    return precision;
+  }
+
+  /**
+   * Returns the relative standard error of the estimates of this sketch once it uses its
+   * registers, {@code 1.04 / sqrt(2^precision)}.
+   */
+  public double relativeStandardError() {
+    return 1.04 / Math.sqrt(registerCount());
+  }
+
+  /**
+   * Creates a new {@code HyperLogLog} that's a copy of this instance. The new instance is equal to
+   * this instance but shares no mutable state.
+   */
+  public HyperLogLog<T> copy() {
+    HyperLogLog<T> copy = new HyperLogLog<T>(funnel, precision);
+    copy.registers = (registers == null) ? null : registers.clone();
+    copy.sparse = (sparse == null) ? null : sparse.clone();
+    copy.sparseSize = sparseSize;
+    copy.buffer = (buffer == null) ? null : buffer.clone();
+    copy.bufferSize = bufferSize;
+    return copy;
+  }
+
+  /** Puts an instance into this sketch. */
+  public void put(T object) {
+    long hash = Hashing.murmur3_128().hashObject(object, funnel).asLong();
+    if (registers != null) {
+      int index = (int) (hash >>> (Long.SIZE - precision));
+      updateRegister(index, rho(hash << precision, Long.SIZE - precision));
+    } else {
+      int rho = rho(hash << SPARSE_PRECISION, Long.SIZE - SPARSE_PRECISION);
+      addSparse((int) (hash >>> (Long.SIZE - SPARSE_PRECISION)) << RHO_BITS | rho);
+    }
+  }
+
+  /**
+   * Returns the number of leading zeros of the first {@code bits} bits of {@code value}, plus one,
+   * or {@code bits + 1} if they are all zero.
+   */
+  private static int rho(long value, int bits) {
+    return (value == 0) ? bits + 1 : Long.numberOfLeadingZeros(value) + 1;
+  }
+
+  private int registerCount() {
+    return 1 << precision;
+  }
+
+  private void updateRegister(int index, int rho) {
+    if (rho > registers[index]) {
+      registers[index] = (byte) rho;
+    }
+  }
+
+  /** Updates the register of a sparse entry. */
+  private void putEntryInRegisters(int entry) {
+    int sparseIndex = entry >>> RHO_BITS;
+    int extraBits = SPARSE_PRECISION - precision;
+    // the bits of the sparse index beyond the precision come first
+    int extraIndex = sparseIndex & ((1 << extraBits) - 1);
+    int rho =
+        (extraIndex == 0)
+            ? extraBits + (entry & ((1 << RHO_BITS) - 1))
+            : Integer.numberOfLeadingZeros(extraIndex) - (Integer.SIZE - extraBits) + 1;
+    updateRegister(sparseIndex >>> extraBits, rho);
+  }
+
+  private void addSparse(int entry) {
+    buffer[bufferSize++] = entry;
+    if (bufferSize == buffer.length) {
+      mergeBuffer();
+    }
+  }
+
+  /** Merges the buffer into the sparse entries, switching to the registers if there are many. */
+  private void mergeBuffer() {
+    if (registers != null || bufferSize == 0) {
+      return;
+    }
+    Arrays.sort(buffer, 0, bufferSize);
+    int size = sparseSize + bufferSize;
+    if (sparse.length < size) {
+      sparse = Arrays.copyOf(sparse, Math.max(size, 2 * sparse.length));
+    }
+    // merge from the end, so that the entries not yet merged are not overwritten
+    int i = sparseSize - 1;
+    int j = bufferSize - 1;
+    for (int k = size - 1; k >= 0; k--) {
+      sparse[k] = (j < 0 || (i >= 0 && sparse[i] > buffer[j])) ? sparse[i--] : buffer[j--];
+    }
+    // of the entries with the same index, keep the last, with the most leading zeros
+    int unique = 0;
+    for (int k = 0; k < size; k++) {
+      if (unique > 0 && sparse[unique - 1] >>> RHO_BITS == sparse[k] >>> RHO_BITS) {
+        unique--;
+      }
+      sparse[unique++] = sparse[k];
+    }
+    sparseSize = unique;
+    bufferSize = 0;
+    // each entry takes four bytes, and each register one
+    if (sparseSize > registerCount() / 4) {
+      toDense();
+    }
+  }
+
+  private void toDense() {
+    registers = new byte[registerCount()];
+    for (int k = 0; k < sparseSize; k++) {
+      putEntryInRegisters(sparse[k]);
+    }
+    for (int k = 0; k < bufferSize; k++) {
+      putEntryInRegisters(buffer[k]);
+    }
+    sparse = null;
+    sparseSize = 0;
+    buffer = null;
+    bufferSize = 0;
+  }
+
+  /**
+   * Returns this sketch if its buffer is empty, or else a copy with the buffer merged, so that
+   * methods which only read the sketch do not modify it.
+   */
+  private HyperLogLog<T> merged() {
+    if (registers != null || bufferSize == 0) {
+      return this;
+    }
+    HyperLogLog<T> merged = copy();
+    merged.mergeBuffer();
+    return merged;
+  }
+
+  /** Returns true if the sketch has not switched to its registers yet. */
+  @VisibleForTesting
+  boolean isSparse() {
+    return registers == null;
+  }
+
+  /**
+   * Returns an estimate of the number of distinct instances put in this sketch, and in the
+   * sketches {@linkplain #putAll merged} into it.
+   */
+  public long cardinality() {
+    if (registers == null && bufferSize > 0) {
+      return merged().cardinality();
+    }
+    int[] counts;
+    if (registers != null) {
+      // counts[k] is the number of registers holding k
+      counts = new int[Long.SIZE - precision + 2];
+      for (byte register : registers) {
+        counts[register]++;
+      }
+    } else {
+      // the sparse entries are the non-zero registers of a sketch of SPARSE_PRECISION
+      counts = new int[Long.SIZE - SPARSE_PRECISION + 2];
+      counts[0] = (1 << SPARSE_PRECISION) - sparseSize;
+      for (int k = 0; k < sparseSize; k++) {
+        counts[sparse[k] & ((1 << RHO_BITS) - 1)]++;
+      }
+    }
+    return Math.round(estimate(counts));
+  }
+
+  /**
+   * Returns the improved estimate of Ertl of the cardinality of a sketch with {@code counts[k]}
+   * registers holding {@code k}, for k between 0 and {@code q + 1}, where {@code q} is the number
+   * of hash bits not selecting a register.
+   */
+  @VisibleForTesting
+  static double estimate(int[] counts) {
+    int q = counts.length - 2;
+    double m = 0;
+    for (int count : counts) {
+      m += count;
+    }
+    double z = m * tau(1 - counts[q + 1] / m);
+    for (int k = q; k >= 1; k--) {
+      z = 0.5 * (z + counts[k]);
+    }
+    z += m * sigma(counts[0] / m);
+    return m * m / (2 * Math.log(2) * z);
+  }
+
+  private static double sigma(double x) {
+    if (x == 1) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double y = 1;
+    double z = x;
+    double previousZ;
+    do {
+      x *= x;
+      previousZ = z;
+      z += x * y;
+      y += y;
+    } while (z != previousZ);
+    return z;
+  }
+
+  private static double tau(double x) {
+    if (x == 0 || x == 1) {
+      return 0;
+    }
+    double y = 1;
+    double z = 1 - x;
+    double previousZ;
+    do {
+      x = Math.sqrt(x);
+      previousZ = z;
+      y *= 0.5;
+      z -= (1 - x) * (1 - x) * y;
+    } while (z != previousZ);
+    return z / 3;
+  }
+
+  /**
+   * Determines whether a given sketch is compatible with this sketch. For two sketches to be
+   * compatible, they must:
+   *
+   * <ul>
+   * <li>not be the same instance
+   * <li>have the same precision
+   * <li>have equal funnels
+   * <ul>
+   *
+   * @param that The sketch to check for compatibility.
+   */
+  public boolean isCompatible(HyperLogLog<T> that) {
+    checkNotNull(that);
+    return (this != that)
+        && (this.precision == that.precision)
+        && (this.funnel.equals(that.funnel));
+  }
+
+  /**
+   * Combines this sketch with another sketch, so that this sketch estimates the number of distinct
+   * instances put in either. The mutations happen to <b>this</b> instance.
+   *
+   * @param that The sketch to combine this sketch with. It is not mutated.
+   * @throws IllegalArgumentException if {@code isCompatible(that) == false}
+   */
+  public void putAll(HyperLogLog<T> that) {
+    checkNotNull(that);
+    checkArgument(this != that, "Cannot combine a HyperLogLog with itself.");
+    checkArgument(
+        this.precision == that.precision,
+        "HyperLogLogs must have the same precision (%s != %s)",
+        this.precision,
+        that.precision);
+    checkArgument(
+        this.funnel.equals(that.funnel),
+        "HyperLogLogs must have equal funnels (%s != %s)",
+        this.funnel,
+        that.funnel);
+    if (that.registers != null) {
+      if (this.registers == null) {
+        toDense();
+      }
+      for (int i = 0; i < registers.length; i++) {
+        updateRegister(i, that.registers[i]);
+      }
+    } else {
+      for (int k = 0; k < that.sparseSize; k++) {
+        putEntry(that.sparse[k]);
+      }
+      for (int k = 0; k < that.bufferSize; k++) {
+        putEntry(that.buffer[k]);
+      }
+    }
+  }
+
+  private void putEntry(int entry) {
+    if (registers != null) {
+      putEntryInRegisters(entry);
+    } else {
+      addSparse(entry);
+    }
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof HyperLogLog) {
+      HyperLogLog<?> self = this.merged();
+      HyperLogLog<?> that = ((HyperLogLog<?>) object).merged();
+      return self.precision == that.precision
+          && self.funnel.equals(that.funnel)
+          && Arrays.equals(self.registers, that.registers)
+          && self.sparseSize == that.sparseSize
+          && (self.sparse == null || rangeEquals(self.sparse, that.sparse, self.sparseSize));
+    }
+    return false;
+  }
+
+  private static boolean rangeEquals(int[] a, int[] b, int size) {
+    for (int i = 0; i < size; i++) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    HyperLogLog<T> merged = merged();
+    int sparseHash = 1;
+    for (int k = 0; k < merged.sparseSize; k++) {
+      sparseHash = 31 * sparseHash + merged.sparse[k];
+    }
+    return Objects.hashCode(precision, funnel, Arrays.hashCode(merged.registers), sparseHash);
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(this);
+  }
+
+  private static class SerialForm<T> implements Serializable {
+    final byte[] bytes;
+    final Funnel<? super T> funnel;
+
+    SerialForm(HyperLogLog<T> hll) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try {
+        hll.writeTo(out);
+      } catch (IOException impossible) {
+        throw new AssertionError(impossible);
+      }
+      this.bytes = out.toByteArray();
+      this.funnel = hll.funnel;
+    }
+
+    Object readResolve() {
+      try {
+        return read(new ByteArrayInputStream(bytes), funnel);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private static final long serialVersionUID = 1;
+  }
+
+  /**
+   * Writes this {@code HyperLogLog} to an output stream, with a custom format (not Java
+   * serialization). While the sketch is sparse, this takes about three bytes per distinct instance
+   * put; afterwards, {@code 2^precision} bytes.
+   *
+   * <p>Use {@linkplain #readFrom(InputStream, Funnel)} to reconstruct the written sketch.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    // Serial form:
+    // 1 unsigned byte for the precision
+    // 1 byte, 1 if the sketch uses its registers, 0 if it is sparse
+    // if it uses its registers: 2^precision bytes, the registers
+    // if it is sparse: 1 big endian int, the number of entries, followed by the difference of each
+    //   entry from the previous one (the first from 0), as unsigned varints
+    HyperLogLog<T> merged = merged();
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeByte(precision);
+    if (merged.registers != null) {
+      dout.writeByte(1);
+      dout.write(merged.registers);
+    } else {
+      dout.writeByte(0);
+      dout.writeInt(merged.sparseSize);
+      int previous = 0;
+      for (int k = 0; k < merged.sparseSize; k++) {
+        writeVarint(dout, merged.sparse[k] - previous);
+        previous = merged.sparse[k];
+      }
+    }
+  }
+
+  private static void writeVarint(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarint(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("varint too long");
+  }
+
+  /**
+   * Reads a byte stream, which was written by {@linkplain #writeTo(OutputStream)}, into a
+   * {@code HyperLogLog<T>}.
+   *
+   * The {@code Funnel} to be used is not encoded in the stream, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to populate
+   * the original sketch!
+   *
+   * @throws IOException if the InputStream throws an {@code IOException}, or if its data does not
+   *     appear to be a HyperLogLog serialized using the {@linkplain #writeTo(OutputStream)}
+   *     method.
+   */
+  public static <T> HyperLogLog<T> readFrom(InputStream in, Funnel<T> funnel) throws IOException {
+    checkNotNull(in, "InputStream");
+    checkNotNull(funnel, "Funnel");
+    return read(in, funnel);
+  }
+
+  private static <T> HyperLogLog<T> read(InputStream in, Funnel<? super T> funnel)
+      throws IOException {
+    int precision = -1;
+    int representation = -1;
+    try {
+      DataInputStream din = new DataInputStream(in);
+      precision = din.readUnsignedByte();
+      representation = din.readByte();
+      HyperLogLog<T> hll = create(funnel, precision);
+      if (representation == 1) {
+        byte[] registers = new byte[hll.registerCount()];
+        din.readFully(registers);
+        for (byte register : registers) {
+          checkArgument(register >= 0 && register <= Long.SIZE - precision + 1);
+        }
+        hll.toDense();
+        hll.registers = registers;
+      } else {
+        checkArgument(representation == 0, "unknown representation");
+        int size = din.readInt();
+        checkArgument(size >= 0 && size <= hll.registerCount() / 4);
+        int[] sparse = new int[size];
+        int previous = 0;
+        for (int k = 0; k < size; k++) {
+          int entry = previous + readVarint(din);
+          int rho = entry & ((1 << RHO_BITS) - 1);
+          checkArgument(
+              entry >= 0
+                  && (k == 0 || entry >>> RHO_BITS > previous >>> RHO_BITS)
+                  && rho > 0
+                  && rho <= Long.SIZE - SPARSE_PRECISION + 1,
+              "invalid sparse entry");
+          sparse[k] = entry;
+          previous = entry;
+        }
+        hll.sparse = sparse;
+        hll.sparseSize = size;
+      }
+      return hll;
+    } catch (RuntimeException e) {
+      IOException ioException =
+          new IOException(
+              "Unable to deserialize HyperLogLog from InputStream."
+                  + " precision: "
+                  + precision
+                  + " representation: "
+                  + representation);
+      ioException.initCause(e);
+      throw ioException;
+    }
+  }
+}
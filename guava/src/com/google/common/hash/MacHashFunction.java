@@ -17,6 +17,7 @@ package com.google.common.hash;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
@@ -115,6 +116,12 @@ final class MacHashFunction extends AbstractStreamingHashFunction {
       mac.update(b, off, len);
     }
 
+    @Override
+    protected void update(ByteBuffer bytes) {
+      checkNotDone();
+      mac.update(bytes);
+    }
+
     private void checkNotDone() {
       checkState(!done, "Cannot re-use a Hasher after calling hash() on it");
     }
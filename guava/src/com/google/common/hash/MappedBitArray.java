@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.BloomFilterStrategies.BitArray;
+import com.google.common.primitives.Longs;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A {@link BitArray} stored in a file as big endian longs, the format written by
+ * {@link BloomFilter#writeTo}, and mapped into memory. Nothing is read when the array is created:
+ * the operating system reads pages of the file as they are first accessed, and writes modified
+ * pages back to the file.
+ *
+ * <p>A single {@link MappedByteBuffer} cannot address more than 2GB, so the file is mapped in
+ * regions of 1GB. Bits are set by a read-modify-write of the byte containing them while holding
+ * one of {@link #LOCK_STRIPES} locks, selected by the position of the byte, so that concurrent
+ * writes are never lost. Bits are read without locking: each stripe also has a volatile counter,
+ * incremented after a bit is set and read before a bit is read, so that a bit set by one thread
+ * is seen by any thread reading it afterwards.
+ *
+ * <p>The number of set bits is counted from the file the first time it is requested, rather than
+ * when the array is created, since counting requires reading the entire file. Bits set
+ * concurrently with that first count may be miscounted.
+ */
+final class MappedBitArray extends BitArray {
+  /** The log2 of the number of bytes mapped by each region, except possibly the last. */
+  private static final int LOG2_REGION_SIZE = 30;
+
+  /** The number of locks guarding writes. MUST be a power of two. */
+  static final int LOCK_STRIPES = 256;
+
+  private final MappedByteBuffer[] regions;
+  private final int log2RegionSize;
+  private final long dataOffset;
+  private final int wordCount;
+  private final Object[] locks;
+
+  /** The number of bits set while holding each lock, written after setting them. */
+  private final AtomicIntegerArray writes = new AtomicIntegerArray(LOCK_STRIPES);
+  private final LongAddable bitsSet = LongAddables.create();
+
+  /** The number of bits set when the array was mapped, or -1 if not counted yet. */
+  private volatile long initialBitCount = -1;
+
+  /**
+   * Maps the {@code wordCount} words of {@code channel}, which must be readable and writable,
+   * starting at byte {@code dataOffset}. The mapping remains valid after the channel is closed.
+   */
+  static MappedBitArray map(FileChannel channel, long dataOffset, int wordCount)
+      throws IOException {
+    return map(channel, dataOffset, wordCount, LOG2_REGION_SIZE);
+  }
+
+  @VisibleForTesting
+  static MappedBitArray map(
+      FileChannel channel, long dataOffset, int wordCount, int log2RegionSize) throws IOException {
+    checkArgument(wordCount > 0, "data length is zero!");
+    long end = dataOffset + (long) wordCount * Longs.BYTES;
+    checkArgument(
+        channel.size() >= end,
+        "file of %s bytes is too short for %s longs",
+        channel.size(),
+        wordCount);
+    long regionSize = 1L << log2RegionSize;
+    MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((end - 1) >>> log2RegionSize) + 1];
+    for (int i = 0; i < regions.length; i++) {
+      long position = i * regionSize;
+      regions[i] = channel.map(MapMode.READ_WRITE, position, Math.min(regionSize, end - position));
+    }
+    return new MappedBitArray(regions, log2RegionSize, dataOffset, wordCount);
+  }
+
+  private MappedBitArray(
+      MappedByteBuffer[] regions, int log2RegionSize, long dataOffset, int wordCount) {
+    this.regions = regions;
+    this.log2RegionSize = log2RegionSize;
+    this.dataOffset = dataOffset;
+    this.wordCount = wordCount;
+    this.locks = new Object[LOCK_STRIPES];
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  /** Returns the offset in the file of the byte containing the bit at {@code bitIndex}. */
+  private long byteOffset(long bitIndex) {
+    long wordOffset = dataOffset + (bitIndex >>> LONG_ADDRESSABLE_BITS) * Longs.BYTES;
+    // the words are big endian, so the lowest bits are in the last byte
+    return wordOffset + (Longs.BYTES - 1) - ((bitIndex & (Long.SIZE - 1)) >>> 3);
+  }
+
+  private MappedByteBuffer region(long offset) {
+    return regions[(int) (offset >>> log2RegionSize)];
+  }
+
+  private int positionInRegion(long offset) {
+    return (int) (offset & ((1L << log2RegionSize) - 1));
+  }
+
+  @Override
+  boolean set(long bitIndex) {
+    long offset = byteOffset(bitIndex);
+    MappedByteBuffer region = region(offset);
+    int position = positionInRegion(offset);
+    int mask = 1 << (bitIndex & 7);
+    int stripe = (int) offset & (LOCK_STRIPES - 1);
+    writes.get(stripe); // see the bits set by other threads
+    if ((region.get(position) & mask) != 0) {
+      return false;
+    }
+    synchronized (locks[stripe]) {
+      byte oldValue = region.get(position);
+      if ((oldValue & mask) != 0) {
+        // another thread set the bit first
+        return false;
+      }
+      region.put(position, (byte) (oldValue | mask));
+      // publish the bit to threads reading it without the lock
+      writes.set(stripe, writes.get(stripe) + 1);
+    }
+    bitsSet.increment();
+    return true;
+  }
+
+  @Override
+  boolean get(long bitIndex) {
+    long offset = byteOffset(bitIndex);
+    writes.get((int) offset & (LOCK_STRIPES - 1)); // see the bits set by other threads
+    return (region(offset).get(positionInRegion(offset)) & (1 << (bitIndex & 7))) != 0;
+  }
+
+  @Override
+  int wordCount() {
+    return wordCount;
+  }
+
+  @Override
+  long getWord(int index) {
+    long offset = dataOffset + (long) index * Longs.BYTES;
+    MappedByteBuffer region = region(offset);
+    int position = positionInRegion(offset);
+    if (position <= (1L << log2RegionSize) - Longs.BYTES) {
+      return region.getLong(position);
+    }
+    // the word straddles two regions
+    long value = 0;
+    for (int i = 0; i < Longs.BYTES; i++) {
+      value = (value << 8) | (region(offset + i).get(positionInRegion(offset + i)) & 0xFF);
+    }
+    return value;
+  }
+
+  @Override
+  long bitCount() {
+    long initialBitCount = this.initialBitCount;
+    if (initialBitCount < 0) {
+      initialBitCount = 0;
+      for (int i = 0; i < wordCount; i++) {
+        initialBitCount += Long.bitCount(getWord(i));
+      }
+      // the bits set so far are included in the count
+      initialBitCount -= bitsSet.sum();
+      this.initialBitCount = initialBitCount;
+    }
+    return initialBitCount + bitsSet.sum();
+  }
+
+  @Override
+  void putAll(BitArray array) {
+    checkSameLength(array);
+    for (int i = 0; i < wordCount; i++) {
+      long newBits = array.getWord(i) & ~getWord(i);
+      while (newBits != 0) {
+        set(((long) i << LONG_ADDRESSABLE_BITS) + Long.numberOfTrailingZeros(newBits));
+        newBits &= newBits - 1;
+      }
+    }
+  }
+}
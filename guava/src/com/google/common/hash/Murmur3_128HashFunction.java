@@ -25,6 +25,8 @@
 
 package com.google.common.hash;
 
+import static com.google.common.hash.LittleEndianByteArray.load64;
+import static com.google.common.hash.LittleEndianByteArray.load64Safely;
 import static com.google.common.primitives.UnsignedBytes.toInt;
 
 import java.io.Serializable;
@@ -41,8 +43,11 @@ import javax.annotation.Nullable;
  * @author Dimitris Andreou
  */
 final class Murmur3_128HashFunction extends AbstractStreamingHashFunction implements Serializable {
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
   // TODO(user): when the shortcuts are implemented, update BloomFilterStrategies
-  private final int seed;
+  final int seed;
 
   Murmur3_128HashFunction(int seed) {
     this.seed = seed;
@@ -77,10 +82,79 @@ final class Murmur3_128HashFunction extends AbstractStreamingHashFunction implem
     return getClass().hashCode() ^ seed;
   }
 
+  /**
+   * Returns {@code murmur3_128(seed).hashLong(input).asLong()}, computing the second half of the
+   * hash only as far as the first half needs it.
+   */
+  static long hashLongToLong(int seed, long input) {
+    long h1 = seed ^ mixK1(input);
+    long h2 = seed;
+    return finalizeFirstHalf(h1, h2, 8);
+  }
+
+  /** Returns {@code murmur3_128(seed).hashBytes(input, off, len).asLong()}. */
+  static long hashBytesToLong(int seed, byte[] input, int off, int len) {
+    long h1 = seed;
+    long h2 = seed;
+    int i;
+    for (i = 0; i + 16 <= len; i += 16) {
+      h1 ^= mixK1(load64(input, off + i));
+
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      h2 ^= mixK2(load64(input, off + i + 8));
+
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+    int remaining = len - i;
+    if (remaining > 8) {
+      h2 ^= mixK2(load64Safely(input, off + i + 8, remaining - 8));
+    }
+    if (remaining > 0) {
+      h1 ^= mixK1(load64Safely(input, off + i, remaining));
+    }
+    return finalizeFirstHalf(h1, h2, len);
+  }
+
+  private static long finalizeFirstHalf(long h1, long h2, int length) {
+    h1 ^= length;
+    h2 ^= length;
+
+    h1 += h2;
+    h2 += h1;
+
+    return fmix64(h1) + fmix64(h2);
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
+  }
+
   private static final class Murmur3_128Hasher extends AbstractStreamingHasher {
     private static final int CHUNK_SIZE = 16;
-    private static final long C1 = 0x87c37b91114253d5L;
-    private static final long C2 = 0x4cf5ad432745937fL;
     private long h1;
     private long h2;
     private int length;
@@ -180,29 +254,6 @@ final class Murmur3_128HashFunction extends AbstractStreamingHashFunction implem
               .putLong(h2)
               .array());
     }
-
-    private static long fmix64(long k) {
-      k ^= k >>> 33;
-      k *= 0xff51afd7ed558ccdL;
-      k ^= k >>> 33;
-      k *= 0xc4ceb9fe1a85ec53L;
-      k ^= k >>> 33;
-      return k;
-    }
-
-    private static long mixK1(long k1) {
-      k1 *= C1;
-      k1 = Long.rotateLeft(k1, 31);
-      k1 *= C2;
-      return k1;
-    }
-
-    private static long mixK2(long k2) {
-      k2 *= C2;
-      k2 = Long.rotateLeft(k2, 33);
-      k2 *= C1;
-      return k2;
-    }
   }
 
   private static final long serialVersionUID = 0L;
@@ -25,6 +25,7 @@
 
 package com.google.common.hash;
 
+import static com.google.common.hash.LittleEndianByteArray.load32;
 import static com.google.common.primitives.UnsignedBytes.toInt;
 
 import com.google.common.primitives.Chars;
@@ -48,7 +49,7 @@ final class Murmur3_32HashFunction extends AbstractStreamingHashFunction impleme
   private static final int C1 = 0xcc9e2d51;
   private static final int C2 = 0x1b873593;
 
-  private final int seed;
+  final int seed;
 
   Murmur3_32HashFunction(int seed) {
     this.seed = seed;
@@ -88,11 +89,16 @@ final class Murmur3_32HashFunction extends AbstractStreamingHashFunction impleme
     int k1 = mixK1(input);
     int h1 = mixH1(seed, k1);
 
-    return fmix(h1, Ints.BYTES);
+    return HashCode.fromInt(fmix(h1, Ints.BYTES));
   }
 
   @Override
   public HashCode hashLong(long input) {
+    return HashCode.fromInt(hashLongToInt(seed, input));
+  }
+
+  /** Returns {@code murmur3_32(seed).hashLong(input).asInt()}. */
+  static int hashLongToInt(int seed, long input) {
     int low = (int) input;
     int high = (int) (input >>> 32);
 
@@ -105,6 +111,23 @@ final class Murmur3_32HashFunction extends AbstractStreamingHashFunction impleme
     return fmix(h1, Longs.BYTES);
   }
 
+  /** Returns {@code murmur3_32(seed).hashBytes(input, off, len).asInt()}. */
+  static int hashBytesToInt(int seed, byte[] input, int off, int len) {
+    int h1 = seed;
+    int i;
+    for (i = 0; i + Ints.BYTES <= len; i += Ints.BYTES) {
+      int k1 = mixK1(load32(input, off + i));
+      h1 = mixH1(h1, k1);
+    }
+
+    int k1 = 0;
+    for (int shift = 0; i < len; i++, shift += 8) {
+      k1 ^= toInt(input[off + i]) << shift;
+    }
+    h1 ^= mixK1(k1);
+    return fmix(h1, len);
+  }
+
   // TODO(kak): Maybe implement #hashBytes instead?
   @Override
   public HashCode hashUnencodedChars(CharSequence input) {
@@ -124,7 +147,7 @@ final class Murmur3_32HashFunction extends AbstractStreamingHashFunction impleme
       h1 ^= k1;
     }
 
-    return fmix(h1, Chars.BYTES * input.length());
+    return HashCode.fromInt(fmix(h1, Chars.BYTES * input.length()));
   }
 
   private static int mixK1(int k1) {
@@ -142,14 +165,14 @@ final class Murmur3_32HashFunction extends AbstractStreamingHashFunction impleme
   }
 
   // Finalization mix - force all bits of a hash block to avalanche
-  private static HashCode fmix(int h1, int length) {
+  private static int fmix(int h1, int length) {
     h1 ^= length;
     h1 ^= h1 >>> 16;
     h1 *= 0x85ebca6b;
     h1 ^= h1 >>> 13;
     h1 *= 0xc2b2ae35;
     h1 ^= h1 >>> 16;
-    return HashCode.fromInt(h1);
+    return h1;
   }
 
   private static final class Murmur3_32Hasher extends AbstractStreamingHasher {
@@ -182,7 +205,7 @@ final class Murmur3_32HashFunction extends AbstractStreamingHashFunction impleme
 
     @Override
     public HashCode makeHash() {
-      return Murmur3_32HashFunction.fmix(h1, length);
+      return HashCode.fromInt(Murmur3_32HashFunction.fmix(h1, length));
     }
   }
 
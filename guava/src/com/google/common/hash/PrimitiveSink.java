@@ -17,6 +17,7 @@ package com.google.common.hash;
 import com.google.common.annotations.Beta;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -57,6 +58,17 @@ public interface PrimitiveSink {
    */
   PrimitiveSink putBytes(byte[] bytes, int off, int len);
 
+  /**
+   * Puts the remaining bytes of a byte buffer into this sink. {@code bytes.position()} is the first
+   * byte written, {@code bytes.limit() - 1} is the last. The byte order of the buffer is ignored,
+   * and its position will be equal to its limit when this method returns.
+   *
+   * @param bytes a byte buffer
+   * @return this instance
+   * @since 20.0
+   */
+  PrimitiveSink putBytes(ByteBuffer bytes);
+
   /**
    * Puts a short into this sink.
    */
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.math.LongMath;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nullable;
+
+/**
+ * A Bloom filter for instances of {@code T} that grows as elements are put in it, so that its
+ * false positive probability stays below the desired one however many elements it holds. See
+ * <a href="http://gsd.di.uminho.pt/members/cbm/ps/dbloom.pdf">Scalable Bloom Filters</a> by
+ * Almeida, Baquero, Pregui&ccedil;a and Hutchison.
+ *
+ * <p>A {@link BloomFilter} is sized for an expected number of insertions; once more elements are
+ * put in it, its false positive probability quickly approaches 1. A scalable Bloom filter is
+ * instead a series of {@code BloomFilter} stages. Elements are put in the last stage until its
+ * {@linkplain BloomFilter#expectedFpp expected false positive probability} reaches the probability
+ * it was created with, at which point a new stage is added, with {@value #GROWTH_FACTOR} times the
+ * expected insertions and {@value #TIGHTENING_RATIO} times the false positive probability of the
+ * previous one. An element might be contained if any stage might contain it, so the false positive
+ * probability of the whole filter is bounded by the sum of the stages' probabilities, a geometric
+ * series bounded by the desired probability.
+ *
+ * <p>The memory used by the filter is proportional to the number of elements put in it, with a
+ * somewhat larger constant than a {@code BloomFilter} created with the exact number of
+ * insertions. Each {@link #mightContain} queries every stage, so it becomes slower as the filter
+ * grows: a filter holding 1000 times its initial expected insertions has 10 stages. Choose the
+ * initial expected insertions accordingly.
+ *
+ * <p>Scalable Bloom filters are serializable. They also support a more compact serial
+ * representation via the {@link #writeTo} and {@link #readFrom} methods.
+ *
+ * <p>This class is thread-safe: {@link #put} may be called concurrently with itself and with
+ * {@link #mightContain}, which never blocks. Only adding a stage takes a lock.
+ *
+ * @param <T> the type of instances that the {@code ScalableBloomFilter} accepts
+ * @since 20.0
+ */
+@Beta
+public final class ScalableBloomFilter<T> implements Predicate<T>, Serializable {
+  /** The ratio of the expected insertions of each stage to those of the previous stage. */
+  public static final int GROWTH_FACTOR = 2;
+
+  /** The ratio of the false positive probability of each stage to that of the previous stage. */
+  public static final double TIGHTENING_RATIO = 0.5;
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<? super T> funnel;
+
+  /** The expected insertions of the first stage. */
+  private final long initialExpectedInsertions;
+
+  /** The desired false positive probability of the whole filter. */
+  private final double fpp;
+
+  /** The stages, to which stages are only ever appended while holding the lock on {@code this}. */
+  private final CopyOnWriteArrayList<BloomFilter<T>> stages;
+
+  private ScalableBloomFilter(
+      Funnel<? super T> funnel,
+      long initialExpectedInsertions,
+      double fpp,
+      List<BloomFilter<T>> stages) {
+    this.funnel = checkNotNull(funnel);
+    this.initialExpectedInsertions = initialExpectedInsertions;
+    this.fpp = fpp;
+    this.stages = new CopyOnWriteArrayList<BloomFilter<T>>(stages);
+  }
+
+  /**
+   * Creates a new {@code ScalableBloomFilter} that's a copy of this instance. The new instance is
+   * equal to this instance but shares no mutable state.
+   */
+  public ScalableBloomFilter<T> copy() {
+    List<BloomFilter<T>> stagesCopy = new ArrayList<BloomFilter<T>>();
+    for (BloomFilter<T> stage : stages) {
+      stagesCopy.add(stage.copy());
+    }
+    return new ScalableBloomFilter<T>(funnel, initialExpectedInsertions, fpp, stagesCopy);
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this Bloom filter,
+   * {@code false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(T object) {
+    for (BloomFilter<T> stage : stages) {
+      if (stage.mightContain(object)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @deprecated Provided only to satisfy the {@link Predicate} interface; use {@link #mightContain}
+   *     instead.
+   */
+  @Deprecated
+  @Override
+  public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code ScalableBloomFilter}, unless it might already contain it.
+   * Ensures that subsequent invocations of {@link #mightContain(Object)} with the same element will
+   * always return {@code true}.
+   *
+   * @return true if the filter changed as a result of this operation, in which case this is
+   *     <i>definitely</i> the first time {@code object} has been added to the filter
+   */
+  @CanIgnoreReturnValue
+  public boolean put(T object) {
+    // elements already contained are not put again, so that they don't fill the last stage
+    if (mightContain(object)) {
+      return false;
+    }
+    int index = stages.size() - 1;
+    BloomFilter<T> stage = stages.get(index);
+    boolean changed = stage.put(object);
+    if (changed && stage.expectedFpp() >= stageFpp(index)) {
+      addStage(index + 1);
+    }
+    return changed;
+  }
+
+  /** Adds the stage at {@code index}, unless another thread has already added it. */
+  private synchronized void addStage(int index) {
+    if (stages.size() == index) {
+      stages.add(createStage(funnel, initialExpectedInsertions, fpp, index));
+    }
+  }
+
+  private double stageFpp(int index) {
+    return stageFpp(fpp, index);
+  }
+
+  /**
+   * Returns the false positive probability of the stage at {@code index}, such that the sum of
+   * the probabilities of all stages is {@code fpp}.
+   */
+  @VisibleForTesting
+  static double stageFpp(double fpp, int index) {
+    return fpp * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, index);
+  }
+
+  private static <T> BloomFilter<T> createStage(
+      Funnel<? super T> funnel, long initialExpectedInsertions, double fpp, int index) {
+    long expectedInsertions =
+        LongMath.saturatedMultiply(
+            initialExpectedInsertions, LongMath.saturatedPow(GROWTH_FACTOR, index));
+    return BloomFilter.create(funnel, expectedInsertions, stageFpp(fpp, index));
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that has not actually been put in the
+   * {@code ScalableBloomFilter}: the probability that any of its stages does.
+   */
+  public double expectedFpp() {
+    double trueNegativeProbability = 1.0;
+    for (BloomFilter<T> stage : stages) {
+      trueNegativeProbability *= 1.0 - stage.expectedFpp();
+    }
+    return 1.0 - trueNegativeProbability;
+  }
+
+  /** Returns the number of stages, which is 1 until the first stage is full. */
+  @VisibleForTesting
+  int stageCount() {
+    return stages.size();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof ScalableBloomFilter) {
+      ScalableBloomFilter<?> that = (ScalableBloomFilter<?>) object;
+      return this.initialExpectedInsertions == that.initialExpectedInsertions
+          && this.fpp == that.fpp
+          && this.funnel.equals(that.funnel)
+          && this.stages.equals(that.stages);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(initialExpectedInsertions, fpp, funnel, stages);
+  }
+
+  /**
+   * Creates a {@link ScalableBloomFilter ScalableBloomFilter<T>} with the initial expected number
+   * of insertions and expected false positive probability.
+   *
+   * <p>The constructed {@code ScalableBloomFilter<T>} will be serializable if the provided
+   * {@code Funnel<T>} is.
+   *
+   * <p>It is recommended that the funnel be implemented as a Java enum. This has the benefit of
+   * ensuring proper serialization and deserialization, which is important since {@link #equals}
+   * also relies on object identity of funnels.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ScalableBloomFilter<T>} will use
+   * @param initialExpectedInsertions the number of insertions expected before the filter first
+   *     grows; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code ScalableBloomFilter}
+   */
+  public static <T> ScalableBloomFilter<T> create(
+      Funnel<? super T> funnel, long initialExpectedInsertions, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(
+        initialExpectedInsertions >= 0,
+        "Expected insertions (%s) must be >= 0",
+        initialExpectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+
+    if (initialExpectedInsertions == 0) {
+      initialExpectedInsertions = 1;
+    }
+    List<BloomFilter<T>> stages = new ArrayList<BloomFilter<T>>();
+    stages.add(ScalableBloomFilter.<T>createStage(funnel, initialExpectedInsertions, fpp, 0));
+    return new ScalableBloomFilter<T>(funnel, initialExpectedInsertions, fpp, stages);
+  }
+
+  /**
+   * Creates a {@link ScalableBloomFilter ScalableBloomFilter<T>} with the initial expected number
+   * of insertions and a default expected false positive probability of 3%.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ScalableBloomFilter<T>} will use
+   * @param initialExpectedInsertions the number of insertions expected before the filter first
+   *     grows; must be positive
+   * @return a {@code ScalableBloomFilter}
+   */
+  public static <T> ScalableBloomFilter<T> create(
+      Funnel<? super T> funnel, long initialExpectedInsertions) {
+    return create(funnel, initialExpectedInsertions, 0.03);
+  }
+
+  private static final long serialVersionUID = 1;
+
+  /**
+   * Writes this {@code ScalableBloomFilter} to an output stream, with a custom format (not Java
+   * serialization).
+   *
+   * <p>Use {@linkplain #readFrom(InputStream, Funnel)} to reconstruct the written filter.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    // Serial form:
+    // 1 big endian long, the initial expected insertions
+    // 1 big endian double, the false positive probability
+    // 1 big endian int, the number of stages
+    // each stage, in the form of BloomFilter.writeTo
+    List<BloomFilter<T>> stages = new ArrayList<BloomFilter<T>>(this.stages);
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeLong(initialExpectedInsertions);
+    dout.writeDouble(fpp);
+    dout.writeInt(stages.size());
+    for (BloomFilter<T> stage : stages) {
+      stage.writeTo(dout);
+    }
+  }
+
+  /**
+   * Reads a byte stream, which was written by {@linkplain #writeTo(OutputStream)}, into a
+   * {@code ScalableBloomFilter<T>}.
+   *
+   * The {@code Funnel} to be used is not encoded in the stream, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to populate
+   * the original Bloom filter!
+   *
+   * @throws IOException if the InputStream throws an {@code IOException}, or if its data does not
+   *     appear to be a ScalableBloomFilter serialized using the
+   *     {@linkplain #writeTo(OutputStream)} method.
+   */
+  public static <T> ScalableBloomFilter<T> readFrom(InputStream in, Funnel<T> funnel)
+      throws IOException {
+    checkNotNull(in, "InputStream");
+    checkNotNull(funnel, "Funnel");
+    long initialExpectedInsertions = -1;
+    double fpp = -1;
+    int stageCount = -1;
+    try {
+      DataInputStream din = new DataInputStream(in);
+      initialExpectedInsertions = din.readLong();
+      fpp = din.readDouble();
+      stageCount = din.readInt();
+      checkArgument(initialExpectedInsertions > 0);
+      checkArgument(fpp > 0.0 && fpp < 1.0);
+      checkArgument(stageCount > 0);
+
+      List<BloomFilter<T>> stages = new ArrayList<BloomFilter<T>>();
+      for (int i = 0; i < stageCount; i++) {
+        stages.add(BloomFilter.readFrom(din, funnel));
+      }
+      return new ScalableBloomFilter<T>(funnel, initialExpectedInsertions, fpp, stages);
+    } catch (RuntimeException e) {
+      IOException ioException =
+          new IOException(
+              "Unable to deserialize ScalableBloomFilter from InputStream."
+                  + " initialExpectedInsertions: "
+                  + initialExpectedInsertions
+                  + " fpp: "
+                  + fpp
+                  + " stageCount: "
+                  + stageCount);
+      ioException.initCause(e);
+      throw ioException;
+    }
+  }
+}
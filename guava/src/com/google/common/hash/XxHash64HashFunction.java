@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/*
+ * xxHash was written by Yann Collet and is distributed under the BSD 2-Clause License. See
+ * https://github.com/Cyan4973/xxHash for the reference implementation.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.hash.LittleEndianByteArray.load32;
+import static com.google.common.hash.LittleEndianByteArray.load64;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+/**
+ * {@link HashFunction} implementation of XXH64, the 64-bit variant of xxHash. {@link
+ * HashCode#asLong()} of its hash codes is the value returned by the reference implementation.
+ *
+ * <p>Whole arrays are hashed by a loop reading through {@link LittleEndianByteArray}; hashers
+ * accumulate 32-byte stripes like the reference streaming API.
+ */
+final class XxHash64HashFunction extends AbstractStreamingHashFunction implements Serializable {
+  private static final long P1 = 0x9E3779B185EBCA87L;
+  private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long P3 = 0x165667B19E3779F9L;
+  private static final long P4 = 0x85EBCA77C2B2AE63L;
+  private static final long P5 = 0x27D4EB2F165667C5L;
+
+  private static final int STRIPE_SIZE = 32;
+
+  private final long seed;
+
+  XxHash64HashFunction(long seed) {
+    this.seed = seed;
+  }
+
+  @Override
+  public int bits() {
+    return 64;
+  }
+
+  @Override
+  public Hasher newHasher() {
+    return new XxHash64Hasher(seed);
+  }
+
+  @Override
+  public HashCode hashBytes(byte[] input, int off, int len) {
+    checkPositionIndexes(off, off + len, input.length);
+    return HashCode.fromLong(hash(seed, input, off, len));
+  }
+
+  @Override
+  public HashCode hashLong(long input) {
+    long h = seed + P5 + 8;
+    h = mixLong(h, input);
+    return HashCode.fromLong(avalanche(h));
+  }
+
+  @Override
+  public String toString() {
+    return "Hashing.xxHash64(" + seed + ")";
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object instanceof XxHash64HashFunction) {
+      XxHash64HashFunction other = (XxHash64HashFunction) object;
+      return seed == other.seed;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (getClass().hashCode() ^ seed ^ (seed >>> 32));
+  }
+
+  static long hash(long seed, byte[] input, int off, int len) {
+    int end = off + len;
+    long h;
+    if (len >= STRIPE_SIZE) {
+      long v1 = seed + P1 + P2;
+      long v2 = seed + P2;
+      long v3 = seed;
+      long v4 = seed - P1;
+      int limit = end - STRIPE_SIZE;
+      do {
+        v1 = round(v1, load64(input, off));
+        v2 = round(v2, load64(input, off + 8));
+        v3 = round(v3, load64(input, off + 16));
+        v4 = round(v4, load64(input, off + 24));
+        off += STRIPE_SIZE;
+      } while (off <= limit);
+      h = converge(v1, v2, v3, v4);
+    } else {
+      h = seed + P5;
+    }
+    h += len;
+
+    for (; off + 8 <= end; off += 8) {
+      h = mixLong(h, load64(input, off));
+    }
+    if (off + 4 <= end) {
+      h = mixInt(h, load32(input, off));
+      off += 4;
+    }
+    for (; off < end; off++) {
+      h = mixByte(h, input[off]);
+    }
+    return avalanche(h);
+  }
+
+  private static long round(long acc, long input) {
+    acc += input * P2;
+    acc = Long.rotateLeft(acc, 31);
+    acc *= P1;
+    return acc;
+  }
+
+  private static long mergeRound(long acc, long v) {
+    acc ^= round(0, v);
+    return acc * P1 + P4;
+  }
+
+  private static long converge(long v1, long v2, long v3, long v4) {
+    long h =
+        Long.rotateLeft(v1, 1)
+            + Long.rotateLeft(v2, 7)
+            + Long.rotateLeft(v3, 12)
+            + Long.rotateLeft(v4, 18);
+    h = mergeRound(h, v1);
+    h = mergeRound(h, v2);
+    h = mergeRound(h, v3);
+    h = mergeRound(h, v4);
+    return h;
+  }
+
+  private static long mixLong(long h, long k) {
+    h ^= round(0, k);
+    return Long.rotateLeft(h, 27) * P1 + P4;
+  }
+
+  private static long mixInt(long h, int k) {
+    h ^= (k & 0xFFFFFFFFL) * P1;
+    return Long.rotateLeft(h, 23) * P2 + P3;
+  }
+
+  private static long mixByte(long h, byte k) {
+    h ^= (k & 0xFFL) * P5;
+    return Long.rotateLeft(h, 11) * P1;
+  }
+
+  // Finalization mix - force all bits of a hash block to avalanche
+  private static long avalanche(long h) {
+    h ^= h >>> 33;
+    h *= P2;
+    h ^= h >>> 29;
+    h *= P3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  private static final class XxHash64Hasher extends AbstractStreamingHasher {
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long length;
+    // the hash before the avalanche, once the last bytes have been mixed in
+    private long finalH;
+    private boolean processedRemaining;
+
+    XxHash64Hasher(long seed) {
+      super(STRIPE_SIZE);
+      this.seed = seed;
+      this.v1 = seed + P1 + P2;
+      this.v2 = seed + P2;
+      this.v3 = seed;
+      this.v4 = seed - P1;
+    }
+
+    @Override
+    protected void process(ByteBuffer bb) {
+      v1 = round(v1, bb.getLong());
+      v2 = round(v2, bb.getLong());
+      v3 = round(v3, bb.getLong());
+      v4 = round(v4, bb.getLong());
+      length += STRIPE_SIZE;
+    }
+
+    @Override
+    protected void processRemaining(ByteBuffer bb) {
+      length += bb.remaining();
+      long h = hashOfStripes();
+      while (bb.remaining() >= 8) {
+        h = mixLong(h, bb.getLong());
+      }
+      if (bb.remaining() >= 4) {
+        h = mixInt(h, bb.getInt());
+      }
+      while (bb.hasRemaining()) {
+        h = mixByte(h, bb.get());
+      }
+      finalH = h;
+      processedRemaining = true;
+    }
+
+    /** Returns the hash of the stripes processed so far, plus the total length. */
+    private long hashOfStripes() {
+      long h = (length >= STRIPE_SIZE) ? converge(v1, v2, v3, v4) : seed + P5;
+      return h + length;
+    }
+
+    @Override
+    public HashCode makeHash() {
+      return HashCode.fromLong(avalanche(processedRemaining ? finalH : hashOfStripes()));
+    }
+  }
+
+  private static final long serialVersionUID = 0L;
+}
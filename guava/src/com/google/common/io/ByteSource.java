@@ -23,6 +23,7 @@ import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtIncompatible;
 import com.google.common.base.Ascii;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.Funnels;
 import com.google.common.hash.HashCode;
@@ -35,11 +36,18 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * A readable source of bytes, such as a file. Unlike an {@link InputStream}, a {@code ByteSource}
@@ -328,6 +336,109 @@ public abstract class ByteSource {
     return hasher.hash();
   }
 
+  /**
+   * Hashes the contents of this byte source as a Merkle tree of its {@code chunkSize}-byte chunks,
+   * which are read and hashed in parallel by tasks submitted to {@code executor}.
+   *
+   * <p>Each chunk is a {@linkplain #slice slice} of this source, and only the last one may be
+   * shorter than {@code chunkSize}; an empty source has a single, empty chunk. The hash of a chunk
+   * is the hash of a zero byte followed by the chunk, and the hash of two subtrees is the hash of
+   * a one byte followed by the bytes of their two hash codes. As in RFC 6962, the left subtree of
+   * {@code n > 1} chunks holds the largest power of two less than {@code n}. The result thus
+   * depends only on the contents of this source, the hash function and {@code chunkSize}, and not
+   * on the executor; it differs from {@link #hash(HashFunction)}, and from the result with another
+   * chunk size.
+   *
+   * <p>This method determines the {@link #size()} of this source, then opens it once for each
+   * chunk. That suits sources, such as files, whose slices can be read without reading the bytes
+   * before them.
+   *
+   * @throws IllegalArgumentException if {@code chunkSize} is not positive
+   * @throws IOException if an I/O error occurs in the process of reading from this source, or if
+   *     the current thread is interrupted while waiting for the chunks to be hashed
+   * @since 20.0
+   */
+  @Beta
+  public HashCode treeHash(HashFunction hashFunction, long chunkSize, Executor executor)
+      throws IOException {
+    checkNotNull(hashFunction);
+    checkNotNull(executor);
+    checkArgument(chunkSize > 0, "chunkSize (%s) must be positive", chunkSize);
+
+    long size = size();
+    long chunkCount = Math.max(1, size / chunkSize + (size % chunkSize == 0 ? 0 : 1));
+    checkArgument(chunkCount <= Integer.MAX_VALUE, "too many chunks of %s bytes", chunkSize);
+    List<FutureTask<HashCode>> leaves = new ArrayList<FutureTask<HashCode>>((int) chunkCount);
+    boolean succeeded = false;
+    try {
+      for (long i = 0; i < chunkCount; i++) {
+        ByteSource chunk = slice(i * chunkSize, chunkSize);
+        FutureTask<HashCode> leaf = new FutureTask<HashCode>(new TreeHashLeaf(chunk, hashFunction));
+        leaves.add(leaf);
+        executor.execute(leaf);
+      }
+      HashCode[] leafHashes = new HashCode[leaves.size()];
+      for (int i = 0; i < leafHashes.length; i++) {
+        leafHashes[i] = getTreeHashLeaf(leaves.get(i));
+      }
+      succeeded = true;
+      return treeHash(hashFunction, leafHashes, 0, leafHashes.length);
+    } finally {
+      if (!succeeded) {
+        for (FutureTask<HashCode> leaf : leaves) {
+          leaf.cancel(false);
+        }
+      }
+    }
+  }
+
+  private static final byte TREE_HASH_LEAF = 0;
+  private static final byte TREE_HASH_NODE = 1;
+
+  private static HashCode getTreeHashLeaf(FutureTask<HashCode> leaf) throws IOException {
+    try {
+      return leaf.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new AssertionError(e.getCause());
+    }
+  }
+
+  /** Returns the root hash of the subtree of {@code leaves[from, to)}. */
+  private static HashCode treeHash(HashFunction hashFunction, HashCode[] leaves, int from, int to) {
+    if (to - from == 1) {
+      return leaves[from];
+    }
+    int split = from + Integer.highestOneBit(to - from - 1);
+    return hashFunction
+        .newHasher()
+        .putByte(TREE_HASH_NODE)
+        .putBytes(treeHash(hashFunction, leaves, from, split).asBytes())
+        .putBytes(treeHash(hashFunction, leaves, split, to).asBytes())
+        .hash();
+  }
+
+  /** Hashes one chunk of a {@linkplain #treeHash tree hash}. */
+  private static final class TreeHashLeaf implements Callable<HashCode> {
+    private final ByteSource chunk;
+    private final HashFunction hashFunction;
+
+    TreeHashLeaf(ByteSource chunk, HashFunction hashFunction) {
+      this.chunk = chunk;
+      this.hashFunction = hashFunction;
+    }
+
+    @Override
+    public HashCode call() throws IOException {
+      Hasher hasher = hashFunction.newHasher().putByte(TREE_HASH_LEAF);
+      chunk.copyTo(Funnels.asOutputStream(hasher));
+      return hasher.hash();
+    }
+  }
+
   /**
    * Checks that the contents of this byte source are equal to the contents of the given byte
    * source.
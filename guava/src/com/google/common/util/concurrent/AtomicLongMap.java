@@ -47,6 +47,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * <b>Warning:</b> Unlike {@code Multiset}, entries whose values are zero are not automatically
  * removed from the map. Instead they must be removed manually with {@link #removeAllZeros}.
  *
+ * <p><b>Note:</b> Concurrent updates to the same key contend on a single {@code AtomicLong}. If a
+ * few keys take most of the updates, and the updates do not need the resulting value, {@link
+ * LongAdderMap} spreads each value over several cells instead.
+ *
  * @author Charles Fry
  * @since 11.0
  */
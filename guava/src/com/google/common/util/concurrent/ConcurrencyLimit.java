@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An algorithm that adjusts the number of tasks a {@link ConcurrencyLimitingExecutorService} runs
+ * at once, based on how long its tasks take. Instances are obtained from {@link #aimd} and {@link
+ * #vegas}.
+ *
+ * <p>An instance keeps state about the tasks it has seen, such as the shortest latency so far, so
+ * each executor needs its own instance: passing an instance to {@link
+ * MoreExecutors#concurrencyLimitingDecorator} a second time throws {@link IllegalStateException}.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtIncompatible
+public abstract class ConcurrencyLimit {
+  /**
+   * Returns an additive-increase/multiplicative-decrease limit. Whenever a task takes longer than
+   * {@code latencyThreshold}, the limit is multiplied by {@code backoffRatio}. Otherwise, the limit
+   * is increased by one, as long as at least half of it is in use; an executor that is not busy
+   * has no evidence that more concurrency would be safe.
+   *
+   * @param initialLimit the number of tasks allowed to run at once before any task has completed
+   * @param maxLimit the largest limit that can be reached
+   * @param latencyThreshold the latency above which a task is taken as a sign of overload
+   * @param backoffRatio the factor, greater than zero and less than one, applied to the limit on
+   *     overload
+   * @throws IllegalArgumentException if {@code initialLimit} is not positive or greater than
+   *     {@code maxLimit}, if {@code latencyThreshold} is not positive, or if {@code backoffRatio}
+   *     is not in the open interval from zero to one
+   */
+  public static ConcurrencyLimit aimd(
+      int initialLimit,
+      int maxLimit,
+      long latencyThreshold,
+      TimeUnit unit,
+      double backoffRatio) {
+    checkNotNull(unit);
+    checkLimits(initialLimit, maxLimit);
+    checkArgument(latencyThreshold > 0, "latencyThreshold must be positive: %s", latencyThreshold);
+    checkArgument(
+        backoffRatio > 0.0 && backoffRatio < 1.0,
+        "backoffRatio must be between 0 and 1: %s",
+        backoffRatio);
+    return new Aimd(initialLimit, maxLimit, unit.toNanos(latencyThreshold), backoffRatio);
+  }
+
+  /**
+   * Returns a limit in the style of TCP Vegas. It compares the latency of each task with the
+   * shortest latency seen so far to estimate how many tasks are queued downstream. With a
+   * limit {@code L}, a latency {@code rtt} and the shortest latency {@code minRtt}, about {@code L
+   * * (1 - minRtt / rtt)} tasks are queued rather than being served. The limit is increased by one
+   * while fewer than 3 tasks are estimated to be queued, and decreased by one while more than 6
+   * are.
+   *
+   * <p>Unlike {@link #aimd}, this needs no latency threshold, but it assumes that the shortest
+   * latency seen is representative of an idle downstream service.
+   *
+   * @param initialLimit the number of tasks allowed to run at once before any task has completed
+   * @param maxLimit the largest limit that can be reached
+   * @throws IllegalArgumentException if {@code initialLimit} is not positive or greater than
+   *     {@code maxLimit}
+   */
+  public static ConcurrencyLimit vegas(int initialLimit, int maxLimit) {
+    checkLimits(initialLimit, maxLimit);
+    return new Vegas(initialLimit, maxLimit, 3, 6);
+  }
+
+  private static void checkLimits(int initialLimit, int maxLimit) {
+    checkArgument(initialLimit > 0, "initialLimit must be positive: %s", initialLimit);
+    checkArgument(
+        initialLimit <= maxLimit,
+        "initialLimit (%s) must not be greater than maxLimit (%s)",
+        initialLimit,
+        maxLimit);
+  }
+
+  final int initialLimit;
+  final int maxLimit;
+
+  /** Whether an executor has taken this instance; see {@link #claim}. */
+  private final AtomicBoolean claimed = new AtomicBoolean();
+
+  ConcurrencyLimit(int initialLimit, int maxLimit) {
+    this.initialLimit = initialLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  /**
+   * Marks this instance as used by an executor. {@link #update} is only called with that
+   * executor's lock held, so sharing the instance would leave its state unguarded.
+   *
+   * @throws IllegalStateException if this instance was already claimed
+   */
+  final void claim() {
+    checkState(claimed.compareAndSet(false, true), "%s is already used by an executor", this);
+  }
+
+  /**
+   * Returns the new limit after a task completed. Called with the executor's lock held.
+   *
+   * @param limit the current limit
+   * @param latencyNanos the time from when the task was handed to the delegate executor until it
+   *     completed
+   * @param inFlight the number of tasks running, including the one that completed
+   * @return the new limit, between 1 and {@code maxLimit}
+   */
+  abstract int update(int limit, long latencyNanos, int inFlight);
+
+  private static final class Aimd extends ConcurrencyLimit {
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    Aimd(int initialLimit, int maxLimit, long latencyThresholdNanos, double backoffRatio) {
+      super(initialLimit, maxLimit);
+      this.latencyThresholdNanos = latencyThresholdNanos;
+      this.backoffRatio = backoffRatio;
+    }
+
+    @Override
+    int update(int limit, long latencyNanos, int inFlight) {
+      if (latencyNanos > latencyThresholdNanos) {
+        return max(1, (int) (limit * backoffRatio));
+      } else if (inFlight * 2 >= limit) {
+        return min(maxLimit, limit + 1);
+      }
+      return limit;
+    }
+
+    @Override
+    public String toString() {
+      return "ConcurrencyLimit.aimd(" + initialLimit + ", " + maxLimit + ", "
+          + latencyThresholdNanos + "ns, " + backoffRatio + ")";
+    }
+  }
+
+  private static final class Vegas extends ConcurrencyLimit {
+    private final int alpha;
+    private final int beta;
+
+    /** The shortest latency seen so far, or zero before the first task completes. */
+    private long minLatencyNanos;
+
+    Vegas(int initialLimit, int maxLimit, int alpha, int beta) {
+      super(initialLimit, maxLimit);
+      this.alpha = alpha;
+      this.beta = beta;
+    }
+
+    @Override
+    int update(int limit, long latencyNanos, int inFlight) {
+      // avoids dividing by zero when the ticker did not advance
+      latencyNanos = max(latencyNanos, 1);
+      if (minLatencyNanos == 0 || latencyNanos < minLatencyNanos) {
+        minLatencyNanos = latencyNanos;
+      }
+      double queued = limit * (1.0 - (double) minLatencyNanos / latencyNanos);
+      if (queued < alpha) {
+        return (inFlight * 2 >= limit) ? min(maxLimit, limit + 1) : limit;
+      } else if (queued > beta) {
+        return max(1, limit - 1);
+      }
+      return limit;
+    }
+
+    @Override
+    public String toString() {
+      return "ConcurrencyLimit.vegas(" + initialLimit + ", " + maxLimit + ")";
+    }
+  }
+}
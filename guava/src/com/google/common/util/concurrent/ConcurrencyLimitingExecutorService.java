@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Ticker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A {@link ListeningExecutorService} that runs tasks on a delegate executor, but lets only a
+ * limited number of them run at once. The limit adapts to the latency of the tasks, as decided by
+ * a {@link ConcurrencyLimit}: when tasks slow down, which usually means that whatever they call is
+ * overloaded, fewer tasks are allowed to run, so that the overload does not cascade. Instances are
+ * created by {@link MoreExecutors#concurrencyLimitingDecorator}.
+ *
+ * <p>The latency of a task is measured from when it is handed to the delegate until it completes,
+ * so it includes any time the task spends queued in the delegate. Tasks submitted while the limit
+ * is reached wait in a queue of bounded size, in order of submission; tasks submitted while that
+ * queue is full are rejected with a {@link RejectedExecutionException}.
+ *
+ * <p>The returned executor owns the delegate. Once it has been shut down and its queue has been
+ * drained, the delegate is shut down too.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtIncompatible
+public final class ConcurrencyLimitingExecutorService extends AbstractListeningExecutorService {
+  private static final Logger log =
+      Logger.getLogger(ConcurrencyLimitingExecutorService.class.getName());
+
+  private final ExecutorService delegate;
+  private final ConcurrencyLimit concurrencyLimit;
+  private final int maxQueuedTasks;
+  private final Ticker ticker;
+
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private final Queue<Runnable> queue = new ArrayDeque<Runnable>();
+
+  @GuardedBy("lock")
+  private int limit;
+
+  @GuardedBy("lock")
+  private int inFlight;
+
+  @GuardedBy("lock")
+  private long rejectedCount;
+
+  /*
+   * Conceptually, these two variables describe the executor being in one of three states:
+   *   - Active: shutdown == false
+   *   - Shutdown: shutdown == true, but tasks are queued or running
+   *   - Draining the delegate: delegateShutdown == true, and the delegate decides termination
+   */
+  @GuardedBy("lock")
+  private boolean shutdown;
+
+  @GuardedBy("lock")
+  private boolean delegateShutdown;
+
+  ConcurrencyLimitingExecutorService(
+      ExecutorService delegate, ConcurrencyLimit concurrencyLimit, int maxQueuedTasks,
+      Ticker ticker) {
+    checkArgument(maxQueuedTasks >= 0, "maxQueuedTasks must not be negative: %s", maxQueuedTasks);
+    this.delegate = checkNotNull(delegate);
+    this.concurrencyLimit = checkNotNull(concurrencyLimit);
+    this.maxQueuedTasks = maxQueuedTasks;
+    this.ticker = checkNotNull(ticker);
+    this.limit = concurrencyLimit.initialLimit;
+    concurrencyLimit.claim();
+  }
+
+  /** Returns the number of tasks currently allowed to run at once. */
+  public int getLimit() {
+    synchronized (lock) {
+      return limit;
+    }
+  }
+
+  /** Returns the number of tasks that have been handed to the delegate and not completed yet. */
+  public int getInFlightCount() {
+    synchronized (lock) {
+      return inFlight;
+    }
+  }
+
+  /**
+   * Returns the number of tasks waiting for the number of running tasks to drop below the limit.
+   */
+  public int getQueuedCount() {
+    synchronized (lock) {
+      return queue.size();
+    }
+  }
+
+  /** Returns the number of tasks rejected so far because the queue was full. */
+  public long getRejectedCount() {
+    synchronized (lock) {
+      return rejectedCount;
+    }
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    checkNotNull(command);
+    synchronized (lock) {
+      if (shutdown) {
+        throw new RejectedExecutionException("Executor already shutdown");
+      }
+      if (inFlight >= limit) {
+        if (queue.size() >= maxQueuedTasks) {
+          rejectedCount++;
+          throw new RejectedExecutionException(
+              "Concurrency limit (" + limit + ") and queue (" + maxQueuedTasks + ") are full");
+        }
+        queue.add(command);
+        return;
+      }
+      inFlight++;
+    }
+    try {
+      delegate.execute(new LimitedTask(command, ticker.read()));
+    } catch (RuntimeException e) {
+      endTask();
+      throw e;
+    }
+  }
+
+  /** Hands queued tasks to the delegate while the number of running tasks is below the limit. */
+  private void dispatchQueued() {
+    while (true) {
+      Runnable command;
+      synchronized (lock) {
+        if (inFlight >= limit || queue.isEmpty()) {
+          break;
+        }
+        command = queue.remove();
+        inFlight++;
+      }
+      try {
+        delegate.execute(new LimitedTask(command, ticker.read()));
+      } catch (RuntimeException e) {
+        // There is no caller to report this to, so do what we can for the task's future, if any.
+        log.log(Level.SEVERE, "Delegate rejected queued task " + command, e);
+        if (command instanceof Future) {
+          ((Future<?>) command).cancel(false);
+        }
+        synchronized (lock) {
+          inFlight--;
+        }
+      }
+    }
+    shutdownDelegateIfDrained();
+  }
+
+  /** Marks a task as no longer running, without counting its latency. */
+  private void endTask() {
+    synchronized (lock) {
+      inFlight--;
+    }
+    dispatchQueued();
+  }
+
+  private void onTaskCompleted(long latencyNanos) {
+    synchronized (lock) {
+      limit = concurrencyLimit.update(limit, latencyNanos, inFlight);
+      inFlight--;
+    }
+    dispatchQueued();
+  }
+
+  private void shutdownDelegateIfDrained() {
+    synchronized (lock) {
+      if (!shutdown || delegateShutdown || inFlight > 0 || !queue.isEmpty()) {
+        return;
+      }
+      delegateShutdown = true;
+      lock.notifyAll();
+    }
+    delegate.shutdown();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    synchronized (lock) {
+      return shutdown;
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    synchronized (lock) {
+      shutdown = true;
+    }
+    shutdownDelegateIfDrained();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    List<Runnable> neverRun = new ArrayList<Runnable>();
+    synchronized (lock) {
+      shutdown = true;
+      delegateShutdown = true;
+      neverRun.addAll(queue);
+      queue.clear();
+      lock.notifyAll();
+    }
+    for (Runnable runnable : delegate.shutdownNow()) {
+      neverRun.add(
+          (runnable instanceof LimitedTask) ? ((LimitedTask) runnable).command : runnable);
+    }
+    return neverRun;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    synchronized (lock) {
+      if (!delegateShutdown) {
+        return false;
+      }
+    }
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    synchronized (lock) {
+      while (!delegateShutdown) {
+        if (nanos <= 0) {
+          return false;
+        }
+        long now = System.nanoTime();
+        TimeUnit.NANOSECONDS.timedWait(lock, nanos);
+        nanos -= System.nanoTime() - now; // subtract the actual time we waited
+      }
+    }
+    return delegate.awaitTermination(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    synchronized (lock) {
+      return "ConcurrencyLimitingExecutorService[" + concurrencyLimit + ", limit=" + limit
+          + ", inFlight=" + inFlight + ", queued=" + queue.size() + "]";
+    }
+  }
+
+  /** Runs a task on the delegate and reports its latency when it completes. */
+  private final class LimitedTask implements Runnable {
+    final Runnable command;
+    final long startNanos;
+
+    LimitedTask(Runnable command, long startNanos) {
+      this.command = command;
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public void run() {
+      try {
+        command.run();
+      } finally {
+        onTaskCompleted(ticker.read() - startNanos);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return command.toString();
+    }
+  }
+}
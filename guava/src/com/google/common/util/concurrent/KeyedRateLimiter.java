@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.math.IntMath.divide;
+import static com.google.common.math.LongMath.saturatedAdd;
+import static com.google.common.math.LongMath.saturatedSubtract;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.math.RoundingMode.CEILING;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+/**
+ * A rate limiter that keeps a separate token bucket for each key, for example to throttle each
+ * tenant of a service to its own rate. All keys share the same rate and burst capacity.
+ *
+ * <p>Each bucket behaves like one created by {@link RateLimiter#createTokenBucket(double, double)}:
+ * it fills at {@code permitsPerSecond} up to {@code maxBurstPermits}, and a key that has not been
+ * seen before starts with a full bucket. Unlike a map of {@code RateLimiter} instances, the state
+ * of a key is a single entry holding a {@code long}, and the number of keys is bounded:
+ *
+ * <ul>
+ * <li>A key whose bucket has been full for a while is indistinguishable from a key that has never
+ *     been seen, so it is removed when its space is needed, without changing any result.
+ * <li>When more than about {@code maximumKeys} keys are in use at once, the least recently used
+ *     keys are evicted. An evicted key gets a full bucket the next time it is used, so eviction can
+ *     only make the limiter more permissive, and only for keys that have been idle the longest.
+ * </ul>
+ *
+ * <p>Like {@code LocalCache}, the hash table is divided into segments, each guarded by its own
+ * lock. Each segment's table starts small and doubles as keys are added, so the heap used by a
+ * {@code KeyedRateLimiter} is proportional to the number of keys in use, up to a bound
+ * proportional to {@code maximumKeys}. Acquiring permits for a key that is already present does
+ * not allocate.
+ *
+ * <p>The methods of this class never block: {@link #tryAcquire(Object, int)} fails immediately if
+ * the permits are not available, and {@link #reserve(Object, int)} returns the time the caller
+ * should wait.
+ *
+ * @param <K> the type of the keys
+ * @since 20.0
+ */
+@Beta
+@GwtIncompatible
+public final class KeyedRateLimiter<K> {
+  /**
+   * Creates a {@code KeyedRateLimiter} that allows each key {@code permitsPerSecond}, with bursts
+   * of up to {@code maxBurstPermits}, and keeps the state of about {@code maximumKeys} keys.
+   *
+   * @throws IllegalArgumentException if {@code permitsPerSecond}, {@code maxBurstPermits} or {@code
+   *     maximumKeys} is negative or zero
+   */
+  public static <K> KeyedRateLimiter<K> create(
+      double permitsPerSecond, double maxBurstPermits, int maximumKeys) {
+    return create(permitsPerSecond, maxBurstPermits, maximumKeys, Ticker.systemTicker());
+  }
+
+  /**
+   * Creates a {@code KeyedRateLimiter} as with {@link #create(double, double, int)}, that reads
+   * the time from {@code ticker}.
+   *
+   * @throws IllegalArgumentException if {@code permitsPerSecond}, {@code maxBurstPermits} or {@code
+   *     maximumKeys} is negative or zero
+   */
+  public static <K> KeyedRateLimiter<K> create(
+      double permitsPerSecond, double maxBurstPermits, int maximumKeys, Ticker ticker) {
+    return new KeyedRateLimiter<K>(
+        permitsPerSecond,
+        maxBurstPermits,
+        maximumKeys,
+        max(4, Runtime.getRuntime().availableProcessors()),
+        ticker);
+  }
+
+  private final Ticker ticker;
+  private final double permitsPerSecond;
+  private final double maxBurstPermits;
+
+  /** The time to refill one permit, in nanoseconds. */
+  private final double intervalNanos;
+
+  /** The time to refill an empty bucket, in nanoseconds. */
+  private final long burstNanos;
+
+  private final int segmentShift;
+  private final Segment<K>[] segments;
+
+  @VisibleForTesting
+  KeyedRateLimiter(
+      double permitsPerSecond,
+      double maxBurstPermits,
+      int maximumKeys,
+      int concurrencyLevel,
+      Ticker ticker) {
+    checkArgument(
+        permitsPerSecond > 0.0 && !Double.isNaN(permitsPerSecond),
+        "permitsPerSecond must be positive: %s",
+        permitsPerSecond);
+    checkArgument(
+        maxBurstPermits > 0.0 && !Double.isNaN(maxBurstPermits),
+        "maxBurstPermits must be positive: %s",
+        maxBurstPermits);
+    checkArgument(maximumKeys > 0, "maximumKeys must be positive: %s", maximumKeys);
+    this.ticker = checkNotNull(ticker);
+    this.permitsPerSecond = permitsPerSecond;
+    this.maxBurstPermits = maxBurstPermits;
+    this.intervalNanos = SECONDS.toNanos(1L) / permitsPerSecond;
+    // The cast saturates, so a very low rate makes this Long.MAX_VALUE rather than overflowing.
+    this.burstNanos = (long) (maxBurstPermits * intervalNanos);
+
+    // a power of two, and no more segments than keys
+    int segmentCount = 1;
+    int segmentBits = 0;
+    while (segmentCount < concurrencyLevel && segmentCount < maximumKeys) {
+      segmentCount <<= 1;
+      segmentBits++;
+    }
+    this.segmentShift = 32 - segmentBits;
+    int maxSegmentKeys = divide(maximumKeys, segmentCount, CEILING);
+    @SuppressWarnings("unchecked") // generic array creation
+    Segment<K>[] segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment<K>(burstNanos, maxSegmentKeys);
+    }
+    this.segments = segments;
+  }
+
+  /** Returns the rate at which each key's bucket is refilled, in permits per second. */
+  public double getRate() {
+    return permitsPerSecond;
+  }
+
+  /** Returns the capacity of each key's bucket. */
+  public double getMaxBurstPermits() {
+    return maxBurstPermits;
+  }
+
+  /**
+   * Acquires a permit for {@code key} if it can be acquired immediately.
+   *
+   * @return {@code true} if the permit was acquired, {@code false} otherwise
+   */
+  public boolean tryAcquire(K key) {
+    return tryAcquire(key, 1);
+  }
+
+  /**
+   * Acquires the given number of permits for {@code key} if they can be acquired immediately. If
+   * they can not, no permits are taken, and the state of {@code key} is unchanged.
+   *
+   * @return {@code true} if the permits were acquired, {@code false} otherwise
+   * @throws IllegalArgumentException if the requested number of permits is negative or zero
+   */
+  public boolean tryAcquire(K key, int permits) {
+    checkNotNull(key);
+    RateLimiter.checkPermits(permits);
+    return reserveNanos(key, permits, 0L) >= 0;
+  }
+
+  /**
+   * Reserves the given number of permits for {@code key}, returning the number of microseconds
+   * until they can be used. Like {@link RateLimiter#reserve(int)}, this never blocks: the caller is
+   * expected to wait for the returned time itself.
+   *
+   * @return time in microseconds to wait until the permits can be used, never negative
+   * @throws IllegalArgumentException if the requested number of permits is negative or zero
+   */
+  @CanIgnoreReturnValue
+  public long reserve(K key, int permits) {
+    checkNotNull(key);
+    RateLimiter.checkPermits(permits);
+    return TokenBucketRateLimiter.nanosToMicros(reserveNanos(key, permits, Long.MAX_VALUE));
+  }
+
+  /**
+   * Takes {@code permits} from the bucket of {@code key} if it will hold them within {@code
+   * maxWaitNanos}.
+   *
+   * @return the time in nanoseconds until the permits can be used, or -1 if they were not taken
+   */
+  private long reserveNanos(K key, int permits, long maxWaitNanos) {
+    // The cast saturates, so a huge cost stays at Long.MAX_VALUE.
+    long costNanos = (long) Math.ceil(permits * intervalNanos);
+    int hash = rehash(key.hashCode());
+    return segmentFor(hash).reserve(key, hash, costNanos, ticker.read(), maxWaitNanos);
+  }
+
+  /**
+   * Returns the number of keys whose state is currently kept. This includes keys whose buckets
+   * have refilled but that have not been removed yet.
+   */
+  public long size() {
+    long size = 0;
+    for (Segment<K> segment : segments) {
+      size += segment.count;
+    }
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ROOT, "KeyedRateLimiter[stableRate=%3.1fqps, maxBurstPermits=%s]", permitsPerSecond,
+        maxBurstPermits);
+  }
+
+  private Segment<K> segmentFor(int hash) {
+    return (segmentShift == 32) ? segments[0] : segments[hash >>> segmentShift];
+  }
+
+  /** Applies a supplemental hash function, as {@code LocalCache.rehash} does. */
+  private static int rehash(int h) {
+    h += (h << 15) ^ 0xffffcd7d;
+    h ^= (h >>> 10);
+    h += (h << 3);
+    h ^= (h >>> 6);
+    h += (h << 2) + (h << 14);
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * The state of one key: the time, from the ticker, at which its bucket would be empty, as in
+   * {@link TokenBucketRateLimiter}. Entries are chained within a hash bucket, and linked in order of
+   * last use within their segment.
+   */
+  private static final class Entry<K> {
+    final K key;
+    final int hash;
+    long emptyAtNanos;
+    @Nullable Entry<K> next;
+    Entry<K> previousInAccessOrder;
+    Entry<K> nextInAccessOrder;
+
+    Entry(@Nullable K key, int hash) {
+      this.key = key;
+      this.hash = hash;
+      this.previousInAccessOrder = this;
+      this.nextInAccessOrder = this;
+    }
+  }
+
+  /** The initial size of a segment's table, unless {@code maximumKeys} calls for a smaller one. */
+  private static final int INITIAL_TABLE_SIZE = 16;
+
+  @SuppressWarnings("serial") // This class is never serialized.
+  private static final class Segment<K> extends ReentrantLock {
+    private final long burstNanos;
+    private final int maxSegmentKeys;
+
+    /** The size that {@link #table} grows to when the segment holds {@code maxSegmentKeys}. */
+    private final int maxTableSize;
+
+    private Entry<K>[] table;
+
+    /** The number of entries above which {@link #table} is doubled, while it can still grow. */
+    private int threshold;
+
+    /**
+     * The head of a circular list of the entries in order of last use; {@code
+     * head.nextInAccessOrder} is the least recently used entry.
+     */
+    private final Entry<K> head = new Entry<K>(null, 0);
+
+    /** The number of entries. Read without the lock by {@link KeyedRateLimiter#size}. */
+    volatile int count;
+
+    Segment(long burstNanos, int maxSegmentKeys) {
+      this.burstNanos = burstNanos;
+      this.maxSegmentKeys = maxSegmentKeys;
+      this.maxTableSize = tableSizeFor(maxSegmentKeys);
+      setTable(newTable(min(INITIAL_TABLE_SIZE, maxTableSize)));
+    }
+
+    @SuppressWarnings("unchecked") // generic array creation
+    private static <K> Entry<K>[] newTable(int size) {
+      return new Entry[size];
+    }
+
+    private void setTable(Entry<K>[] table) {
+      this.table = table;
+      // load factor of 3/4, as in LocalCache
+      this.threshold = (table.length < maxTableSize) ? table.length * 3 / 4 : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Takes {@code costNanos} worth of permits from the bucket of {@code key} if it will hold them
+     * within {@code maxWaitNanos}.
+     *
+     * @return the time in nanoseconds until the permits can be used, or -1 if they were not taken
+     */
+    long reserve(K key, int hash, long costNanos, long nowNanos, long maxWaitNanos) {
+      long fullAt = saturatedSubtract(nowNanos, burstNanos);
+      lock();
+      try {
+        int index = hash & (table.length - 1);
+        Entry<K> entry = table[index];
+        while (entry != null && (entry.hash != hash || !entry.key.equals(key))) {
+          entry = entry.next;
+        }
+        long emptyAt = (entry == null) ? fullAt : max(entry.emptyAtNanos, fullAt);
+        long newEmptyAt = saturatedAdd(emptyAt, costNanos);
+        long waitNanos = max(saturatedSubtract(newEmptyAt, nowNanos), 0);
+        if (waitNanos > maxWaitNanos) {
+          return -1;
+        }
+        if (entry == null) {
+          entry = newEntry(key, hash, index, fullAt);
+        } else {
+          unlinkAccessOrder(entry);
+        }
+        entry.emptyAtNanos = newEmptyAt;
+        linkAccessOrder(entry);
+        return waitNanos;
+      } finally {
+        unlock();
+      }
+    }
+
+    /** Adds an entry, first removing the entries that are full or over the segment's bound. */
+    private Entry<K> newEntry(K key, int hash, int index, long fullAt) {
+      Entry<K> eldest = head.nextInAccessOrder;
+      while (eldest != head && (count >= maxSegmentKeys || eldest.emptyAtNanos <= fullAt)) {
+        Entry<K> nextEldest = eldest.nextInAccessOrder;
+        remove(eldest);
+        eldest = nextEldest;
+      }
+      if (count >= threshold) {
+        expand();
+        index = hash & (table.length - 1);
+      }
+      Entry<K> entry = new Entry<K>(key, hash);
+      entry.next = table[index];
+      table[index] = entry;
+      count++;
+      return entry;
+    }
+
+    /** Doubles the size of the table, relinking the existing entries into the new one. */
+    private void expand() {
+      Entry<K>[] oldTable = table;
+      Entry<K>[] newTable = newTable(oldTable.length << 1);
+      int mask = newTable.length - 1;
+      for (Entry<K> first : oldTable) {
+        for (Entry<K> e = first; e != null; ) {
+          Entry<K> next = e.next;
+          int index = e.hash & mask;
+          e.next = newTable[index];
+          newTable[index] = e;
+          e = next;
+        }
+      }
+      setTable(newTable);
+    }
+
+    private void remove(Entry<K> entry) {
+      unlinkAccessOrder(entry);
+      int index = entry.hash & (table.length - 1);
+      Entry<K> previous = null;
+      for (Entry<K> e = table[index]; e != entry; e = e.next) {
+        previous = e;
+      }
+      if (previous == null) {
+        table[index] = entry.next;
+      } else {
+        previous.next = entry.next;
+      }
+      count--;
+    }
+
+    private void linkAccessOrder(Entry<K> entry) {
+      Entry<K> last = head.previousInAccessOrder;
+      entry.previousInAccessOrder = last;
+      entry.nextInAccessOrder = head;
+      last.nextInAccessOrder = entry;
+      head.previousInAccessOrder = entry;
+    }
+
+    private void unlinkAccessOrder(Entry<K> entry) {
+      entry.previousInAccessOrder.nextInAccessOrder = entry.nextInAccessOrder;
+      entry.nextInAccessOrder.previousInAccessOrder = entry.previousInAccessOrder;
+    }
+  }
+
+  /** Returns the smallest power of two that is at least {@code n}, but at most 2^30. */
+  private static int tableSizeFor(int n) {
+    return (n <= 1) ? 1 : (n > 1 << 30) ? 1 << 30 : Integer.highestOneBit(n - 1) << 1;
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A map of {@code long} counters, for keys that are updated by many threads at once. Like {@link
+ * AtomicLongMap}, a key that has not been associated with a value has the implicit value zero, and
+ * {@link #add(Object, long)} adds to the value of a key.
+ *
+ * <p>Each value is kept in a set of striped cells rather than in a single {@code AtomicLong}: when
+ * several threads update the same key at once, they usually update different cells, so updates to
+ * a few hot keys scale with the number of cores instead of contending on one compare-and-set. The
+ * price is paid when reading: {@link #get} sums the cells of a key, and the value it returns may
+ * or may not include concurrent updates. For the same reason there is no {@code addAndGet}; use
+ * {@code AtomicLongMap} when updates need to observe the value they produce.
+ *
+ * <p>Instances of this class may be used by multiple threads concurrently. Updates never block,
+ * and neither do reads, including {@link #asMap}.
+ *
+ * @since 20.0
+ */
+@Beta
+@GwtIncompatible
+public final class LongAdderMap<K> {
+  private final ConcurrentHashMap<K, LongAdder> map = new ConcurrentHashMap<K, LongAdder>();
+
+  private LongAdderMap() {}
+
+  /**
+   * Creates an empty {@code LongAdderMap}.
+   */
+  public static <K> LongAdderMap<K> create() {
+    return new LongAdderMap<K>();
+  }
+
+  /**
+   * Returns the value associated with {@code key}, or zero if there is no value associated with
+   * {@code key}. Updates made concurrently with this call may or may not be included.
+   */
+  public long get(K key) {
+    LongAdder adder = map.get(key);
+    return adder == null ? 0L : adder.sum();
+  }
+
+  /**
+   * Increments by one the value associated with {@code key}.
+   */
+  public void increment(K key) {
+    add(key, 1);
+  }
+
+  /**
+   * Decrements by one the value associated with {@code key}.
+   */
+  public void decrement(K key) {
+    add(key, -1);
+  }
+
+  /**
+   * Adds {@code delta} to the value associated with {@code key}.
+   */
+  public void add(K key, long delta) {
+    LongAdder adder = map.get(key);
+    if (adder == null) {
+      LongAdder newAdder = new LongAdder();
+      adder = map.putIfAbsent(key, newAdder);
+      if (adder == null) {
+        adder = newAdder;
+      }
+    }
+    adder.add(delta);
+  }
+
+  /**
+   * Removes {@code key} and returns its value, or zero if {@code key} is not in the map.
+   *
+   * <p>An update that runs concurrently with this call may be counted in the returned value, may
+   * be counted under a new mapping for {@code key}, or, if it was to the removed cells but not yet
+   * visible when they were summed, may be lost.
+   */
+  @CanIgnoreReturnValue
+  public long remove(K key) {
+    LongAdder adder = map.remove(key);
+    return adder == null ? 0L : adder.sum();
+  }
+
+  /**
+   * Removes all mappings from this map whose values are zero.
+   *
+   * <p>This method is not atomic: the map may be visible in intermediate states, where some of the
+   * zero values have been removed and others have not. As with {@link #remove}, an update to a key
+   * that runs concurrently with its removal may be lost.
+   */
+  public void removeAllZeros() {
+    Iterator<LongAdder> iterator = map.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().sum() == 0L) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the sum of all values in this map.
+   *
+   * <p>This method is not atomic: the sum may or may not include other concurrent operations.
+   */
+  public long sum() {
+    long sum = 0L;
+    for (LongAdder adder : map.values()) {
+      sum += adder.sum();
+    }
+    return sum;
+  }
+
+  /**
+   * Returns an immutable snapshot of the keys and values of this map. Taking the snapshot does not
+   * block updates; like {@link #get}, each value may or may not include updates made while the
+   * snapshot was taken.
+   */
+  public ImmutableMap<K, Long> asMap() {
+    ImmutableMap.Builder<K, Long> builder = ImmutableMap.builder();
+    for (Map.Entry<K, LongAdder> entry : map.entrySet()) {
+      builder.put(entry.getKey(), entry.getValue().sum());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns true if this map contains a mapping for the specified key.
+   */
+  public boolean containsKey(Object key) {
+    return map.containsKey(key);
+  }
+
+  /**
+   * Returns the number of key-value mappings in this map. If the map contains more than {@code
+   * Integer.MAX_VALUE} elements, returns {@code Integer.MAX_VALUE}.
+   */
+  public int size() {
+    return map.size();
+  }
+
+  /**
+   * Returns {@code true} if this map contains no key-value mappings.
+   */
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
+
+  /**
+   * Removes all of the mappings from this map. The map will be empty after this call returns.
+   *
+   * <p>This method is not atomic: the map may not be empty after returning if there were concurrent
+   * writes.
+   */
+  public void clear() {
+    map.clear();
+  }
+
+  @Override
+  public String toString() {
+    return asMap().toString();
+  }
+}
@@ -23,6 +23,7 @@ import com.google.common.annotations.GwtIncompatible;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
 import com.google.common.util.concurrent.ForwardingListenableFuture.SimpleForwardingListenableFuture;
@@ -494,6 +495,96 @@ public final class MoreExecutors {
         : new ScheduledListeningDecorator(delegate);
   }
 
+  /**
+   * Creates an {@link ExecutorService} that runs tasks on the given delegate executor, but limits
+   * how many of them run at once. The limit is adjusted after each task completes by {@code
+   * concurrencyLimit}, according to how long the task took. Tasks submitted while the limit is
+   * reached are queued, up to {@code maxQueuedTasks} of them, and further tasks are rejected.
+   *
+   * <p>As with {@link #listeningDecorator(ExecutorService)}, all tasks are handed to the delegate
+   * through its {@code execute} method. The returned executor owns the delegate: it shuts the
+   * delegate down once it has itself been shut down and its queue has been drained.
+   *
+   * @param delegate the executor that runs the tasks
+   * @param concurrencyLimit the algorithm adjusting the limit, such as {@link
+   *     ConcurrencyLimit#aimd} or {@link ConcurrencyLimit#vegas}; it must not be used by any other
+   *     executor
+   * @param maxQueuedTasks the number of tasks that may wait for the number of running tasks to
+   *     drop below the limit; zero to reject tasks as soon as the limit is reached
+   * @throws IllegalArgumentException if {@code maxQueuedTasks} is negative
+   * @throws IllegalStateException if {@code concurrencyLimit} was already passed to this method
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // Ticker
+  public static ConcurrencyLimitingExecutorService concurrencyLimitingDecorator(
+      ExecutorService delegate, ConcurrencyLimit concurrencyLimit, int maxQueuedTasks) {
+    return concurrencyLimitingDecorator(
+        delegate, concurrencyLimit, maxQueuedTasks, Ticker.systemTicker());
+  }
+
+  /**
+   * Creates an {@link ExecutorService} as with {@link
+   * #concurrencyLimitingDecorator(ExecutorService, ConcurrencyLimit, int)}, that measures the
+   * latency of tasks with {@code ticker}.
+   *
+   * @throws IllegalArgumentException if {@code maxQueuedTasks} is negative
+   * @throws IllegalStateException if {@code concurrencyLimit} was already passed to this method
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // Ticker
+  public static ConcurrencyLimitingExecutorService concurrencyLimitingDecorator(
+      ExecutorService delegate, ConcurrencyLimit concurrencyLimit, int maxQueuedTasks,
+      Ticker ticker) {
+    return new ConcurrencyLimitingExecutorService(
+        delegate, concurrencyLimit, maxQueuedTasks, ticker);
+  }
+
+  /**
+   * Creates a {@link ListeningExecutorService} that runs tasks on {@code parallelism} threads,
+   * each with its own deque of tasks, as with {@link #newWorkStealingExecutorService(int,
+   * ThreadFactory)}. The threads are created by {@link Executors#defaultThreadFactory()}.
+   *
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // concurrency
+  public static ListeningExecutorService newWorkStealingExecutorService(int parallelism) {
+    return newWorkStealingExecutorService(parallelism, Executors.defaultThreadFactory());
+  }
+
+  /**
+   * Creates a {@link ListeningExecutorService} that runs tasks on {@code parallelism} threads,
+   * each with its own deque of tasks, rather than on threads sharing one queue as a {@code
+   * ThreadPoolExecutor} does. The threads are created by {@code threadFactory} and started
+   * immediately.
+   *
+   * <p>A task submitted from one of the executor's own threads runs on that same thread next,
+   * unless an idle thread steals it first. In particular, when a future completes on one of the
+   * threads, listeners that were added to it with this executor, such as the functions given to
+   * {@link Futures#transform(ListenableFuture, com.google.common.base.Function, Executor)
+   * Futures.transform} and {@link Futures#transformAsync(ListenableFuture, AsyncFunction, Executor)
+   * Futures.transformAsync}, usually run right after it on the same thread, where its result is
+   * still in the caches. Tasks submitted from other threads are shared by all threads.
+   *
+   * <p>The executor's threads exit once it has been shut down and no tasks are left. As with a
+   * {@code ThreadPoolExecutor}, {@link ExecutorService#shutdownNow} interrupts them and returns the
+   * tasks that have not started.
+   *
+   * @param parallelism the number of threads
+   * @param threadFactory the factory used to create the threads
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   * @since 20.0
+   */
+  @Beta
+  @GwtIncompatible // concurrency
+  public static ListeningExecutorService newWorkStealingExecutorService(
+      int parallelism, ThreadFactory threadFactory) {
+    return new WorkStealingExecutorService(parallelism, threadFactory);
+  }
+
   @GwtIncompatible // TODO
   private static class ListeningDecorator extends AbstractListeningExecutorService {
     private final ExecutorService delegate;
@@ -18,12 +18,14 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.Math.max;
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtIncompatible;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Ticker;
 import com.google.common.util.concurrent.SmoothRateLimiter.SmoothBursty;
 import com.google.common.util.concurrent.SmoothRateLimiter.SmoothWarmingUp;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
@@ -177,6 +179,59 @@ public abstract class RateLimiter {
     return rateLimiter;
   }
 
+  /**
+   * Creates a token bucket {@code RateLimiter} with the specified stable throughput, given as
+   * "permits per second", that can save up to {@code maxBurstPermits} unused permits.
+   *
+   * <p>Unlike the rate limiters returned by {@link #create(double)}, the returned {@code
+   * RateLimiter} throttles each request by its own cost: a request waits until the bucket holds
+   * as many permits as it asks for, and may then take them all at once. The bucket fills at
+   * {@code permitsPerSecond} up to {@code maxBurstPermits}, and starts full. Its state is updated
+   * with a compare-and-set rather than under a lock, so {@link #acquire(int)}, {@link
+   * #tryAcquire(int, long, TimeUnit)} and {@link #reserve(int)} scale with the number of threads
+   * calling them; time is measured in nanoseconds, so rates above a million permits per second
+   * are honoured.
+   *
+   * @param permitsPerSecond the rate at which the bucket is refilled
+   * @param maxBurstPermits the capacity of the bucket, which is the number of permits that can be
+   *     granted at once after the {@code RateLimiter} has been idle
+   * @throws IllegalArgumentException if {@code permitsPerSecond} or {@code maxBurstPermits} is
+   *     negative or zero
+   * @since 20.0
+   */
+  public static RateLimiter createTokenBucket(double permitsPerSecond, double maxBurstPermits) {
+    return createTokenBucket(
+        SleepingStopwatch.createFromSystemTimer(), permitsPerSecond, maxBurstPermits);
+  }
+
+  /**
+   * Creates a token bucket {@code RateLimiter} as with {@link #createTokenBucket(double, double)},
+   * that reads the time from {@code ticker}. The ticker is only read: callers of {@link
+   * #acquire(int)} still sleep for real, so a fake ticker is best combined with the non-blocking
+   * {@link #tryAcquire(int)} and {@link #reserve(int)}.
+   *
+   * @throws IllegalArgumentException if {@code permitsPerSecond} or {@code maxBurstPermits} is
+   *     negative or zero
+   * @since 20.0
+   */
+  public static RateLimiter createTokenBucket(
+      double permitsPerSecond, double maxBurstPermits, Ticker ticker) {
+    return createTokenBucket(
+        SleepingStopwatch.createFromTicker(ticker), permitsPerSecond, maxBurstPermits);
+  }
+
+  @VisibleForTesting
+  static RateLimiter createTokenBucket(
+      SleepingStopwatch stopwatch, double permitsPerSecond, double maxBurstPermits) {
+    checkArgument(
+        maxBurstPermits > 0.0 && !Double.isNaN(maxBurstPermits),
+        "maxBurstPermits must be positive: %s",
+        maxBurstPermits);
+    RateLimiter rateLimiter = new TokenBucketRateLimiter(stopwatch, maxBurstPermits);
+    rateLimiter.setRate(permitsPerSecond);
+    return rateLimiter;
+  }
+
   /**
    * The underlying timer; used both to measure elapsed time and sleep as necessary. A separate
    * object to facilitate testing.
@@ -277,11 +332,16 @@ public abstract class RateLimiter {
 
   /**
    * Reserves the given number of permits from this {@code RateLimiter} for future use, returning
-   * the number of microseconds until the reservation can be consumed.
+   * the number of microseconds until the reservation can be consumed. Unlike {@link
+   * #acquire(int)}, this never blocks: the caller is expected to wait for the returned time itself,
+   * for example by scheduling its work with that delay.
    *
-   * @return time in microseconds to wait until the resource can be acquired, never negative
+   * @param permits the number of permits to reserve
+   * @return time in microseconds to wait until the permits can be used, never negative
+   * @throws IllegalArgumentException if the requested number of permits is negative or zero
+   * @since 20.0 (present as a package-private method since 13.0)
    */
-  final long reserve(int permits) {
+  public long reserve(int permits) {
     checkPermits(permits);
     synchronized (mutex()) {
       return reserveAndGetWaitLength(permits, stopwatch.readMicros());
@@ -345,17 +405,28 @@ public abstract class RateLimiter {
   public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
     long timeoutMicros = max(unit.toMicros(timeout), 0);
     checkPermits(permits);
-    long microsToWait;
+    long microsToWait = tryReserve(permits, timeoutMicros);
+    if (microsToWait < 0) {
+      return false;
+    }
+    stopwatch.sleepMicrosUninterruptibly(microsToWait);
+    return true;
+  }
+
+  /**
+   * Reserves the given number of permits if they can be used within {@code timeoutMicros}.
+   *
+   * @return the time in microseconds to wait until the permits can be used, or -1 if they were not
+   *     reserved
+   */
+  long tryReserve(int permits, long timeoutMicros) {
     synchronized (mutex()) {
       long nowMicros = stopwatch.readMicros();
       if (!canAcquire(nowMicros, timeoutMicros)) {
-        return false;
-      } else {
-        microsToWait = reserveAndGetWaitLength(permits, nowMicros);
+        return -1;
       }
+      return reserveAndGetWaitLength(permits, nowMicros);
     }
-    stopwatch.sleepMicrosUninterruptibly(microsToWait);
-    return true;
   }
 
   private boolean canAcquire(long nowMicros, long timeoutMicros) {
@@ -405,17 +476,34 @@ public abstract class RateLimiter {
      */
     protected abstract long readMicros();
 
+    /**
+     * Reads the same clock as {@link #readMicros}, in nanoseconds. The default implementation has
+     * the precision of {@code readMicros}.
+     */
+    protected long readNanos() {
+      return MICROSECONDS.toNanos(readMicros());
+    }
+
     protected abstract void sleepMicrosUninterruptibly(long micros);
 
     public static final SleepingStopwatch createFromSystemTimer() {
-      return new SleepingStopwatch() {
-        final Stopwatch stopwatch = Stopwatch.createStarted();
+      return createFromTicker(Ticker.systemTicker());
+    }
 
+    /** Returns a stopwatch that reads {@code ticker} but sleeps in real time. */
+    static SleepingStopwatch createFromTicker(Ticker ticker) {
+      final Stopwatch stopwatch = Stopwatch.createStarted(ticker);
+      return new SleepingStopwatch() {
         @Override
         protected long readMicros() {
           return stopwatch.elapsed(MICROSECONDS);
         }
 
+        @Override
+        protected long readNanos() {
+          return stopwatch.elapsed(NANOSECONDS);
+        }
+
         @Override
         protected void sleepMicrosUninterruptibly(long micros) {
           if (micros > 0) {
@@ -426,7 +514,7 @@ public abstract class RateLimiter {
     }
   }
 
-  private static void checkPermits(int permits) {
+  static void checkPermits(int permits) {
     checkArgument(permits > 0, "Requested permits (%s) must be positive", permits);
   }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.math.LongMath.saturatedAdd;
+import static com.google.common.math.LongMath.saturatedSubtract;
+import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.annotations.GwtIncompatible;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RateLimiter} implementing a token bucket whose whole state is a single {@code long},
+ * updated by compare-and-set.
+ *
+ * <p>The state is the time, in nanoseconds, at which the bucket would be empty. The bucket holds
+ * {@code (now - emptyAt) / interval} permits, capped at {@code maxBurstPermits}, where {@code
+ * interval} is the time it takes to refill one permit; if {@code emptyAt} is in the future, the
+ * bucket is in debt, and that debt is paid by the wait of the request that took the permits. So
+ * taking {@code n} permits sets {@code emptyAt} to {@code max(emptyAt, now - maxBurstPermits *
+ * interval) + n * interval}, and waits until that time. This is the virtual scheduling form of the
+ * "generic cell rate algorithm".
+ *
+ * <p>Like {@link SmoothRateLimiter.SmoothBursty}, the state is expressed in time, so {@link
+ * #setRate} does not need to rewrite it: the permits saved up so far are counted at the new rate,
+ * and a debt keeps its length in time.
+ */
+@GwtIncompatible
+final class TokenBucketRateLimiter extends RateLimiter {
+  private final SleepingStopwatch stopwatch;
+
+  /** The maximum number of stored permits. */
+  private final double maxBurstPermits;
+
+  /** The time, from {@link SleepingStopwatch#readNanos}, at which the bucket would be empty. */
+  private final AtomicLong emptyAtNanos = new AtomicLong(Long.MIN_VALUE);
+
+  /** The time to refill one permit, in nanoseconds. */
+  private volatile double intervalNanos;
+
+  TokenBucketRateLimiter(SleepingStopwatch stopwatch, double maxBurstPermits) {
+    super(stopwatch);
+    this.stopwatch = stopwatch;
+    this.maxBurstPermits = maxBurstPermits;
+  }
+
+  @Override
+  public long reserve(int permits) {
+    checkPermits(permits);
+    return nanosToMicros(reserveNanos(permits, stopwatch.readNanos(), Long.MAX_VALUE));
+  }
+
+  @Override
+  long tryReserve(int permits, long timeoutMicros) {
+    long maxWaitNanos = MICROSECONDS.toNanos(timeoutMicros);
+    long waitNanos = reserveNanos(permits, stopwatch.readNanos(), maxWaitNanos);
+    return (waitNanos < 0) ? -1 : nanosToMicros(waitNanos);
+  }
+
+  /**
+   * Takes the given number of permits if the bucket will hold them within {@code maxWaitNanos}.
+   *
+   * @return the time in nanoseconds until the permits can be used, or -1 if they were not taken
+   */
+  private long reserveNanos(int permits, long nowNanos, long maxWaitNanos) {
+    while (true) {
+      long emptyAt = emptyAtNanos.get();
+      long newEmptyAt = emptyAtAfter(emptyAt, permits, nowNanos);
+      long waitNanos = max(saturatedSubtract(newEmptyAt, nowNanos), 0);
+      if (waitNanos > maxWaitNanos) {
+        return -1;
+      }
+      if (emptyAtNanos.compareAndSet(emptyAt, newEmptyAt)) {
+        return waitNanos;
+      }
+    }
+  }
+
+  /** Returns the new value of {@link #emptyAtNanos} after taking {@code permits} at a time. */
+  private long emptyAtAfter(long emptyAt, int permits, long nowNanos) {
+    double intervalNanos = this.intervalNanos;
+    // The casts saturate, so a very low rate makes these Long.MAX_VALUE rather than overflowing.
+    long burstNanos = (long) (maxBurstPermits * intervalNanos);
+    long costNanos = (long) Math.ceil(permits * intervalNanos);
+    return saturatedAdd(max(emptyAt, saturatedSubtract(nowNanos, burstNanos)), costNanos);
+  }
+
+  /** Rounds up, so that a caller who waits the returned time never uses permits too early. */
+  static long nanosToMicros(long nanos) {
+    long micros = nanos / 1000;
+    return (nanos % 1000 == 0) ? micros : micros + 1;
+  }
+
+  @Override
+  void doSetRate(double permitsPerSecond, long nowMicros) {
+    intervalNanos = SECONDS.toNanos(1L) / permitsPerSecond;
+  }
+
+  @Override
+  double doGetRate() {
+    return SECONDS.toNanos(1L) / intervalNanos;
+  }
+
+  // The two methods below are only called by the implementations of reserve and tryReserve in
+  // RateLimiter, which this class overrides so as not to lock.
+
+  @Override
+  long queryEarliestAvailable(long nowMicros) {
+    long nowNanos = MICROSECONDS.toNanos(nowMicros);
+    long newEmptyAt = emptyAtAfter(emptyAtNanos.get(), 1, nowNanos);
+    return nowMicros + nanosToMicros(max(saturatedSubtract(newEmptyAt, nowNanos), 0));
+  }
+
+  @Override
+  long reserveEarliestAvailable(int permits, long nowMicros) {
+    long waitNanos = reserveNanos(permits, MICROSECONDS.toNanos(nowMicros), Long.MAX_VALUE);
+    return saturatedAdd(nowMicros, nanosToMicros(waitNanos));
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ROOT, "RateLimiter[stableRate=%3.1fqps, maxBurstPermits=%s]", getRate(),
+        maxBurstPermits);
+  }
+}
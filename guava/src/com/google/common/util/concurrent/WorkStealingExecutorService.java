@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.GwtIncompatible;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A {@link ListeningExecutorService} with a fixed number of worker threads, each of which has its
+ * own deque of tasks. See {@link MoreExecutors#newWorkStealingExecutorService(int, ThreadFactory)}.
+ *
+ * <p>A task submitted from one of the workers, such as a listener of a future that completes on
+ * that worker, is pushed onto the head of that worker's deque, and the worker takes tasks from the
+ * head of its deque first: a chain of continuations tends to stay on one thread, with its data in
+ * that thread's caches. Tasks submitted from other threads go to a shared queue. A worker with
+ * nothing to do takes tasks from the shared queue, and then from the tails of the other workers'
+ * deques, where the oldest tasks are. The deques are {@link LinkedBlockingDeque}s, which take a
+ * lock for each operation, rather than lock-free work-stealing deques.
+ *
+ * <p>A worker that finds no task at all registers as idle and waits. Whoever adds a task wakes an
+ * idle worker if there is one; a worker registers before its last look for tasks, so a task added
+ * at the same time is either found by that look or followed by a wake-up.
+ */
+@GwtIncompatible
+final class WorkStealingExecutorService extends AbstractListeningExecutorService {
+  private static final Logger log = Logger.getLogger(WorkStealingExecutorService.class.getName());
+
+  private final Worker[] workers;
+  private final ConcurrentLinkedQueue<Runnable> submissions = new ConcurrentLinkedQueue<Runnable>();
+  private final ThreadLocal<Worker> currentWorker = new ThreadLocal<Worker>();
+  private final CountDownLatch terminated;
+
+  private final Object lock = new Object();
+
+  /** Incremented whenever a task is added while a worker is idle, to wake that worker. */
+  @GuardedBy("lock")
+  private long wakeUps;
+
+  /** The number of idle workers. Written with the lock held, but read without it. */
+  private volatile int idleWorkers;
+
+  private volatile boolean shutdown;
+
+  /** Whether {@link #shutdownNow} was called, after which interrupts of the workers stand. */
+  private volatile boolean stopped;
+
+  WorkStealingExecutorService(int parallelism, ThreadFactory threadFactory) {
+    checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+    checkNotNull(threadFactory);
+    this.workers = new Worker[parallelism];
+    this.terminated = new CountDownLatch(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      workers[i] = new Worker(i);
+    }
+    for (Worker worker : workers) {
+      worker.thread = threadFactory.newThread(worker);
+      worker.thread.start();
+    }
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    checkNotNull(command);
+    if (shutdown) {
+      throw new RejectedExecutionException("Executor already shutdown");
+    }
+    Worker worker = currentWorker.get();
+    if (worker != null) {
+      worker.deque.offerFirst(command);
+    } else {
+      submissions.add(command);
+    }
+    // If the executor was shut down meanwhile, all workers may have exited without seeing the task.
+    if (shutdown
+        && (worker != null ? worker.deque.removeFirstOccurrence(command)
+            : submissions.remove(command))) {
+      throw new RejectedExecutionException("Executor already shutdown");
+    }
+    if (idleWorkers > 0) {
+      synchronized (lock) {
+        wakeUps++;
+        lock.notify();
+      }
+    }
+  }
+
+  /** Returns a task for {@code worker} to run, or null if there are none. */
+  @Nullable
+  private Runnable findTask(Worker worker) {
+    Runnable task = worker.deque.pollFirst();
+    if (task != null) {
+      return task;
+    }
+    task = submissions.poll();
+    if (task != null) {
+      return task;
+    }
+    // steal, starting after the worker itself so that thieves spread over their victims
+    for (int i = 1; i < workers.length; i++) {
+      task = workers[(worker.index + i) % workers.length].deque.pollLast();
+      if (task != null) {
+        return task;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Waits for a task for {@code worker}.
+   *
+   * @return a task, or null if the executor has been shut down and there are no more tasks
+   */
+  @Nullable
+  private Runnable awaitTask(Worker worker) {
+    while (true) {
+      long wakeUpsSeen;
+      synchronized (lock) {
+        idleWorkers++;
+        wakeUpsSeen = wakeUps;
+      }
+      Runnable task;
+      try {
+        task = findTask(worker);
+        if (task == null) {
+          synchronized (lock) {
+            while (wakeUps == wakeUpsSeen && !shutdown) {
+              try {
+                lock.wait();
+              } catch (InterruptedException e) {
+                // Interrupts meant for a task, such as from cancel(true), must not stop the
+                // worker. shutdownNow sets shutdown before interrupting, so this loop ends then.
+              }
+            }
+          }
+        }
+      } finally {
+        synchronized (lock) {
+          idleWorkers--;
+        }
+      }
+      if (task == null) {
+        task = findTask(worker);
+      }
+      if (task != null || shutdown) {
+        return task;
+      }
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    synchronized (lock) {
+      shutdown = true;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    stopped = true;
+    shutdown();
+    List<Runnable> neverRun = new ArrayList<Runnable>();
+    for (Runnable task; (task = submissions.poll()) != null; ) {
+      neverRun.add(task);
+    }
+    for (Worker worker : workers) {
+      worker.deque.drainTo(neverRun);
+      worker.thread.interrupt();
+    }
+    return neverRun;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return terminated.getCount() == 0;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return terminated.await(timeout, unit);
+  }
+
+  @Override
+  public String toString() {
+    return "MoreExecutors.newWorkStealingExecutorService(" + workers.length + ")";
+  }
+
+  private final class Worker implements Runnable {
+    final int index;
+    final LinkedBlockingDeque<Runnable> deque = new LinkedBlockingDeque<Runnable>();
+    Thread thread;
+
+    Worker(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public void run() {
+      currentWorker.set(this);
+      try {
+        while (true) {
+          Runnable task = findTask(this);
+          if (task == null) {
+            task = awaitTask(this);
+            if (task == null) {
+              return;
+            }
+          }
+          if (!stopped) {
+            // clear any interrupt left over from the previous task
+            Thread.interrupted();
+          }
+          try {
+            task.run();
+          } catch (Throwable t) {
+            // Keep the worker alive, even on an Error: the tasks on its deque would otherwise be
+            // stranded, and the pool would shrink until it appeared terminated.
+            log.log(Level.SEVERE, "Exception while executing runnable " + task, t);
+          }
+        }
+      } finally {
+        currentWorker.remove();
+        terminated.countDown();
+      }
+    }
+  }
+}